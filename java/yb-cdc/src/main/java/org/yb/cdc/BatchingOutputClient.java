@@ -0,0 +1,50 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.util.List;
+
+import org.yb.client.YBTable;
+
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Output of the connector which takes the changes of a tablet in batches, and applies them
+ * asynchronously so that several batches can be in flight.
+ * <p>
+ * The batches of a tablet are passed in the order of the changes, and must be applied in that
+ * order. Batches of different tablets are passed concurrently. The checkpoint of a tablet only
+ * advances past a batch once the deferred returned for it, and for all the batches before it, was
+ * called back. A batch whose deferred is erred back is passed again, along with the batches of the
+ * tablet after it, so changes may be applied more than once.
+ */
+public interface BatchingOutputClient extends AutoCloseable {
+  /**
+   * Applies a batch of changes of a tablet.
+   * @param table the table the changes are from
+   * @param tabletId the tablet the changes are from
+   * @param records the changes, in order
+   * @param checkpoint the checkpoint of the tablet once the changes are applied
+   * @return a deferred called back once the changes are applied, and erred back if they couldn't be
+   */
+  Deferred<Void> applyBatch(YBTable table, String tabletId, List<CdcService.CDCRecordPB> records,
+                            Checkpoint checkpoint);
+
+  /**
+   * Applies the batches passed so far, and releases the resources of the output.
+   */
+  @Override
+  void close() throws Exception;
+}
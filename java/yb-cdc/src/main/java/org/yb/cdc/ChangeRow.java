@@ -0,0 +1,359 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.protobuf.ByteString;
+import org.yb.ColumnSchema;
+import org.yb.Common.QLValuePB;
+import org.yb.Schema;
+import org.yb.Type;
+
+/**
+ * Typed view of the row a {@link CdcService.CDCRecordPB} changed.
+ * <p>
+ * A ChangeRow is a flyweight: {@link #wrap} points it at a record, which only maps the record's
+ * key and changed columns onto the table's schema, without copying or converting any value. The
+ * getters then read the values straight from the record, checking them against the column types.
+ * The same instance is meant to be reused for all the records of a table, it isn't thread safe.
+ * <p>
+ * Columns which are neither in the record's key nor in its changes, for instance the non-key
+ * columns of a delete, aren't set, and read as null.
+ */
+public class ChangeRow {
+  private final Schema schema;
+
+  // Index of each column in the schema, by the name records use for it.
+  private final Map<ByteString, Integer> columnIndexes = new HashMap<>();
+
+  // The value of each column in the wrapped record, null when the record doesn't set it.
+  private final QLValuePB[] values;
+
+  private CdcService.CDCRecordPB record;
+
+  public ChangeRow(Schema schema) {
+    this.schema = schema;
+    this.values = new QLValuePB[schema.getColumnCount()];
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      columnIndexes.put(ByteString.copyFromUtf8(schema.getColumnByIndex(i).getName()), i);
+    }
+  }
+
+  /**
+   * Points this row at a record.
+   * @param record a record of the table this row was created for
+   * @return this row
+   */
+  public ChangeRow wrap(CdcService.CDCRecordPB record) {
+    this.record = record;
+    Arrays.fill(values, null);
+    setValues(record.getKeyList());
+    setValues(record.getChangesList());
+    return this;
+  }
+
+  private void setValues(List<CdcService.KeyValuePairPB> columns) {
+    for (int i = 0; i < columns.size(); i++) {
+      CdcService.KeyValuePairPB column = columns.get(i);
+      Integer index = columnIndexes.get(column.getKey());
+      // Columns added to the table after the schema was fetched are left out.
+      if (index != null) {
+        values[index] = column.getValue();
+      }
+    }
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the record this row was last pointed at
+   */
+  public CdcService.CDCRecordPB getRecord() {
+    return record;
+  }
+
+  public CdcService.CDCRecordPB.OperationType getOperation() {
+    return record.getOperation();
+  }
+
+  /**
+   * @return the hybrid time of the change
+   */
+  public long getTime() {
+    return record.getTime();
+  }
+
+  /**
+   * @param columnIndex the column's index in the schema
+   * @return true if the record has a value, possibly null, for the column
+   */
+  public boolean isSet(int columnIndex) {
+    return values[columnIndex] != null;
+  }
+
+  public boolean isSet(String columnName) {
+    return isSet(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * @param columnIndex the column's index in the schema
+   * @return true if the column is null, or the record doesn't set it
+   */
+  public boolean isNull(int columnIndex) {
+    QLValuePB value = values[columnIndex];
+    return value == null || value.getValueCase() == QLValuePB.ValueCase.VALUE_NOT_SET;
+  }
+
+  public boolean isNull(String columnName) {
+    return isNull(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * @param columnIndex the column's index in the schema
+   * @return the raw value of the column, or null if the record doesn't set it. Used for the types
+   * without a typed getter, like collections.
+   */
+  public QLValuePB getValue(int columnIndex) {
+    return values[columnIndex];
+  }
+
+  public QLValuePB getValue(String columnName) {
+    return getValue(schema.getColumnIndex(columnName));
+  }
+
+  public boolean getBoolean(int columnIndex) {
+    return checkValue(columnIndex, Type.BOOL).getBoolValue();
+  }
+
+  public boolean getBoolean(String columnName) {
+    return getBoolean(schema.getColumnIndex(columnName));
+  }
+
+  public byte getByte(int columnIndex) {
+    return (byte) checkValue(columnIndex, Type.INT8).getInt8Value();
+  }
+
+  public byte getByte(String columnName) {
+    return getByte(schema.getColumnIndex(columnName));
+  }
+
+  public short getShort(int columnIndex) {
+    return (short) checkValue(columnIndex, Type.INT16).getInt16Value();
+  }
+
+  public short getShort(String columnName) {
+    return getShort(schema.getColumnIndex(columnName));
+  }
+
+  public int getInt(int columnIndex) {
+    return checkValue(columnIndex, Type.INT32).getInt32Value();
+  }
+
+  public int getInt(String columnName) {
+    return getInt(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * Gets a bigint, a timestamp in microseconds since the epoch, or a time in nanoseconds since
+   * midnight.
+   */
+  public long getLong(int columnIndex) {
+    return QLValues.getLong(checkValue(columnIndex, Type.INT64, Type.TIMESTAMP, Type.TIME));
+  }
+
+  public long getLong(String columnName) {
+    return getLong(schema.getColumnIndex(columnName));
+  }
+
+  public float getFloat(int columnIndex) {
+    return checkValue(columnIndex, Type.FLOAT).getFloatValue();
+  }
+
+  public float getFloat(String columnName) {
+    return getFloat(schema.getColumnIndex(columnName));
+  }
+
+  public double getDouble(int columnIndex) {
+    return checkValue(columnIndex, Type.DOUBLE).getDoubleValue();
+  }
+
+  public double getDouble(String columnName) {
+    return getDouble(schema.getColumnIndex(columnName));
+  }
+
+  public String getString(int columnIndex) {
+    return checkValue(columnIndex, Type.STRING).getStringValue();
+  }
+
+  public String getString(String columnName) {
+    return getString(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * Gets the number of days of a date, where 2^31 is 1970-01-01.
+   */
+  public long getDate(int columnIndex) {
+    return QLValues.getLong(checkValue(columnIndex, Type.DATE));
+  }
+
+  public long getDate(String columnName) {
+    return getDate(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * Gets a blob, or the encoded value of a decimal, varint, inet or jsonb column, without copying
+   * it.
+   * @return a read-only buffer over the bytes
+   */
+  public ByteBuffer getBinary(int columnIndex) {
+    return QLValues.getBytes(checkValue(columnIndex, Type.BINARY, Type.DECIMAL, Type.VARINT,
+                                        Type.INET, Type.JSONB)).asReadOnlyByteBuffer();
+  }
+
+  public ByteBuffer getBinary(String columnName) {
+    return getBinary(schema.getColumnIndex(columnName));
+  }
+
+  public UUID getUUID(int columnIndex) {
+    ByteString bytes = QLValues.getBytes(checkValue(columnIndex, Type.UUID, Type.TIMEUUID));
+    long msb = 0;
+    long lsb = 0;
+    for (int i = 0; i < 8; i++) {
+      msb = (msb << 8) | (bytes.byteAt(i) & 0xFF);
+      lsb = (lsb << 8) | (bytes.byteAt(i + 8) & 0xFF);
+    }
+    return new UUID(msb, lsb);
+  }
+
+  public UUID getUUID(String columnName) {
+    return getUUID(schema.getColumnIndex(columnName));
+  }
+
+  /**
+   * Verifies that the column is of one of the given types and isn't null.
+   * @return the column's value
+   * @throws IllegalArgumentException if the column is of another type
+   * @throws IllegalStateException if the column is null or not set
+   */
+  private QLValuePB checkValue(int columnIndex, Type... types) {
+    ColumnSchema column = schema.getColumnByIndex(columnIndex);
+    boolean typeMatches = false;
+    for (Type type : types) {
+      typeMatches |= column.getType() == type;
+    }
+    if (!typeMatches) {
+      throw new IllegalArgumentException(String.format("%s isn't %s, it's %s", column.getName(),
+          Arrays.toString(types), column.getType().getName()));
+    }
+    if (isNull(columnIndex)) {
+      throw new IllegalStateException(String.format("Column %s is null", column.getName()));
+    }
+    return values[columnIndex];
+  }
+
+  /**
+   * @return the operation and the columns the record sets, like
+   * {@code WRITE {k=1, v="a", l=[1, 2]}}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(record.getOperation()).append(" {");
+    boolean first = true;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        continue;
+      }
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(schema.getColumnByIndex(i).getName()).append('=');
+      appendValue(sb, values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  private static void appendValue(StringBuilder sb, QLValuePB value) {
+    switch (QLValues.kindOf(value)) {
+      case INTEGER:
+        sb.append(QLValues.getLong(value));
+        break;
+      case UNSIGNED_INTEGER:
+        sb.append(Long.toUnsignedString(QLValues.getLong(value)));
+        break;
+      case FLOAT:
+        sb.append(value.getFloatValue());
+        break;
+      case DOUBLE:
+        sb.append(value.getDoubleValue());
+        break;
+      case STRING:
+        sb.append('"').append(value.getStringValue()).append('"');
+        break;
+      case BOOL:
+        sb.append(value.getBoolValue());
+        break;
+      case BYTES:
+        sb.append("0x");
+        ByteString bytes = QLValues.getBytes(value);
+        for (int i = 0; i < bytes.size(); i++) {
+          sb.append(Character.forDigit((bytes.byteAt(i) >> 4) & 0xF, 16))
+            .append(Character.forDigit(bytes.byteAt(i) & 0xF, 16));
+        }
+        break;
+      case ELEMS:
+        appendElems(sb, QLValues.getElems(value));
+        break;
+      case MAP:
+        sb.append('{');
+        for (int i = 0; i < value.getMapValue().getKeysCount(); i++) {
+          if (i > 0) {
+            sb.append(", ");
+          }
+          appendValue(sb, value.getMapValue().getKeys(i));
+          sb.append(": ");
+          appendValue(sb, value.getMapValue().getValues(i));
+        }
+        sb.append('}');
+        break;
+      case VIRTUAL:
+        sb.append(value.getVirtualValue());
+        break;
+      case NULL:
+        sb.append("null");
+        break;
+    }
+  }
+
+  private static void appendElems(StringBuilder sb, List<QLValuePB> elems) {
+    sb.append('[');
+    for (int i = 0; i < elems.size(); i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      appendValue(sb, elems.get(i));
+    }
+    sb.append(']');
+  }
+}
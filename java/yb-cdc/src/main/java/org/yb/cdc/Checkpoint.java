@@ -0,0 +1,72 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+/**
+ * Position in the change stream of a tablet: the op id of the last change that was applied.
+ */
+public final class Checkpoint {
+  /** Checkpoint of a tablet nothing was read from yet, polling starts at its first change. */
+  public static final Checkpoint START = new Checkpoint(0, 0);
+
+  private final long term;
+  private final long index;
+
+  public Checkpoint(long term, long index) {
+    this.term = term;
+    this.index = index;
+  }
+
+  public static Checkpoint fromPB(CdcService.CDCCheckpointPB checkpoint) {
+    return new Checkpoint(checkpoint.getOpId().getTerm(), checkpoint.getOpId().getIndex());
+  }
+
+  /**
+   * Parses a checkpoint in the format of {@link #toString()}.
+   */
+  public static Checkpoint parse(String s) {
+    int dot = s.indexOf('.');
+    if (dot < 0) {
+      throw new IllegalArgumentException("Invalid checkpoint: " + s);
+    }
+    return new Checkpoint(Long.parseLong(s.substring(0, dot)), Long.parseLong(s.substring(dot + 1)));
+  }
+
+  public long getTerm() {
+    return term;
+  }
+
+  public long getIndex() {
+    return index;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Checkpoint)) {
+      return false;
+    }
+    Checkpoint other = (Checkpoint) o;
+    return term == other.term && index == other.index;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(term) * 31 + Long.hashCode(index);
+  }
+
+  @Override
+  public String toString() {
+    return term + "." + index;
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import java.io.IOException;
+
+/**
+ * Keeps the stream a connector reads from and how far it got in each tablet, so that a restarted
+ * connector resumes where the previous one stopped instead of replaying the whole stream.
+ * <p>
+ * Implementations must be thread safe, the pollers of all the tablets update their checkpoints
+ * concurrently. Checkpoints only need to be durable once {@link #flush()} returns: changes applied
+ * after the last flush are read again after a restart.
+ */
+public interface CheckpointStore {
+  /**
+   * @return the id of the CDC stream the checkpoints belong to, or null if none was set
+   */
+  String getStreamId();
+
+  /**
+   * Sets the stream the checkpoints belong to. Checkpoints of another stream are dropped.
+   */
+  void setStreamId(String streamId);
+
+  /**
+   * @return the last checkpoint set for the tablet, {@link Checkpoint#START} if there is none
+   */
+  Checkpoint getCheckpoint(String tabletId);
+
+  void setCheckpoint(String tabletId, Checkpoint checkpoint);
+
+  /**
+   * Forgets the checkpoint of a tablet which went away.
+   */
+  void removeCheckpoint(String tabletId);
+
+  /**
+   * Makes the stream id and checkpoints set so far durable.
+   */
+  void flush() throws IOException;
+}
@@ -23,6 +23,12 @@ import org.apache.log4j.Logger;
 public class CmdLineOpts {
 
   private static final String DEFAULT_MASTER_ADDRS = "127.0.0.1:7100";
+  private static final int DEFAULT_NUM_THREADS = 8;
+  private static final long DEFAULT_MAX_POLL_DELAY_MS = 1000;
+  private static final int DEFAULT_MAX_QUEUED_RECORDS = 10000;
+  private static final long DEFAULT_MAX_FILE_BYTES = 128 << 20;
+  private static final long DEFAULT_FLUSH_BYTES = 1 << 20;
+  private static final long DEFAULT_TABLET_REFRESH_INTERVAL_MS = 10000;
 
   private static final Logger LOG = Logger.getLogger(CmdLineOpts.class);
 
@@ -30,6 +36,14 @@ public class CmdLineOpts {
   public String namespaceName;
   public String masterAddrs = DEFAULT_MASTER_ADDRS;
   public String streamId = "";
+  public String checkpointDir;
+  public int numThreads = DEFAULT_NUM_THREADS;
+  public long maxPollDelayMs = DEFAULT_MAX_POLL_DELAY_MS;
+  public int maxQueuedRecords = DEFAULT_MAX_QUEUED_RECORDS;
+  public String outputDir;
+  public long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+  public long flushBytes = DEFAULT_FLUSH_BYTES;
+  public long tabletRefreshIntervalMs = DEFAULT_TABLET_REFRESH_INTERVAL_MS;
 
   public static CmdLineOpts createFromArgs(String[] args) throws Exception {
     Options options = new Options();
@@ -39,6 +53,30 @@ public class CmdLineOpts {
             "Table to get change capture from in format <namespace>.<table>");
     options.addOption("stream_id", true,
             "Optional stream ID. Use this if you already have a CDC stream set up on the table");
+    options.addOption("checkpoint_dir", true,
+            "Optional directory to save the stream ID and tablet checkpoints in. A restarted " +
+            "connector resumes the stream where it stopped");
+    options.addOption("num_threads", true,
+            "Number of threads applying changes, the changes of a tablet are applied in order " +
+            "[default " + DEFAULT_NUM_THREADS + "]");
+    options.addOption("max_poll_delay_ms", true,
+            "Longest wait before polling a tablet again when it has no new changes " +
+            "[default " + DEFAULT_MAX_POLL_DELAY_MS + "]");
+    options.addOption("max_queued_records", true,
+            "Records of a tablet read ahead of the output, polling the tablet waits beyond " +
+            "[default " + DEFAULT_MAX_QUEUED_RECORDS + "]");
+    options.addOption("output_dir", true,
+            "Optional directory to write the changes to as newline-delimited JSON files, " +
+            "instead of logging them");
+    options.addOption("max_file_bytes", true,
+            "Size after which an output file is closed and a new one started " +
+            "[default " + DEFAULT_MAX_FILE_BYTES + "]");
+    options.addOption("flush_bytes", true,
+            "Most bytes of changes to buffer before writing and syncing them to the output file " +
+            "[default " + DEFAULT_FLUSH_BYTES + "]");
+    options.addOption("tablet_refresh_interval_ms", true,
+            "How often to look for new tablets, like those of a split, and tablets which went " +
+            "away [default " + DEFAULT_TABLET_REFRESH_INTERVAL_MS + "]");
 
     // Do the actual arg parsing.
     CommandLineParser parser = new BasicParser();
@@ -85,5 +123,38 @@ public class CmdLineOpts {
       streamId = commandLine.getOptionValue("stream_id");
     }
 
+    if (commandLine.hasOption("checkpoint_dir")) {
+      checkpointDir = commandLine.getOptionValue("checkpoint_dir");
+    }
+
+    if (commandLine.hasOption("num_threads")) {
+      numThreads = Integer.parseInt(commandLine.getOptionValue("num_threads"));
+    }
+
+    if (commandLine.hasOption("max_poll_delay_ms")) {
+      maxPollDelayMs = Long.parseLong(commandLine.getOptionValue("max_poll_delay_ms"));
+    }
+
+    if (commandLine.hasOption("max_queued_records")) {
+      maxQueuedRecords = Integer.parseInt(commandLine.getOptionValue("max_queued_records"));
+    }
+
+    if (commandLine.hasOption("output_dir")) {
+      outputDir = commandLine.getOptionValue("output_dir");
+    }
+
+    if (commandLine.hasOption("max_file_bytes")) {
+      maxFileBytes = Long.parseLong(commandLine.getOptionValue("max_file_bytes"));
+    }
+
+    if (commandLine.hasOption("flush_bytes")) {
+      flushBytes = Long.parseLong(commandLine.getOptionValue("flush_bytes"));
+    }
+
+    if (commandLine.hasOption("tablet_refresh_interval_ms")) {
+      tabletRefreshIntervalMs =
+          Long.parseLong(commandLine.getOptionValue("tablet_refresh_interval_ms"));
+    }
+
   }
 }
@@ -0,0 +1,141 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the checkpoints of a table in a properties file, {@code <table id>.checkpoints} in the
+ * given directory.
+ * <p>
+ * Setting a checkpoint only updates memory, {@link #flush()} writes the file if anything changed.
+ * The file is written next to the old one and renamed over it, so a crash in the middle of a flush
+ * leaves the previous checkpoints in place.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+  private static final Logger LOG = Logger.getLogger(FileCheckpointStore.class);
+
+  private static final String STREAM_ID_KEY = "stream_id";
+  private static final String TABLET_KEY_PREFIX = "tablet.";
+
+  private final File file;
+  private final File tmpFile;
+
+  private volatile String streamId;
+  private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+  // Whether anything was set since the last flush.
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  public FileCheckpointStore(File dir, String tableId) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create checkpoint directory " + dir);
+    }
+    this.file = new File(dir, tableId + ".checkpoints");
+    this.tmpFile = new File(dir, tableId + ".checkpoints.tmp");
+    if (file.exists()) {
+      load();
+    }
+  }
+
+  private void load() throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    streamId = properties.getProperty(STREAM_ID_KEY);
+    for (String key : properties.stringPropertyNames()) {
+      if (key.startsWith(TABLET_KEY_PREFIX)) {
+        checkpoints.put(key.substring(TABLET_KEY_PREFIX.length()),
+                        Checkpoint.parse(properties.getProperty(key)));
+      }
+    }
+    LOG.info(String.format("Loaded %d tablet checkpoints of stream %s from %s",
+                           checkpoints.size(), streamId, file));
+  }
+
+  @Override
+  public String getStreamId() {
+    return streamId;
+  }
+
+  @Override
+  public synchronized void setStreamId(String streamId) {
+    if (!streamId.equals(this.streamId)) {
+      if (!checkpoints.isEmpty()) {
+        LOG.warn(String.format("Dropping the checkpoints of stream %s in %s, now reading stream %s",
+                               this.streamId, file, streamId));
+      }
+      checkpoints.clear();
+      this.streamId = streamId;
+      dirty.set(true);
+    }
+  }
+
+  @Override
+  public Checkpoint getCheckpoint(String tabletId) {
+    Checkpoint checkpoint = checkpoints.get(tabletId);
+    return checkpoint == null ? Checkpoint.START : checkpoint;
+  }
+
+  @Override
+  public void setCheckpoint(String tabletId, Checkpoint checkpoint) {
+    checkpoints.put(tabletId, checkpoint);
+    dirty.set(true);
+  }
+
+  @Override
+  public void removeCheckpoint(String tabletId) {
+    checkpoints.remove(tabletId);
+    dirty.set(true);
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    Properties properties = new Properties();
+    if (streamId != null) {
+      properties.setProperty(STREAM_ID_KEY, streamId);
+    }
+    for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+      properties.setProperty(TABLET_KEY_PREFIX + entry.getKey(), entry.getValue().toString());
+    }
+    try {
+      try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+        properties.store(out, "CDC checkpoints");
+        out.getFD().sync();
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // Try again on the next flush.
+      dirty.set(true);
+      throw e;
+    }
+  }
+}
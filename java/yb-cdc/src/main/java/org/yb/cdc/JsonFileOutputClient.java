@@ -0,0 +1,341 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.google.gson.stream.JsonWriter;
+import com.stumbleupon.async.Deferred;
+import org.apache.log4j.Logger;
+import org.yb.Common.QLValuePB;
+import org.yb.client.YBTable;
+
+/**
+ * Writes changes to rolling files of newline-delimited JSON, one object per change.
+ * <p>
+ * Batches are written by a single thread. It encodes as many queued batches as fit in the flush
+ * size, writes them at once, syncs the file and only then calls the batches back, so that the cost
+ * of a sync is shared by all the batches that arrived meanwhile. A file is closed once it reaches
+ * the maximum file size. Files being written end with {@code .inprogress}, which is removed when
+ * they are closed.
+ * <p>
+ * Each line looks like
+ * <pre>
+ * {"tablet_id":"...","checkpoint":"1.42","time":6440370117812854784,"operation":"WRITE",
+ *  "key":{"k":1},"changes":{"v":"a"}}
+ * </pre>
+ * Values are written according to their protobuf type: numbers, strings and booleans as such,
+ * binary values (blobs, decimals, varints, uuids, inets, jsonb) in base64, lists and sets as arrays
+ * and maps as arrays of [key, value] pairs.
+ */
+public class JsonFileOutputClient implements BatchingOutputClient {
+  private static final Logger LOG = Logger.getLogger(JsonFileOutputClient.class);
+
+  private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+
+  private static class PendingBatch {
+    final String tabletId;
+    final List<CdcService.CDCRecordPB> records;
+    final Checkpoint checkpoint;
+    final Deferred<Void> deferred = new Deferred<>();
+
+    PendingBatch(String tabletId, List<CdcService.CDCRecordPB> records, Checkpoint checkpoint) {
+      this.tabletId = tabletId;
+      this.records = records;
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  // Queued by close() to stop the writer thread once the batches before it are written.
+  private static final PendingBatch CLOSE = new PendingBatch(null, null, null);
+
+  private final File dir;
+  private final String prefix;
+  private final long maxFileBytes;
+  private final long flushBytes;
+  private final long startMillis = System.currentTimeMillis();
+
+  private final BlockingQueue<PendingBatch> queue = new LinkedBlockingQueue<>();
+  private final Thread writerThread;
+  // Guarded by this, along with queueing, so that no batch is queued after CLOSE.
+  private boolean closed;
+
+  // Only used by the writer thread.
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final Writer bufferWriter = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+  private int fileSeqNo;
+  private File file;
+  private FileOutputStream out;
+  private long fileBytes;
+
+  /**
+   * @param dir directory to write the files in
+   * @param prefix start of the file names, followed by the time the client was created and a
+   *               sequence number
+   * @param maxFileBytes size after which a file is closed and the next changes go to a new one
+   * @param flushBytes most changes to encode before writing and syncing them, less are written
+   *                   when no more batches are waiting
+   */
+  public JsonFileOutputClient(File dir, String prefix, long maxFileBytes, long flushBytes)
+      throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create output directory " + dir);
+    }
+    this.dir = dir;
+    this.prefix = prefix;
+    this.maxFileBytes = maxFileBytes;
+    this.flushBytes = flushBytes;
+    this.writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeLoop();
+      }
+    }, "cdc-json-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @Override
+  public Deferred<Void> applyBatch(YBTable table, String tabletId,
+                                   List<CdcService.CDCRecordPB> records, Checkpoint checkpoint) {
+    PendingBatch batch = new PendingBatch(tabletId, records, checkpoint);
+    synchronized (this) {
+      if (closed) {
+        return Deferred.fromError(new IllegalStateException("Output client is closed"));
+      }
+      queue.add(batch);
+    }
+    return batch.deferred;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      queue.add(CLOSE);
+    }
+    writerThread.join();
+  }
+
+  private void writeLoop() {
+    List<PendingBatch> group = new ArrayList<>();
+    boolean closing = false;
+    while (!closing) {
+      PendingBatch batch;
+      try {
+        batch = queue.take();
+      } catch (InterruptedException e) {
+        break;
+      }
+      Exception error = null;
+      while (batch != null) {
+        if (batch == CLOSE) {
+          closing = true;
+          break;
+        }
+        group.add(batch);
+        try {
+          encode(batch);
+        } catch (IOException | RuntimeException e) {
+          // IOExceptions can't happen when writing to memory. A change which can't be encoded
+          // fails the group it's in, whose changes are partly in the buffer, but not the thread,
+          // or no batch would ever be called back again.
+          LOG.error("Failed to encode changes of tablet " + batch.tabletId, e);
+          error = e;
+          break;
+        }
+        batch = buffer.size() < flushBytes ? queue.poll() : null;
+      }
+      if (group.isEmpty()) {
+        continue;
+      }
+
+      if (error == null) {
+        try {
+          write();
+        } catch (IOException e) {
+          LOG.error("Failed to write changes to " + file, e);
+          error = e;
+          // The next batches go to a new file.
+          closeQuietly();
+        }
+      }
+      resetBuffer();
+      for (PendingBatch written : group) {
+        // Calling back with an exception errs the deferred back.
+        written.deferred.callback(error);
+      }
+      group.clear();
+    }
+
+    try {
+      finishFile();
+    } catch (IOException e) {
+      LOG.error("Failed to close " + file, e);
+    }
+    // Only left when the thread was interrupted.
+    List<PendingBatch> left = new ArrayList<>();
+    queue.drainTo(left);
+    for (PendingBatch batch : left) {
+      batch.deferred.callback(new IllegalStateException("Output client is closed"));
+    }
+  }
+
+  // Drops what was encoded, including what the writer still holds of a batch which failed midway.
+  private void resetBuffer() {
+    try {
+      bufferWriter.flush();
+    } catch (IOException e) {
+      // Can't happen when writing to memory.
+    }
+    buffer.reset();
+  }
+
+  private void encode(PendingBatch batch) throws IOException {
+    String checkpoint = batch.checkpoint.toString();
+    for (CdcService.CDCRecordPB record : batch.records) {
+      JsonWriter json = new JsonWriter(bufferWriter);
+      // Allows NaN and infinite floats.
+      json.setLenient(true);
+      json.beginObject();
+      json.name("tablet_id").value(batch.tabletId);
+      json.name("checkpoint").value(checkpoint);
+      json.name("time").value(new BigInteger(Long.toUnsignedString(record.getTime())));
+      json.name("operation").value(record.getOperation().name());
+      json.name("key");
+      writeColumns(json, record.getKeyList());
+      json.name("changes");
+      writeColumns(json, record.getChangesList());
+      json.endObject();
+      json.flush();
+      bufferWriter.write('\n');
+    }
+    bufferWriter.flush();
+  }
+
+  private static void writeColumns(JsonWriter json, List<CdcService.KeyValuePairPB> columns)
+      throws IOException {
+    json.beginObject();
+    for (CdcService.KeyValuePairPB column : columns) {
+      json.name(column.getKey().toStringUtf8());
+      writeValue(json, column.getValue());
+    }
+    json.endObject();
+  }
+
+  static void writeValue(JsonWriter json, QLValuePB value) throws IOException {
+    switch (QLValues.kindOf(value)) {
+      case INTEGER:
+        json.value(QLValues.getLong(value));
+        break;
+      case UNSIGNED_INTEGER:
+        json.value(new BigInteger(Long.toUnsignedString(QLValues.getLong(value))));
+        break;
+      case FLOAT:
+        json.value(value.getFloatValue());
+        break;
+      case DOUBLE:
+        json.value(value.getDoubleValue());
+        break;
+      case STRING:
+        json.value(value.getStringValue());
+        break;
+      case BOOL:
+        json.value(value.getBoolValue());
+        break;
+      case BYTES:
+        json.value(Base64.getEncoder().encodeToString(QLValues.getBytes(value).toByteArray()));
+        break;
+      case ELEMS:
+        json.beginArray();
+        for (QLValuePB elem : QLValues.getElems(value)) {
+          writeValue(json, elem);
+        }
+        json.endArray();
+        break;
+      case MAP:
+        json.beginArray();
+        for (int i = 0; i < value.getMapValue().getKeysCount(); i++) {
+          json.beginArray();
+          writeValue(json, value.getMapValue().getKeys(i));
+          writeValue(json, value.getMapValue().getValues(i));
+          json.endArray();
+        }
+        json.endArray();
+        break;
+      case VIRTUAL:
+        json.value(value.getVirtualValue().name());
+        break;
+      case NULL:
+        json.nullValue();
+        break;
+    }
+  }
+
+  // Writes and syncs the buffered changes, and closes the file if it is full.
+  private void write() throws IOException {
+    if (out == null) {
+      file = new File(dir, String.format("%s-%d-%06d.json", prefix, startMillis, fileSeqNo++));
+      out = new FileOutputStream(new File(file.getPath() + IN_PROGRESS_SUFFIX));
+      fileBytes = 0;
+    }
+    buffer.writeTo(out);
+    out.getFD().sync();
+    fileBytes += buffer.size();
+    if (fileBytes >= maxFileBytes) {
+      finishFile();
+    }
+  }
+
+  private void finishFile() throws IOException {
+    if (out == null) {
+      return;
+    }
+    out.close();
+    out = null;
+    File inProgress = new File(file.getPath() + IN_PROGRESS_SUFFIX);
+    if (!inProgress.renameTo(file)) {
+      throw new IOException("Could not rename " + inProgress + " to " + file);
+    }
+    LOG.info(String.format("Wrote %d bytes to %s", fileBytes, file));
+  }
+
+  private void closeQuietly() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      // The file was already failing.
+    }
+    out = null;
+  }
+}
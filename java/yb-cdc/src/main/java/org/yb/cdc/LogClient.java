@@ -19,8 +19,19 @@ import org.yb.client.YBTable;
 public class LogClient implements OutputClient {
   private static final Logger LOG = Logger.getLogger(LogClient.class);
 
+  // Rows are reused for all the records of a table, each thread has its own.
+  private final ThreadLocal<ChangeRow> rows = new ThreadLocal<>();
+
   @Override
   public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) throws Exception {
-    LOG.info(changeRecord.toString());
+    if (!LOG.isInfoEnabled()) {
+      return;
+    }
+    ChangeRow row = rows.get();
+    if (row == null || row.getSchema() != table.getSchema()) {
+      row = new ChangeRow(table.getSchema());
+      rows.set(row);
+    }
+    LOG.info(row.wrap(changeRecord));
   }
 }
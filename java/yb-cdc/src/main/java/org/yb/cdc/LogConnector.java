@@ -21,9 +21,11 @@ import org.yb.client.ListTablesResponse;
 import org.yb.client.ListTabletServersResponse;
 import org.yb.client.LocatedTablet;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.*;
 import org.apache.log4j.Logger;
 import org.yb.master.Master;
@@ -35,21 +37,38 @@ class LogConnector {
   private static AsyncYBClient client;
   private static YBClient syncClient;
 
-  private ExecutorService executor;
+  private ScheduledExecutorService executor;
 
-  private static final int DEFAULT_TIMEOUT = 30000;
-  private static final int DEFAULT_NUM_THREADS = 8;
+  static final int DEFAULT_TIMEOUT = 30000;
+
+  // How often the checkpoints are made durable, changes applied since are read again on restart.
+  private static final long CHECKPOINT_FLUSH_INTERVAL_MS = 1000;
+
+  private static final long METRICS_INTERVAL_MS = 10000;
+
+  private long tabletRefreshIntervalMs;
 
   private YBTable table;
 
-  private List<Poller> pollers = new ArrayList<>();
+  private TabletWatcher tabletWatcher;
 
   List<HostAndPort> hps = new ArrayList<>();
 
-  private OutputClient outputClient;
+  private BatchingOutputClient outputClient;
 
   private String streamId;
 
+  private CheckpointStore checkpointStore;
+
+  private long maxPollDelayMs;
+  private int maxQueuedRecords;
+
+  // Totals of the pollers at the last metrics report.
+  private long lastReportNanos;
+  private long lastNumAppliedRecords;
+  private long lastNumPolls;
+  private long lastNumEmptyPolls;
+
   public LogConnector(CmdLineOpts opts) throws Exception {
     LOG.info("Creating new YB client...");
     client = new AsyncYBClient.AsyncYBClientBuilder(opts.masterAddrs)
@@ -60,7 +79,7 @@ class LogConnector {
 
     syncClient = new YBClient(client);
 
-    executor = Executors.newFixedThreadPool(DEFAULT_NUM_THREADS);
+    executor = Executors.newScheduledThreadPool(opts.numThreads);
 
     String tableId = null;
     ListTablesResponse tablesResp = syncClient.getTablesList();
@@ -84,28 +103,116 @@ class LogConnector {
       hps.add(HostAndPort.fromParts(serverInfo.getHost(), serverInfo.getPort()));
     }
 
-    outputClient = new LogClient();
+    if (opts.outputDir == null) {
+      outputClient = new OutputClientAdapter(new LogClient());
+    } else {
+      outputClient = new JsonFileOutputClient(new File(opts.outputDir),
+                                              opts.namespaceName + "." + opts.tableName,
+                                              opts.maxFileBytes, opts.flushBytes);
+    }
+
+    if (opts.checkpointDir == null) {
+      checkpointStore = new MemoryCheckpointStore();
+    } else {
+      checkpointStore = new FileCheckpointStore(new File(opts.checkpointDir), tableId);
+    }
 
     streamId = opts.streamId;
+    maxPollDelayMs = opts.maxPollDelayMs;
+    maxQueuedRecords = opts.maxQueuedRecords;
+    tabletRefreshIntervalMs = opts.tabletRefreshIntervalMs;
   }
 
   public void run() throws Exception {
     Random rand = new Random();
 
     HostAndPort hp = hps.get(rand.nextInt(hps.size()));
+    if (streamId.isEmpty() && checkpointStore.getStreamId() != null) {
+      streamId = checkpointStore.getStreamId();
+      LOG.info(String.format("Resuming stream with id %s", streamId));
+    }
     if (streamId.isEmpty()) {
       streamId = syncClient.createCDCStream(hp, table.getTableId()).getStreamId();
       LOG.info(String.format("Created new stream with id %s", streamId));
     }
+    checkpointStore.setStreamId(streamId);
+    checkpointStore.flush();
 
-    List<LocatedTablet> tabletLocations = table.getTabletsLocations(DEFAULT_TIMEOUT);
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flushCheckpoints();
+      }
+    }, CHECKPOINT_FLUSH_INTERVAL_MS, CHECKPOINT_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    lastReportNanos = System.nanoTime();
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        reportMetrics();
+      }
+    }, METRICS_INTERVAL_MS, METRICS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        // Lets the output client acknowledge the batches it has, to save their checkpoints.
+        try {
+          outputClient.close();
+        } catch (Exception e) {
+          LOG.error("Failed to close the output client", e);
+        }
+        flushCheckpoints();
+      }
+    }));
+
+    tabletWatcher = new TabletWatcher(table, checkpointStore, new TabletWatcher.PollerFactory() {
+      @Override
+      public Poller newPoller(LocatedTablet tablet) {
+        return new Poller(outputClient, hps, table, streamId, new String(tablet.getTabletId()),
+                          Poller.leaderOf(tablet), checkpointStore, maxPollDelayMs,
+                          maxQueuedRecords, executor, client);
+      }
+    });
+    tabletWatcher.refresh();
+    // Picks up the tablets of splits.
+    executor.scheduleWithFixedDelay(tabletWatcher, tabletRefreshIntervalMs,
+                                    tabletRefreshIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void flushCheckpoints() {
+    try {
+      checkpointStore.flush();
+    } catch (Exception e) {
+      LOG.error("Failed to save the checkpoints", e);
+    }
+  }
 
-    for (LocatedTablet tablet : tabletLocations) {
-      String tabletId = new String(tablet.getTabletId());
-      LOG.info(String.format("Polling for new tablet %s", tabletId));
-      Poller poller = new Poller(outputClient, hps, table, streamId, tabletId, executor, client);
-      pollers.add(poller);
-      poller.poll();
+  /**
+   * Logs the records applied per second and the ratio of empty polls since the last report, and
+   * how far behind each tablet is. Lags are in ops, they are fetched for the next report.
+   */
+  private void reportMetrics() {
+    long numAppliedRecords = tabletWatcher.getNumRetiredAppliedRecords();
+    long numPolls = tabletWatcher.getNumRetiredPolls();
+    long numEmptyPolls = tabletWatcher.getNumRetiredEmptyPolls();
+    for (Poller poller : tabletWatcher.getPollers()) {
+      numAppliedRecords += poller.getNumAppliedRecords();
+      numPolls += poller.getNumPolls();
+      numEmptyPolls += poller.getNumEmptyPolls();
+      LOG.info(String.format("Tablet %s: checkpoint %s, lag %d ops, %d queued records",
+                             poller.getTabletId(), poller.getAppliedCheckpoint(), poller.getLag(),
+                             poller.getNumQueuedRecords()));
+      poller.updateLatestOpId();
     }
+    long now = System.nanoTime();
+    double seconds = (now - lastReportNanos) / 1e9;
+    long polls = numPolls - lastNumPolls;
+    LOG.info(String.format("Applied %.1f records/sec, %.1f%% of %d polls were empty",
+                           (numAppliedRecords - lastNumAppliedRecords) / seconds,
+                           polls == 0 ? 0.0 : 100.0 * (numEmptyPolls - lastNumEmptyPolls) / polls,
+                           polls));
+    lastReportNanos = now;
+    lastNumAppliedRecords = numAppliedRecords;
+    lastNumPolls = numPolls;
+    lastNumEmptyPolls = numEmptyPolls;
   }
 }
@@ -0,0 +1,58 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checkpoints that only live as long as the connector, a restart reads the stream from the start.
+ */
+public class MemoryCheckpointStore implements CheckpointStore {
+  private volatile String streamId;
+  private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+  @Override
+  public String getStreamId() {
+    return streamId;
+  }
+
+  @Override
+  public synchronized void setStreamId(String streamId) {
+    if (!streamId.equals(this.streamId)) {
+      checkpoints.clear();
+      this.streamId = streamId;
+    }
+  }
+
+  @Override
+  public Checkpoint getCheckpoint(String tabletId) {
+    Checkpoint checkpoint = checkpoints.get(tabletId);
+    return checkpoint == null ? Checkpoint.START : checkpoint;
+  }
+
+  @Override
+  public void setCheckpoint(String tabletId, Checkpoint checkpoint) {
+    checkpoints.put(tabletId, checkpoint);
+  }
+
+  @Override
+  public void removeCheckpoint(String tabletId) {
+    checkpoints.remove(tabletId);
+  }
+
+  @Override
+  public void flush() {
+  }
+}
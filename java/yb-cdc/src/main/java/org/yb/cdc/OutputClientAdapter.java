@@ -0,0 +1,49 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.util.List;
+
+import org.yb.client.YBTable;
+
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Applies batches of changes one record at a time to an {@link OutputClient}, before returning.
+ */
+public class OutputClientAdapter implements BatchingOutputClient {
+  private final OutputClient outputClient;
+
+  public OutputClientAdapter(OutputClient outputClient) {
+    this.outputClient = outputClient;
+  }
+
+  @Override
+  public Deferred<Void> applyBatch(YBTable table, String tabletId,
+                                   List<CdcService.CDCRecordPB> records, Checkpoint checkpoint) {
+    try {
+      for (CdcService.CDCRecordPB record : records) {
+        outputClient.applyChange(table, record);
+      }
+    } catch (Exception e) {
+      return Deferred.fromError(e);
+    }
+    return Deferred.fromResult(null);
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -14,38 +14,130 @@
 package org.yb.cdc;
 
 import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
 import org.apache.log4j.Logger;
 import org.yb.client.AsyncYBClient;
 import org.yb.client.GetChangesResponse;
+import org.yb.client.GetLatestEntryOpIdResponse;
+import org.yb.client.LocatedTablet;
 import org.yb.client.YBTable;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.List;
 
 import com.google.common.net.HostAndPort;
 
-
+/**
+ * Polls the changes of one tablet and applies them to the output client.
+ * <p>
+ * A poller has at most one GetChanges RPC in flight. The batches of records it gets are queued and
+ * passed to the output client in order by one task at a time, so the changes of a tablet reach the
+ * output client in order, even though the pollers of all the tablets share the executor. Polling
+ * goes on while the output client applies the batches, up to a number of queued records, passed or
+ * not, after which it waits for the output client to catch up. The checkpoint is only advanced
+ * once the output client acknowledged the batches before it.
+ * <p>
+ * Polling is adaptive: a poller asks for more changes right away after a batch of records, and
+ * waits longer and longer, up to a maximum delay, while the tablet has no new changes.
+ * <p>
+ * A tablet which went away, for instance because it was split, is retired: its poller reads the
+ * changes it still has, until a poll comes back empty or keeps failing, then stops once they are
+ * all applied.
+ * <p>
+ * Changes are read from the tablet leader. When the leader isn't known, or the tserver polled
+ * says it doesn't lead the tablet anymore, the leader is looked up again and meanwhile a random
+ * tserver proxies the requests.
+ */
 public class Poller {
   private static final Logger LOG = Logger.getLogger(Poller.class);
 
-  private long term;
-  private long index;
-  private String streamId;
-  private String tabletId;
-  private ExecutorService executor;
-  private YBTable table;
-  private AsyncYBClient client;
-  private List<HostAndPort> hps;
-  private OutputClient outputClient;
-
-  public Poller(OutputClient outputClient, List<HostAndPort> hps, YBTable table, String streamId,
-                String tabletId, ExecutorService executor, AsyncYBClient client) {
+  // How long to wait before polling again after an error.
+  private static final long RETRY_DELAY_MS = 1000;
+
+  // Delay before the first poll after an empty one, it doubles after each empty poll.
+  private static final long MIN_IDLE_POLL_DELAY_MS = 10;
+
+  // Failed polls after which a retired tablet is given up on.
+  private static final int MAX_RETIRED_POLL_ERRORS = 3;
+
+  private final String streamId;
+  private final String tabletId;
+  private final ScheduledExecutorService executor;
+  private final YBTable table;
+  private final AsyncYBClient client;
+  private final List<HostAndPort> hps;
+  private final BatchingOutputClient outputClient;
+  private final CheckpointStore checkpointStore;
+  private final long maxPollDelayMs;
+  private final int maxQueuedRecords;
+  private final Random random = new Random();
+
+  // The tserver to poll, null if the tablet leader isn't known.
+  private volatile HostAndPort leader;
+
+  // Where the next poll reads from: the checkpoint of the last batch received, which may not be
+  // applied yet. Only used by the poll in flight, like pollDelayMs.
+  private Checkpoint readCheckpoint;
+  private long pollDelayMs;
+
+  // Checkpoint of the last batch applied.
+  private volatile Checkpoint appliedCheckpoint;
+
+  // Batches received and not passed to the output client yet, and batches passed but not
+  // acknowledged yet, in order. numQueuedRecords is the number of records in both.
+  private final ArrayDeque<Batch> pending = new ArrayDeque<>();
+  private final ArrayDeque<Batch> inflight = new ArrayDeque<>();
+  private int numQueuedRecords;
+  // Whether a task is passing the pending batches to the output client.
+  private boolean delivering;
+  // Whether that task should wait before passing the next batch, after a failure.
+  private boolean retryDelivery;
+  // Whether polling waits for the queued records to be applied.
+  private boolean pollingPaused;
+
+  // Called once a retired tablet was polled for the last time and its changes were applied.
+  private Runnable onRetired;
+  private int numRetiredPollErrors;
+  private boolean pollingDone;
+
+  private final AtomicLong numAppliedRecords = new AtomicLong();
+  private final AtomicLong numPolls = new AtomicLong();
+  private final AtomicLong numEmptyPolls = new AtomicLong();
+  // Index of the latest entry in the tablet's log, -1 until it was fetched.
+  private volatile long latestIndex = -1;
+
+  private static class Batch {
+    final List<CdcService.CDCRecordPB> records;
+    final Checkpoint checkpoint;
+    // How many times the batch was passed to the output client, and whether the output client
+    // acknowledged the last time. Guarded by the poller.
+    int attempt;
+    boolean acked;
+
+    Batch(List<CdcService.CDCRecordPB> records, Checkpoint checkpoint) {
+      this.records = records;
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  public Poller(BatchingOutputClient outputClient, List<HostAndPort> hps, YBTable table,
+                String streamId, String tabletId, HostAndPort leader, CheckpointStore checkpointStore,
+                long maxPollDelayMs, int maxQueuedRecords, ScheduledExecutorService executor,
+                AsyncYBClient client) {
     this.streamId = streamId;
     this.tabletId = tabletId;
-    this.term = 0;
-    this.index = 0;
+    this.leader = leader;
+    this.checkpointStore = checkpointStore;
+    this.readCheckpoint = checkpointStore.getCheckpoint(tabletId);
+    this.appliedCheckpoint = readCheckpoint;
+    this.maxPollDelayMs = maxPollDelayMs;
+    this.maxQueuedRecords = maxQueuedRecords;
     this.executor = executor;
     this.client = client;
     this.table = table;
@@ -53,6 +145,56 @@ public class Poller {
     this.outputClient = outputClient;
   }
 
+  /**
+   * @return the address of the tablet's leader, or null if it has none or it has no address
+   */
+  static HostAndPort leaderOf(LocatedTablet tablet) {
+    LocatedTablet.Replica replica = tablet.getLeaderReplica();
+    if (replica == null || replica.getRpcHostPort() == null) {
+      return null;
+    }
+    return HostAndPort.fromParts(replica.getRpcHost(), replica.getRpcPort());
+  }
+
+  public String getTabletId() {
+    return tabletId;
+  }
+
+  /**
+   * @return the checkpoint of the last changes applied to the output client
+   */
+  public Checkpoint getAppliedCheckpoint() {
+    return appliedCheckpoint;
+  }
+
+  /**
+   * @return how many ops the applied checkpoint is behind the latest entry of the tablet, as of
+   * the last {@link #updateLatestOpId()}, or -1 if it isn't known yet
+   */
+  public long getLag() {
+    long latest = latestIndex;
+    return latest < 0 ? -1 : Math.max(0, latest - appliedCheckpoint.getIndex());
+  }
+
+  public synchronized int getNumQueuedRecords() {
+    return numQueuedRecords;
+  }
+
+  public long getNumAppliedRecords() {
+    return numAppliedRecords.get();
+  }
+
+  public long getNumPolls() {
+    return numPolls.get();
+  }
+
+  /**
+   * @return the number of polls which got neither records nor a new checkpoint
+   */
+  public long getNumEmptyPolls() {
+    return numEmptyPolls.get();
+  }
+
   public Void poll() {
     executor.submit(new Callable<Void>() {
       @Override
@@ -63,20 +205,122 @@ public class Poller {
     return null;
   }
 
+  private Void pollAfter(long delayMs) {
+    if (delayMs == 0) {
+      return poll();
+    }
+    executor.schedule(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        return doPoll();
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+    return null;
+  }
+
+  private Void retry() {
+    boolean giveUp;
+    synchronized (this) {
+      giveUp = onRetired != null && ++numRetiredPollErrors >= MAX_RETIRED_POLL_ERRORS;
+    }
+    if (giveUp) {
+      LOG.warn(String.format("Giving up on retired tablet %s at checkpoint %s", tabletId,
+                             readCheckpoint));
+      return stopPolling();
+    }
+    return pollAfter(RETRY_DELAY_MS);
+  }
+
+  /**
+   * Stops polling the tablet once it has no more changes, because it went away.
+   * @param onRetired called once the last changes of the tablet were applied, after which
+   * {@link #getAppliedCheckpoint()} is the tablet's final checkpoint
+   */
+  public synchronized void retire(Runnable onRetired) {
+    this.onRetired = onRetired;
+  }
+
+  // Called without holding the poller's lock, like onRetired.
+  private Void stopPolling() {
+    boolean retired;
+    synchronized (this) {
+      pollingDone = true;
+      retired = pending.isEmpty() && inflight.isEmpty();
+    }
+    if (retired) {
+      onRetired.run();
+    }
+    return null;
+  }
+
   private Void doPoll() {
-    Random rand = new Random();
-    HostAndPort hp = hps.get(rand.nextInt(hps.size()));
+    if (leader == null) {
+      leader = findLeader();
+    }
+    HostAndPort hp = leader != null ? leader : hps.get(random.nextInt(hps.size()));
 
-    client.getChanges(hp, table, streamId, tabletId, term, index,
-                      new Callback<Void, GetChangesResponse>() {
-      @Override
-      public Void call(GetChangesResponse getChangesResponse) throws Exception {
-        return handlePoll(getChangesResponse);
+    try {
+      client.getChanges(hp, table, streamId, tabletId, readCheckpoint.getTerm(),
+                        readCheckpoint.getIndex(), new Callback<Void, GetChangesResponse>() {
+        @Override
+        public Void call(GetChangesResponse getChangesResponse) throws Exception {
+          return handlePoll(getChangesResponse);
+        }
+      }).addErrback(new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) throws Exception {
+          LOG.warn(String.format("Failed to get changes of tablet %s from %s", tabletId, hp), e);
+          leader = null;
+          return retry();
+        }
+      });
+    } catch (Exception e) {
+      LOG.warn(String.format("Failed to get changes of tablet %s from %s", tabletId, hp), e);
+      leader = null;
+      retry();
+    }
+    return null;
+  }
+
+  private HostAndPort findLeader() {
+    try {
+      for (LocatedTablet tablet : table.getTabletsLocations(LogConnector.DEFAULT_TIMEOUT)) {
+        if (Arrays.equals(tablet.getTabletId(), tabletId.getBytes())) {
+          return leaderOf(tablet);
+        }
       }
-    });
+      LOG.warn(String.format("Tablet %s is not in the locations of table %s", tabletId,
+                             table.getName()));
+    } catch (Exception e) {
+      LOG.warn(String.format("Failed to find the leader of tablet %s", tabletId), e);
+    }
     return null;
   }
 
+  /**
+   * Fetches the op id of the latest entry of the tablet from its leader, for {@link #getLag()}.
+   */
+  public void updateLatestOpId() {
+    HostAndPort hp = leader;
+    if (hp == null) {
+      return;
+    }
+    try {
+      client.getLatestEntryOpId(hp, table, tabletId).addCallback(
+          new Callback<Void, GetLatestEntryOpIdResponse>() {
+        @Override
+        public Void call(GetLatestEntryOpIdResponse response) throws Exception {
+          if (!response.getResp().hasError()) {
+            latestIndex = response.getResp().getOpId().getIndex();
+          }
+          return null;
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug(String.format("Failed to get the latest op id of tablet %s", tabletId), e);
+    }
+  }
+
   private Void handlePoll(GetChangesResponse getChangesResponse) {
     executor.submit(new Callable<Void>() {
       @Override
@@ -90,22 +334,188 @@ public class Poller {
   private Void doHandlePoll(GetChangesResponse getChangesResponse) throws Exception {
     // Handle the poll
     if (getChangesResponse.getResp().hasError()) {
-      if (getChangesResponse.getResp().getError().getCode() ==
-              CdcService.CDCErrorPB.Code.INVALID_REQUEST) {
-        LOG.error("Invalid Request");
-        System.exit(0);
+      CdcService.CDCErrorPB error = getChangesResponse.getResp().getError();
+      switch (error.getCode()) {
+        case INVALID_REQUEST:
+          LOG.error("Invalid Request");
+          System.exit(0);
+          break;
+        case TABLET_NOT_FOUND:
+        case NOT_LEADER:
+        case LEADER_NOT_READY:
+        case TABLET_NOT_RUNNING:
+          LOG.info(String.format("Looking up the leader of tablet %s again after %s from %s",
+                                 tabletId, error.getCode(), leader));
+          leader = null;
+          break;
+        default:
+          LOG.warn(String.format("Failed to get changes of tablet %s: %s", tabletId,
+                                 error.getStatus().getMessage()));
+          break;
       }
-      return poll();
+      return retry();
+    }
+
+    List<CdcService.CDCRecordPB> records = getChangesResponse.getResp().getRecordsList();
+    Checkpoint checkpoint = readCheckpoint;
+    if (getChangesResponse.getResp().hasCheckpoint()) {
+      checkpoint = Checkpoint.fromPB(getChangesResponse.getResp().getCheckpoint());
+    }
+    numPolls.incrementAndGet();
+    if (records.isEmpty() && checkpoint.equals(readCheckpoint)) {
+      numEmptyPolls.incrementAndGet();
+      boolean retiring;
+      synchronized (this) {
+        retiring = onRetired != null;
+      }
+      if (retiring) {
+        LOG.info(String.format("Read the last changes of retired tablet %s", tabletId));
+        return stopPolling();
+      }
+      pollDelayMs = Math.min(Math.max(pollDelayMs * 2, MIN_IDLE_POLL_DELAY_MS), maxPollDelayMs);
+      return pollAfter(pollDelayMs);
+    }
+    pollDelayMs = 0;
+    readCheckpoint = checkpoint;
+
+    boolean startApplying;
+    boolean pausePolling;
+    synchronized (this) {
+      pending.add(new Batch(records, checkpoint));
+      numQueuedRecords += records.size();
+      startApplying = !delivering;
+      delivering = true;
+      pausePolling = numQueuedRecords >= maxQueuedRecords;
+      pollingPaused = pausePolling;
+    }
+    if (startApplying) {
+      applyNext();
+    }
+    return pausePolling ? null : poll();
+  }
+
+  private void applyNext() {
+    executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        return doApply();
+      }
+    });
+  }
+
+  // Passes the oldest pending batch to the output client. Each task passes one batch so that a
+  // tablet with a long queue doesn't keep a thread from the others, when the output client applies
+  // the batches before returning.
+  private Void doApply() {
+    Batch batch;
+    synchronized (this) {
+      if (retryDelivery) {
+        retryDelivery = false;
+        retryApply();
+        return null;
+      }
+      batch = pending.poll();
+      if (batch == null) {
+        delivering = false;
+        return null;
+      }
+      inflight.add(batch);
+      batch.attempt++;
     }
 
-    for (org.yb.cdc.CdcService.CDCRecordPB record : getChangesResponse.getResp().getRecordsList()) {
-      outputClient.applyChange(table, record);
+    final int attempt = batch.attempt;
+    Deferred<Void> d;
+    try {
+      d = outputClient.applyBatch(table, tabletId, batch.records, batch.checkpoint);
+    } catch (Exception e) {
+      d = Deferred.fromError(e);
     }
+    d.addCallbacks(new Callback<Void, Void>() {
+      @Override
+      public Void call(Void ignored) {
+        onApplied(batch, attempt);
+        return null;
+      }
+    }, new Callback<Void, Exception>() {
+      @Override
+      public Void call(Exception e) {
+        onFailed(batch, attempt, e);
+        return null;
+      }
+    });
 
-    this.term = getChangesResponse.getResp().getCheckpoint().getOpId().getTerm();
-    this.index = getChangesResponse.getResp().getCheckpoint().getOpId().getIndex();
+    applyNext();
+    return null;
+  }
 
-    return poll();
+  private void onApplied(Batch batch, int attempt) {
+    boolean resumePolling;
+    boolean retired;
+    synchronized (this) {
+      if (attempt != batch.attempt) {
+        // Passed again since, after the failure of an earlier batch.
+        return;
+      }
+      batch.acked = true;
+      // The checkpoint only moves past batches which were all acknowledged.
+      int numRecords = 0;
+      Checkpoint checkpoint = null;
+      while (!inflight.isEmpty() && inflight.peek().acked) {
+        Batch applied = inflight.poll();
+        numRecords += applied.records.size();
+        checkpoint = applied.checkpoint;
+      }
+      if (checkpoint == null) {
+        return;
+      }
+      appliedCheckpoint = checkpoint;
+      checkpointStore.setCheckpoint(tabletId, checkpoint);
+      numAppliedRecords.addAndGet(numRecords);
+      numQueuedRecords -= numRecords;
+      resumePolling = pollingPaused && numQueuedRecords < maxQueuedRecords;
+      if (resumePolling) {
+        pollingPaused = false;
+      }
+      retired = pollingDone && pending.isEmpty() && inflight.isEmpty();
+    }
+    if (resumePolling) {
+      poll();
+    }
+    if (retired) {
+      onRetired.run();
+    }
   }
 
+  private void onFailed(Batch batch, int attempt, Exception e) {
+    boolean startApplying;
+    synchronized (this) {
+      if (attempt != batch.attempt || batch.acked) {
+        // Passed again since, after the failure of an earlier batch.
+        return;
+      }
+      LOG.error(String.format("Failed to apply the changes of tablet %s, retrying", tabletId), e);
+      // The batches after the failed one are passed again too, even if they were acknowledged, so
+      // that the output client sees the changes in order again.
+      while (!inflight.isEmpty()) {
+        Batch retried = inflight.pollLast();
+        retried.acked = false;
+        pending.addFirst(retried);
+      }
+      startApplying = !delivering;
+      delivering = true;
+      retryDelivery = !startApplying;
+    }
+    if (startApplying) {
+      retryApply();
+    }
+  }
+
+  private void retryApply() {
+    executor.schedule(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        return doApply();
+      }
+    }, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+  }
 }
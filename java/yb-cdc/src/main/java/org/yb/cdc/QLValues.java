@@ -0,0 +1,164 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+import org.yb.Common.QLValuePB;
+
+/**
+ * Reads the values of changes by the kind of value their protobuf type holds. Code which renders
+ * values, like {@link ChangeRow#toString()} and {@link JsonFileOutputClient}, switches on the kind
+ * rather than on the protobuf type, so that every type is rendered the same way everywhere and a
+ * new one only needs to be added here.
+ */
+final class QLValues {
+  enum Kind {
+    /** Integers, timestamps, dates and times, read with {@link #getLong}. */
+    INTEGER,
+    /** Unsigned 64-bit integers, read with {@link #getLong} as the bits of the value. */
+    UNSIGNED_INTEGER,
+    FLOAT,
+    DOUBLE,
+    STRING,
+    BOOL,
+    /**
+     * Blobs and the encoded decimals, varints, uuids, inets and jsonb, read with
+     * {@link #getBytes}.
+     */
+    BYTES,
+    /** Lists, sets and frozen values, read with {@link #getElems}. */
+    ELEMS,
+    MAP,
+    VIRTUAL,
+    NULL
+  }
+
+  private QLValues() {
+  }
+
+  static Kind kindOf(QLValuePB value) {
+    switch (value.getValueCase()) {
+      case INT8_VALUE:
+      case INT16_VALUE:
+      case INT32_VALUE:
+      case INT64_VALUE:
+      case UINT32_VALUE:
+      case TIMESTAMP_VALUE:
+      case DATE_VALUE:
+      case TIME_VALUE:
+        return Kind.INTEGER;
+      case UINT64_VALUE:
+        return Kind.UNSIGNED_INTEGER;
+      case FLOAT_VALUE:
+        return Kind.FLOAT;
+      case DOUBLE_VALUE:
+        return Kind.DOUBLE;
+      case STRING_VALUE:
+        return Kind.STRING;
+      case BOOL_VALUE:
+        return Kind.BOOL;
+      case BINARY_VALUE:
+      case INETADDRESS_VALUE:
+      case DECIMAL_VALUE:
+      case VARINT_VALUE:
+      case UUID_VALUE:
+      case TIMEUUID_VALUE:
+      case JSONB_VALUE:
+        return Kind.BYTES;
+      case SET_VALUE:
+      case LIST_VALUE:
+      case FROZEN_VALUE:
+        return Kind.ELEMS;
+      case MAP_VALUE:
+        return Kind.MAP;
+      case VIRTUAL_VALUE:
+        return Kind.VIRTUAL;
+      case VALUE_NOT_SET:
+        return Kind.NULL;
+      default:
+        throw new IllegalArgumentException("Unknown value type " + value.getValueCase());
+    }
+  }
+
+  /**
+   * @return an integer value. Unsigned 32-bit values, uint32 and dates, are returned as positive
+   * longs.
+   */
+  static long getLong(QLValuePB value) {
+    switch (value.getValueCase()) {
+      case INT8_VALUE:
+        return value.getInt8Value();
+      case INT16_VALUE:
+        return value.getInt16Value();
+      case INT32_VALUE:
+        return value.getInt32Value();
+      case INT64_VALUE:
+        return value.getInt64Value();
+      case UINT32_VALUE:
+        return value.getUint32Value() & 0xFFFFFFFFL;
+      case UINT64_VALUE:
+        return value.getUint64Value();
+      case TIMESTAMP_VALUE:
+        return value.getTimestampValue();
+      case DATE_VALUE:
+        return value.getDateValue() & 0xFFFFFFFFL;
+      case TIME_VALUE:
+        return value.getTimeValue();
+      default:
+        throw new IllegalArgumentException(value.getValueCase() + " isn't an integer");
+    }
+  }
+
+  /**
+   * @return the bytes of a binary value, without copying them
+   */
+  static ByteString getBytes(QLValuePB value) {
+    switch (value.getValueCase()) {
+      case BINARY_VALUE:
+        return value.getBinaryValue();
+      case INETADDRESS_VALUE:
+        return value.getInetaddressValue();
+      case DECIMAL_VALUE:
+        return value.getDecimalValue();
+      case VARINT_VALUE:
+        return value.getVarintValue();
+      case UUID_VALUE:
+        return value.getUuidValue();
+      case TIMEUUID_VALUE:
+        return value.getTimeuuidValue();
+      case JSONB_VALUE:
+        return value.getJsonbValue();
+      default:
+        throw new IllegalArgumentException(value.getValueCase() + " isn't binary");
+    }
+  }
+
+  /**
+   * @return the elements of a list, a set or a frozen value
+   */
+  static List<QLValuePB> getElems(QLValuePB value) {
+    switch (value.getValueCase()) {
+      case SET_VALUE:
+        return value.getSetValue().getElemsList();
+      case LIST_VALUE:
+        return value.getListValue().getElemsList();
+      case FROZEN_VALUE:
+        return value.getFrozenValue().getElemsList();
+      default:
+        throw new IllegalArgumentException(value.getValueCase() + " isn't a collection");
+    }
+  }
+}
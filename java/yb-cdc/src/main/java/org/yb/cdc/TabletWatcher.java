@@ -0,0 +1,269 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.log4j.Logger;
+import org.yb.client.LocatedTablet;
+import org.yb.client.Partition;
+import org.yb.client.YBTable;
+
+/**
+ * Keeps one poller per tablet of a table as its tablets change.
+ * <p>
+ * Each {@link #refresh()} diffs the table's tablet locations with the tablets polled. New tablets
+ * get a poller. Tablets which went away are retired, see {@link Poller#retire}. A new tablet whose
+ * key range lies within one of a polled tablet, i.e. a child of a split, waits until its parent
+ * went away and its changes are all applied, then starts from the parent's final checkpoint,
+ * unless it already has a checkpoint of its own. The master may list the children of a split
+ * along with their parent for a while, they keep waiting meanwhile. The changes of a key thus
+ * reach the output in order across splits.
+ */
+class TabletWatcher implements Runnable {
+  private static final Logger LOG = Logger.getLogger(TabletWatcher.class);
+
+  private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  // Orders tablets by start key, and those with the same start by decreasing end key, so that a
+  // tablet comes before the ones within its key range.
+  private static final Comparator<LocatedTablet> OUTER_FIRST = new Comparator<LocatedTablet>() {
+    @Override
+    public int compare(LocatedTablet a, LocatedTablet b) {
+      Partition pa = a.getPartition();
+      Partition pb = b.getPartition();
+      int cmp = KEY_COMPARATOR.compare(pa.getPartitionKeyStart(), pb.getPartitionKeyStart());
+      if (cmp != 0) {
+        return cmp;
+      }
+      return compareEnds(pb.getPartitionKeyEnd(), pa.getPartitionKeyEnd());
+    }
+  };
+
+  /**
+   * Creates the poller of a tablet, without starting it.
+   */
+  interface PollerFactory {
+    Poller newPoller(LocatedTablet tablet);
+  }
+
+  // The final checkpoint of a retired tablet, and its partition.
+  private static final class Handover {
+    final Partition parent;
+    final Checkpoint checkpoint;
+
+    Handover(Partition parent, Checkpoint checkpoint) {
+      this.parent = parent;
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  private final YBTable table;
+  private final CheckpointStore checkpointStore;
+  private final PollerFactory pollerFactory;
+
+  // Pollers of the tablets being polled, retiring ones included.
+  private final Map<String, Poller> pollers = new ConcurrentHashMap<>();
+
+  // The partitions of the tablets in pollers, and the ids of those which are retiring.
+  private final Map<String, Partition> partitions = new HashMap<>();
+  private final Set<String> retiring = new HashSet<>();
+
+  // New tablets waiting for the tablets they were split from to go away and retire.
+  private final Map<String, LocatedTablet> waiting = new HashMap<>();
+
+  // The checkpoints handed over to the waiting tablets by the tablets retired so far.
+  private final Map<String, Handover> handovers = new HashMap<>();
+
+  // Totals of the retired pollers, so that the connector's totals don't go down when they retire.
+  private final AtomicLong numRetiredAppliedRecords = new AtomicLong();
+  private final AtomicLong numRetiredPolls = new AtomicLong();
+  private final AtomicLong numRetiredEmptyPolls = new AtomicLong();
+
+  TabletWatcher(YBTable table, CheckpointStore checkpointStore, PollerFactory pollerFactory) {
+    this.table = table;
+    this.checkpointStore = checkpointStore;
+    this.pollerFactory = pollerFactory;
+  }
+
+  /**
+   * @return the pollers of the tablets being polled
+   */
+  Collection<Poller> getPollers() {
+    return pollers.values();
+  }
+
+  long getNumRetiredAppliedRecords() {
+    return numRetiredAppliedRecords.get();
+  }
+
+  long getNumRetiredPolls() {
+    return numRetiredPolls.get();
+  }
+
+  long getNumRetiredEmptyPolls() {
+    return numRetiredEmptyPolls.get();
+  }
+
+  @Override
+  public void run() {
+    try {
+      refresh();
+    } catch (Exception e) {
+      LOG.warn(String.format("Failed to refresh the tablets of table %s", table.getName()), e);
+    }
+  }
+
+  /**
+   * Starts polling new tablets and retires the tablets which went away.
+   */
+  synchronized void refresh() throws Exception {
+    Map<String, LocatedTablet> tablets = new HashMap<>();
+    for (LocatedTablet tablet : table.getTabletsLocations(LogConnector.DEFAULT_TIMEOUT)) {
+      tablets.put(new String(tablet.getTabletId()), tablet);
+    }
+
+    for (String tabletId : partitions.keySet()) {
+      if (!tablets.containsKey(tabletId) && retiring.add(tabletId)) {
+        LOG.info(String.format("Tablet %s went away, retiring it", tabletId));
+        pollers.get(tabletId).retire(new Runnable() {
+          @Override
+          public void run() {
+            retired(tabletId);
+          }
+        });
+      }
+    }
+    // A tablet which was waiting and went away before it started is dropped.
+    waiting.keySet().retainAll(tablets.keySet());
+    handovers.keySet().retainAll(waiting.keySet());
+
+    List<LocatedTablet> added = new ArrayList<>();
+    for (Map.Entry<String, LocatedTablet> entry : tablets.entrySet()) {
+      String tabletId = entry.getKey();
+      if (!partitions.containsKey(tabletId) && !waiting.containsKey(tabletId)) {
+        added.add(entry.getValue());
+      }
+    }
+    // A parent listed along with its children starts first, and the children wait for it.
+    added.sort(OUTER_FIRST);
+    for (LocatedTablet tablet : added) {
+      String tabletId = new String(tablet.getTabletId());
+      String parentId = findParent(tablet.getPartition());
+      if (parentId == null) {
+        start(tabletId, tablet);
+      } else {
+        LOG.info(String.format("New tablet %s waits for tablet %s to retire", tabletId,
+                               parentId));
+        waiting.put(tabletId, tablet);
+      }
+    }
+  }
+
+  private synchronized void retired(String parentId) {
+    Poller poller = pollers.get(parentId);
+    Checkpoint checkpoint = poller.getAppliedCheckpoint();
+    LOG.info(String.format("Retired tablet %s at checkpoint %s", parentId, checkpoint));
+    Partition parent = partitions.remove(parentId);
+    retiring.remove(parentId);
+    numRetiredAppliedRecords.addAndGet(poller.getNumAppliedRecords());
+    numRetiredPolls.addAndGet(poller.getNumPolls());
+    numRetiredEmptyPolls.addAndGet(poller.getNumEmptyPolls());
+    pollers.remove(parentId);
+
+    List<String> started = new ArrayList<>();
+    for (Iterator<Map.Entry<String, LocatedTablet>> it = waiting.entrySet().iterator();
+         it.hasNext();) {
+      Map.Entry<String, LocatedTablet> entry = it.next();
+      String tabletId = entry.getKey();
+      Partition partition = entry.getValue().getPartition();
+      if (!contains(parent, partition)) {
+        continue;
+      }
+      // The child may be within several polled tablets, if a tablet was polled before the master
+      // listed one containing it. It is the child of the innermost one, whose checkpoint it starts
+      // from.
+      Handover handover = handovers.get(tabletId);
+      if (handover == null || contains(handover.parent, parent)) {
+        handovers.put(tabletId, new Handover(parent, checkpoint));
+      }
+      if (findParent(partition) != null) {
+        // Keeps waiting for the others.
+        continue;
+      }
+      it.remove();
+      handover = handovers.remove(tabletId);
+      if (checkpointStore.getCheckpoint(tabletId).equals(Checkpoint.START)) {
+        checkpointStore.setCheckpoint(tabletId, handover.checkpoint);
+      }
+      started.add(tabletId);
+      start(tabletId, entry.getValue());
+    }
+    // The children have the parent's checkpoint now.
+    checkpointStore.removeCheckpoint(parentId);
+    if (!started.isEmpty()) {
+      LOG.info(String.format("Tablets %s within retired tablet %s started", started, parentId));
+    }
+  }
+
+  private void start(String tabletId, LocatedTablet tablet) {
+    LOG.info(String.format("Polling for new tablet %s from checkpoint %s", tabletId,
+                           checkpointStore.getCheckpoint(tabletId)));
+    Poller poller = pollerFactory.newPoller(tablet);
+    partitions.put(tabletId, tablet.getPartition());
+    pollers.put(tabletId, poller);
+    poller.poll();
+  }
+
+  // Returns a polled tablet, retiring or not, whose key range contains the partition, or null if
+  // there is none.
+  private String findParent(Partition partition) {
+    for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+      if (contains(entry.getValue(), partition)) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  // Compares end keys, an empty one being the end of the key space.
+  private static int compareEnds(byte[] a, byte[] b) {
+    if (a.length == 0 || b.length == 0) {
+      return Boolean.compare(a.length == 0, b.length == 0);
+    }
+    return KEY_COMPARATOR.compare(a, b);
+  }
+
+  private static boolean contains(Partition parent, Partition child) {
+    byte[] parentEnd = parent.getPartitionKeyEnd();
+    byte[] childEnd = child.getPartitionKeyEnd();
+    // An empty end key is the end of the key space.
+    return KEY_COMPARATOR.compare(parent.getPartitionKeyStart(),
+                                  child.getPartitionKeyStart()) <= 0 &&
+        (parentEnd.length == 0 ||
+         (childEnd.length != 0 && KEY_COMPARATOR.compare(childEnd, parentEnd) <= 0));
+  }
+}
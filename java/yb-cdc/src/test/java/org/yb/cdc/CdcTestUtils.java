@@ -0,0 +1,36 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import java.util.concurrent.TimeoutException;
+
+import org.yb.client.YBClient;
+
+class CdcTestUtils {
+  private static final long SLEEP_TIME_MS = 10;
+
+  /**
+   * Waits for a condition, like {@link org.yb.client.TestUtils#waitFor}, without looking for the
+   * build of the servers: these tests run against a {@link org.yb.client.MockYBServer}.
+   */
+  static void waitFor(YBClient.Condition condition, long timeoutMs) throws Exception {
+    long deadlineMs = System.currentTimeMillis() + timeoutMs;
+    while (!condition.get()) {
+      if (System.currentTimeMillis() > deadlineMs) {
+        throw new TimeoutException(String.format("Condition not met after %dms", timeoutMs));
+      }
+      Thread.sleep(SLEEP_TIME_MS);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+
+package org.yb.cdc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import org.yb.ColumnSchema;
+import org.yb.Common.QLValuePB;
+import org.yb.Schema;
+import org.yb.Type;
+
+/**
+ * Compares ways of reading the columns of CDC records: formatting them with the protobuf
+ * toString() like LogClient used to, reading the values through protobuf reflection like a generic
+ * sink would, and through a reused {@link ChangeRow}. Prints the time and the bytes allocated per
+ * record.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.yb.cdc.ChangeRowBenchmark}.
+ */
+public class ChangeRowBenchmark {
+  private static final int NUM_RECORDS = 1024;
+  private static final int ITERATIONS = 2000000;
+  private static final int RUNS = 5;
+
+  // Keeps the JIT from optimizing the decoding away.
+  private static long sink;
+
+  private interface Decoder {
+    void decode(CdcService.CDCRecordPB record);
+  }
+
+  public static void main(String[] args) {
+    Schema schema = new Schema(Arrays.asList(
+        new ColumnSchema.ColumnSchemaBuilder("k", Type.INT32).hashKey(true).build(),
+        new ColumnSchema.ColumnSchemaBuilder("ts", Type.TIMESTAMP).rangeKey(
+            true, ColumnSchema.SortOrder.ASC).build(),
+        new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).build(),
+        new ColumnSchema.ColumnSchemaBuilder("score", Type.DOUBLE).build(),
+        new ColumnSchema.ColumnSchemaBuilder("data", Type.BINARY).build()));
+    CdcService.CDCRecordPB[] records = records(new Random(42));
+
+    final ChangeRow row = new ChangeRow(schema);
+    run("toString", records, new Decoder() {
+      @Override
+      public void decode(CdcService.CDCRecordPB record) {
+        sink += record.toString().length();
+      }
+    });
+    run("reflection", records, new Decoder() {
+      @Override
+      public void decode(CdcService.CDCRecordPB record) {
+        readReflectively(record.getKeyList());
+        readReflectively(record.getChangesList());
+      }
+    });
+    run("ChangeRow", records, new Decoder() {
+      @Override
+      public void decode(CdcService.CDCRecordPB record) {
+        row.wrap(record);
+        sink += row.getInt(0) + row.getLong(1) + row.getString(2).length() +
+            (long) row.getDouble(3) + row.getBinary(4).remaining();
+      }
+    });
+  }
+
+  private static void readReflectively(List<CdcService.KeyValuePairPB> columns) {
+    for (CdcService.KeyValuePairPB column : columns) {
+      sink += column.getKey().toStringUtf8().length();
+      for (Map.Entry<Descriptors.FieldDescriptor, Object> field :
+           column.getValue().getAllFields().entrySet()) {
+        sink += field.getKey().getNumber() + field.getValue().hashCode();
+      }
+    }
+  }
+
+  private static CdcService.CDCRecordPB[] records(Random random) {
+    CdcService.CDCRecordPB[] records = new CdcService.CDCRecordPB[NUM_RECORDS];
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      byte[] data = new byte[64];
+      random.nextBytes(data);
+      records[i] = CdcService.CDCRecordPB.newBuilder()
+          .setTime(random.nextLong())
+          .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+          .addKey(column("k", QLValuePB.newBuilder().setInt32Value(random.nextInt())))
+          .addKey(column("ts", QLValuePB.newBuilder().setTimestampValue(random.nextLong())))
+          .addChanges(column("name", QLValuePB.newBuilder().setStringValue("name-" + i)))
+          .addChanges(column("score", QLValuePB.newBuilder().setDoubleValue(random.nextDouble())))
+          .addChanges(column("data", QLValuePB.newBuilder().setBinaryValue(
+              ByteString.copyFrom(data))))
+          .build();
+    }
+    return records;
+  }
+
+  private static CdcService.KeyValuePairPB column(String name, QLValuePB.Builder value) {
+    return CdcService.KeyValuePairPB.newBuilder()
+        .setKey(ByteString.copyFromUtf8(name))
+        .setValue(value)
+        .build();
+  }
+
+  private static void run(String name, CdcService.CDCRecordPB[] records, Decoder decoder) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long nanos = 0;
+    long bytes = 0;
+    for (int run = 0; run < RUNS; run++) {
+      long startBytes = threads.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        decoder.decode(records[i & (NUM_RECORDS - 1)]);
+      }
+      long end = System.nanoTime();
+      long endBytes = threads.getThreadAllocatedBytes(threadId);
+      // The first run warms up the JIT.
+      if (run > 0) {
+        nanos += end - start;
+        bytes += endBytes - startBytes;
+      }
+    }
+    double decoded = (double) ITERATIONS * (RUNS - 1);
+    System.out.printf("%-10s %8.1f ns/record %8.1f bytes/record%n", name, nanos / decoded,
+        bytes / decoded);
+  }
+}
@@ -0,0 +1,194 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.ColumnSchema;
+import org.yb.Common.QLSeqValuePB;
+import org.yb.Common.QLValuePB;
+import org.yb.Schema;
+import org.yb.Type;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestChangeRow {
+  private static final Schema SCHEMA = new Schema(Arrays.asList(
+      new ColumnSchema.ColumnSchemaBuilder("k", Type.INT32).hashKey(true).build(),
+      new ColumnSchema.ColumnSchemaBuilder("ts", Type.TIMESTAMP).rangeKey(
+          true, ColumnSchema.SortOrder.ASC).build(),
+      new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).build(),
+      new ColumnSchema.ColumnSchemaBuilder("score", Type.DOUBLE).build(),
+      new ColumnSchema.ColumnSchemaBuilder("data", Type.BINARY).build(),
+      new ColumnSchema.ColumnSchemaBuilder("id", Type.UUID).build(),
+      new ColumnSchema.ColumnSchemaBuilder("flag", Type.BOOL).build(),
+      new ColumnSchema.ColumnSchemaBuilder("day", Type.DATE).build(),
+      new ColumnSchema.ColumnSchemaBuilder("tags", Type.LIST).build()));
+
+  private static final UUID ID = UUID.fromString("01234567-89ab-cdef-0123-456789abcdef");
+
+  private static CdcService.KeyValuePairPB column(String name, QLValuePB.Builder value) {
+    return CdcService.KeyValuePairPB.newBuilder()
+        .setKey(ByteString.copyFromUtf8(name))
+        .setValue(value)
+        .build();
+  }
+
+  private static CdcService.CDCRecordPB.Builder key(int k, long ts) {
+    return CdcService.CDCRecordPB.newBuilder()
+        .setTime(42)
+        .addKey(column("k", QLValuePB.newBuilder().setInt32Value(k)))
+        .addKey(column("ts", QLValuePB.newBuilder().setTimestampValue(ts)));
+  }
+
+  private static CdcService.CDCRecordPB fullRecord() {
+    ByteBuffer uuid = ByteBuffer.allocate(16)
+        .putLong(ID.getMostSignificantBits())
+        .putLong(ID.getLeastSignificantBits());
+    uuid.flip();
+    return key(1, 1000)
+        .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+        .addChanges(column("name", QLValuePB.newBuilder().setStringValue("a")))
+        .addChanges(column("score", QLValuePB.newBuilder().setDoubleValue(1.5)))
+        .addChanges(column("data", QLValuePB.newBuilder()
+            .setBinaryValue(ByteString.copyFromUtf8("xyz"))))
+        .addChanges(column("id", QLValuePB.newBuilder().setUuidValue(ByteString.copyFrom(uuid))))
+        .addChanges(column("flag", QLValuePB.newBuilder().setBoolValue(true)))
+        .addChanges(column("day", QLValuePB.newBuilder().setDateValue(-1)))
+        .addChanges(column("tags", QLValuePB.newBuilder().setListValue(QLSeqValuePB.newBuilder()
+            .addElems(QLValuePB.newBuilder().setStringValue("x"))
+            .addElems(QLValuePB.newBuilder().setStringValue("y")))))
+        .build();
+  }
+
+  @Test
+  public void testGetters() {
+    ChangeRow row = new ChangeRow(SCHEMA).wrap(fullRecord());
+    assertEquals(CdcService.CDCRecordPB.OperationType.WRITE, row.getOperation());
+    assertEquals(42L, row.getTime());
+    assertEquals(1, row.getInt("k"));
+    assertEquals(1, row.getInt(0));
+    assertEquals(1000L, row.getLong("ts"));
+    assertEquals("a", row.getString("name"));
+    assertEquals(1.5, row.getDouble("score"), 0);
+    ByteBuffer data = row.getBinary("data");
+    assertTrue(data.isReadOnly());
+    assertEquals(ByteBuffer.wrap("xyz".getBytes(StandardCharsets.UTF_8)), data);
+    assertEquals(ID, row.getUUID("id"));
+    assertTrue(row.getBoolean("flag"));
+    // Dates are unsigned.
+    assertEquals(4294967295L, row.getDate("day"));
+    assertEquals(2, row.getValue("tags").getListValue().getElemsCount());
+    for (int i = 0; i < SCHEMA.getColumnCount(); i++) {
+      assertTrue(row.isSet(i));
+      assertFalse(row.isNull(i));
+    }
+  }
+
+  @Test
+  public void testUnsetAndNull() {
+    ChangeRow row = new ChangeRow(SCHEMA).wrap(key(1, 1000)
+        .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+        .addChanges(column("name", QLValuePB.newBuilder()))
+        .build());
+    // A column set to null.
+    assertTrue(row.isSet("name"));
+    assertTrue(row.isNull("name"));
+    // A column the record doesn't set.
+    assertFalse(row.isSet("score"));
+    assertTrue(row.isNull("score"));
+    assertNull(row.getValue("score"));
+    try {
+      row.getString("name");
+      fail("Got a null string");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    try {
+      row.getDouble("score");
+      fail("Got an unset double");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testTypeMismatch() {
+    ChangeRow row = new ChangeRow(SCHEMA).wrap(fullRecord());
+    try {
+      row.getInt("name");
+      fail("Got a string as an int");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("name"));
+    }
+    try {
+      row.getLong("k");
+      fail("Got an int as a long");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+    try {
+      row.getString("nonexistent");
+      fail("Got a column which isn't in the schema");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testReuse() {
+    ChangeRow row = new ChangeRow(SCHEMA);
+    row.wrap(fullRecord());
+    // A delete only has the key, nothing is left from the previous record.
+    CdcService.CDCRecordPB delete = key(2, 2000)
+        .setOperation(CdcService.CDCRecordPB.OperationType.DELETE)
+        .build();
+    assertSame(row, row.wrap(delete));
+    assertSame(delete, row.getRecord());
+    assertEquals(CdcService.CDCRecordPB.OperationType.DELETE, row.getOperation());
+    assertEquals(2, row.getInt("k"));
+    assertEquals(2000L, row.getLong("ts"));
+    for (int i = 2; i < SCHEMA.getColumnCount(); i++) {
+      assertFalse(row.isSet(i));
+    }
+  }
+
+  @Test
+  public void testUnknownColumn() {
+    // Columns added to the table after its schema was fetched are left out.
+    ChangeRow row = new ChangeRow(SCHEMA).wrap(key(1, 1000)
+        .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+        .addChanges(column("added", QLValuePB.newBuilder().setInt32Value(7)))
+        .addChanges(column("name", QLValuePB.newBuilder().setStringValue("a")))
+        .build());
+    assertEquals("a", row.getString("name"));
+    assertEquals("WRITE {k=1, ts=1000, name=\"a\"}", row.toString());
+  }
+
+  @Test
+  public void testToString() {
+    ChangeRow row = new ChangeRow(SCHEMA).wrap(fullRecord());
+    assertEquals("WRITE {k=1, ts=1000, name=\"a\", score=1.5, data=0x78797a, " +
+                 "id=0x0123456789abcdef0123456789abcdef, flag=true, day=4294967295, " +
+                 "tags=[\"x\", \"y\"]}", row.toString());
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestCheckpointStore {
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("checkpoints").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void testCheckpointParse() {
+    Checkpoint checkpoint = new Checkpoint(3, 42);
+    assertEquals(checkpoint, Checkpoint.parse(checkpoint.toString()));
+    assertEquals(Checkpoint.START, Checkpoint.parse("0.0"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCheckpointParseInvalid() {
+    Checkpoint.parse("42");
+  }
+
+  @Test
+  public void testFileRoundTrip() throws Exception {
+    FileCheckpointStore store = new FileCheckpointStore(dir, "table");
+    assertNull(store.getStreamId());
+    store.setStreamId("stream");
+    store.setCheckpoint("tablet-1", new Checkpoint(1, 10));
+    store.setCheckpoint("tablet-2", new Checkpoint(2, 20));
+    store.setCheckpoint("tablet-3", new Checkpoint(1, 30));
+    store.removeCheckpoint("tablet-3");
+    store.flush();
+
+    FileCheckpointStore reopened = new FileCheckpointStore(dir, "table");
+    assertEquals("stream", reopened.getStreamId());
+    assertEquals(new Checkpoint(1, 10), reopened.getCheckpoint("tablet-1"));
+    assertEquals(new Checkpoint(2, 20), reopened.getCheckpoint("tablet-2"));
+    assertEquals(Checkpoint.START, reopened.getCheckpoint("tablet-3"));
+    // Only the checkpoints file is left, no temporary one.
+    assertEquals(1, dir.list().length);
+  }
+
+  @Test
+  public void testFileOnlyFlushedChangesSurvive() throws Exception {
+    FileCheckpointStore store = new FileCheckpointStore(dir, "table");
+    store.setStreamId("stream");
+    store.setCheckpoint("tablet", new Checkpoint(1, 10));
+    store.flush();
+    store.setCheckpoint("tablet", new Checkpoint(1, 20));
+
+    // Another table's checkpoints are kept apart.
+    assertEquals(Checkpoint.START, new FileCheckpointStore(dir, "other").getCheckpoint("tablet"));
+    assertEquals(new Checkpoint(1, 10),
+                 new FileCheckpointStore(dir, "table").getCheckpoint("tablet"));
+    store.flush();
+    assertEquals(new Checkpoint(1, 20),
+                 new FileCheckpointStore(dir, "table").getCheckpoint("tablet"));
+  }
+
+  @Test
+  public void testFileStreamIdReset() throws Exception {
+    FileCheckpointStore store = new FileCheckpointStore(dir, "table");
+    store.setStreamId("stream");
+    store.setCheckpoint("tablet", new Checkpoint(1, 10));
+    store.flush();
+
+    FileCheckpointStore reopened = new FileCheckpointStore(dir, "table");
+    // Setting the same stream keeps the checkpoints.
+    reopened.setStreamId("stream");
+    assertEquals(new Checkpoint(1, 10), reopened.getCheckpoint("tablet"));
+    // A new stream starts over.
+    reopened.setStreamId("new-stream");
+    assertEquals(Checkpoint.START, reopened.getCheckpoint("tablet"));
+    reopened.flush();
+
+    FileCheckpointStore reset = new FileCheckpointStore(dir, "table");
+    assertEquals("new-stream", reset.getStreamId());
+    assertEquals(Checkpoint.START, reset.getCheckpoint("tablet"));
+  }
+
+  @Test
+  public void testMemory() {
+    MemoryCheckpointStore store = new MemoryCheckpointStore();
+    store.setStreamId("stream");
+    store.setCheckpoint("tablet", new Checkpoint(1, 10));
+    assertEquals(new Checkpoint(1, 10), store.getCheckpoint("tablet"));
+    store.removeCheckpoint("tablet");
+    assertEquals(Checkpoint.START, store.getCheckpoint("tablet"));
+
+    store.setCheckpoint("tablet", new Checkpoint(1, 10));
+    store.setStreamId("new-stream");
+    assertEquals("new-stream", store.getStreamId());
+    assertEquals(Checkpoint.START, store.getCheckpoint("tablet"));
+  }
+}
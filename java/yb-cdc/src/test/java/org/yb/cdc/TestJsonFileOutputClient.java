@@ -0,0 +1,230 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.ByteString;
+import com.stumbleupon.async.Deferred;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.Common.QLMapValuePB;
+import org.yb.Common.QLSeqValuePB;
+import org.yb.Common.QLValuePB;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestJsonFileOutputClient {
+  private static final long TIMEOUT_MS = 10000;
+
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("cdc-output").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private static CdcService.CDCRecordPB record(long time, long key, QLValuePB value) {
+    return CdcService.CDCRecordPB.newBuilder()
+        .setTime(time)
+        .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+        .addKey(CdcService.KeyValuePairPB.newBuilder()
+            .setKey(ByteString.copyFromUtf8("k"))
+            .setValue(QLValuePB.newBuilder().setInt64Value(key)))
+        .addChanges(CdcService.KeyValuePairPB.newBuilder()
+            .setKey(ByteString.copyFromUtf8("v"))
+            .setValue(value))
+        .build();
+  }
+
+  private static QLValuePB stringValue(String s) {
+    return QLValuePB.newBuilder().setStringValue(s).build();
+  }
+
+  // The files in the output directory, in order.
+  private List<File> listFiles() {
+    File[] files = dir.listFiles();
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  private static List<JsonObject> readLines(List<File> files) throws Exception {
+    List<JsonObject> lines = new ArrayList<>();
+    for (File file : files) {
+      for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+        lines.add(new JsonParser().parse(line).getAsJsonObject());
+      }
+    }
+    return lines;
+  }
+
+  @Test
+  public void testOutput() throws Exception {
+    QLValuePB list = QLValuePB.newBuilder()
+        .setListValue(QLSeqValuePB.newBuilder()
+            .addElems(QLValuePB.newBuilder().setInt32Value(1))
+            .addElems(QLValuePB.newBuilder().setInt32Value(2)))
+        .build();
+    QLValuePB map = QLValuePB.newBuilder()
+        .setMapValue(QLMapValuePB.newBuilder()
+            .addKeys(stringValue("a"))
+            .addValues(QLValuePB.newBuilder().setBoolValue(true)))
+        .build();
+    List<CdcService.CDCRecordPB> records = Arrays.asList(
+        record(1, 1, stringValue("a")),
+        record(2, 2, QLValuePB.newBuilder().setDoubleValue(1.5).build()),
+        record(3, 3, QLValuePB.newBuilder().setBinaryValue(ByteString.copyFromUtf8("xyz")).build()),
+        record(4, 4, list),
+        record(5, 5, map),
+        record(6, 6, QLValuePB.newBuilder().setUint64Value(-1).build()),
+        record(7, 7, QLValuePB.getDefaultInstance()),
+        // Times are unsigned.
+        record(-1, 8, QLValuePB.newBuilder().setDateValue(-1).build()));
+
+    JsonFileOutputClient output = new JsonFileOutputClient(dir, "table", 1 << 20, 1 << 20);
+    output.applyBatch(null, "tablet", records, new Checkpoint(1, 42)).join(TIMEOUT_MS);
+    // The file is in progress until the client is closed.
+    assertEquals(1, listFiles().size());
+    assertTrue(listFiles().get(0).getName().endsWith(".inprogress"));
+    output.close();
+
+    List<File> files = listFiles();
+    assertEquals(1, files.size());
+    assertTrue(files.get(0).getName().matches("table-\\d+-000000\\.json"));
+    List<JsonObject> lines = readLines(files);
+    assertEquals(records.size(), lines.size());
+
+    JsonObject first = lines.get(0);
+    assertEquals("tablet", first.get("tablet_id").getAsString());
+    assertEquals("1.42", first.get("checkpoint").getAsString());
+    assertEquals(1L, first.get("time").getAsLong());
+    assertEquals("WRITE", first.get("operation").getAsString());
+    assertEquals(1L, first.getAsJsonObject("key").get("k").getAsLong());
+    assertEquals("a", first.getAsJsonObject("changes").get("v").getAsString());
+
+    assertEquals(1.5, lines.get(1).getAsJsonObject("changes").get("v").getAsDouble(), 0);
+    assertEquals(Base64.getEncoder().encodeToString("xyz".getBytes(StandardCharsets.UTF_8)),
+                 lines.get(2).getAsJsonObject("changes").get("v").getAsString());
+    JsonArray listJson = lines.get(3).getAsJsonObject("changes").getAsJsonArray("v");
+    assertEquals(2, listJson.size());
+    assertEquals(2, listJson.get(1).getAsInt());
+    JsonArray mapJson = lines.get(4).getAsJsonObject("changes").getAsJsonArray("v");
+    assertEquals(1, mapJson.size());
+    assertEquals("a", mapJson.get(0).getAsJsonArray().get(0).getAsString());
+    assertTrue(mapJson.get(0).getAsJsonArray().get(1).getAsBoolean());
+    assertEquals("18446744073709551615",
+                 lines.get(5).getAsJsonObject("changes").get("v").getAsBigInteger().toString());
+    assertTrue(lines.get(6).getAsJsonObject("changes").get("v").isJsonNull());
+    assertEquals("18446744073709551615", lines.get(7).get("time").getAsBigInteger().toString());
+    assertEquals(4294967295L, lines.get(7).getAsJsonObject("changes").get("v").getAsLong());
+  }
+
+  @Test
+  public void testRolling() throws Exception {
+    int numBatches = 20;
+    int recordsPerBatch = 5;
+    // Each batch is written and synced on its own, a file takes a few of them.
+    JsonFileOutputClient output = new JsonFileOutputClient(dir, "table", 600, 1);
+    List<Deferred<Void>> deferreds = new ArrayList<>();
+    long time = 0;
+    for (int i = 0; i < numBatches; i++) {
+      List<CdcService.CDCRecordPB> records = new ArrayList<>();
+      for (int j = 0; j < recordsPerBatch; j++) {
+        time++;
+        records.add(record(time, time, stringValue("value-" + time)));
+      }
+      deferreds.add(output.applyBatch(null, "tablet", records, new Checkpoint(1, time)));
+    }
+    for (Deferred<Void> d : deferreds) {
+      d.join(TIMEOUT_MS);
+    }
+    output.close();
+
+    List<File> files = listFiles();
+    assertTrue(files.size() > 1);
+    for (int i = 0; i < files.size(); i++) {
+      File file = files.get(i);
+      assertTrue(file.getName().endsWith(String.format("-%06d.json", i)));
+      if (i < files.size() - 1) {
+        assertTrue(file.length() >= 600);
+      }
+    }
+    // The changes are all there once, in order.
+    List<JsonObject> lines = readLines(files);
+    assertEquals(numBatches * recordsPerBatch, lines.size());
+    for (int i = 0; i < lines.size(); i++) {
+      assertEquals(i + 1, lines.get(i).get("time").getAsLong());
+    }
+  }
+
+  @Test
+  public void testEncodeFailure() throws Exception {
+    // A map with a key but no value.
+    QLValuePB badMap = QLValuePB.newBuilder()
+        .setMapValue(QLMapValuePB.newBuilder().addKeys(stringValue("a")))
+        .build();
+    JsonFileOutputClient output = new JsonFileOutputClient(dir, "table", 1 << 20, 1 << 20);
+    try {
+      output.applyBatch(null, "tablet",
+                        Arrays.asList(record(1, 1, stringValue("a")), record(2, 2, badMap)),
+                        new Checkpoint(1, 2)).join(TIMEOUT_MS);
+      fail("Applied a batch which can't be encoded");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+    // The writer keeps going, without what it had encoded of the failed batch.
+    output.applyBatch(null, "tablet", Collections.singletonList(record(3, 3, stringValue("c"))),
+                      new Checkpoint(1, 3)).join(TIMEOUT_MS);
+    output.close();
+
+    List<JsonObject> lines = readLines(listFiles());
+    assertEquals(1, lines.size());
+    assertEquals(3L, lines.get(0).get("time").getAsLong());
+  }
+
+  @Test
+  public void testApplyAfterClose() throws Exception {
+    JsonFileOutputClient output = new JsonFileOutputClient(dir, "table", 1 << 20, 1 << 20);
+    output.close();
+    try {
+      output.applyBatch(null, "tablet", Collections.singletonList(record(1, 1, stringValue("a"))),
+                        new Checkpoint(1, 1)).join(TIMEOUT_MS);
+      fail("Applied a batch after close");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    // Nothing was written.
+    assertEquals(0, listFiles().size());
+  }
+}
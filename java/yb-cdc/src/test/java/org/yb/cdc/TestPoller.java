@@ -0,0 +1,268 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.client.AsyncYBClient;
+import org.yb.client.MockYBServer;
+import org.yb.client.YBTable;
+
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Polls a tablet of a {@link MockYBServer}, whose log has a record at every index with the index
+ * as its time.
+ */
+@RunWith(value=YBTestRunner.class)
+public class TestPoller {
+  private static final long TIMEOUT_MS = 10000;
+  private static final String TABLET_ID = "tablet-00000";
+  private static final int RECORDS_PER_POLL = 5;
+
+  private MockYBServer server;
+  private AsyncYBClient client;
+  private YBTable table;
+  private ScheduledExecutorService executor;
+  private TestOutputClient outputClient;
+
+  /**
+   * Keeps the times of the records passed to it, and acknowledges them right away, unless told to
+   * fail or hold their batch.
+   */
+  static class TestOutputClient implements BatchingOutputClient {
+    // The times of the records passed, in order, those passed again included.
+    private final List<Long> passedTimes = new ArrayList<>();
+    // The times of the first records of the batches to fail the first time they are passed.
+    private final Set<Long> failOnce = new HashSet<>();
+    private int numFailed;
+    // Batches held back, not acknowledged until released.
+    private List<Deferred<Void>> held;
+
+    synchronized void failOnce(long firstTime) {
+      failOnce.add(firstTime);
+    }
+
+    synchronized void hold() {
+      held = new ArrayList<>();
+    }
+
+    void release() {
+      List<Deferred<Void>> released;
+      synchronized (this) {
+        released = held;
+        held = null;
+      }
+      for (Deferred<Void> d : released) {
+        d.callback(null);
+      }
+    }
+
+    synchronized List<Long> getPassedTimes() {
+      return new ArrayList<>(passedTimes);
+    }
+
+    synchronized int getNumPassed() {
+      return passedTimes.size();
+    }
+
+    synchronized int getNumFailed() {
+      return numFailed;
+    }
+
+    @Override
+    public Deferred<Void> applyBatch(YBTable table, String tabletId,
+                                     List<CdcService.CDCRecordPB> records, Checkpoint checkpoint) {
+      Deferred<Void> d = new Deferred<>();
+      synchronized (this) {
+        for (CdcService.CDCRecordPB record : records) {
+          passedTimes.add(record.getTime());
+        }
+        if (!records.isEmpty() && failOnce.remove(records.get(0).getTime())) {
+          numFailed++;
+          return Deferred.fromError(new Exception("Failed batch " + checkpoint));
+        }
+        if (held != null) {
+          held.add(d);
+          return d;
+        }
+      }
+      return Deferred.fromResult(null);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockYBServer();
+    server.serveMaster(1).serveChanges(RECORDS_PER_POLL);
+    client = new AsyncYBClient.AsyncYBClientBuilder(server.getHostAndPort().toString())
+        .defaultAdminOperationTimeoutMs(TIMEOUT_MS)
+        .defaultOperationTimeoutMs(TIMEOUT_MS)
+        .build();
+    table = MockYBServer.openTable(client, "table");
+    executor = Executors.newScheduledThreadPool(2);
+    outputClient = new TestOutputClient();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    client.close();
+    server.close();
+  }
+
+  private Poller newPoller(CheckpointStore store, int maxQueuedRecords) {
+    return new Poller(outputClient, Collections.singletonList(server.getHostAndPort()), table,
+                      "stream", TABLET_ID, server.getHostAndPort(), store, 100, maxQueuedRecords,
+                      executor, client);
+  }
+
+  // Asserts that the times are consecutive, starting at the given one.
+  private static void assertConsecutive(long first, List<Long> times) {
+    for (int i = 0; i < times.size(); i++) {
+      assertEquals(first + i, times.get(i).longValue());
+    }
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    MemoryCheckpointStore store = new MemoryCheckpointStore();
+    final Poller poller = newPoller(store, 20);
+    poller.poll();
+    CdcTestUtils.waitFor(() -> poller.getAppliedCheckpoint().getIndex() >= 100, TIMEOUT_MS);
+
+    // The checkpoint is the one of a batch applied, and it is saved.
+    Checkpoint checkpoint = poller.getAppliedCheckpoint();
+    List<Long> passed = outputClient.getPassedTimes();
+    assertConsecutive(1, passed);
+    assertEquals(1L, checkpoint.getTerm());
+    assertEquals(0L, checkpoint.getIndex() % RECORDS_PER_POLL);
+    assertTrue(checkpoint.getIndex() <= passed.size());
+    assertTrue(poller.getNumAppliedRecords() >= 100);
+    assertTrue(poller.getNumPolls() >= 20);
+    assertEquals(0L, poller.getNumEmptyPolls());
+  }
+
+  @Test
+  public void testRedeliveryAfterFailure() throws Exception {
+    MemoryCheckpointStore store = new MemoryCheckpointStore();
+    // Fails the second batch.
+    outputClient.failOnce(RECORDS_PER_POLL + 1);
+    final Poller poller = newPoller(store, 20);
+    poller.poll();
+    CdcTestUtils.waitFor(() -> outputClient.getNumFailed() == 1, TIMEOUT_MS);
+
+    // Nothing more is passed until the failed batch is retried, a second later, and the checkpoint
+    // stays at the first batch.
+    assertEquals(2 * RECORDS_PER_POLL, outputClient.getNumPassed());
+    assertEquals(new Checkpoint(1, RECORDS_PER_POLL), poller.getAppliedCheckpoint());
+    assertEquals(new Checkpoint(1, RECORDS_PER_POLL), store.getCheckpoint(TABLET_ID));
+
+    CdcTestUtils.waitFor(() -> poller.getAppliedCheckpoint().getIndex() >= 50, TIMEOUT_MS);
+    List<Long> passed = outputClient.getPassedTimes();
+    // The failed batch and the ones after it are passed again, in order.
+    assertConsecutive(1, passed.subList(0, 2 * RECORDS_PER_POLL));
+    assertConsecutive(RECORDS_PER_POLL + 1, passed.subList(2 * RECORDS_PER_POLL, passed.size()));
+    assertEquals(poller.getAppliedCheckpoint(), store.getCheckpoint(TABLET_ID));
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    outputClient.hold();
+    final Poller poller = newPoller(new MemoryCheckpointStore(), 4 * RECORDS_PER_POLL);
+    poller.poll();
+    CdcTestUtils.waitFor(() -> poller.getNumQueuedRecords() == 4 * RECORDS_PER_POLL, TIMEOUT_MS);
+
+    // Polling stops at the limit while the output client holds the batches.
+    Thread.sleep(200);
+    assertEquals(4L, server.getNumCalls("GetChanges"));
+    assertEquals(4 * RECORDS_PER_POLL, poller.getNumQueuedRecords());
+    assertEquals(4 * RECORDS_PER_POLL, outputClient.getNumPassed());
+    assertEquals(Checkpoint.START, poller.getAppliedCheckpoint());
+
+    // And resumes once they are applied.
+    outputClient.release();
+    CdcTestUtils.waitFor(() -> poller.getAppliedCheckpoint().getIndex() >= 50, TIMEOUT_MS);
+    assertTrue(server.getNumCalls("GetChanges") > 4);
+    assertTrue(poller.getNumQueuedRecords() <= 4 * RECORDS_PER_POLL);
+    assertConsecutive(1, outputClient.getPassedTimes());
+  }
+
+  @Test
+  public void testLeaderLookup() throws Exception {
+    // The first poll is told the tserver isn't the leader, then the tablet starts streaming.
+    server.respond("GetChanges", (header, request) -> {
+      server.serveChanges(RECORDS_PER_POLL);
+      return CdcService.GetChangesResponsePB.newBuilder()
+          .setError(CdcService.CDCErrorPB.newBuilder()
+              .setCode(CdcService.CDCErrorPB.Code.NOT_LEADER))
+          .build();
+    });
+    // Without a known leader, the poller looks it up first.
+    final Poller poller = new Poller(outputClient,
+        Collections.singletonList(server.getHostAndPort()), table, "stream", TABLET_ID, null,
+        new MemoryCheckpointStore(), 100, 20, executor, client);
+    poller.poll();
+    CdcTestUtils.waitFor(() -> poller.getAppliedCheckpoint().getIndex() >= 10, TIMEOUT_MS);
+
+    assertEquals(2L, server.getNumCalls("GetTableLocations"));
+    assertConsecutive(1, outputClient.getPassedTimes());
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File dir = Files.createTempDirectory("checkpoints").toFile();
+    try {
+      FileCheckpointStore store = new FileCheckpointStore(dir, "table");
+      store.setStreamId("stream");
+      final Poller poller = newPoller(store, 20);
+      poller.poll();
+      CdcTestUtils.waitFor(() -> poller.getAppliedCheckpoint().getIndex() >= 20, TIMEOUT_MS);
+      store.flush();
+      executor.shutdownNow();
+      long savedIndex = new FileCheckpointStore(dir, "table").getCheckpoint(TABLET_ID).getIndex();
+      assertTrue(savedIndex >= 20);
+
+      // A restarted connector polls from the saved checkpoint.
+      executor = Executors.newScheduledThreadPool(2);
+      outputClient = new TestOutputClient();
+      final Poller restarted = newPoller(new FileCheckpointStore(dir, "table"), 20);
+      restarted.poll();
+      CdcTestUtils.waitFor(() -> outputClient.getNumPassed() >= 10, TIMEOUT_MS);
+      assertConsecutive(savedIndex + 1, outputClient.getPassedTimes());
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+}
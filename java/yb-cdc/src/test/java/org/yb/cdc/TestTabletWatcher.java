@@ -0,0 +1,228 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.protobuf.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.Common;
+import org.yb.Opid;
+import org.yb.YBTestRunner;
+import org.yb.client.AsyncYBClient;
+import org.yb.client.LocatedTablet;
+import org.yb.client.MockYBServer;
+import org.yb.client.YBTable;
+import org.yb.master.Master;
+
+/**
+ * Splits the tablets of a {@link MockYBServer} under a watcher. Each tablet's log has a record at
+ * every index until it is ended, then it has no more changes, so that the tablet can retire.
+ */
+@RunWith(value=YBTestRunner.class)
+public class TestTabletWatcher {
+  private static final long TIMEOUT_MS = 10000;
+  private static final int RECORDS_PER_POLL = 5;
+
+  private static final ByteString MIN_KEY = ByteString.EMPTY;
+  private static final ByteString QUARTER_KEY = ByteString.copyFrom(new byte[] { 0x40 });
+  private static final ByteString HALF_KEY = ByteString.copyFrom(new byte[] { (byte) 0x80 });
+  private static final ByteString MAX_KEY = ByteString.EMPTY;
+
+  private MockYBServer server;
+  private AsyncYBClient client;
+  private YBTable table;
+  private ScheduledExecutorService executor;
+  private MemoryCheckpointStore store;
+  private TabletWatcher watcher;
+
+  // The tablets whose logs have ended.
+  private final Set<String> endedLogs = ConcurrentHashMap.newKeySet();
+  // The pollers created, and the checkpoints they started from, by tablet.
+  private final Map<String, Poller> pollers = new ConcurrentHashMap<>();
+  private final Map<String, Checkpoint> startCheckpoints = new ConcurrentHashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockYBServer();
+    server.respond("GetChanges", (header, request) -> {
+      CdcService.GetChangesRequestPB pb = CdcService.GetChangesRequestPB.parseFrom(request);
+      long index = pb.getFromCheckpoint().getOpId().getIndex();
+      CdcService.GetChangesResponsePB.Builder response =
+          CdcService.GetChangesResponsePB.newBuilder();
+      if (!endedLogs.contains(pb.getTabletId().toStringUtf8())) {
+        for (int i = 0; i < RECORDS_PER_POLL; i++) {
+          index++;
+          response.addRecords(CdcService.CDCRecordPB.newBuilder()
+              .setTime(index)
+              .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+              .addKey(CdcService.KeyValuePairPB.newBuilder()
+                  .setKey(ByteString.copyFromUtf8("k"))
+                  .setValue(Common.QLValuePB.newBuilder().setInt64Value(index))));
+        }
+      }
+      return response
+          .setCheckpoint(CdcService.CDCCheckpointPB.newBuilder()
+              .setOpId(Opid.OpIdPB.newBuilder().setTerm(1).setIndex(index)))
+          .build();
+    });
+    client = new AsyncYBClient.AsyncYBClientBuilder(server.getHostAndPort().toString())
+        .defaultAdminOperationTimeoutMs(TIMEOUT_MS)
+        .defaultOperationTimeoutMs(TIMEOUT_MS)
+        .build();
+    table = MockYBServer.openTable(client, "table");
+    executor = Executors.newScheduledThreadPool(2);
+    store = new MemoryCheckpointStore();
+    final TestPoller.TestOutputClient outputClient = new TestPoller.TestOutputClient();
+    watcher = new TabletWatcher(table, store, (LocatedTablet tablet) -> {
+      String tabletId = new String(tablet.getTabletId());
+      startCheckpoints.put(tabletId, store.getCheckpoint(tabletId));
+      Poller poller = new Poller(outputClient,
+          Collections.singletonList(server.getHostAndPort()), table, "stream", tabletId,
+          Poller.leaderOf(tablet), store, 100, 20, executor, client);
+      pollers.put(tabletId, poller);
+      return poller;
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    client.close();
+    server.close();
+  }
+
+  // Makes the master list the given tablets, each an id followed by its partition's start and end.
+  private void serveTablets(Object... tablets) {
+    List<Master.TabletLocationsPB> locations = new ArrayList<>();
+    for (int i = 0; i < tablets.length; i += 3) {
+      locations.add(server.tabletLocations((String) tablets[i], (ByteString) tablets[i + 1],
+                                           (ByteString) tablets[i + 2]));
+    }
+    server.serveMaster(locations);
+  }
+
+  private Set<String> polledTablets() {
+    Set<String> tabletIds = new HashSet<>();
+    for (Poller poller : watcher.getPollers()) {
+      tabletIds.add(poller.getTabletId());
+    }
+    return tabletIds;
+  }
+
+  private void waitForPolled(String... tabletIds) throws Exception {
+    final Set<String> expected = new HashSet<>(Arrays.asList(tabletIds));
+    CdcTestUtils.waitFor(() -> polledTablets().equals(expected), TIMEOUT_MS);
+  }
+
+  private void waitForApplied(String tabletId) throws Exception {
+    CdcTestUtils.waitFor(() -> pollers.get(tabletId).getNumAppliedRecords() > 0, TIMEOUT_MS);
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    serveTablets("parent", MIN_KEY, MAX_KEY);
+    watcher.refresh();
+    waitForApplied("parent");
+
+    serveTablets("left", MIN_KEY, HALF_KEY, "right", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    // The children wait for their parent to retire.
+    Thread.sleep(200);
+    assertEquals(Collections.singleton("parent"), polledTablets());
+
+    endedLogs.add("parent");
+    waitForPolled("left", "right");
+    Checkpoint parentCheckpoint = pollers.get("parent").getAppliedCheckpoint();
+    assertTrue(parentCheckpoint.getIndex() > 0);
+    assertEquals(parentCheckpoint, startCheckpoints.get("left"));
+    assertEquals(parentCheckpoint, startCheckpoints.get("right"));
+    assertEquals(Checkpoint.START, store.getCheckpoint("parent"));
+    assertEquals(pollers.get("parent").getNumAppliedRecords(),
+                 watcher.getNumRetiredAppliedRecords());
+  }
+
+  @Test
+  public void testChildrenListedWithParent() throws Exception {
+    // The master lists the children of a split along with their parent for a while, from the
+    // first refresh on.
+    serveTablets("parent", MIN_KEY, MAX_KEY,
+                 "left", MIN_KEY, HALF_KEY,
+                 "right", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    waitForApplied("parent");
+    watcher.refresh();
+    // The children wait for their parent even though it isn't retiring yet.
+    Thread.sleep(200);
+    assertEquals(Collections.singleton("parent"), polledTablets());
+
+    serveTablets("left", MIN_KEY, HALF_KEY, "right", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    endedLogs.add("parent");
+    waitForPolled("left", "right");
+    Checkpoint parentCheckpoint = pollers.get("parent").getAppliedCheckpoint();
+    assertTrue(parentCheckpoint.getIndex() > 0);
+    assertEquals(parentCheckpoint, startCheckpoints.get("left"));
+    assertEquals(parentCheckpoint, startCheckpoints.get("right"));
+  }
+
+  /**
+   * One of the children of a split splits again before its parent retired. Its own children wait
+   * for the retiring tablet too, and start from its checkpoint.
+   */
+  @Test
+  public void testConsecutiveSplits() throws Exception {
+    serveTablets("grandparent", MIN_KEY, MAX_KEY);
+    watcher.refresh();
+    waitForApplied("grandparent");
+
+    serveTablets("grandparent", MIN_KEY, MAX_KEY,
+                 "parent", MIN_KEY, HALF_KEY,
+                 "uncle", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    serveTablets("parent", MIN_KEY, HALF_KEY, "uncle", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    serveTablets("left", MIN_KEY, QUARTER_KEY,
+                 "right", QUARTER_KEY, HALF_KEY,
+                 "uncle", HALF_KEY, MAX_KEY);
+    watcher.refresh();
+    Thread.sleep(200);
+    assertEquals(Collections.singleton("grandparent"), polledTablets());
+
+    endedLogs.add("grandparent");
+    waitForPolled("left", "right", "uncle");
+    Checkpoint checkpoint = pollers.get("grandparent").getAppliedCheckpoint();
+    assertTrue(checkpoint.getIndex() > 0);
+    assertEquals(checkpoint, startCheckpoints.get("left"));
+    assertEquals(checkpoint, startCheckpoints.get("right"));
+    assertEquals(checkpoint, startCheckpoints.get("uncle"));
+    // The tablet that went away while waiting never polled.
+    assertFalse(pollers.containsKey("parent"));
+    assertEquals(Checkpoint.START, store.getCheckpoint("grandparent"));
+  }
+}
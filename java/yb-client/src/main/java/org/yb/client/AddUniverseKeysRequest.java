@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import java.util.Map;
 import java.util.Iterator;
 import org.yb.util.Pair;
@@ -32,7 +32,7 @@ public class AddUniverseKeysRequest extends YRpc<AddUniverseKeysResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.AddUniverseKeysRequestPB.Builder builder =
             Master.AddUniverseKeysRequestPB.newBuilder();
@@ -43,7 +43,7 @@ public class AddUniverseKeysRequest extends YRpc<AddUniverseKeysResponse> {
       keysBuilder.putMap(entry.getKey(), ByteString.copyFrom(entry.getValue()));
     }
     builder.setUniverseKeys(keysBuilder.build());
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -47,7 +47,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
 import com.google.common.net.HostAndPort;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.Message;
 import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
@@ -55,51 +54,51 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.security.KeyFactory;
-import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Security;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
-import javax.net.ssl.TrustManagerFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.io.pem.PemObject;
 import org.bouncycastle.util.io.pem.PemReader;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.ChannelEvent;
-import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.DefaultChannelPipeline;
-import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
-import org.jboss.netty.channel.socket.SocketChannel;
-import org.jboss.netty.channel.socket.SocketChannelConfig;
-import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
-import org.jboss.netty.handler.ssl.SslHandler;
-import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
-import org.jboss.netty.util.HashedWheelTimer;
-import org.jboss.netty.util.Timeout;
-import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yb.Common;
@@ -115,6 +114,7 @@ import org.yb.util.NetUtil;
 import org.yb.util.Pair;
 import org.yb.util.Slice;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * A fully asynchronous and thread-safe client for YB.
@@ -160,8 +160,10 @@ public class AsyncYBClient implements AutoCloseable {
   public static final long NO_TIMESTAMP = -1;
   public static final long DEFAULT_OPERATION_TIMEOUT_MS = 10000;
   public static final long DEFAULT_SOCKET_READ_TIMEOUT_MS = 5000;
+  public static final int DEFAULT_TABLE_LOCATIONS_PREFETCH = 100;
 
-  private final ClientSocketChannelFactory channelFactory;
+  private final EventLoopGroup eventLoopGroup;
+  private final Class<? extends Channel> channelClass;
 
   // TODO(Bharat) - get tablet id from master leader.
   private static final String MASTER_TABLET_ID = "00000000000000000000000000000000";
@@ -177,10 +179,28 @@ public class AsyncYBClient implements AutoCloseable {
    * of every requests that need to locate a tablet. The third map
    * is only used to handle TabletServer disconnections gracefully.
    *
-   * This map is keyed by table ID.
+   * This map is keyed by table ID. Its values are immutable, tablets are added and removed by
+   * replacing the table's index with {@link ConcurrentHashMap#compute}.
    */
-  private final ConcurrentHashMap<String, ConcurrentSkipListMap<byte[],
-      RemoteTablet>> tabletsCache = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, TabletIndex> tabletsCache = new ConcurrentHashMap<>();
+
+  /**
+   * Master lookups in flight, keyed by table ID and then by the partition key they started from.
+   * The master answers with a range of tablets starting from the one holding that key, so a miss
+   * on a later key of the same table that range is expected to include waits for the lookup in
+   * flight instead of asking again. A table's map is removed once it has no lookups left.
+   */
+  private final ConcurrentHashMap<String, ConcurrentSkipListMap<byte[], LocationLookup>>
+      locationLookups = new ConcurrentHashMap<>();
+
+  /**
+   * What we know about the freshness of the cached locations of each table, keyed by table ID.
+   * Used to expire and reload the entries of tabletsCache.
+   */
+  private final ConcurrentHashMap<String, TableCacheState> tableCacheStates =
+      new ConcurrentHashMap<>();
+
+  private final TabletCacheMetrics tabletCacheMetrics = new TabletCacheMetrics();
 
   /**
    * Maps a tablet ID to the RemoteTablet that knows where all the replicas are served.
@@ -198,17 +218,12 @@ public class AsyncYBClient implements AutoCloseable {
    * Cache that maps a TabletServer address ("ip:port") to the clients
    * connected to it.
    * <p>
-   * Access to this map must be synchronized by locking its monitor.
-   * Lock ordering: when locking both this map and a TabletClient, the
-   * TabletClient must always be locked first to avoid deadlocks.  Logging
-   * the contents of this map (or calling toString) requires copying it first.
-   * <p>
-   * This isn't a {@link ConcurrentHashMap} because we don't use it frequently
-   * (just when connecting to / disconnecting from TabletClients) and when we
-   * add something to it, we want to do an atomic get-and-put, but
-   * {@code putIfAbsent} isn't a good fit for us since it requires to create
-   * an object that may be "wasted" in case another thread wins the insertion
-   * race, and we don't want to create unnecessary connections.
+   * Entries are created with {@link ConcurrentHashMap#compute}, so only one
+   * connection is ever created per address: the {@link TabletClient} put in
+   * the map is returned to every concurrent caller right away and queues
+   * their RPCs until its channel is connected, it acts as the shared future of
+   * the in-progress connect. Each client remembers the key it was registered
+   * under, which gives us the reverse lookup needed on disconnection.
    * <p>
    * Upon disconnection, clients are automatically removed from this map.
    * We don't use a {@code ChannelGroup} because a {@code ChannelGroup} does
@@ -220,8 +235,8 @@ public class AsyncYBClient implements AutoCloseable {
    * that are going to cause unnecessary errors.
    * @see TabletClientPipeline#handleDisconnect
    */
-  private final HashMap<String, TabletClient> ip2client =
-      new HashMap<String, TabletClient>();
+  private final ConcurrentHashMap<String, TabletClient> ip2client =
+      new ConcurrentHashMap<String, TabletClient>();
 
   // Since the masters also go through TabletClient, we need to treat them as if they were a normal
   // table. We'll use the following fake table name to identify places where we need special
@@ -230,7 +245,14 @@ public class AsyncYBClient implements AutoCloseable {
   final YBTable masterTable;
   private final List<HostAndPort> masterAddresses;
 
-  private final HashedWheelTimer timer = new HashedWheelTimer(20, MILLISECONDS);
+  private final HashedWheelTimer timer;
+
+  // The event loops and timer when they are shared with other clients, null when they are this
+  // client's own.
+  private final ClientResources sharedResources;
+
+  // Built on the first TLS connection, null until then or when TLS isn't used.
+  private SslContext sslContext;
 
   /**
    * Timestamp required for HybridTime external consistency through timestamp
@@ -253,8 +275,6 @@ public class AsyncYBClient implements AutoCloseable {
    */
   private final Semaphore masterLookups = new Semaphore(50);
 
-  private final Random sleepRandomizer = new Random();
-
   private final long defaultOperationTimeoutMs;
 
   private final long defaultAdminOperationTimeoutMs;
@@ -269,10 +289,47 @@ public class AsyncYBClient implements AutoCloseable {
   private final String clientHost;
   private final int clientPort;
 
+  private final RetryPolicy retryPolicy;
+
+  // How many tablet locations to ask the master for on each lookup.
+  private final int tableLocationsPrefetch;
+
+  // How long cached tablet locations are trusted before being reloaded, 0 to keep them until an
+  // RPC fails.
+  private final long tabletsCacheTtlNanos;
+
+  // How often tables in use are checked for partition list changes, 0 to never check.
+  private final long tabletsCacheRefreshIntervalMs;
+
+  // Write coalescing settings of the connections to the servers, 0 bytes when disabled.
+  private final int writeCoalesceMaxBytes;
+  private final long writeCoalesceDelayMs;
+
+  private final RetryMetrics retryMetrics = new RetryMetrics();
+
+  // Tokens left in the retry budget, in thousandths of a token. Only used when the retry policy
+  // has a budget.
+  private final AtomicLong retryTokensMilli;
+
   private volatile boolean closed;
 
+  // The conditions being waited for, given up on by shutdown(): their timeouts would be dropped.
+  private final Set<ConditionWaiter> conditionWaiters = ConcurrentHashMap.newKeySet();
+
   private AsyncYBClient(AsyncYBClientBuilder b) {
-    this.channelFactory = b.createChannelFactory();
+    if (b.sharedResources != null) {
+      b.sharedResources.retain();
+      this.sharedResources = b.sharedResources;
+      this.eventLoopGroup = sharedResources.getEventLoopGroup();
+      this.channelClass = sharedResources.getChannelClass();
+      this.timer = sharedResources.getTimer();
+    } else {
+      this.sharedResources = null;
+      this.eventLoopGroup =
+          NettyTransport.newEventLoopGroup(b.workerCount, b.workerExecutor, "yb-nio");
+      this.channelClass = NettyTransport.channelClass(eventLoopGroup);
+      this.timer = new HashedWheelTimer(20, MILLISECONDS);
+    }
     this.masterAddresses = b.masterAddresses;
     this.masterTable = new YBTable(this, MASTER_TABLE_NAME_PLACEHOLDER,
         MASTER_TABLE_NAME_PLACEHOLDER, null, null);
@@ -284,6 +341,16 @@ public class AsyncYBClient implements AutoCloseable {
     this.clientHost = b.clientHost;
     this.clientPort = b.clientPort;
     this.defaultSocketReadTimeoutMs = b.defaultSocketReadTimeoutMs;
+    this.retryPolicy = b.retryPolicy;
+    this.tableLocationsPrefetch = b.tableLocationsPrefetch;
+    this.retryTokensMilli = new AtomicLong(retryPolicy.getRetryBudget() * 1000L);
+    this.tabletsCacheTtlNanos = MILLISECONDS.toNanos(b.tabletsCacheTtlMs);
+    this.tabletsCacheRefreshIntervalMs = b.tabletsCacheRefreshIntervalMs;
+    this.writeCoalesceMaxBytes = b.writeCoalesceMaxBytes;
+    this.writeCoalesceDelayMs = b.writeCoalesceDelayMs;
+    if (tabletsCacheRefreshIntervalMs > 0) {
+      newTimeout(new TabletsCacheRefreshTask(), tabletsCacheRefreshIntervalMs);
+    }
   }
 
   /**
@@ -399,6 +466,27 @@ public class AsyncYBClient implements AutoCloseable {
     return d.addCallback(cb);
   }
 
+  /**
+   * Get the op id of the latest entry in the log of a tablet, that is how far its changes go.
+   * @param hp host port of the server.
+   * @param table the table of the tablet.
+   * @param tabletId the tablet to get the latest op id of.
+   * @return a deferred object for the response from server.
+   */
+  public Deferred<GetLatestEntryOpIdResponse> getLatestEntryOpId(
+          HostAndPort hp, YBTable table, String tabletId) {
+    checkIsClosed();
+    TabletClient client = newSimpleClient(hp);
+    if (client == null) {
+      throw new IllegalStateException("Could not create a client to " + hp.toString());
+    }
+    GetLatestEntryOpIdRequest rpc = new GetLatestEntryOpIdRequest(table, tabletId);
+    rpc.setTimeoutMillis(defaultAdminOperationTimeoutMs);
+    Deferred<GetLatestEntryOpIdResponse> d = rpc.getDeferred();
+    client.sendRpc(rpc);
+    return d;
+  }
+
   /**
    * Check if the server is ready to serve requests.
    * @param hp host port of the server.
@@ -662,6 +750,315 @@ public class AsyncYBClient implements AutoCloseable {
     return sendRpcToTablet(rpc);
   }
 
+  /**
+   * A condition that is checked with RPCs, see {@link #waitForCondition}.
+   */
+  public interface AsyncCondition {
+    /**
+     * Checks the condition once.
+     * @return a deferred object that yields whether the condition holds, an error counts as the
+     * condition not holding yet
+     */
+    Deferred<Boolean> check() throws Exception;
+  }
+
+  // Delays between two checks of a condition being waited for. They start at the tick of the
+  // timer and double up to the maximum.
+  static final long CONDITION_INITIAL_DELAY_MS = 20;
+  static final long CONDITION_MAX_DELAY_MS = 2000;
+
+  /**
+   * Checks a condition until it holds or the timeout expires. Unlike the waits of
+   * {@link YBClient}, no thread is blocked in the meantime: the checks are scheduled on the timer
+   * of this client, with delays between them that double from 20ms up to 2s.
+   * @param condition the condition to wait for
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the condition held within the timeout, false
+   * otherwise, or once the client is closed
+   */
+  public Deferred<Boolean> waitForCondition(AsyncCondition condition, long timeoutMs) {
+    checkIsClosed();
+    ConditionWaiter waiter = new ConditionWaiter(condition, timeoutMs);
+    conditionWaiters.add(waiter);
+    if (closed) {
+      // Closed since the check above, shutdown() may have missed this waiter.
+      waiter.finish(false);
+    } else {
+      waiter.start(timeoutMs);
+    }
+    return waiter.result;
+  }
+
+  /**
+   * Wait for the specific server to respond to pings.
+   * @param hp the HostAndPort of the server
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the server responded in the given time
+   */
+  public Deferred<Boolean> waitForServer(final HostAndPort hp, long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return ping(hp).addCallback(new Callback<Boolean, PingResponse>() {
+          @Override
+          public Boolean call(PingResponse response) {
+            return true;
+          }
+        });
+      }
+
+      @Override
+      public String toString() {
+        return "server " + hp;
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for one of the masters to report that it is the leader.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if there was a master leader in the given time
+   */
+  public Deferred<Boolean> waitForMasterLeader(long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        List<Deferred<Boolean>> isLeader = new ArrayList<>();
+        for (HostAndPort hostAndPort : masterAddresses) {
+          TabletClient clientForHostAndPort = newMasterClient(hostAndPort);
+          if (clientForHostAndPort == null) {
+            continue;
+          }
+          isLeader.add(getMasterRegistration(clientForHostAndPort).addCallbacks(
+              new Callback<Boolean, GetMasterRegistrationResponse>() {
+                @Override
+                public Boolean call(GetMasterRegistrationResponse response) {
+                  return response.getRole() == Metadata.RaftPeerPB.Role.LEADER;
+                }
+              },
+              new Callback<Boolean, Exception>() {
+                @Override
+                public Boolean call(Exception e) {
+                  return false;
+                }
+              }));
+        }
+        return Deferred.group(isLeader).addCallback(
+            new Callback<Boolean, ArrayList<Boolean>>() {
+              @Override
+              public Boolean call(ArrayList<Boolean> isLeader) {
+                return isLeader.contains(true);
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "master leader";
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for the tablet load to be balanced across the given number of servers.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @param numServers expected number of servers which need to balanced
+   * @return a deferred object that yields true if the load was balanced in the given time
+   */
+  public Deferred<Boolean> waitForLoadBalance(long timeoutMs, final int numServers) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return getIsLoadBalanced(numServers).addCallback(
+            new Callback<Boolean, IsLoadBalancedResponse>() {
+              @Override
+              public Boolean call(IsLoadBalancedResponse response) {
+                return !response.hasError();
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "load balance across " + numServers + " servers";
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for the load balancer to be idle.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the load balancer was idle in the given time
+   */
+  public Deferred<Boolean> waitForLoadBalancerIdle(long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return getIsLoadBalancerIdle().addCallback(
+            new Callback<Boolean, IsLoadBalancerIdleResponse>() {
+              @Override
+              public Boolean call(IsLoadBalancerIdleResponse response) {
+                return !response.hasError();
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "idle load balancer";
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for the load balancer to be active.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the load balancer was active in the given time
+   */
+  public Deferred<Boolean> waitForLoadBalancerActive(long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return getIsLoadBalancerIdle().addCallbacks(
+            new Callback<Object, IsLoadBalancerIdleResponse>() {
+              @Override
+              public Object call(IsLoadBalancerIdleResponse response) {
+                return false;
+              }
+            },
+            new Callback<Object, Exception>() {
+              @Override
+              public Object call(Exception e) {
+                // The master reports an active load balancer as an error.
+                if (e instanceof MasterErrorException &&
+                    e.toString().contains("LOAD_BALANCER_RECENTLY_ACTIVE")) {
+                  return true;
+                }
+                return e;
+              }
+            }).addCallback(new Callback<Boolean, Object>() {
+              @Override
+              public Boolean call(Object isActive) {
+                return (Boolean) isActive;
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "active load balancer";
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for the tablet leaders to be on the preferred zones only.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the leaders were on the preferred zones in the
+   * given time
+   */
+  public Deferred<Boolean> waitForAreLeadersOnPreferredOnly(long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return getAreLeadersOnPreferredOnly().addCallback(
+            new Callback<Boolean, AreLeadersOnPreferredOnlyResponse>() {
+              @Override
+              public Boolean call(AreLeadersOnPreferredOnlyResponse response) {
+                return !response.hasError();
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "leaders on preferred zones";
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for an alter command on a table to finish.
+   * @param keyspace CQL keyspace to which this table belongs
+   * @param name the table's name, if the table was renamed then that name must be checked against
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @return a deferred object that yields true if the alter finished in the given time
+   */
+  public Deferred<Boolean> waitForAlterTableDone(final String keyspace, final String name,
+                                                 long timeoutMs) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() throws Exception {
+        return isAlterTableDone(keyspace, name).addCallback(
+            new Callback<Boolean, IsAlterTableDoneResponse>() {
+              @Override
+              public Boolean call(IsAlterTableDoneResponse response) {
+                return response.isDone();
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "alter of table " + keyspace + "." + name;
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for no table name to match the given filter anymore.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @param name a string that the removed tables' names contain
+   * @return a deferred object that yields true if the tables were removed in the given time
+   */
+  public Deferred<Boolean> waitForTableRemoval(long timeoutMs, final String name) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return getTablesList(name).addCallback(new Callback<Boolean, ListTablesResponse>() {
+          @Override
+          public Boolean call(ListTablesResponse response) {
+            return response.getTablesList().isEmpty();
+          }
+        });
+      }
+
+      @Override
+      public String toString() {
+        return "removal of tables matching " + name;
+      }
+    }, timeoutMs);
+  }
+
+  /**
+   * Wait for a master to have the given universe key in memory.
+   * @param timeoutMs the amount of time, in MS, to wait
+   * @param universeKeyId the id of the universe key
+   * @param hp the HostAndPort of the master
+   * @return a deferred object that yields true if the master had the key in the given time
+   */
+  public Deferred<Boolean> waitForMasterHasUniverseKeyInMemory(long timeoutMs,
+                                                               final String universeKeyId,
+                                                               final HostAndPort hp) {
+    return waitForCondition(new AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() throws Exception {
+        return hasUniverseKeyInMemory(universeKeyId, hp).addCallback(
+            new Callback<Boolean, HasUniverseKeyInMemoryResponse>() {
+              @Override
+              public Boolean call(HasUniverseKeyInMemoryResponse response) {
+                return response.getServerError() == null && response.hasKey();
+              }
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "universe key " + universeKeyId + " on master " + hp;
+      }
+    }, timeoutMs);
+  }
+
   /**
    * Get the master tablet id.
    * @return the constant master tablet uuid.
@@ -966,7 +1363,7 @@ public class AsyncYBClient implements AutoCloseable {
     }
 
     @Override
-    ChannelBuffer serialize(Message header) {
+    ByteBuf serialize(Message header) {
       return null;
     }
 
@@ -1077,6 +1474,46 @@ public class AsyncYBClient implements AutoCloseable {
     return defaultSocketReadTimeoutMs;
   }
 
+  /**
+   * Get how many bytes of RPCs are gathered before being written out together.
+   * @return a number of bytes, 0 if write coalescing is disabled
+   */
+  public int getWriteCoalesceMaxBytes() {
+    return writeCoalesceMaxBytes;
+  }
+
+  /**
+   * Get how long RPCs may wait for others before being written out together.
+   * @return a delay in milliseconds
+   */
+  public long getWriteCoalesceDelayMs() {
+    return writeCoalesceDelayMs;
+  }
+
+  /**
+   * Get the policy used to wait between the attempts of an RPC.
+   * @return the retry policy
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Get the counters of the retries done by this client.
+   * @return the retry metrics, updated as RPCs are retried
+   */
+  public RetryMetrics getRetryMetrics() {
+    return retryMetrics;
+  }
+
+  /**
+   * Get the counters of the tablet locations cache of this client.
+   * @return the cache metrics, updated as RPCs are sent
+   */
+  public TabletCacheMetrics getTabletCacheMetrics() {
+    return tabletCacheMetrics;
+  }
+
   <R> Deferred<R> sendRpcToTablet(final YRpc<R> request) {
     if (cannotRetryRequest(request)) {
       return tooManyAttemptsOrTimeout(request, null);
@@ -1099,6 +1536,8 @@ public class AsyncYBClient implements AutoCloseable {
     if (tablet != null) {
       TabletClient tabletClient = clientFor(tablet);
       if (tabletClient != null) {
+        tabletCacheMetrics.recordHit();
+        checkTabletFreshness(tablet);
         request.setTablet(tablet);
         final Deferred<R> d = request.getDeferred();
         tabletClient.sendRpc(request);
@@ -1106,6 +1545,8 @@ public class AsyncYBClient implements AutoCloseable {
       }
     }
 
+    tabletCacheMetrics.recordMiss();
+
     // Right after creating a table a request will fall into locateTablet since we don't know yet
     // if the table is ready or not. If discoverTablets() didn't get any tablets back,
     // then on retry we'll fall into the following block. It will sleep, then call the master to
@@ -1301,8 +1742,8 @@ public class AsyncYBClient implements AutoCloseable {
           new Exception("Exception created to collect stack trace"));
       attemptCount = 1;
     }
-    // TODO backoffs? Sleep in increments of 500 ms, plus some random time up to 50
-    long sleepTime = (attemptCount * SLEEP_TIME) + sleepRandomizer.nextInt(50);
+    long sleepTime = retryPolicy.nextSleepMs(rpc.lastSleepMs);
+    rpc.lastSleepMs = sleepTime;
     if (LOG.isDebugEnabled()) {
       LOG.debug("Going to sleep for " + sleepTime + " at retry " + rpc.attempt);
     }
@@ -1318,9 +1759,7 @@ public class AsyncYBClient implements AutoCloseable {
    */
   @VisibleForTesting
   List<TabletClient> getTableClients() {
-    synchronized (ip2client) {
-      return new ArrayList<TabletClient>(ip2client.values());
-    }
+    return new ArrayList<TabletClient>(ip2client.values());
   }
 
   /**
@@ -1331,6 +1770,9 @@ public class AsyncYBClient implements AutoCloseable {
   @VisibleForTesting
   void emptyTabletsCacheForTable(String tableId) {
     tabletsCache.remove(tableId);
+    tableCacheStates.remove(tableId);
+    // The lookups in flight still complete, but the next misses don't wait for them.
+    locationLookups.remove(tableId);
     Set<Map.Entry<Slice, RemoteTablet>> tablets = tablet2client.entrySet();
     for (Map.Entry<Slice, RemoteTablet> entry : tablets) {
       if (entry.getValue().getTableId().equals(tableId)) {
@@ -1344,21 +1786,10 @@ public class AsyncYBClient implements AutoCloseable {
       return null;
     }
 
-    synchronized (tablet.tabletServers) {
-      if (tablet.tabletServers.isEmpty()) {
-        return null;
-      }
-      if (tablet.leaderIndex == RemoteTablet.NO_LEADER_INDEX) {
-        // TODO we don't know where the leader is, either because one wasn't provided or because
-        // we couldn't resolve its IP. We'll just send the client back so it retries and probably
-        // dies after too many attempts.
-        return null;
-      } else {
-        // TODO we currently always hit the leader, we probably don't need to except for writes
-        // and some reads.
-        return tablet.tabletServers.get(tablet.leaderIndex);
-      }
-    }
+    // TODO we don't know where the leader is, either because one wasn't provided or because
+    // we couldn't resolve its IP. We'll just send the client back so it retries and probably
+    // dies after too many attempts.
+    return tablet.getReplicas().getLeader();
   }
 
   /**
@@ -1394,12 +1825,51 @@ public class AsyncYBClient implements AutoCloseable {
   }
 
   /**
-   * Sends a getTableLocations RPC to the master to find the table's tablets.
+   * Sends a getTableLocations RPC to the master to find the table's tablets, unless a lookup
+   * expected to cover the partition key is already in flight, in which case we wait for it. Either
+   * way, the tablets are in the cache once the returned Deferred is called back, except if the
+   * key turned out to be past the range fetched by the lookup we waited for.
    * @param table table to lookup
    * @param partitionKey can be null, if not we'll find the exact tablet that contains it
    * @return Deferred to track the progress
    */
   Deferred<Master.GetTableLocationsResponsePB> locateTablet(YBTable table, byte[] partitionKey) {
+    String tableId = table.getTableId();
+    ConcurrentSkipListMap<byte[], LocationLookup> lookups = locationLookups.get(tableId);
+    if (lookups == null) {
+      lookups = new ConcurrentSkipListMap<>(Bytes.MEMCMP);
+      ConcurrentSkipListMap<byte[], LocationLookup> oldLookups =
+          locationLookups.putIfAbsent(tableId, lookups);
+      if (oldLookups != null) {
+        lookups = oldLookups;
+      }
+    }
+    byte[] lookupKey = partitionKey == null ? EMPTY_ARRAY : partitionKey;
+    while (true) {
+      Map.Entry<byte[], LocationLookup> inflight = lookups.floorEntry(lookupKey);
+      if (inflight != null && inflight.getValue().admit(lookupKey)) {
+        Deferred<Master.GetTableLocationsResponsePB> d = inflight.getValue().join();
+        if (d != null) {
+          return d;
+        }
+        // It just completed, it will be removed soon if it's not already.
+        lookups.remove(inflight.getKey(), inflight.getValue());
+        continue;
+      }
+      LocationLookup lookup = new LocationLookup(lookupKey, expectedLookupEnd(tableId, lookupKey),
+                                                 tableLocationsPrefetch);
+      if (lookups.putIfAbsent(lookupKey, lookup) != null) {
+        continue;
+      }
+      Deferred<Master.GetTableLocationsResponsePB> d = lookup.join();
+      sendLocationLookup(table, partitionKey, lookups, lookupKey, lookup);
+      return d;
+    }
+  }
+
+  private void sendLocationLookup(YBTable table, byte[] partitionKey,
+                                  final ConcurrentSkipListMap<byte[], LocationLookup> lookups,
+                                  final byte[] lookupKey, final LocationLookup lookup) {
     final boolean has_permit = acquireMasterLookupPermit();
     String tableId = table.getTableId();
     if (!has_permit) {
@@ -1408,11 +1878,15 @@ public class AsyncYBClient implements AutoCloseable {
       // this will save us a Master lookup.
       RemoteTablet tablet = getTablet(tableId, partitionKey);
       if (tablet != null && clientFor(tablet) != null) {
-        return Deferred.fromResult(null);  // Looks like no lookup needed.
+        removeLocationLookup(tableId, lookups, lookupKey, lookup);
+        lookup.complete(null);  // Looks like no lookup needed.
+        return;
       }
     }
-    GetTableLocationsRequest rpc =
-        new GetTableLocationsRequest(masterTable, partitionKey, partitionKey, tableId);
+    // Fetch the tablet holding the key along with the ones following it, the next lookups for
+    // this table will likely hit them.
+    GetTableLocationsRequest rpc = new GetTableLocationsRequest(masterTable, partitionKey, null,
+        tableId, tableLocationsPrefetch);
     rpc.setTimeoutMillis(defaultAdminOperationTimeoutMs);
     final Deferred<Master.GetTableLocationsResponsePB> d;
 
@@ -1427,45 +1901,536 @@ public class AsyncYBClient implements AutoCloseable {
     if (has_permit) {
       d.addBoth(new ReleaseMasterLookupPermit<Master.GetTableLocationsResponsePB>());
     }
-    return d;
+    // From here on the result is either null or an exception, see MasterLookupCB.
+    @SuppressWarnings("unchecked")
+    Deferred<Object> result = (Deferred<Object>) (Deferred<?>) d;
+    result.addBoth(new Callback<Object, Object>() {
+      @Override
+      public Object call(Object arg) {
+        removeLocationLookup(tableId, lookups, lookupKey, lookup);
+        lookup.complete(arg);
+        return arg;
+      }
+
+      @Override
+      public String toString() {
+        return "complete location lookup";
+      }
+    });
+  }
+
+  private void removeLocationLookup(String tableId,
+                                    ConcurrentSkipListMap<byte[], LocationLookup> lookups,
+                                    byte[] lookupKey, LocationLookup lookup) {
+    lookups.remove(lookupKey, lookup);
+    if (lookups.isEmpty()) {
+      // A lookup added to the map meanwhile only misses the later misses joining it.
+      locationLookups.remove(tableId, lookups);
+    }
   }
 
   /**
-   * Update the master config: send RPCs to all config members, use the returned data to
-   * fill a {@link Master.GetTabletLocationsResponsePB} object.
-   * @return An initialized Deferred object to hold the response.
+   * Estimates the end of the key range a lookup from the given key fetches, from the cached
+   * tablets of the table: the end of the last of the tablets it prefetches, or as far as the
+   * cached tablets are contiguous.
+   * @return the end key, empty for the end of the table, or null if the tablet holding the key
+   * isn't cached
    */
-  Deferred<Master.GetTableLocationsResponsePB> getMasterTableLocationsPB() {
-    final Deferred<Master.GetTableLocationsResponsePB> responseD =
-        new Deferred<Master.GetTableLocationsResponsePB>();
-    final GetMasterRegistrationReceived received =
-        new GetMasterRegistrationReceived(masterAddresses, responseD);
-    for (HostAndPort hostAndPort : masterAddresses) {
-      Deferred<GetMasterRegistrationResponse> d;
-      // Note: we need to create a client for that host first, as there's a
-      // chicken and egg problem: since there is no source of truth beyond
-      // the master, the only way to get information about a master host is
-      // by making an RPC to that host.
-      TabletClient clientForHostAndPort = newMasterClient(hostAndPort);
-      if (clientForHostAndPort == null) {
-        String message = "Couldn't resolve this master's address " + hostAndPort.toString();
-        LOG.warn(message);
-        d = Deferred.fromError(new NonRecoverableException(message));
-      } else {
-        d = getMasterRegistration(clientForHostAndPort);
+  private byte[] expectedLookupEnd(String tableId, byte[] partitionKey) {
+    TabletIndex tablets = tabletsCache.get(tableId);
+    RemoteTablet tablet = tablets == null ? null : tablets.floor(partitionKey);
+    if (tablet == null) {
+      return null;
+    }
+    byte[] end = tablet.getPartition().getPartitionKeyEnd();
+    if (end.length != 0 && Bytes.memcmp(partitionKey, end) >= 0) {
+      return null;
+    }
+    for (int i = 1; i < tableLocationsPrefetch && end.length != 0; i++) {
+      RemoteTablet next = tablets.floor(end);
+      if (next == null || Bytes.memcmp(next.getPartition().getPartitionKeyStart(), end) != 0) {
+        break;
       }
-      d.addCallbacks(received.callbackForNode(hostAndPort), received.errbackForNode(hostAndPort));
+      end = next.getPartition().getPartitionKeyEnd();
     }
-    return responseD;
+    return end;
+  }
+
+  @VisibleForTesting
+  int getNumLocationLookupsInFlight(String tableId) {
+    ConcurrentSkipListMap<byte[], LocationLookup> lookups = locationLookups.get(tableId);
+    return lookups == null ? 0 : lookups.size();
+  }
+
+  @VisibleForTesting
+  boolean hasLocationLookupsMap(String tableId) {
+    return locationLookups.containsKey(tableId);
   }
 
   /**
-   * Get all or some tablets for a given table. This may query the master multiple times if there
-   * are a lot of tablets.
-   * This method blocks until it gets all the tablets.
-   * @param tableId the table to locate tablets from
-   * @param startPartitionKey where to start in the table, pass null to start at the beginning
-   * @param endPartitionKey where to stop in the table, pass null to get all the tablets until the
+   * A master lookup shared by all the RPCs that missed the cache while it was in flight. Each of
+   * them gets its own Deferred, called back with the lookup's result.
+   */
+  private static final class LocationLookup {
+    private final byte[] startKey;
+    // See expectedLookupEnd, null when the range of the lookup isn't known.
+    private final byte[] expectedEnd;
+    // How many other keys may join a lookup whose range isn't known, as many as the tablets it
+    // fetches.
+    private final int maxOtherKeys;
+    private final AtomicInteger numOtherKeys = new AtomicInteger();
+    // Null once the lookup completed.
+    private List<Deferred<Master.GetTableLocationsResponsePB>> waiters = new ArrayList<>();
+
+    LocationLookup(byte[] startKey, byte[] expectedEnd, int maxOtherKeys) {
+      this.startKey = startKey;
+      this.expectedEnd = expectedEnd;
+      this.maxOtherKeys = maxOtherKeys;
+    }
+
+    /**
+     * @param key a key at or after the start key of the lookup
+     * @return whether the lookup is expected to fetch the tablet holding the key
+     */
+    boolean admit(byte[] key) {
+      if (Bytes.memcmp(key, startKey) == 0) {
+        return true;
+      }
+      if (expectedEnd != null) {
+        return expectedEnd.length == 0 || Bytes.memcmp(key, expectedEnd) < 0;
+      }
+      return numOtherKeys.incrementAndGet() <= maxOtherKeys;
+    }
+
+    /**
+     * @return a Deferred called back when the lookup completes, or null if it already did
+     */
+    synchronized Deferred<Master.GetTableLocationsResponsePB> join() {
+      if (waiters == null) {
+        return null;
+      }
+      Deferred<Master.GetTableLocationsResponsePB> d = new Deferred<>();
+      waiters.add(d);
+      return d;
+    }
+
+    @SuppressWarnings("unchecked")
+    void complete(Object result) {
+      List<Deferred<Master.GetTableLocationsResponsePB>> toCall;
+      synchronized (this) {
+        toCall = waiters;
+        waiters = null;
+      }
+      for (Deferred<Master.GetTableLocationsResponsePB> d : toCall) {
+        // MasterLookupCB turns the response into null or into an exception, which makes the
+        // Deferred run its errbacks.
+        ((Deferred<Object>) (Deferred<?>) d).callback(result);
+      }
+    }
+  }
+
+  /**
+   * Fills the location cache with all the tablets of the given tables, so that the first RPCs
+   * sent to them don't have to wait for master lookups. Meant to be called when a service starts.
+   * The master is asked for the tablets in batches, one table after the other.
+   * @param tables the tables to locate
+   * @return a deferred object that yields the number of tablets located
+   */
+  public Deferred<Integer> prefetchTableLocations(Collection<YBTable> tables) {
+    List<Deferred<TableListing>> deferreds = new ArrayList<>();
+    for (YBTable table : tables) {
+      deferreds.add(loadTableLocations(table, null, new TableListing()));
+    }
+    return Deferred.group(deferreds).addCallback(new Callback<Integer, ArrayList<TableListing>>() {
+      @Override
+      public Integer call(ArrayList<TableListing> listings) {
+        int total = 0;
+        for (TableListing listing : listings) {
+          total += listing.tabletIds.size();
+        }
+        return total;
+      }
+
+      @Override
+      public String toString() {
+        return "count prefetched tablets";
+      }
+    });
+  }
+
+  /**
+   * The tablets of a table, as returned by the master over one or more lookups.
+   */
+  private static final class TableListing {
+    final Set<Slice> tabletIds = new HashSet<>();
+    // Partition list version of the first response, -1 if unknown.
+    long partitionListVersion = -1;
+    // Whether all the responses had the same partition list version.
+    boolean consistent = true;
+  }
+
+  private Deferred<TableListing> loadTableLocations(final YBTable table,
+                                                   final byte[] startPartitionKey,
+                                                   final TableListing listing) {
+    GetTableLocationsRequest rpc = new GetTableLocationsRequest(masterTable, startPartitionKey,
+        null, table.getTableId(), tableLocationsPrefetch);
+    rpc.setTimeoutMillis(defaultAdminOperationTimeoutMs);
+    return sendRpcToTablet(rpc).addCallbackDeferring(
+        new Callback<Deferred<TableListing>, Master.GetTableLocationsResponsePB>() {
+          @Override
+          public Deferred<TableListing> call(Master.GetTableLocationsResponsePB response)
+              throws Exception {
+            discoverTablets(table, response);
+            long version = partitionListVersionOf(response);
+            if (startPartitionKey == null) {
+              listing.partitionListVersion = version;
+            } else if (version != listing.partitionListVersion) {
+              listing.consistent = false;
+            }
+            int count = response.getTabletLocationsCount();
+            if (count == 0) {
+              return Deferred.fromResult(listing);
+            }
+            for (Master.TabletLocationsPB tabletPb : response.getTabletLocationsList()) {
+              listing.tabletIds.add(new Slice(tabletPb.getTabletId().toByteArray()));
+            }
+            byte[] lastEnd = response.getTabletLocations(count - 1).getPartition()
+                .getPartitionKeyEnd().toByteArray();
+            if (lastEnd.length == 0 || (startPartitionKey != null &&
+                Bytes.memcmp(lastEnd, startPartitionKey) <= 0)) {
+              return Deferred.fromResult(listing);
+            }
+            return loadTableLocations(table, lastEnd, listing);
+          }
+
+          @Override
+          public String toString() {
+            return "load tablet locations for table " + table.getName();
+          }
+        });
+  }
+
+  private static long partitionListVersionOf(Master.GetTableLocationsResponsePB response) {
+    return response.hasPartitionListVersion() ?
+        response.getPartitionListVersion() & 0xFFFFFFFFL : -1;
+  }
+
+  /**
+   * What we know about the cached locations of a table.
+   */
+  private static final class TableCacheState {
+    final YBTable table;
+    // Highest partition list version the master sent for this table, -1 if unknown.
+    volatile long partitionListVersion = -1;
+    // Last time an RPC found a tablet of this table in the cache, from System.nanoTime().
+    volatile long lastUsedNanos;
+    // Set while the locations of the table are being reloaded.
+    final AtomicBoolean reloading = new AtomicBoolean();
+
+    TableCacheState(YBTable table) {
+      this.table = table;
+      this.lastUsedNanos = System.nanoTime();
+    }
+  }
+
+  private TableCacheState getTableCacheState(YBTable table) {
+    TableCacheState state = tableCacheStates.get(table.getTableId());
+    if (state == null) {
+      state = new TableCacheState(table);
+      TableCacheState oldState = tableCacheStates.putIfAbsent(table.getTableId(), state);
+      if (oldState != null) {
+        state = oldState;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Called on every cache hit, reloads the tablet's table in the background if its locations
+   * are older than the TTL. The RPC still goes to the cached location meanwhile.
+   */
+  private void checkTabletFreshness(RemoteTablet tablet) {
+    if (tabletsCacheTtlNanos == 0 && tabletsCacheRefreshIntervalMs == 0) {
+      return;
+    }
+    TableCacheState state = tableCacheStates.get(tablet.getTableId());
+    if (state == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    state.lastUsedNanos = now;
+    if (tabletsCacheTtlNanos > 0 && now - tablet.refreshedAtNanos > tabletsCacheTtlNanos) {
+      reloadTableLocations(state);
+    }
+  }
+
+  /**
+   * Asks the master for all the tablets of a table, unless that's already in progress. Cached
+   * tablets that the master didn't return anymore, e.g. because they were split, are dropped.
+   */
+  private void reloadTableLocations(final TableCacheState state) {
+    if (closed || !state.reloading.compareAndSet(false, true)) {
+      return;
+    }
+    final long start = System.nanoTime();
+    loadTableLocations(state.table, null, new TableListing()).addCallbacks(
+        new Callback<Void, TableListing>() {
+          @Override
+          public Void call(TableListing listing) {
+            if (listing.consistent && listing.partitionListVersion >= 0) {
+              dropStaleTablets(state.table.getTableId(), listing);
+            }
+            tabletCacheMetrics.recordRefresh(NANOSECONDS.toMillis(System.nanoTime() - start));
+            state.reloading.set(false);
+            return null;
+          }
+
+          @Override
+          public String toString() {
+            return "drop stale tablets of table " + state.table.getName();
+          }
+        },
+        new Callback<Void, Exception>() {
+          @Override
+          public Void call(Exception e) {
+            LOG.warn("Failed to reload the tablet locations of table " + state.table.getName(),
+                e);
+            tabletCacheMetrics.recordRefreshFailure();
+            state.reloading.set(false);
+            return null;
+          }
+
+          @Override
+          public String toString() {
+            return "log failed reload of table " + state.table.getName();
+          }
+        });
+  }
+
+  private void dropStaleTablets(String tableId, TableListing listing) {
+    // A split parent may already have been replaced in tabletsCache by its first child, which
+    // has the same start key, so go through tablet2client to find them all.
+    for (RemoteTablet tablet : tablet2client.values()) {
+      // Tablets from a newer partition list than the one we listed were discovered meanwhile.
+      if (!tablet.getTableId().equals(tableId) ||
+          listing.tabletIds.contains(tablet.tabletId) ||
+          tablet.partitionListVersion > listing.partitionListVersion) {
+        continue;
+      }
+      LOG.info("Dropping tablet {} of table {} from the cache, it's not served anymore",
+          tablet.getTabletIdAsString(), tableId);
+      removeFromTabletIndex(tablet);
+      tablet2client.remove(tablet.tabletId, tablet);
+    }
+  }
+
+  /**
+   * Periodically checks whether the partition lists of the tables used since the last run
+   * changed, so that splits are picked up before an RPC goes to a tablet that doesn't exist
+   * anymore. Only one tablet location is requested per table for the check, the whole table is
+   * reloaded if the version changed.
+   */
+  private final class TabletsCacheRefreshTask implements TimerTask {
+    private long lastRunNanos = System.nanoTime();
+
+    @Override
+    public void run(Timeout timeout) {
+      if (closed) {
+        return;
+      }
+      final long now = System.nanoTime();
+      for (final TableCacheState state : tableCacheStates.values()) {
+        if (state.lastUsedNanos - lastRunNanos < 0) {
+          continue;
+        }
+        GetTableLocationsRequest rpc = new GetTableLocationsRequest(masterTable, null, null,
+            state.table.getTableId(), 1);
+        rpc.setTimeoutMillis(defaultAdminOperationTimeoutMs);
+        sendRpcToTablet(rpc).addCallbacks(
+            new Callback<Void, Master.GetTableLocationsResponsePB>() {
+              @Override
+              public Void call(Master.GetTableLocationsResponsePB response) {
+                // The reload counts the change when it sees the new version.
+                if (partitionListVersionOf(response) > state.partitionListVersion) {
+                  reloadTableLocations(state);
+                }
+                return null;
+              }
+
+              @Override
+              public String toString() {
+                return "check partition list of table " + state.table.getName();
+              }
+            },
+            new Callback<Void, Exception>() {
+              @Override
+              public Void call(Exception e) {
+                LOG.debug("Failed to check the partition list of table {}",
+                    state.table.getName(), e);
+                return null;
+              }
+
+              @Override
+              public String toString() {
+                return "log failed partition list check";
+              }
+            });
+      }
+      lastRunNanos = now;
+      newTimeout(this, tabletsCacheRefreshIntervalMs);
+    }
+  }
+
+  /**
+   * Checks a condition on the timer until it holds or the deadline passes, see
+   * {@link #waitForCondition}. A check that is still in flight at the deadline doesn't delay the
+   * result.
+   */
+  private final class ConditionWaiter implements TimerTask {
+    private final AsyncCondition condition;
+    private final long deadlineNanos;
+    final Deferred<Boolean> result = new Deferred<>();
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile Timeout deadlineTimeout;
+
+    // Only changed by one check at a time.
+    private long delayMs = CONDITION_INITIAL_DELAY_MS;
+    private volatile int numChecks;
+    private volatile Exception lastException;
+
+    ConditionWaiter(AsyncCondition condition, long timeoutMs) {
+      this.condition = condition;
+      this.deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    void start(long timeoutMs) {
+      deadlineTimeout = newTimeout(new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+          finish(false);
+        }
+      }, timeoutMs);
+      check();
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+      if (closed) {
+        finish(false);
+        return;
+      }
+      check();
+    }
+
+    private void check() {
+      if (done.get()) {
+        return;
+      }
+      numChecks++;
+      Deferred<Boolean> d;
+      try {
+        d = condition.check();
+      } catch (Exception e) {
+        d = Deferred.fromError(e);
+      }
+      d.addCallbacks(new Callback<Void, Boolean>() {
+        @Override
+        public Void call(Boolean holds) {
+          if (holds != null && holds) {
+            finish(true);
+          } else {
+            scheduleCheck();
+          }
+          return null;
+        }
+
+        @Override
+        public String toString() {
+          return "check " + condition;
+        }
+      }, new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) {
+          // Servers that are down or have no leader yet fail the checks, try again later.
+          lastException = e;
+          scheduleCheck();
+          return null;
+        }
+
+        @Override
+        public String toString() {
+          return "retry check " + condition;
+        }
+      });
+    }
+
+    private void scheduleCheck() {
+      long remainingMs = NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+      if (remainingMs <= 0) {
+        finish(false);
+        return;
+      }
+      long sleepMs = Math.min(delayMs, remainingMs);
+      delayMs = Math.min(2 * delayMs, CONDITION_MAX_DELAY_MS);
+      if (newTimeout(this, sleepMs) == null) {
+        finish(false);
+      }
+    }
+
+    void finish(boolean holds) {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      conditionWaiters.remove(this);
+      Timeout timeout = deadlineTimeout;
+      if (timeout != null) {
+        timeout.cancel();
+      }
+      if (!holds) {
+        LOG.warn("{} waiting for {} after {} checks, last error: {}",
+                 closed ? "Client closed while" : "Timed out", condition, numChecks,
+                 lastException == null ? "none" : lastException.toString());
+      }
+      result.callback(holds);
+    }
+  }
+
+  /**
+   * Update the master config: send RPCs to all config members, use the returned data to
+   * fill a {@link Master.GetTabletLocationsResponsePB} object.
+   * @return An initialized Deferred object to hold the response.
+   */
+  Deferred<Master.GetTableLocationsResponsePB> getMasterTableLocationsPB() {
+    final Deferred<Master.GetTableLocationsResponsePB> responseD =
+        new Deferred<Master.GetTableLocationsResponsePB>();
+    final GetMasterRegistrationReceived received =
+        new GetMasterRegistrationReceived(masterAddresses, responseD);
+    for (HostAndPort hostAndPort : masterAddresses) {
+      Deferred<GetMasterRegistrationResponse> d;
+      // Note: we need to create a client for that host first, as there's a
+      // chicken and egg problem: since there is no source of truth beyond
+      // the master, the only way to get information about a master host is
+      // by making an RPC to that host.
+      TabletClient clientForHostAndPort = newMasterClient(hostAndPort);
+      if (clientForHostAndPort == null) {
+        String message = "Couldn't resolve this master's address " + hostAndPort.toString();
+        LOG.warn(message);
+        d = Deferred.fromError(new NonRecoverableException(message));
+      } else {
+        d = getMasterRegistration(clientForHostAndPort);
+      }
+      d.addCallbacks(received.callbackForNode(hostAndPort), received.errbackForNode(hostAndPort));
+    }
+    return responseD;
+  }
+
+  /**
+   * Get all or some tablets for a given table. This may query the master multiple times if there
+   * are a lot of tablets.
+   * This method blocks until it gets all the tablets.
+   * @param tableId the table to locate tablets from
+   * @param startPartitionKey where to start in the table, pass null to start at the beginning
+   * @param endPartitionKey where to stop in the table, pass null to get all the tablets until the
    *                        end of the table
    * @param deadline deadline in milliseconds for this method to finish
    * @return a list of the tablets in the table, which can be queried for metadata about
@@ -1550,46 +2515,134 @@ public class AsyncYBClient implements AutoCloseable {
    * We're in the context of decode() meaning we need to either callback or retry later.
    */
   <R> void handleTabletNotFound(final YRpc<R> rpc, YBException ex, TabletClient server) {
+    tabletCacheMetrics.recordStaleRetry();
     invalidateTabletCache(rpc.getTablet(), server);
     handleRetryableError(rpc, ex, server);
   }
 
+  /**
+   * A tablet server is telling us the tablet we sent an RPC to was split. The children cover the
+   * same key range, so drop the parent from the cache, look up the children and retry.
+   */
+  <R> void handleTabletSplit(final YRpc<R> rpc, YBException ex, TabletClient server) {
+    tabletCacheMetrics.recordStaleRetry();
+    RemoteTablet tablet = rpc.getTablet();
+    LOG.info("Tablet {} was split, removing it from the cache", tablet.getTabletIdAsString());
+    removeFromTabletIndex(tablet);
+    tablet2client.remove(tablet.tabletId, tablet);
+    TableCacheState state = tableCacheStates.get(tablet.getTableId());
+    if (state != null) {
+      reloadTableLocations(state);
+    }
+    handleRetryableError(rpc, ex, server);
+  }
+
   /**
    * A tablet server is letting us know that it isn't the specified tablet's leader in response
    * a RPC, so we need to demote it and retry.
    */
   <R> void handleNotLeader(final YRpc<R> rpc, YBException ex, TabletClient server) {
-    rpc.getTablet().demoteLeader(server);
+    RemoteTablet tablet = rpc.getTablet();
+    tablet.demoteLeader(server);
+    // The server doesn't tell us who the new leader is, but demoting it promoted the next replica
+    // we know of. Going to another server doesn't add load to the one that rejected us, so try it
+    // right away instead of backing off.
+    TabletClient next = clientFor(tablet);
+    if (next != null && next != server && !rpc.isRetrySameServer() && !cannotRetryRequest(rpc)) {
+      long sleepTime = retryPolicy.getLeaderChangeDelayMs();
+      if (!rpc.deadlineTracker.wouldSleepingTimeout(sleepTime)) {
+        retryMetrics.recordLeaderChangeRetry(sleepTime);
+        newTimeout(new RetryTimer(rpc, server), sleepTime);
+        return;
+      }
+    }
     handleRetryableError(rpc, ex, server);
   }
 
   <R> void handleRetryableError(final YRpc<R> rpc, YBException ex, TabletClient server) {
-    // TODO we don't always need to sleep, maybe another replica can serve this RPC.
     delayedSendRpcToTablet(rpc, ex, server);
   }
 
+  /**
+   * Sends an RPC again once its retry sleep is over.
+   */
+  private final class RetryTimer implements TimerTask {
+    private final YRpc<?> rpc;
+    private final TabletClient server;
+
+    RetryTimer(YRpc<?> rpc, TabletClient server) {
+      this.rpc = rpc;
+      this.server = server;
+    }
+
+    public void run(final Timeout timeout) {
+      if (rpc.isRetrySameServer()) {
+        server.sendRpc(rpc);
+      } else {
+        sendRpcToTablet(rpc);
+      }
+    }
+  }
+
+  /**
+   * Takes a token from the retry budget.
+   * @return true if the RPC can be retried, false if the budget is empty
+   */
+  boolean acquireRetryToken() {
+    if (retryPolicy.getRetryBudget() == 0) {
+      return true;
+    }
+    while (true) {
+      long tokens = retryTokensMilli.get();
+      if (tokens < 1000) {
+        return false;
+      }
+      if (retryTokensMilli.compareAndSet(tokens, tokens - 1000)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Called when an RPC succeeds, puts back part of a token in the retry budget.
+   */
+  void recordRpcSuccess() {
+    int budget = retryPolicy.getRetryBudget();
+    if (budget == 0) {
+      return;
+    }
+    long refill = (long) (retryPolicy.getTokensPerSuccess() * 1000);
+    long max = budget * 1000L;
+    while (true) {
+      long tokens = retryTokensMilli.get();
+      if (tokens >= max) {
+        return;
+      }
+      if (retryTokensMilli.compareAndSet(tokens, Math.min(max, tokens + refill))) {
+        return;
+      }
+    }
+  }
+
   private <R> void delayedSendRpcToTablet(final YRpc<R> rpc, YBException ex, TabletClient server) {
     // Here we simply retry the RPC later. We might be doing this along with a lot of other RPCs
     // in parallel. Asynchbase does some hacking with a "probe" RPC while putting the other ones
     // on hold but we won't be doing this for the moment. Regions in HBase can move a lot,
     // we're not expecting this in YB.
-    final class RetryTimer implements TimerTask {
-      public void run(final Timeout timeout) {
-        if (rpc.isRetrySameServer()) {
-          server.sendRpc(rpc);
-        } else {
-          sendRpcToTablet(rpc);
-        }
-      }
-    }
-
     long sleepTime = getSleepTimeForRpc(rpc);
     if (cannotRetryRequest(rpc) || rpc.deadlineTracker.wouldSleepingTimeout(sleepTime)) {
       tooManyAttemptsOrTimeout(rpc, ex);
       // Don't let it retry.
       return;
     }
-    newTimeout(new RetryTimer(), sleepTime);
+    if (!acquireRetryToken()) {
+      retryMetrics.recordBudgetExhausted();
+      LOG.debug("Retry budget exhausted, failing {}", rpc);
+      rpc.errback(new NonRecoverableException("Retry budget exhausted for " + rpc, ex));
+      return;
+    }
+    retryMetrics.recordBackoffRetry(sleepTime);
+    newTimeout(new RetryTimer(rpc, server), sleepTime);
   }
 
   /**
@@ -1647,6 +2700,19 @@ public class AsyncYBClient implements AutoCloseable {
       throws NonRecoverableException {
     String tableId = table.getTableId();
     String tableName = table.getName();
+    long partitionListVersion = partitionListVersionOf(response);
+    if (partitionListVersion >= 0) {
+      TableCacheState state = getTableCacheState(table);
+      long knownVersion = state.partitionListVersion;
+      if (partitionListVersion > knownVersion) {
+        state.partitionListVersion = partitionListVersion;
+        if (knownVersion >= 0) {
+          // Tablets were split since we last looked, the ones we cached may not exist anymore.
+          tabletCacheMetrics.recordPartitionListChange();
+          reloadTableLocations(state);
+        }
+      }
+    }
     if (response.getTabletLocationsCount() == 0) {
       // Keep a note that the table exists but it's not served yet, we'll retry.
       if (LOG.isDebugEnabled()) {
@@ -1655,18 +2721,8 @@ public class AsyncYBClient implements AutoCloseable {
       tablesNotServed.add(tableId);
       return;
     }
-    // Doing a get first instead of putIfAbsent to avoid creating unnecessary CSLMs because in
-    // the most common case the table should already be present
-    ConcurrentSkipListMap<byte[], RemoteTablet> tablets = tabletsCache.get(tableId);
-    if (tablets == null) {
-      tablets = new ConcurrentSkipListMap<>(Bytes.MEMCMP);
-      ConcurrentSkipListMap<byte[], RemoteTablet> oldTablets = tabletsCache.putIfAbsent
-          (tableId, tablets);
-      if (oldTablets != null) {
-        tablets = oldTablets;
-      }
-    }
-
+    // The new tablets are added to the table's index all at once, since every update copies it.
+    final List<RemoteTablet> discovered = new ArrayList<>();
     for (Master.TabletLocationsPB tabletPb : response.getTabletLocationsList()) {
       // Early creating the tablet so that it parses out the pb
       RemoteTablet rt = createTabletFromPb(tableId, tabletPb);
@@ -1676,8 +2732,11 @@ public class AsyncYBClient implements AutoCloseable {
       RemoteTablet currentTablet = tablet2client.get(tabletId);
       if (currentTablet != null) {
         currentTablet.refreshServers(tabletPb);
+        currentTablet.partitionListVersion =
+            Math.max(currentTablet.partitionListVersion, partitionListVersion);
         continue;
       }
+      rt.partitionListVersion = partitionListVersion;
 
       // Putting it here first doesn't make it visible because tabletsCache is always looked up
       // first.
@@ -1689,11 +2748,29 @@ public class AsyncYBClient implements AutoCloseable {
       LOG.info("Discovered tablet {} for table {} with partition {}",
                tabletId.toString(Charset.defaultCharset()), tableName, rt.getPartition());
       rt.refreshServers(tabletPb);
-      // This is making this tablet available
-      // Even if two clients were racing in this method they are putting the same RemoteTablet
-      // with the same start key in the CSLM in the end
-      tablets.put(rt.getPartition().getPartitionKeyStart(), rt);
+      discovered.add(rt);
+    }
+    if (discovered.isEmpty()) {
+      return;
     }
+    // This is making the tablets available
+    // Even if two clients were racing in this method they are putting the same RemoteTablet
+    // with the same start key in the index in the end
+    tabletsCache.compute(tableId, new BiFunction<String, TabletIndex, TabletIndex>() {
+      @Override
+      public TabletIndex apply(String key, TabletIndex index) {
+        return (index == null ? TabletIndex.EMPTY : index).withTablets(discovered);
+      }
+    });
+  }
+
+  private void removeFromTabletIndex(final RemoteTablet tablet) {
+    tabletsCache.compute(tablet.getTableId(), new BiFunction<String, TabletIndex, TabletIndex>() {
+      @Override
+      public TabletIndex apply(String key, TabletIndex index) {
+        return index == null ? null : index.without(tablet);
+      }
+    });
   }
 
   RemoteTablet createTabletFromPb(String tableId, Master.TabletLocationsPB tabletPb) {
@@ -1709,7 +2786,7 @@ public class AsyncYBClient implements AutoCloseable {
    * @return a tablet ID as a slice or null if not found
    */
   RemoteTablet getTablet(String tableId, byte[] partitionKey) {
-    ConcurrentSkipListMap<byte[], RemoteTablet> tablets = tabletsCache.get(tableId);
+    TabletIndex tablets = tabletsCache.get(tableId);
 
     if (tablets == null) {
       return null;
@@ -1717,19 +2794,16 @@ public class AsyncYBClient implements AutoCloseable {
 
     // We currently only have one master tablet.
     if (isMasterTable(tableId)) {
-      if (tablets.firstEntry() == null) {
-        return null;
-      }
-      return tablets.firstEntry().getValue();
+      return tablets.first();
     }
 
-    Map.Entry<byte[], RemoteTablet> tabletPair = tablets.floorEntry(partitionKey);
+    RemoteTablet tablet = tablets.floor(partitionKey);
 
-    if (tabletPair == null) {
+    if (tablet == null) {
       return null;
     }
 
-    Partition partition = tabletPair.getValue().getPartition();
+    Partition partition = tablet.getPartition();
 
     // If the partition is not the end partition, but it doesn't include the key
     // we are looking for, then we have not yet found the correct tablet.
@@ -1738,7 +2812,7 @@ public class AsyncYBClient implements AutoCloseable {
       return null;
     }
 
-    return tabletPair.getValue();
+    return tablet;
   }
 
   /**
@@ -1786,32 +2860,49 @@ public class AsyncYBClient implements AutoCloseable {
     return newClient(uuid, hp.getHost(), hp.getPort());
   }
 
-  TabletClient newClient(String uuid, final String host, final int port) {
+  TabletClient newClient(final String uuid, final String host, final int port) {
     final String hostport = host + ':' + port;
-    TabletClient client;
-    SocketChannel chan;
-    synchronized (ip2client) {
-      client = ip2client.get(hostport);
-      if (client != null && client.isAlive()) {
-        return client;
-      }
-      final TabletClientPipeline pipeline = new TabletClientPipeline();
-      client = pipeline.init(uuid);
-      chan = channelFactory.newChannel(pipeline);
-      ip2client.put(hostport, client);  // This is guaranteed to return null.
+    // Fast path, the connection already exists.
+    TabletClient client = ip2client.get(hostport);
+    if (client != null && client.isAlive()) {
+      return client;
+    }
+    final boolean[] created = new boolean[1];
+    client = ip2client.compute(hostport,
+        new BiFunction<String, TabletClient, TabletClient>() {
+          @Override
+          public TabletClient apply(String key, TabletClient existing) {
+            // Someone else may have connected while we were waiting for this entry.
+            if (existing != null && existing.isAlive()) {
+              return existing;
+            }
+            created[0] = true;
+            return new TabletClient(AsyncYBClient.this, uuid, hostport);
+          }
+        });
+    if (!created[0]) {
+      return client;
     }
     this.client2tablets.put(client, new ArrayList<RemoteTablet>());
-    final SocketChannelConfig config = chan.getConfig();
-    config.setConnectTimeoutMillis(5000);
-    config.setTcpNoDelay(true);
-    // Unfortunately there is no way to override the keep-alive timeout in
-    // Java since the JRE doesn't expose any way to call setsockopt() with
-    // TCP_KEEPIDLE.  And of course the default timeout is >2h. Sigh.
-    config.setKeepAlive(true);
+    final Bootstrap bootstrap = new Bootstrap()
+        .group(eventLoopGroup)
+        .channel(channelClass)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+        .option(ChannelOption.TCP_NODELAY, true)
+        // Unfortunately there is no way to override the keep-alive timeout in
+        // Java since the JRE doesn't expose any way to call setsockopt() with
+        // TCP_KEEPIDLE.  And of course the default timeout is >2h. Sigh.
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        // The socket reads into pooled direct buffers, which TabletClient gathers on the heap to
+        // parse. Requests come from the same allocator, on the heap, see YRpc.toByteBuf().
+        .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .handler(new TabletClientInitializer(client, getSslContext()));
+    final InetSocketAddress remote = new InetSocketAddress(host, port);
     if (clientHost != null) {
-      chan.bind(new InetSocketAddress(clientHost, clientPort));
+      bootstrap.connect(remote, new InetSocketAddress(clientHost, clientPort));  // Won't block.
+    } else {
+      bootstrap.connect(remote);  // Won't block.
     }
-    chan.connect(new InetSocketAddress(host, port));  // Won't block.
     return client;
   }
 
@@ -1847,28 +2938,22 @@ public class AsyncYBClient implements AutoCloseable {
   public Deferred<ArrayList<Void>> shutdown() {
     checkIsClosed();
     closed = true;
-
-    // This is part of step 2.  We need to execute this in its own thread
-    // because Netty gets stuck in an infinite loop if you try to shut it
-    // down from within a thread of its own thread pool.  They don't want
-    // to fix this so as a workaround we always shut Netty's thread pool
-    // down from another thread.
-    final class ShutdownThread extends Thread {
-      ShutdownThread() {
-        super("AsyncYBClient@" + AsyncYBClient.super.hashCode() + " shutdown");
-      }
-      public void run() {
-        // This terminates the Executor.
-        channelFactory.releaseExternalResources();
-      }
+    // The timeouts of the conditions being waited for won't run anymore.
+    for (ConditionWaiter waiter : conditionWaiters) {
+      waiter.finish(false);
     }
 
     // 2. Release all other resources.
     final class ReleaseResourcesCB implements Callback<ArrayList<Void>, ArrayList<Void>> {
       public ArrayList<Void> call(final ArrayList<Void> arg) {
         LOG.debug("Releasing all remaining resources");
-        timer.stop();
-        new ShutdownThread().start();
+        if (sharedResources != null) {
+          sharedResources.release();
+        } else {
+          timer.stop();
+          // Doesn't wait, so this is fine from one of the event loops.
+          eventLoopGroup.shutdownGracefully(0, ClientResources.SHUTDOWN_TIMEOUT_MS, MILLISECONDS);
+        }
         return arg;
       }
       public String toString() {
@@ -1894,14 +2979,8 @@ public class AsyncYBClient implements AutoCloseable {
   private Deferred<ArrayList<Void>> disconnectEverything() {
     ArrayList<Deferred<Void>> deferreds =
         new ArrayList<Deferred<Void>>(2);
-    HashMap<String, TabletClient> ip2client_copy;
-    synchronized (ip2client) {
-      // Make a local copy so we can shutdown every Tablet Server clients
-      // without hold the lock while we iterate over the data structure.
-      ip2client_copy = new HashMap<String, TabletClient>(ip2client);
-    }
-
-    for (TabletClient ts : ip2client_copy.values()) {
+    // Iterating a ConcurrentHashMap is safe while shutdown() removes entries from it.
+    for (TabletClient ts : ip2client.values()) {
       deferreds.add(ts.shutdown());
     }
     final int size = deferreds.size();
@@ -1909,22 +2988,10 @@ public class AsyncYBClient implements AutoCloseable {
         new Callback<ArrayList<Void>, ArrayList<Void>>() {
           public ArrayList<Void> call(final ArrayList<Void> arg) {
             // Normally, now that we've shutdown() every client, all our caches should
-            // be empty since each shutdown() generates a DISCONNECTED event, which
-            // causes TabletClientPipeline to call removeClientFromCache().
-            HashMap<String, TabletClient> logme = null;
-            synchronized (ip2client) {
-              if (!ip2client.isEmpty()) {
-                logme = new HashMap<String, TabletClient>(ip2client);
-              }
-            }
-            if (logme != null) {
-              // Putting this logging statement inside the synchronized block
-              // can lead to a deadlock, since HashMap.toString() is going to
-              // call TabletClient.toString() on each entry, and this locks the
-              // client briefly.  Other parts of the code lock clients first and
-              // the ip2client HashMap second, so this can easily deadlock.
+            // be empty since each shutdown() calls removeClientFromCache().
+            if (!ip2client.isEmpty()) {
               LOG.error("Some clients are left in the client cache and haven't"
-                  + " been cleaned up: " + logme);
+                  + " been cleaned up: " + ip2client);
             }
             return arg;
           }
@@ -1935,100 +3002,22 @@ public class AsyncYBClient implements AutoCloseable {
         });
   }
 
-  /**
-   * Blocking call.
-   * Performs a slow search of the IP used by the given client.
-   * <p>
-   * This is needed when we're trying to find the IP of the client before its
-   * channel has successfully connected, because Netty's API offers no way of
-   * retrieving the IP of the remote peer until we're connected to it.
-   * @param client The client we want the IP of.
-   * @return The IP of the client, or {@code null} if we couldn't find it.
-   */
-  private InetSocketAddress slowSearchClientIP(final TabletClient client) {
-    String hostport = null;
-    synchronized (ip2client) {
-      for (final Map.Entry<String, TabletClient> e : ip2client.entrySet()) {
-        if (e.getValue() == client) {
-          hostport = e.getKey();
-          break;
-        }
-      }
-    }
-
-    if (hostport == null) {
-      HashMap<String, TabletClient> copy;
-      synchronized (ip2client) {
-        copy = new HashMap<String, TabletClient>(ip2client);
-      }
-      LOG.error("WTF?  Should never happen!  Couldn't find " + client
-          + " in " + copy);
-      return null;
-    }
-    final int colon = hostport.indexOf(':', 1);
-    if (colon < 1) {
-      LOG.error("WTF?  Should never happen!  No `:' found in " + hostport);
-      return null;
-    }
-    final String host = getIP(hostport.substring(0, colon));
-    if (host == null) {
-      // getIP will print the reason why, there's nothing else we can do.
-      return null;
-    }
-
-    int port;
-    try {
-      port = parsePortNumber(hostport.substring(colon + 1,
-          hostport.length()));
-    } catch (NumberFormatException e) {
-      LOG.error("WTF?  Should never happen!  Bad port in " + hostport, e);
-      return null;
-    }
-    return new InetSocketAddress(host, port);
-  }
-
   /**
    * Removes all the cache entries referred to the given client.
    * @param client The client for which we must invalidate everything.
-   * @param remote The address of the remote peer, if known, or null.
    */
-  private void removeClientFromCache(final TabletClient client,
-                                     final SocketAddress remote) {
-
-    if (remote == null) {
-      return;  // Can't continue without knowing the remote address.
+  void removeClientFromCache(final TabletClient client) {
+    final String hostport = client.getHostPort();
+    if (hostport == null) {
+      return;  // Never registered in the cache.
     }
-
-    String hostport;
-    if (remote instanceof InetSocketAddress) {
-      final InetSocketAddress sock = (InetSocketAddress) remote;
-      final InetAddress addr = sock.getAddress();
-      if (addr == null) {
-        LOG.error("WTF?  Unresolved IP for " + remote
-            + ".  This shouldn't happen.");
-        return;
-      } else {
-        hostport = addr.getHostAddress() + ':' + sock.getPort();
-      }
+    // Only remove the entry if it still maps to this client, a new connection to the same address
+    // may already have replaced it.
+    if (ip2client.remove(hostport, client)) {
+      LOG.debug("Removed from IP cache: {" + hostport + "} -> {" + client + "}");
     } else {
-      LOG.error("WTF?  Found a non-InetSocketAddress remote: " + remote
-          + ".  This shouldn't happen.");
-      return;
-    }
-
-    TabletClient old;
-    synchronized (ip2client) {
-      old = ip2client.remove(hostport);
-    }
-    LOG.debug("Removed from IP cache: {" + hostport + "} -> {" + client + "}");
-    if (old == null) {
-      // Currently we're seeing this message when masters are disconnected and the hostport we got
-      // above is different than the one the user passes (that we use to populate ip2client). At
-      // worst this doubles the entries for masters, which has an insignificant impact.
-      // TODO When fixed, make this a WARN again.
       LOG.trace("When expiring " + client + " from the client cache (host:port="
-          + hostport + "), it was found that there was no entry"
-          + " corresponding to " + remote + ".  This shouldn't happen.");
+          + hostport + "), it was found that there was no entry for it");
     }
 
     ArrayList<RemoteTablet> tablets = client2tablets.remove(client);
@@ -2053,196 +3042,94 @@ public class AsyncYBClient implements AutoCloseable {
     return MASTER_TABLE_NAME_PLACEHOLDER == tableId;
   }
 
-  private final class TabletClientPipeline extends DefaultChannelPipeline {
-
-    private final Logger log = LoggerFactory.getLogger(TabletClientPipeline.class);
-    /**
-     * Have we already disconnected?.
-     * We use this to avoid doing the cleanup work for the same client more
-     * than once, even if we get multiple events indicating that the client
-     * is no longer connected to the TabletServer (e.g. DISCONNECTED, CLOSED).
-     * No synchronization needed as this is always accessed from only one
-     * thread at a time (equivalent to a non-shared state in a Netty handler).
-     */
-    private boolean disconnected = false;
-
-    TabletClient init(String uuid) {
-      final TabletClient client = new TabletClient(AsyncYBClient.this, uuid);
-      if (certFile != null) {
-        SslHandler sslHandler = this.createSslHandler(certFile, clientCertFile, clientKeyFile);
-        if (sslHandler != null) {
-          sslHandler.setIssueHandshake(true);
-          super.addFirst("ssl", sslHandler);
-        }
-      }
-      if (defaultSocketReadTimeoutMs > 0) {
-        super.addLast("timeout-handler",
-            new ReadTimeoutHandler(timer,
-                defaultSocketReadTimeoutMs,
-                TimeUnit.MILLISECONDS));
-      }
-      super.addLast("yb-handler", client);
+  /**
+   * Sets up the handlers of a new connection: TLS if enabled, then the read timeout, and the
+   * {@link TabletClient} itself.
+   */
+  private final class TabletClientInitializer extends ChannelInitializer<Channel> {
+    private final TabletClient client;
+    private final SslContext sslContext;
 
-      return client;
+    TabletClientInitializer(TabletClient client, SslContext sslContext) {
+      this.client = client;
+      this.sslContext = sslContext;
     }
 
     @Override
-    public void sendDownstream(final ChannelEvent event) {
-      if (event instanceof ChannelStateEvent) {
-        handleDisconnect((ChannelStateEvent) event);
+    protected void initChannel(Channel chan) {
+      final ChannelPipeline pipeline = chan.pipeline();
+      if (sslContext != null) {
+        pipeline.addLast("ssl", sslContext.newHandler(chan.alloc()));
       }
-      super.sendDownstream(event);
-    }
-
-    @Override
-    public void sendUpstream(final ChannelEvent event) {
-      if (event instanceof ChannelStateEvent) {
-        handleDisconnect((ChannelStateEvent) event);
+      if (defaultSocketReadTimeoutMs > 0) {
+        pipeline.addLast("timeout-handler",
+            new ReadTimeoutHandler(defaultSocketReadTimeoutMs, TimeUnit.MILLISECONDS));
       }
-      super.sendUpstream(event);
+      pipeline.addLast("yb-handler", client);
     }
+  }
 
-    private PrivateKey getPrivateKey(String keyFile) {
-      try {
-        PemReader pemReader = new PemReader(new FileReader(keyFile));
-        PemObject pemObject = pemReader.readPemObject();
-        pemReader.close();
-        byte[] bytes = pemObject.getContent();
-        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(bytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA");
-        PrivateKey pk = kf.generatePrivate(spec);
-        return pk;
-      } catch (InvalidKeySpecException e) {
-        log.error("Could not read the private key file.", e);
-        throw new RuntimeException("InvalidKeySpecException while reading key: " + keyFile);
-      } catch (Exception e) {
-        log.error("Issue reading pem file.", e);
-        throw new RuntimeException("IOException reading key: " + keyFile);
-      }
+  /**
+   * Builds the TLS settings of the connections the first time they're needed, they're the same
+   * for every connection. Uses OpenSSL when netty-tcnative is available, the JDK's TLS otherwise.
+   * @return the TLS settings, or null if TLS isn't enabled or the client cert has no key
+   */
+  private synchronized SslContext getSslContext() {
+    if (certFile == null || sslContext != null) {
+      return sslContext;
     }
-
-    @SuppressWarnings("unchecked")
-    private SslHandler createSslHandler(String certfile, String clientCertFile,
-                                        String clientKeyFile) {
-      try {
-        Security.addProvider(new BouncyCastleProvider());
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        FileInputStream fis = new FileInputStream(certFile);
-        List<X509Certificate> cas;
-        try {
-          cas = (List<X509Certificate>) (List<?>) cf.generateCertificates(fis);
-        } catch (Exception e) {
-          log.error("Exception generating CA certificate from input file: ", e);
-          throw e;
-        } finally {
-          fis.close();
-        }
-
-        // Create a KeyStore containing our trusted CAs
-        String keyStoreType = KeyStore.getDefaultType();
-        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-        keyStore.load(null, null);
-        for (int i = 0; i < cas.size(); i++) {
-          // Adding to the trust store. Expect the caller to have verified
-          // the certs.
-          keyStore.setCertificateEntry("ca_" + i, cas.get(i));
-        }
-
-        // Create a TrustManager that trusts the CAs in our KeyStore
-        String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
-        tmf.init(keyStore);
-
-        List<X509Certificate> clientCerts = null;
-        KeyStore clientKeyStore = null;
-        KeyManagerFactory kmf = null;
-        if (clientCertFile != null) {
-          if (clientKeyFile == null) {
-            log.error("Both client cert and key needed for mutual auth.");
-            return null;
-          }
-          fis = new FileInputStream(clientCertFile);
-          try {
-            clientCerts = (List<X509Certificate>) (List<?>) cf.generateCertificates(fis);
-          } catch (Exception e) {
-            log.error("Exception generating CA certificate from input file: ", e);
-            throw e;
-          } finally {
-            fis.close();
-          }
-          PrivateKey pk = getPrivateKey(clientKeyFile);
-          Certificate[] chain = new Certificate[clientCerts.size()];
-          clientKeyStore = KeyStore.getInstance(keyStoreType);
-          clientKeyStore.load(null, null);
-          for (int i = 0; i < clientCerts.size(); i++) {
-            chain[i] = clientCerts.get(i);
-            clientKeyStore.setCertificateEntry("node_crt_" + i, clientCerts.get(i));
-          }
-
-          String password = "password";
-          char[] ksPass = password.toCharArray();
-          clientKeyStore.setKeyEntry("node_key", pk, ksPass, chain);
-
-          kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-          kmf.init(clientKeyStore, ksPass);
-        }
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        // mTLS is enabled.
-        if (kmf != null) {
-          sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
-        } else {
-          sslContext.init(null, tmf.getTrustManagers(), null);
-        }
-        SSLEngine sslEngine = sslContext.createSSLEngine();
-        sslEngine.setUseClientMode(true);
-        return new SslHandler(sslEngine);
-      } catch (Exception e) {
-        log.error("Exception creating sslContext: ", e);
-        throw new RuntimeException("SSLContext creation failed: " + e.toString());
-      }
+    if (clientCertFile != null && clientKeyFile == null) {
+      LOG.error("Both client cert and key needed for mutual auth.");
+      return null;
     }
-
-    private void handleDisconnect(final ChannelStateEvent state_event) {
-      if (disconnected) {
-        return;
-      }
-      switch (state_event.getState()) {
-        case OPEN:
-          if (state_event.getValue() == Boolean.FALSE) {
-            break;  // CLOSED
-          }
-          return;
-        case CONNECTED:
-          if (state_event.getValue() == null) {
-            break;  // DISCONNECTED
-          }
-          return;
-        default:
-          return;  // Not an event we're interested in, ignore it.
+    try {
+      Security.addProvider(new BouncyCastleProvider());
+      final SslContextBuilder builder = SslContextBuilder.forClient()
+          .sslProvider(OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK)
+          // Expect the caller to have verified the certs.
+          .trustManager(readCertificates(certFile));
+      // mTLS is enabled.
+      if (clientCertFile != null) {
+        builder.keyManager(getPrivateKey(clientKeyFile), readCertificates(clientCertFile));
       }
+      sslContext = builder.build();
+      return sslContext;
+    } catch (Exception e) {
+      LOG.error("Exception creating sslContext: ", e);
+      throw new RuntimeException("SSLContext creation failed: " + e.toString());
+    }
+  }
 
-      disconnected = true;  // So we don't clean up the same client twice.
-      try {
-        final TabletClient client = super.get(TabletClient.class);
-        SocketAddress remote = super.getChannel().getRemoteAddress();
-        // At this point Netty gives us no easy way to access the
-        // SocketAddress of the peer we tried to connect to. This
-        // kinda sucks but I couldn't find an easier way.
-        if (remote == null) {
-          remote = slowSearchClientIP(client);
-        }
-
-        // Prevent the client from buffering requests while we invalidate
-        // everything we have about it.
-        synchronized (client) {
-          removeClientFromCache(client, remote);
-        }
-      } catch (Exception e) {
-        log.error("Uncaught exception when handling a disconnection of " + getChannel(), e);
-      }
+  @SuppressWarnings("unchecked")
+  private static X509Certificate[] readCertificates(String file) throws Exception {
+    final CertificateFactory cf = CertificateFactory.getInstance("X.509");
+    try (FileInputStream fis = new FileInputStream(file)) {
+      final List<X509Certificate> certs =
+          (List<X509Certificate>) (List<?>) cf.generateCertificates(fis);
+      return certs.toArray(new X509Certificate[certs.size()]);
+    } catch (Exception e) {
+      LOG.error("Exception generating CA certificate from input file: ", e);
+      throw e;
     }
+  }
 
+  private static PrivateKey getPrivateKey(String keyFile) {
+    try {
+      PemReader pemReader = new PemReader(new FileReader(keyFile));
+      PemObject pemObject = pemReader.readPemObject();
+      pemReader.close();
+      byte[] bytes = pemObject.getContent();
+      PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(bytes);
+      KeyFactory kf = KeyFactory.getInstance("RSA");
+      PrivateKey pk = kf.generatePrivate(spec);
+      return pk;
+    } catch (InvalidKeySpecException e) {
+      LOG.error("Could not read the private key file.", e);
+      throw new RuntimeException("InvalidKeySpecException while reading key: " + keyFile);
+    } catch (Exception e) {
+      LOG.error("Issue reading pem file.", e);
+      throw new RuntimeException("IOException reading key: " + keyFile);
+    }
   }
 
   /**
@@ -2275,33 +3162,72 @@ public class AsyncYBClient implements AutoCloseable {
     }
   }
 
-  /**
-   * Parses a TCP port number from a string.
-   * @param portnum The string to parse.
-   * @return A strictly positive, validated port number.
-   * @throws NumberFormatException if the string couldn't be parsed as an
-   * integer or if the value was outside of the range allowed for TCP ports.
-   */
-  private static int parsePortNumber(final String portnum)
-      throws NumberFormatException {
-    final int port = Integer.parseInt(portnum);
-    if (port <= 0 || port > 65535) {
-      throw new NumberFormatException(port == 0 ? "port is zero" :
-          (port < 0 ? "port is negative: "
-              : "port is too large: ") + port);
-    }
-    return port;
-  }
-
-  void newTimeout(final TimerTask task, final long timeout_ms) {
+  Timeout newTimeout(final TimerTask task, final long timeout_ms) {
     try {
-      timer.newTimeout(task, timeout_ms, MILLISECONDS);
+      if (sharedResources != null) {
+        // A shared timer outlives this client, drop the timeouts of a closed client like stopping
+        // its own timer would.
+        return timer.newTimeout(new TimerTask() {
+          @Override
+          public void run(Timeout timeout) throws Exception {
+            if (!closed) {
+              task.run(timeout);
+            }
+          }
+        }, timeout_ms, MILLISECONDS);
+      }
+      return timer.newTimeout(task, timeout_ms, MILLISECONDS);
     } catch (IllegalStateException e) {
       // This can happen if the timer fires just before shutdown()
       // is called from another thread, and due to how threads get
       // scheduled we tried to call newTimeout() after timer.stop().
       LOG.warn("Failed to schedule timer."
           + "  Ignore this if we're shutting down.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Immutable snapshot of the replicas of a {@link RemoteTablet} along with which one of them
+   * we currently believe to be the leader.
+   */
+  static final class ReplicaSet {
+    static final ReplicaSet EMPTY =
+        new ReplicaSet(Collections.<TabletClient>emptyList(), RemoteTablet.NO_LEADER_INDEX);
+
+    final List<TabletClient> servers;
+    final int leaderIndex;
+
+    ReplicaSet(List<TabletClient> servers, int leaderIndex) {
+      this.servers = Collections.unmodifiableList(servers);
+      this.leaderIndex = leaderIndex;
+    }
+
+    /**
+     * @return the leader, or null if we don't know which replica is the leader
+     */
+    TabletClient getLeader() {
+      return leaderIndex == RemoteTablet.NO_LEADER_INDEX ? null : servers.get(leaderIndex);
+    }
+
+    int indexOf(TabletClient ts) {
+      return servers.indexOf(ts);
+    }
+
+    /**
+     * @return a copy of this snapshot without the replica at {@code index}, the replica after the
+     * removed leader is promoted unless the leader was the last one
+     */
+    ReplicaSet without(int index) {
+      ArrayList<TabletClient> copy = new ArrayList<>(servers);
+      copy.remove(index);
+      int newLeaderIndex = leaderIndex;
+      if (leaderIndex == index && leaderIndex == copy.size()) {
+        newLeaderIndex = RemoteTablet.NO_LEADER_INDEX;
+      } else if (leaderIndex > index) {
+        newLeaderIndex--; // leader moved down the list
+      }
+      return new ReplicaSet(copy, newLeaderIndex);
     }
   }
 
@@ -2310,7 +3236,7 @@ public class AsyncYBClient implements AutoCloseable {
    *
    * Leader failover mechanism:
    * When we get a complete peer list from the master, we place the leader in the first
-   * position of the tabletServers array. When we detect that it isn't the leader anymore (in
+   * position of the replica list. When we detect that it isn't the leader anymore (in
    * TabletClient), we demote it and set the next TS in the array as the leader. When the RPC
    * gets retried, it will use that TS since we always pick the leader.
    *
@@ -2322,7 +3248,7 @@ public class AsyncYBClient implements AutoCloseable {
    * Subtleties:
    * We don't keep track of a TS after it disconnects (via removeTabletServer), so if we
    * haven't contacted one for 10 seconds (socket timeout), it will be removed from the list of
-   * tabletServers. This means that if the leader fails, we only have one other TS to "promote"
+   * replicas. This means that if the leader fails, we only have one other TS to "promote"
    * or maybe none at all. This is partly why we then set leaderIndex to NO_LEADER_INDEX.
    *
    * The effect of treating a TS as the new leader means that the Scanner will also try to hit it
@@ -2337,9 +3263,21 @@ public class AsyncYBClient implements AutoCloseable {
     private static final int NO_LEADER_INDEX = -1;
     private final String tableId;
     private final Slice tabletId;
-    private final ArrayList<TabletClient> tabletServers = new ArrayList<TabletClient>();
     private final Partition partition;
-    private int leaderIndex = NO_LEADER_INDEX;
+
+    /**
+     * The current replicas of this tablet. Readers on the RPC path only do a volatile read of
+     * this reference, writers build a new snapshot and publish it with a compare-and-set.
+     */
+    private final AtomicReference<ReplicaSet> replicas =
+        new AtomicReference<>(ReplicaSet.EMPTY);
+
+    // When the replicas were last refreshed from the master, from System.nanoTime().
+    volatile long refreshedAtNanos = System.nanoTime();
+
+    // Partition list version of the table when the master last returned this tablet, -1 if
+    // unknown.
+    volatile long partitionListVersion = -1;
 
     RemoteTablet(String tableId, Slice tabletId, Partition partition) {
       this.tabletId = tabletId;
@@ -2348,51 +3286,51 @@ public class AsyncYBClient implements AutoCloseable {
     }
 
     void refreshServers(Master.TabletLocationsPB tabletLocations) throws NonRecoverableException {
+      // Resolve the addresses and connect without holding anything, concurrent refreshes simply
+      // race to publish their snapshot and the last one wins.
+      ArrayList<TabletClient> servers = new ArrayList<>(tabletLocations.getReplicasCount());
+      List<UnknownHostException> lookupExceptions =
+          new ArrayList<>(tabletLocations.getReplicasCount());
+      for (Master.TabletLocationsPB.ReplicaPB replica : tabletLocations.getReplicasList()) {
 
-      synchronized (tabletServers) { // TODO not a fat lock with IP resolving in it
-        tabletServers.clear();
-        leaderIndex = NO_LEADER_INDEX;
-        List<UnknownHostException> lookupExceptions =
-            new ArrayList<>(tabletLocations.getReplicasCount());
-        for (Master.TabletLocationsPB.ReplicaPB replica : tabletLocations.getReplicasList()) {
-
-          List<Common.HostPortPB> addresses = replica.getTsInfo().getBroadcastAddressesList();
-          if (addresses.isEmpty()) {
-            addresses = replica.getTsInfo().getPrivateRpcAddressesList();
-          }
-          if (addresses.isEmpty()) {
-            LOG.warn("Tablet server for tablet " + getTabletIdAsString() + " doesn't have any " +
-                "address");
-            continue;
-          }
-          String uuid = replica.getTsInfo().getPermanentUuid().toStringUtf8();
-          // from meta_cache.cc
-          // TODO: if the TS advertises multiple host/ports, pick the right one
-          // based on some kind of policy. For now just use the first always.
-          try {
-            addTabletClient(uuid, addresses.get(0).getHost(), addresses.get(0).getPort(),
-                replica.getRole().equals(Metadata.RaftPeerPB.Role.LEADER));
-          } catch (UnknownHostException ex) {
-            lookupExceptions.add(ex);
-          }
+        List<Common.HostPortPB> addresses = replica.getTsInfo().getBroadcastAddressesList();
+        if (addresses.isEmpty()) {
+          addresses = replica.getTsInfo().getPrivateRpcAddressesList();
         }
-        leaderIndex = 0;
-        if (leaderIndex == NO_LEADER_INDEX) {
-          LOG.warn("No leader provided for tablet " + getTabletIdAsString());
+        if (addresses.isEmpty()) {
+          LOG.warn("Tablet server for tablet " + getTabletIdAsString() + " doesn't have any " +
+              "address");
+          continue;
         }
-
-        // If we found a tablet that doesn't contain a single location that we can resolve, there's
-        // no point in retrying.
-        if (!lookupExceptions.isEmpty() &&
-            lookupExceptions.size() == tabletLocations.getReplicasCount()) {
-          throw new NonRecoverableException("Couldn't find any valid locations, exceptions: " +
-              lookupExceptions);
+        String uuid = replica.getTsInfo().getPermanentUuid().toStringUtf8();
+        // from meta_cache.cc
+        // TODO: if the TS advertises multiple host/ports, pick the right one
+        // based on some kind of policy. For now just use the first always.
+        try {
+          TabletClient client = newTabletClient(uuid, addresses.get(0).getHost(),
+              addresses.get(0).getPort());
+          if (replica.getRole() == Metadata.RaftPeerPB.Role.LEADER) {
+            servers.add(0, client);
+          } else {
+            servers.add(client);
+          }
+        } catch (UnknownHostException ex) {
+          lookupExceptions.add(ex);
         }
       }
+      replicas.set(new ReplicaSet(servers, servers.isEmpty() ? NO_LEADER_INDEX : 0));
+      refreshedAtNanos = System.nanoTime();
+
+      // If we found a tablet that doesn't contain a single location that we can resolve, there's
+      // no point in retrying.
+      if (!lookupExceptions.isEmpty() &&
+          lookupExceptions.size() == tabletLocations.getReplicasCount()) {
+        throw new NonRecoverableException("Couldn't find any valid locations, exceptions: " +
+            lookupExceptions);
+      }
     }
 
-    // Must be called with tabletServers synchronized
-    void addTabletClient(String uuid, String host, int port, boolean isLeader)
+    TabletClient newTabletClient(String uuid, String host, int port)
         throws UnknownHostException {
       String ip = getIP(host);
       if (ip == null) {
@@ -2405,17 +3343,24 @@ public class AsyncYBClient implements AutoCloseable {
       if (tablets == null) {
         // We raced with removeClientFromCache and lost. The client we got was just disconnected.
         // Reconnect.
-        addTabletClient(uuid, host, port, isLeader);
-      } else {
-        synchronized (tablets) {
-          if (isLeader) {
-            tabletServers.add(0, client);
-          } else {
-            tabletServers.add(client);
-          }
-          tablets.add(this);
-        }
+        return newTabletClient(uuid, host, port);
       }
+      synchronized (tablets) {
+        tablets.add(this);
+      }
+      return client;
+    }
+
+    /**
+     * @return the current replica snapshot, never null
+     */
+    ReplicaSet getReplicas() {
+      return replicas.get();
+    }
+
+    @VisibleForTesting
+    void setReplicas(ReplicaSet replicaSet) {
+      replicas.set(replicaSet);
     }
 
     @Override
@@ -2430,22 +3375,16 @@ public class AsyncYBClient implements AutoCloseable {
      * @return True if this method removed ts from the list, else false.
      */
     boolean removeTabletServer(TabletClient ts) {
-      synchronized (tabletServers) {
-        // TODO unit test for this once we have the infra
-        int index = tabletServers.indexOf(ts);
+      while (true) {
+        ReplicaSet current = replicas.get();
+        int index = current.indexOf(ts);
         if (index == -1) {
           return false; // we removed it already
         }
-
-        tabletServers.remove(index);
-        if (leaderIndex == index && leaderIndex == tabletServers.size()) {
-          leaderIndex = NO_LEADER_INDEX;
-        } else if (leaderIndex > index) {
-          leaderIndex--; // leader moved down the list
-        }
-
-        return true;
         // TODO if we reach 0 TS, maybe we should remove ourselves?
+        if (replicas.compareAndSet(current, current.without(index))) {
+          return true;
+        }
       }
     }
 
@@ -2456,20 +3395,17 @@ public class AsyncYBClient implements AutoCloseable {
      * @param ts A TabletClient that gave a sign that it isn't this tablet's leader.
      */
     void demoteLeader(TabletClient ts) {
-      synchronized (tabletServers) {
-        int index = tabletServers.indexOf(ts);
-        // If this TS was removed or we're already forcing a call to the master (meaning someone
-        // else beat us to it), then we just noop.
-        if (index == -1 || leaderIndex == NO_LEADER_INDEX) {
+      while (true) {
+        ReplicaSet current = replicas.get();
+        int index = current.indexOf(ts);
+        // If this TS was removed, isn't the leader anymore or we're already forcing a call to the
+        // master (meaning someone else beat us to it), then we just noop.
+        if (index == -1 || current.leaderIndex != index) {
           return;
         }
-
-        if (leaderIndex == index) {
-          if (leaderIndex + 1 == tabletServers.size()) {
-            leaderIndex = NO_LEADER_INDEX;
-          } else {
-            leaderIndex++;
-          }
+        int newLeaderIndex = index + 1 == current.servers.size() ? NO_LEADER_INDEX : index + 1;
+        if (replicas.compareAndSet(current, new ReplicaSet(current.servers, newLeaderIndex))) {
+          return;
         }
       }
     }
@@ -2540,8 +3476,7 @@ public class AsyncYBClient implements AutoCloseable {
    */
   public final static class AsyncYBClientBuilder {
     private static final int DEFAULT_MASTER_PORT = 7100;
-    private static final int DEFAULT_BOSS_COUNT = 1;
-    private static final int DEFAULT_WORKER_COUNT = 2 * Runtime.getRuntime().availableProcessors();
+    static final int DEFAULT_WORKER_COUNT = 2 * Runtime.getRuntime().availableProcessors();
 
     private final List<HostAndPort> masterAddresses;
     private long defaultAdminOperationTimeoutMs = DEFAULT_OPERATION_TIMEOUT_MS;
@@ -2554,10 +3489,16 @@ public class AsyncYBClient implements AutoCloseable {
     private String clientHost = null;
     private int clientPort = 0;
 
-    private Executor bossExecutor;
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private int tableLocationsPrefetch = DEFAULT_TABLE_LOCATIONS_PREFETCH;
+    private long tabletsCacheTtlMs = 0;
+    private long tabletsCacheRefreshIntervalMs = 0;
+    private int writeCoalesceMaxBytes = 0;
+    private long writeCoalesceDelayMs = 0;
+
     private Executor workerExecutor;
-    private int bossCount = DEFAULT_BOSS_COUNT;
     private int workerCount = DEFAULT_WORKER_COUNT;
+    private ClientResources sharedResources;
 
     /**
      * Creates a new builder for a client that will connect to the specified masters.
@@ -2676,16 +3617,94 @@ public class AsyncYBClient implements AutoCloseable {
     }
 
     /**
-     * Set the executors which will be used for the embedded Netty boss and workers.
+     * Sets how long to wait between the attempts of an RPC and how many retries can be done.
+     * Optional.
+     * If not provided, defaults to {@link RetryPolicy#DEFAULT}.
+     * @param retryPolicy the retry policy
+     * @return this builder
+     */
+    public AsyncYBClientBuilder retryPolicy(RetryPolicy retryPolicy) {
+      Preconditions.checkNotNull(retryPolicy, "retryPolicy cannot be null");
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Sets how many tablet locations to fetch from the master when looking up a tablet. The
+     * tablets following the one looked up are cached along with it.
      * Optional.
-     * If not provided, uses a simple cached threadpool. If either argument is null,
-     * then such a thread pool will be used in place of that argument.
-     * Note: executor's max thread number must be greater or equal to corresponding
+     * If not provided, defaults to 100.
+     * @param count a number of tablets, must be greater than 0
+     * @return this builder
+     */
+    public AsyncYBClientBuilder tableLocationsPrefetch(int count) {
+      Preconditions.checkArgument(count > 0, "count should be greater than 0");
+      this.tableLocationsPrefetch = count;
+      return this;
+    }
+
+    /**
+     * Sets how long the cached location of a tablet is used before the locations of its table
+     * are reloaded from the master. The reload happens in the background, RPCs keep using the
+     * cached locations meanwhile.
+     * Optional.
+     * If not provided, defaults to 0 which keeps locations until an RPC fails because of them.
+     * @param ttlMs a duration in milliseconds
+     * @return this builder
+     */
+    public AsyncYBClientBuilder tabletsCacheTtlMs(long ttlMs) {
+      Preconditions.checkArgument(ttlMs >= 0, "ttlMs should not be negative");
+      this.tabletsCacheTtlMs = ttlMs;
+      return this;
+    }
+
+    /**
+     * Sets how often the tables this client sent RPCs to are checked for tablet splits. The
+     * locations of a table are reloaded as soon as the master reports a new partition list.
+     * Optional.
+     * If not provided, defaults to 0 which disables the checks.
+     * @param intervalMs an interval in milliseconds
+     * @return this builder
+     */
+    public AsyncYBClientBuilder tabletsCacheRefreshIntervalMs(long intervalMs) {
+      Preconditions.checkArgument(intervalMs >= 0, "intervalMs should not be negative");
+      this.tabletsCacheRefreshIntervalMs = intervalMs;
+      return this;
+    }
+
+    /**
+     * Enables write coalescing: RPCs sent to the same server around the same time are gathered
+     * and written to the socket together, instead of doing one write per RPC. This trades a little
+     * latency for fewer syscalls and TCP segments when many small RPCs are in flight.
+     * <p>
+     * Gathered RPCs are written out once they add up to {@code maxBytes}, or after
+     * {@code maxDelayMs}. With a delay of 0 they are written as soon as the connection's IO
+     * thread is free, which only gathers the RPCs sent while it was busy. Delays are rounded up to
+     * the tick of the client's timer, 20ms.
+     * Optional.
+     * If not provided, write coalescing is disabled.
+     * @param maxBytes a number of bytes, must be greater than 0
+     * @param maxDelayMs a delay in milliseconds
+     * @return this builder
+     */
+    public AsyncYBClientBuilder writeCoalescing(int maxBytes, long maxDelayMs) {
+      Preconditions.checkArgument(maxBytes > 0, "maxBytes should be greater than 0");
+      Preconditions.checkArgument(maxDelayMs >= 0, "maxDelayMs should not be negative");
+      this.writeCoalesceMaxBytes = maxBytes;
+      this.writeCoalesceDelayMs = maxDelayMs;
+      return this;
+    }
+
+    /**
+     * Set the executor which will be used for the embedded Netty event loops.
+     * Optional.
+     * If not provided, each event loop starts its own daemon thread. The boss executor is
+     * ignored, the event loops make the connections themselves.
+     * Note: executor's max thread number must be greater or equal to the
      * worker count, or netty cannot start enough threads, and client will get stuck.
      * If not sure, please just use CachedThreadPool.
      */
     public AsyncYBClientBuilder nioExecutors(Executor bossExecutor, Executor workerExecutor) {
-      this.bossExecutor = bossExecutor;
       this.workerExecutor = workerExecutor;
       return this;
     }
@@ -2693,16 +3712,17 @@ public class AsyncYBClient implements AutoCloseable {
     /**
      * Set the maximum number of boss threads.
      * Optional.
-     * If not provided, 1 is used.
+     * @deprecated ignored, there are no boss threads anymore: the event loops, see
+     * {@link #workerCount}, make the connections themselves.
      */
+    @Deprecated
     public AsyncYBClientBuilder bossCount(int bossCount) {
       Preconditions.checkArgument(bossCount > 0, "bossCount should be greater than 0");
-      this.bossCount = bossCount;
       return this;
     }
 
     /**
-     * Set the maximum number of worker threads.
+     * Set the number of Netty event loops, each has its own thread.
      * Optional.
      * If not provided, (2 * the number of available processors) is used.
      */
@@ -2713,22 +3733,14 @@ public class AsyncYBClient implements AutoCloseable {
     }
 
     /**
-     * Creates the channel factory for Netty. The user can specify the executors, but
-     * if they don't, we'll use a simple thread pool.
+     * Share the Netty threads and the timer of the given resources with other clients instead of
+     * creating them for this client, see {@link ClientResources}. The executors and thread counts
+     * set on this builder are then ignored.
+     * Optional.
      */
-    private NioClientSocketChannelFactory createChannelFactory() {
-      Executor boss = bossExecutor;
-      Executor worker = workerExecutor;
-      if (boss == null || worker == null) {
-        Executor defaultExec = Executors.newCachedThreadPool(
-            new ThreadFactoryBuilder()
-                .setNameFormat("yb-nio-%d")
-                .setDaemon(true)
-                .build());
-        if (boss == null) boss = defaultExec;
-        if (worker == null) worker = defaultExec;
-      }
-      return new NioClientSocketChannelFactory(boss, worker, bossCount, workerCount);
+    public AsyncYBClientBuilder sharedResources(ClientResources resources) {
+      this.sharedResources = resources;
+      return this;
     }
 
     /**
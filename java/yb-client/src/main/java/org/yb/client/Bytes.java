@@ -40,17 +40,16 @@
 //
 package org.yb.client;
 
+import com.google.common.primitives.UnsignedBytes;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.util.Slice;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.util.CharsetUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -410,7 +409,7 @@ public final class Bytes {
    * @param buf The buffer to read from.
    * @return The integer read.
    */
-  static int readVarInt32(final ChannelBuffer buf) {
+  static int readVarInt32(final ByteBuf buf) {
     int result = buf.readByte();
     if (result >= 0) {
       return result;
@@ -819,77 +818,16 @@ public final class Bytes {
 
   // Ugly stuff
   // ----------
-  // Background: when using ReplayingDecoder (which makes it easy to deal with
-  // unframed RPC responses), the ChannelBuffer we manipulate is in fact a
-  // ReplayingDecoderBuffer, a package-private class that Netty uses.  This
-  // class, for some reason, throws UnsupportedOperationException on its
-  // array() method.  This method is unfortunately the only way to easily dump
-  // the contents of a ChannelBuffer, which is useful for debugging or logging
-  // unexpected buffers.  An issue (NETTY-346) has been filed to get access to
-  // the buffer, but the resolution was useless: instead of making the array()
-  // method work, a new internalBuffer() method was added on ReplayingDecoder,
-  // which would require that we keep a reference on the ReplayingDecoder all
-  // along in order to properly convert the buffer to a string.
-  // So we instead use ugly reflection to gain access to the underlying buffer
-  // while taking into account that the implementation of Netty has changed
-  // over time, so depending which version of Netty we're working with, we do
-  // a different hack.  Yes this is horrible, but it's for the greater good as
-  // this is what allows us to debug unexpected buffers when deserializing RPCs
-  // and what's more important than being able to debug unexpected stuff?
-  private static final Class<?> ReplayingDecoderBuffer;
-  private static final Field RDB_buffer;  // For Netty 3.5.0 and before.
-  private static final Method RDB_buf;    // For Netty 3.5.1 and above.
-  static {
-    try {
-      ReplayingDecoderBuffer = Class.forName("org.jboss.netty.handler.codec."
-          + "replay.ReplayingDecoderBuffer");
-      Field field = null;
-      try {
-        field = ReplayingDecoderBuffer.getDeclaredField("buffer");
-        field.setAccessible(true);
-      } catch (NoSuchFieldException e) {
-        // Ignore.  Field has been removed in Netty 3.5.1.
-      }
-      RDB_buffer = field;
-      if (field != null) {  // Netty 3.5.0 or before.
-        RDB_buf = null;
-      } else {
-        RDB_buf = ReplayingDecoderBuffer.getDeclaredMethod("buf");
-        RDB_buf.setAccessible(true);
-      }
-    } catch (Exception e) {
-      throw new RuntimeException("static initializer failed", e);
-    }
-  }
-
   /**
    * Pretty-prints all the bytes of a buffer into a human-readable string.
    * @param buf The (possibly {@code null}) buffer to pretty-print.
    * @return The buffer in a pretty-printed string.
    */
-  public static String pretty(final ChannelBuffer buf) {
+  public static String pretty(final ByteBuf buf) {
     if (buf == null) {
       return "null";
     }
-    byte[] array;
-    try {
-      if (buf.getClass() != ReplayingDecoderBuffer) {
-        array = buf.array();
-      } else if (RDB_buf != null) {  // Netty 3.5.1 and above.
-        array = ((ChannelBuffer) RDB_buf.invoke(buf)).array();
-      } else {  // Netty 3.5.0 and before.
-        final ChannelBuffer wrapped_buf = (ChannelBuffer) RDB_buffer.get(buf);
-        array = wrapped_buf.array();
-      }
-    } catch (UnsupportedOperationException e) {
-      return "(failed to extract content of buffer of type "
-          + buf.getClass().getName() + ')';
-    } catch (IllegalAccessException e) {
-      throw new AssertionError("Should not happen: " + e);
-    } catch (InvocationTargetException e) {
-      throw new AssertionError("Should not happen: " + e);
-    }
-    return pretty(array);
+    return pretty(ByteBufUtil.getBytes(buf));
   }
 
   // ---------------------- //
@@ -916,25 +854,30 @@ public final class Bytes {
 
   }
 
+  /**
+   * Compares byte arrays 8 bytes at a time where the JVM allows it, falling back to a byte by byte
+   * comparison otherwise.
+   */
+  private static final Comparator<byte[]> LEXICOGRAPHICAL =
+      UnsignedBytes.lexicographicalComparator();
+
   /**
    * {@code memcmp} in Java, hooray.
    * @param a First non-{@code null} byte array to compare.
    * @param b Second non-{@code null} byte array to compare.
-   * @return 0 if the two arrays are identical, otherwise the difference
-   * between the first two different bytes, otherwise the different between
-   * their lengths.
+   * @return 0 if the two arrays are identical, otherwise a negative number if
+   * {@code a} comes first when comparing unsigned bytes and then lengths, and a
+   * positive number if {@code b} does.
    */
   public static int memcmp(final byte[] a, final byte[] b) {
-    final int length = Math.min(a.length, b.length);
-    if (a == b) {  // Do this after accessing a.length and b.length
-      return 0;    // in order to NPE if either a or b is null.
+    if (a.length == 0 || b.length == 0 || a == b) {  // Check the lengths first
+      return a.length - b.length;                     // in order to NPE if a or b is null.
     }
-    for (int i = 0; i < length; i++) {
-      if (a[i] != b[i]) {
-        return (a[i] & 0xFF) - (b[i] & 0xFF);  // "promote" to unsigned.
-      }
+    // Most keys already differ on their first byte, don't pay for the word comparison then.
+    if (a[0] != b[0]) {
+      return (a[0] & 0xFF) - (b[0] & 0xFF);  // "promote" to unsigned.
     }
-    return a.length - b.length;
+    return LEXICOGRAPHICAL.compare(a, b);
   }
 
   /**
@@ -37,7 +37,7 @@ import org.yb.annotations.InterfaceAudience;
 import org.yb.rpc.RpcHeader;
 import org.yb.util.Slice;
 
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 /**
  * This class handles information received from an RPC response, providing
@@ -45,12 +45,11 @@ import org.jboss.netty.buffer.ChannelBuffer;
  */
 @InterfaceAudience.Private
 final class CallResponse {
-  private final ChannelBuffer buf;
   private final RpcHeader.ResponseHeader header;
   private final int totalResponseSize;
 
-  // Non-header main message slice is generated upon request and cached.
-  private Slice message = null;
+  // Slice over the main message and the sidecars, null for empty responses.
+  private final Slice message;
 
   /**
    * Performs some sanity checks on the sizes recorded in the packet
@@ -61,13 +60,11 @@ final class CallResponse {
    * @param buf Channel buffer which call response reads from.
    * @throws IllegalArgumentException If either the entire recorded packet
    * size or recorded response header PB size are not within reasonable
-   * limits as defined by {@link YRpc#checkArrayLength(ChannelBuffer, long)}.
-   * @throws IndexOutOfBoundsException if the ChannelBuffer does not contain
+   * limits as defined by {@link YRpc#checkArrayLength(ByteBuf, long)}.
+   * @throws IndexOutOfBoundsException if the ByteBuf does not contain
    * the amount of bytes specified by its length prefix.
    */
-  public CallResponse(final ChannelBuffer buf) {
-    this.buf = buf;
-
+  public CallResponse(final ByteBuf buf) {
     this.totalResponseSize = buf.readInt();
     if (this.totalResponseSize > 0) {
       YRpc.checkArrayLength(buf, this.totalResponseSize);
@@ -78,8 +75,13 @@ final class CallResponse {
       RpcHeader.ResponseHeader.Builder builder = RpcHeader.ResponseHeader.newBuilder();
       YRpc.readProtobuf(headerSlice, builder);
       this.header = builder.build();
+      // Consume the rest of the frame now, so that the next response starts at the right place
+      // even if the RPC doesn't look at its message.
+      final int messageSize = Bytes.readVarInt32(buf);
+      this.message = nextBytes(buf, messageSize);
     } else {
       this.header = null;
+      this.message = null;
     }
   }
 
@@ -104,12 +106,11 @@ final class CallResponse {
    * protobuf message.
    * @throws IllegalArgumentException If the recorded size for the main message
    * is not within reasonable limits as defined by
-   * {@link YRpc#checkArrayLength(ChannelBuffer, long)}.
+   * {@link YRpc#checkArrayLength(ByteBuf, long)}.
    * @throws IllegalStateException If the offset for the main protobuf message
    * is not valid.
    */
   public Slice getPBMessage() {
-    cacheMessage();
     final int mainLength = this.header.getSidecarOffsetsCount() == 0 ?
         this.message.length() : this.header.getSidecarOffsets(0);
     if (mainLength < 0 || mainLength > this.message.length()) {
@@ -129,11 +130,9 @@ final class CallResponse {
    * does not exist.
    * @throws IllegalArgumentException If the recorded size for the main message
    * is not within reasonable limits as defined by
-   * {@link YRpc#checkArrayLength(ChannelBuffer, long)}.
+   * {@link YRpc#checkArrayLength(ByteBuf, long)}.
    */
   public Slice getSidecar(int sidecar) {
-    cacheMessage();
-
     List<Integer> sidecarList = this.header.getSidecarOffsetsList();
     if (sidecar < 0 || sidecar > sidecarList.size()) {
       throw new IllegalArgumentException("Sidecar " + sidecar
@@ -154,32 +153,26 @@ final class CallResponse {
     return subslice(this.message, prevOffset, length);
   }
 
-  // Reads the message after the header if not read yet
-  private void cacheMessage() {
-    if (this.message != null) return;
-    final int length = Bytes.readVarInt32(buf);
-    this.message = nextBytes(buf, length);
-  }
-
   // Accounts for a parent slice's offset when making a new one with relative offsets.
   private static Slice subslice(Slice parent, int offset, int length) {
     return new Slice(parent.getRawArray(), parent.getRawOffset() + offset, length);
   }
 
-  // After checking the length, generates a slice for the next 'length'
-  // bytes of 'buf'.
-  private static Slice nextBytes(final ChannelBuffer buf, final int length) {
+  // After checking the length, generates a slice for the next 'length' bytes of 'buf' and
+  // advances its reader index past them. The slice points into the buffer's own array when it has
+  // one, which it does once TabletClient gathered the reads on the heap, so it's only valid until
+  // decode() returns and Netty reuses the buffer.
+  private static Slice nextBytes(final ByteBuf buf, final int length) {
     YRpc.checkArrayLength(buf, length);
-    byte[] payload;
-    int offset;
+    final Slice slice;
     if (buf.hasArray()) {  // Zero copy.
-      payload = buf.array();
-      offset = buf.arrayOffset() + buf.readerIndex();
-    } else {  // We have to copy the entire payload out of the buffer :(
-      payload = new byte[length];
-      buf.readBytes(payload);
-      offset = 0;
+      slice = new Slice(buf.array(), buf.arrayOffset() + buf.readerIndex(), length);
+    } else {  // Direct buffer, copy the payload out of it.
+      final byte[] payload = new byte[length];
+      buf.getBytes(buf.readerIndex(), payload);
+      slice = new Slice(payload, 0, length);
     }
-    return new Slice(payload, offset, length);
+    buf.skipBytes(length);
+    return slice;
   }
 }
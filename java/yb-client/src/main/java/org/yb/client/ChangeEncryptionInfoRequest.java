@@ -13,7 +13,7 @@
 
 package org.yb.client;
 
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.master.Master;
 import org.yb.util.Pair;
@@ -32,13 +32,13 @@ class ChangeEncryptionInfoRequest extends YRpc<ChangeEncryptionInfoResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.ChangeEncryptionInfoRequestPB.Builder builder =
       Master.ChangeEncryptionInfoRequestPB.newBuilder()
         .setEncryptionEnabled(this.encryptionEnabled)
         .setKeyPath(this.encryptionKeyFile);
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
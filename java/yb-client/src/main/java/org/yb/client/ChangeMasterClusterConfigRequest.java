@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import org.yb.annotations.InterfaceAudience;
 import org.yb.Common.HostPortPB;
@@ -39,13 +39,13 @@ class ChangeMasterClusterConfigRequest extends YRpc<ChangeMasterClusterConfigRes
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.ChangeMasterClusterConfigRequestPB.Builder builder =
       Master.ChangeMasterClusterConfigRequestPB.newBuilder();
     builder.setClusterConfig(clusterConfig);
 
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -0,0 +1,138 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yb.annotations.InterfaceAudience;
+import org.yb.annotations.InterfaceStability;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The threads behind the connections of a client: the Netty event loops, which make, read and
+ * write the connections, and the timer of timeouts and retries. By default every client has its own,
+ * clients built with {@link AsyncYBClient.AsyncYBClientBuilder#sharedResources} share these
+ * instead, so that a process talking to many universes keeps the same number of threads however
+ * many clients it has.
+ * <p>
+ * The resources are reference counted. Whoever creates them holds the first reference and gives
+ * it up with {@link #close()}, each client holds one until it is shut down. The threads stop when
+ * the last reference is released.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class ClientResources implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(ClientResources.class);
+
+  // How long the event loops may take to run the tasks they have left when released.
+  static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+  private final EventLoopGroup eventLoopGroup;
+  private final Class<? extends Channel> channelClass;
+  private final HashedWheelTimer timer;
+
+  // Guarded by this.
+  private int refCount = 1;
+  private boolean closed;
+
+  /**
+   * Creates resources with as many event loops as a client has by default, twice as many as there
+   * are processors.
+   */
+  public ClientResources() {
+    this(AsyncYBClient.AsyncYBClientBuilder.DEFAULT_WORKER_COUNT);
+  }
+
+  /**
+   * Creates resources with the given number of Netty event loops.
+   * @param workerCount the number of event loops, each has its own thread
+   */
+  public ClientResources(int workerCount) {
+    Preconditions.checkArgument(workerCount > 0, "workerCount should be greater than 0");
+    this.eventLoopGroup =
+        NettyTransport.newEventLoopGroup(workerCount, null, "yb-nio-shared");
+    this.channelClass = NettyTransport.channelClass(eventLoopGroup);
+    this.timer = new HashedWheelTimer(
+        new ThreadFactoryBuilder()
+            .setNameFormat("yb-timer-shared-%d")
+            .setDaemon(true)
+            .build(),
+        20, MILLISECONDS);
+  }
+
+  EventLoopGroup getEventLoopGroup() {
+    return eventLoopGroup;
+  }
+
+  Class<? extends Channel> getChannelClass() {
+    return channelClass;
+  }
+
+  HashedWheelTimer getTimer() {
+    return timer;
+  }
+
+  /**
+   * Takes a reference for a client.
+   * @throws IllegalStateException if the last reference was already released
+   */
+  synchronized void retain() {
+    Preconditions.checkState(refCount > 0, "The client resources were already released");
+    refCount++;
+  }
+
+  /**
+   * Gives up a reference, stops the threads if it was the last one.
+   */
+  void release() {
+    synchronized (this) {
+      Preconditions.checkState(refCount > 0, "The client resources were already released");
+      if (--refCount > 0) {
+        return;
+      }
+    }
+    LOG.debug("Releasing the shared client resources");
+    timer.stop();
+    // Doesn't wait, so the last client may release its reference from one of the event loops.
+    eventLoopGroup.shutdownGracefully(0, SHUTDOWN_TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @VisibleForTesting
+  synchronized int refCount() {
+    return refCount;
+  }
+
+  /**
+   * Releases the reference of the creator. Clients still using the resources keep working, the
+   * threads stop once they are all shut down.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    release();
+  }
+}
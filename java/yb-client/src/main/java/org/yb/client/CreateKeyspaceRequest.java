@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import org.yb.annotations.InterfaceAudience;
 import org.yb.Common.HostPortPB;
@@ -46,7 +46,7 @@ class CreateKeyspaceRequest extends YRpc<CreateKeyspaceResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.CreateNamespaceRequestPB.Builder builder =
       Master.CreateNamespaceRequestPB.newBuilder();
@@ -54,7 +54,7 @@ class CreateKeyspaceRequest extends YRpc<CreateKeyspaceResponse> {
     if (this.databaseType != null)
       builder.setDatabaseType(this.databaseType);
 
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
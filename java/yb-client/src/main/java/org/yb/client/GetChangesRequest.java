@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import org.yb.Opid;
 import org.yb.cdc.CdcService;
 import org.yb.util.Pair;
@@ -37,7 +37,7 @@ public class GetChangesRequest extends YRpc<GetChangesResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final GetChangesRequestPB.Builder builder = GetChangesRequestPB.newBuilder();
     builder.setStreamId(ByteString.copyFromUtf8(this.streamId));
@@ -48,7 +48,7 @@ public class GetChangesRequest extends YRpc<GetChangesResponse> {
       checkpointBuilder.setOpId(Opid.OpIdPB.newBuilder().setIndex(this.index).setTerm(this.term));
       builder.setFromCheckpoint(checkpointBuilder);
     }
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
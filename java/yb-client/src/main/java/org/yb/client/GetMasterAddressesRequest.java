@@ -13,7 +13,7 @@
 
 package org.yb.client;
 
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.tserver.Tserver;
 import org.yb.util.Pair;
@@ -27,11 +27,11 @@ class GetMasterAddressesRequest extends YRpc<GetMasterAddressesResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Tserver.GetMasterAddressesRequestPB.Builder builder =
         Tserver.GetMasterAddressesRequestPB.newBuilder();
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
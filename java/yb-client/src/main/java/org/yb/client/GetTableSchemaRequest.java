@@ -39,7 +39,7 @@ import org.yb.IndexInfo;
 import org.yb.Schema;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.util.Pair;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import java.util.List;
 
@@ -65,7 +65,7 @@ public class GetTableSchemaRequest extends YRpc<GetTableSchemaResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     assert name != null || uuid != null;
     final GetTableSchemaRequestPB.Builder builder = GetTableSchemaRequestPB.newBuilder();
@@ -80,7 +80,7 @@ public class GetTableSchemaRequest extends YRpc<GetTableSchemaResponse> {
     tableID = tbuilder.build();
 
     builder.setTable(tableID);
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import org.yb.util.Pair;
 
 import org.yb.master.Master;
@@ -29,12 +29,12 @@ public class HasUniverseKeyInMemoryRequest extends YRpc<HasUniverseKeyInMemoryRe
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.HasUniverseKeyInMemoryRequestPB.Builder builder =
             Master.HasUniverseKeyInMemoryRequestPB.newBuilder();
     builder.setVersionId(universeKeyId);
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -14,7 +14,7 @@
 package org.yb.client;
 
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 import org.yb.util.Pair;
 
 import org.yb.master.Master;
@@ -26,11 +26,11 @@ public class IsEncryptionEnabledRequest extends YRpc<IsEncryptionEnabledResponse
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.IsEncryptionEnabledRequestPB.Builder builder =
             Master.IsEncryptionEnabledRequestPB.newBuilder();
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
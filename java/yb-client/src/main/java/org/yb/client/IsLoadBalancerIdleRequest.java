@@ -15,7 +15,7 @@ package org.yb.client;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import org.yb.annotations.InterfaceAudience;
 import org.yb.master.Master;
@@ -31,11 +31,11 @@ class IsLoadBalancerIdleRequest extends YRpc<IsLoadBalancerIdleResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.IsLoadBalancerIdleRequestPB.Builder builder =
       Master.IsLoadBalancerIdleRequestPB.newBuilder();
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -21,7 +21,7 @@ import org.yb.annotations.InterfaceAudience;
 import org.yb.master.Master;
 import org.yb.util.Pair;
 import org.yb.util.ServerInfo;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,11 +33,11 @@ class ListMastersRequest extends YRpc<ListMastersResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.ListMastersRequestPB.Builder builder =
       Master.ListMastersRequestPB.newBuilder();
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
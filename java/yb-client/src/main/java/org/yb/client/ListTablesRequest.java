@@ -36,7 +36,7 @@ import org.yb.annotations.InterfaceAudience;
 import org.yb.Common.YQLDatabase;
 import org.yb.master.Master;
 import org.yb.util.Pair;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -57,7 +57,7 @@ class ListTablesRequest extends YRpc<ListTablesResponse> {
   }
 
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final Master.ListTablesRequestPB.Builder builder =
         Master.ListTablesRequestPB.newBuilder();
@@ -73,7 +73,7 @@ class ListTablesRequest extends YRpc<ListTablesResponse> {
           namespaceBuilder.setName(namespace);
           builder.setNamespace(namespaceBuilder.build());
     }
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
@@ -38,7 +38,7 @@ import org.yb.annotations.InterfaceAudience;
 import org.yb.util.Pair;
 import org.yb.util.ServerInfo;
 import org.yb.Common.HostPortPB;
-import org.jboss.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -50,10 +50,10 @@ public class ListTabletServersRequest extends YRpc<ListTabletServersResponse> {
     super(masterTable);
   }
   @Override
-  ChannelBuffer serialize(Message header) {
+  ByteBuf serialize(Message header) {
     assert header.isInitialized();
     final ListTabletServersRequestPB.Builder builder = ListTabletServersRequestPB.newBuilder();
-    return toChannelBuffer(header, builder.build());
+    return toByteBuf(header, builder.build());
   }
 
   @Override
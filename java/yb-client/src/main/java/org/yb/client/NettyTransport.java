@@ -0,0 +1,87 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.concurrent.Executor;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ThreadPerTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the Netty transport of the connections: the native epoll one when
+ * netty-transport-native-epoll is on the classpath and works on this platform, NIO otherwise.
+ * The epoll classes are only reached by reflection so that the dependency stays optional. Setting
+ * the {@code io.netty.transport.noNative} system property turns epoll off.
+ */
+final class NettyTransport {
+  private static final Logger LOG = LoggerFactory.getLogger(NettyTransport.class);
+
+  private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+  private static final boolean EPOLL_AVAILABLE = isEpollAvailable();
+
+  private NettyTransport() {
+  }
+
+  private static boolean isEpollAvailable() {
+    try {
+      return (Boolean) Class.forName(EPOLL_PACKAGE + "Epoll").getMethod("isAvailable").invoke(null);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return false;  // Not on the classpath.
+    }
+  }
+
+  /**
+   * Creates the event loops which make, read and write the connections.
+   * @param numThreads the number of event loops, each has its own thread
+   * @param executor where the threads of the event loops come from, or null to start daemon
+   * threads named after {@code threadPrefix}
+   * @param threadPrefix the name prefix of the threads started when there's no executor
+   */
+  static EventLoopGroup newEventLoopGroup(int numThreads, Executor executor, String threadPrefix) {
+    if (executor == null) {
+      executor = new ThreadPerTaskExecutor(new DefaultThreadFactory(threadPrefix, true));
+    }
+    if (EPOLL_AVAILABLE) {
+      try {
+        return (EventLoopGroup) Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup")
+            .getConstructor(int.class, Executor.class)
+            .newInstance(numThreads, executor);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        LOG.warn("Failed to create epoll event loops, using NIO instead", e);
+      }
+    }
+    return new NioEventLoopGroup(numThreads, executor);
+  }
+
+  /**
+   * @return the class of the connections which work with the given event loops
+   */
+  static Class<? extends Channel> channelClass(EventLoopGroup group) {
+    if (group instanceof NioEventLoopGroup) {
+      return NioSocketChannel.class;
+    }
+    try {
+      return Class.forName(EPOLL_PACKAGE + "EpollSocketChannel").asSubclass(Channel.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("No channel class for " + group, e);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.yb.annotations.InterfaceAudience;
+import org.yb.annotations.InterfaceStability;
+
+/**
+ * Counts the retries done by an {@link AsyncYBClient} and how long they slept for.
+ * All the methods are thread-safe, the values are read without stopping the writers so they may
+ * be slightly out of sync with each other.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class RetryMetrics {
+  /**
+   * Upper bounds, inclusive and in milliseconds, of the buckets of the sleep histogram. The last
+   * bucket of the histogram counts the sleeps longer than the last bound.
+   */
+  public static final long[] SLEEP_BUCKET_BOUNDS_MS =
+      { 0, 10, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+  private final LongAdder backoffRetries = new LongAdder();
+  private final LongAdder leaderChangeRetries = new LongAdder();
+  private final LongAdder budgetExhausted = new LongAdder();
+  private final LongAdder totalSleepMs = new LongAdder();
+  private final AtomicLongArray sleepHistogram =
+      new AtomicLongArray(SLEEP_BUCKET_BOUNDS_MS.length + 1);
+
+  RetryMetrics() {
+  }
+
+  void recordBackoffRetry(long sleepMs) {
+    backoffRetries.increment();
+    recordSleep(sleepMs);
+  }
+
+  void recordLeaderChangeRetry(long sleepMs) {
+    leaderChangeRetries.increment();
+    recordSleep(sleepMs);
+  }
+
+  void recordBudgetExhausted() {
+    budgetExhausted.increment();
+  }
+
+  private void recordSleep(long sleepMs) {
+    totalSleepMs.add(sleepMs);
+    int bucket = 0;
+    while (bucket < SLEEP_BUCKET_BOUNDS_MS.length && sleepMs > SLEEP_BUCKET_BOUNDS_MS[bucket]) {
+      bucket++;
+    }
+    sleepHistogram.incrementAndGet(bucket);
+  }
+
+  /**
+   * @return the number of retries that backed off before being sent again
+   */
+  public long getBackoffRetries() {
+    return backoffRetries.sum();
+  }
+
+  /**
+   * @return the number of retries sent right away to a new leader after a NOT_THE_LEADER error
+   */
+  public long getLeaderChangeRetries() {
+    return leaderChangeRetries.sum();
+  }
+
+  /**
+   * @return the number of RPCs failed because the retry budget was empty
+   */
+  public long getBudgetExhausted() {
+    return budgetExhausted.sum();
+  }
+
+  /**
+   * @return the sum of all the sleeps done before retries, in milliseconds
+   */
+  public long getTotalSleepMs() {
+    return totalSleepMs.sum();
+  }
+
+  /**
+   * @return a copy of the sleep histogram, bucket i counts the sleeps no longer than
+   * {@link #SLEEP_BUCKET_BOUNDS_MS}[i] and longer than the previous bound
+   */
+  public long[] getSleepHistogram() {
+    long[] copy = new long[sleepHistogram.length()];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = sleepHistogram.get(i);
+    }
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("RetryMetrics(backoffRetries=").append(getBackoffRetries());
+    buf.append(", leaderChangeRetries=").append(getLeaderChangeRetries());
+    buf.append(", budgetExhausted=").append(getBudgetExhausted());
+    buf.append(", totalSleepMs=").append(getTotalSleepMs());
+    buf.append(", sleepHistogram=[");
+    long[] histogram = getSleepHistogram();
+    for (int i = 0; i < histogram.length; i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      buf.append(i < SLEEP_BUCKET_BOUNDS_MS.length ? "<=" + SLEEP_BUCKET_BOUNDS_MS[i] :
+          ">" + SLEEP_BUCKET_BOUNDS_MS[i - 1]).append("ms: ").append(histogram[i]);
+    }
+    buf.append("])");
+    return buf.toString();
+  }
+}
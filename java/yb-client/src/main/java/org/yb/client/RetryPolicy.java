@@ -0,0 +1,184 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Preconditions;
+import org.yb.annotations.InterfaceAudience;
+import org.yb.annotations.InterfaceStability;
+
+/**
+ * Controls how {@link AsyncYBClient} waits between attempts of an RPC.
+ * <p>
+ * Sleeps follow the "decorrelated jitter" exponential backoff: each sleep is picked uniformly
+ * between the base delay and three times the previous sleep, capped at the max delay. This keeps
+ * the expected wait growing exponentially while spreading clients that failed at the same time,
+ * e.g. after a master failover, so they don't retry in lockstep.
+ * <p>
+ * Retries caused by an error can also be limited by a per-client token bucket: every retry takes
+ * one token and every successful RPC puts back a fraction of one. When the bucket is empty RPCs
+ * fail instead of being retried, so a failing cluster doesn't get an ever growing retry storm.
+ * <p>
+ * Instances are immutable, use {@link Builder} to create one.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class RetryPolicy {
+  public static final long DEFAULT_BASE_DELAY_MS = 100;
+  public static final long DEFAULT_MAX_DELAY_MS = 2000;
+  public static final long DEFAULT_LEADER_CHANGE_DELAY_MS = 0;
+  public static final double DEFAULT_TOKENS_PER_SUCCESS = 0.1;
+
+  /** The policy used when none is set on the client builder. */
+  public static final RetryPolicy DEFAULT = new Builder().build();
+
+  private final long baseDelayMs;
+  private final long maxDelayMs;
+  private final long leaderChangeDelayMs;
+  private final int retryBudget;
+  private final double tokensPerSuccess;
+
+  private RetryPolicy(Builder b) {
+    this.baseDelayMs = b.baseDelayMs;
+    this.maxDelayMs = b.maxDelayMs;
+    this.leaderChangeDelayMs = b.leaderChangeDelayMs;
+    this.retryBudget = b.retryBudget;
+    this.tokensPerSuccess = b.tokensPerSuccess;
+  }
+
+  public long getBaseDelayMs() {
+    return baseDelayMs;
+  }
+
+  public long getMaxDelayMs() {
+    return maxDelayMs;
+  }
+
+  public long getLeaderChangeDelayMs() {
+    return leaderChangeDelayMs;
+  }
+
+  /**
+   * @return the capacity of the retry token bucket, 0 when retries are not limited
+   */
+  public int getRetryBudget() {
+    return retryBudget;
+  }
+
+  public double getTokensPerSuccess() {
+    return tokensPerSuccess;
+  }
+
+  /**
+   * Computes how long to sleep before the next attempt.
+   * @param previousSleepMs the previous sleep of the same RPC, 0 if this is its first retry
+   * @return the time to sleep, in milliseconds
+   */
+  long nextSleepMs(long previousSleepMs) {
+    long upper = Math.max(baseDelayMs, previousSleepMs * 3);
+    long sleep = upper > baseDelayMs ?
+        ThreadLocalRandom.current().nextLong(baseDelayMs, upper) : baseDelayMs;
+    return Math.min(maxDelayMs, sleep);
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy(baseDelayMs=" + baseDelayMs + ", maxDelayMs=" + maxDelayMs +
+        ", leaderChangeDelayMs=" + leaderChangeDelayMs + ", retryBudget=" + retryBudget +
+        ", tokensPerSuccess=" + tokensPerSuccess + ")";
+  }
+
+  /**
+   * Builder for {@link RetryPolicy}. All the settings are optional.
+   */
+  public static final class Builder {
+    private long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    private long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+    private long leaderChangeDelayMs = DEFAULT_LEADER_CHANGE_DELAY_MS;
+    private int retryBudget = 0;
+    private double tokensPerSuccess = DEFAULT_TOKENS_PER_SUCCESS;
+
+    /**
+     * Sets the shortest sleep between two attempts.
+     * If not provided, defaults to 100ms.
+     * @param baseDelayMs a delay in milliseconds, must be greater than 0
+     * @return this builder
+     */
+    public Builder baseDelayMs(long baseDelayMs) {
+      Preconditions.checkArgument(baseDelayMs > 0, "baseDelayMs should be greater than 0");
+      this.baseDelayMs = baseDelayMs;
+      return this;
+    }
+
+    /**
+     * Sets the longest sleep between two attempts.
+     * If not provided, defaults to 2s.
+     * @param maxDelayMs a delay in milliseconds
+     * @return this builder
+     */
+    public Builder maxDelayMs(long maxDelayMs) {
+      Preconditions.checkArgument(maxDelayMs > 0, "maxDelayMs should be greater than 0");
+      this.maxDelayMs = maxDelayMs;
+      return this;
+    }
+
+    /**
+     * Sets the sleep before retrying an RPC that was rejected because the server it went to isn't
+     * the leader anymore, when we already know of another replica to try. These retries don't back
+     * off and don't take a token from the retry budget since they go to a different server.
+     * If not provided, defaults to 0, meaning the RPC is retried on the next timer tick.
+     * @param leaderChangeDelayMs a delay in milliseconds
+     * @return this builder
+     */
+    public Builder leaderChangeDelayMs(long leaderChangeDelayMs) {
+      Preconditions.checkArgument(leaderChangeDelayMs >= 0,
+          "leaderChangeDelayMs should not be negative");
+      this.leaderChangeDelayMs = leaderChangeDelayMs;
+      return this;
+    }
+
+    /**
+     * Limits the retries of the client with a token bucket of the given capacity.
+     * If not provided, defaults to 0 which doesn't limit retries.
+     * @param retryBudget the maximum number of tokens in the bucket
+     * @return this builder
+     */
+    public Builder retryBudget(int retryBudget) {
+      Preconditions.checkArgument(retryBudget >= 0, "retryBudget should not be negative");
+      this.retryBudget = retryBudget;
+      return this;
+    }
+
+    /**
+     * Sets how many tokens a successful RPC puts back in the retry budget.
+     * If not provided, defaults to 0.1, meaning one retry is allowed per 10 successful RPCs once
+     * the bucket is empty.
+     * @param tokensPerSuccess a number of tokens
+     * @return this builder
+     */
+    public Builder tokensPerSuccess(double tokensPerSuccess) {
+      Preconditions.checkArgument(tokensPerSuccess >= 0,
+          "tokensPerSuccess should not be negative");
+      this.tokensPerSuccess = tokensPerSuccess;
+      return this;
+    }
+
+    public RetryPolicy build() {
+      Preconditions.checkArgument(maxDelayMs >= baseDelayMs,
+          "maxDelayMs should be greater or equal to baseDelayMs");
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.yb.annotations.InterfaceAudience;
+import org.yb.annotations.InterfaceStability;
+
+/**
+ * Counts how well the tablet locations cache of an {@link AsyncYBClient} is doing. All the
+ * methods are thread-safe.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class TabletCacheMetrics {
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder staleRetries = new LongAdder();
+  private final LongAdder partitionListChanges = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshFailures = new LongAdder();
+  private final LongAdder totalRefreshMs = new LongAdder();
+  private final AtomicLong maxRefreshMs = new AtomicLong();
+
+  TabletCacheMetrics() {
+  }
+
+  void recordHit() {
+    hits.increment();
+  }
+
+  void recordMiss() {
+    misses.increment();
+  }
+
+  void recordStaleRetry() {
+    staleRetries.increment();
+  }
+
+  void recordPartitionListChange() {
+    partitionListChanges.increment();
+  }
+
+  void recordRefresh(long latencyMs) {
+    refreshes.increment();
+    totalRefreshMs.add(latencyMs);
+    long max;
+    while (latencyMs > (max = maxRefreshMs.get())) {
+      if (maxRefreshMs.compareAndSet(max, latencyMs)) {
+        break;
+      }
+    }
+  }
+
+  void recordRefreshFailure() {
+    refreshFailures.increment();
+  }
+
+  /**
+   * @return the number of RPCs that found their tablet and its leader in the cache
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of RPCs that had to wait for a master lookup
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the fraction of RPCs that found their tablet in the cache, 0 if there were none
+   */
+  public double getHitRate() {
+    long h = getHits();
+    long total = h + getMisses();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * @return the number of RPCs retried because a tablet server didn't have the tablet anymore,
+   * either because it moved or because it was split
+   */
+  public long getStaleRetries() {
+    return staleRetries.sum();
+  }
+
+  /**
+   * @return how many times the master reported a newer partition list for a cached table
+   */
+  public long getPartitionListChanges() {
+    return partitionListChanges.sum();
+  }
+
+  /**
+   * @return the number of tables whose locations were reloaded in the background
+   */
+  public long getRefreshes() {
+    return refreshes.sum();
+  }
+
+  /**
+   * @return the number of background reloads that failed
+   */
+  public long getRefreshFailures() {
+    return refreshFailures.sum();
+  }
+
+  /**
+   * @return the average time it took to reload the locations of a table, in milliseconds
+   */
+  public double getAverageRefreshMs() {
+    long n = getRefreshes();
+    return n == 0 ? 0 : (double) totalRefreshMs.sum() / n;
+  }
+
+  /**
+   * @return the longest time it took to reload the locations of a table, in milliseconds
+   */
+  public long getMaxRefreshMs() {
+    return maxRefreshMs.get();
+  }
+
+  @Override
+  public String toString() {
+    return "TabletCacheMetrics(hits=" + getHits() + ", misses=" + getMisses() +
+        ", staleRetries=" + getStaleRetries() + ", partitionListChanges=" +
+        getPartitionListChanges() + ", refreshes=" + getRefreshes() + ", refreshFailures=" +
+        getRefreshFailures() + ", averageRefreshMs=" + getAverageRefreshMs() +
+        ", maxRefreshMs=" + getMaxRefreshMs() + ")";
+  }
+}
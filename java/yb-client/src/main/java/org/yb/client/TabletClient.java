@@ -41,10 +41,10 @@
 //
 package org.yb.client;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.stumbleupon.async.Deferred;
 
-import org.jboss.netty.channel.ConnectTimeoutException;
-import org.jboss.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
 import org.yb.WireProtocol;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.master.Master;
@@ -52,18 +52,16 @@ import org.yb.rpc.RpcHeader;
 import org.yb.tserver.Tserver;
 import org.yb.util.Pair;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelEvent;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
-import org.jboss.netty.handler.codec.replay.VoidEnum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,9 +70,13 @@ import javax.security.sasl.SaslException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stateful handler that manages a connection to a specific TabletServer.
@@ -96,7 +98,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * channel isn't connected.
  */
 @InterfaceAudience.Private
-public class TabletClient extends ReplayingDecoder<VoidEnum> {
+public class TabletClient extends ByteToMessageDecoder {
 
   public static final Logger LOG = LoggerFactory.getLogger(TabletClient.class);
 
@@ -104,6 +106,30 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
 
   /** The connection header.  */
   private static final byte[] RPC_HEADER = new byte[] { 'Y', 'B', 1 };
+
+  /**
+   * Gathers what's read from the socket in pooled heap buffers, so that {@link CallResponse} can
+   * parse responses out of the buffer's array instead of copying each one out of direct memory.
+   * The socket reads into direct memory, whatever the allocator prefers, so each read is copied
+   * once, like Netty 3 did into its heap cumulation buffers.
+   */
+  static final Cumulator HEAP_CUMULATOR = new Cumulator() {
+    @Override
+    public ByteBuf cumulate(ByteBufAllocator alloc, ByteBuf cumulation, ByteBuf in) {
+      try {
+        if (cumulation.hasArray() && cumulation.refCnt() == 1 && !cumulation.isReadOnly() &&
+            cumulation.maxWritableBytes() >= in.readableBytes()) {
+          return cumulation.writeBytes(in);
+        }
+        final ByteBuf heap = alloc.heapBuffer(cumulation.readableBytes() + in.readableBytes());
+        heap.writeBytes(cumulation).writeBytes(in);
+        cumulation.release();
+        return heap;
+      } finally {
+        in.release();
+      }
+    }
+  };
   public static final int CONNECTION_CTX_CALL_ID = -3;
 
   /**
@@ -125,6 +151,12 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
    */
   private volatile Channel chan;
 
+  /**
+   * The channel from the moment it's registered with its event loop, so that {@link #shutdown}
+   * can also close a connection that's still being made.
+   */
+  private volatile Channel registeredChan;
+
   /**
    * Set to {@code true} once we've disconnected from the server.
    * This way, if any thread is still trying to use this client after it's
@@ -135,6 +167,9 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
    */
   private boolean dead = false;
 
+  /** Set once this client was taken out of the {@link AsyncYBClient}'s cache. */
+  private final AtomicBoolean removedFromCache = new AtomicBoolean();
+
   /**
    * Maps an RPC ID to the in-flight RPC that was given this ID.
    * RPCs can be sent out from any thread, so we need a concurrent map.
@@ -146,12 +181,47 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
 
   private final String uuid;
 
+  /**
+   * The "host:port" key this client is registered under in the {@link AsyncYBClient}'s connection
+   * cache, or null if it isn't registered.
+   */
+  private final String hostport;
+
   private final long socketReadTimeoutMs;
 
+  /**
+   * Write coalescing settings, see {@link AsyncYBClient.AsyncYBClientBuilder#writeCoalescing}.
+   * Coalescing is disabled when {@code writeCoalesceMaxBytes} is 0.
+   */
+  private final int writeCoalesceMaxBytes;
+  private final long writeCoalesceDelayMs;
+
+  /**
+   * Serialized RPCs waiting to be written out together, when write coalescing is enabled.
+   * Manipulating this list, {@code queuedWriteBytes}, {@code flushScheduled} and
+   * {@code queuedWritesClosed} requires synchronizing on the list.
+   */
+  private final ArrayList<ByteBuf> queuedWrites = new ArrayList<ByteBuf>();
+  private int queuedWriteBytes;
+  private boolean flushScheduled;
+  // Set once the connection is closed, the writes queued after that are released right away.
+  private boolean queuedWritesClosed;
+
+  /** Number of writes issued on the channel for RPCs, for tests. */
+  private final AtomicLong numChannelWrites = new AtomicLong();
+
   public TabletClient(AsyncYBClient client, String uuid) {
+    this(client, uuid, null);
+  }
+
+  TabletClient(AsyncYBClient client, String uuid, String hostport) {
     this.ybClient = client;
     this.uuid = uuid;
+    this.hostport = hostport;
     this.socketReadTimeoutMs = client.getDefaultSocketReadTimeoutMs();
+    this.writeCoalesceMaxBytes = client.getWriteCoalesceMaxBytes();
+    this.writeCoalesceDelayMs = client.getWriteCoalesceDelayMs();
+    setCumulator(HEAP_CUMULATOR);
   }
 
   <R> void sendRpc(YRpc<R> rpc) {
@@ -159,16 +229,22 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
       LOG.warn(getPeerUuidLoggingString() + " sending an rpc without a timeout " + rpc);
     }
     if (chan != null) {
-      final ChannelBuffer serialized = encode(rpc);
+      final ByteBuf serialized = encode(rpc);
       if (serialized == null) {  // Error during encoding.
         return;  // Stop here.  RPC has been failed already.
       }
 
       final Channel chan = this.chan;  // Volatile read.
       if (chan != null) {  // Double check if we disconnected during encode().
-        Channels.write(chan, serialized);
+        if (writeCoalesceMaxBytes > 0) {
+          queueWrite(chan, serialized);
+        } else {
+          numChannelWrites.incrementAndGet();
+          chan.writeAndFlush(serialized, chan.voidPromise());
+        }
         return;
       }
+      serialized.release();
     }
     boolean tryagain = false;
     boolean copyOfDead;
@@ -198,9 +274,105 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     }
   }
 
-  private <R> ChannelBuffer encode(final YRpc<R> rpc) {
+  /**
+   * Adds a serialized RPC to the writes waiting for the next flush. The queue is flushed right
+   * away once it holds {@code writeCoalesceMaxBytes}, otherwise after {@code writeCoalesceDelayMs}
+   * or, when there's no delay, as soon as the channel's IO thread gets to it. RPCs sent by other
+   * threads meanwhile share the same write, and the same syscall.
+   */
+  private void queueWrite(final Channel chan, final ByteBuf serialized) {
+    final boolean flushNow;
+    final boolean scheduleFlush;
+    synchronized (queuedWrites) {
+      if (queuedWritesClosed) {
+        // We got disconnected since the RPC was encoded, it was or will be failed along with the
+        // others in flight.
+        serialized.release();
+        return;
+      }
+      queuedWrites.add(serialized);
+      queuedWriteBytes += serialized.readableBytes();
+      flushNow = queuedWriteBytes >= writeCoalesceMaxBytes;
+      scheduleFlush = !flushNow && !flushScheduled;
+      if (scheduleFlush) {
+        flushScheduled = true;
+      }
+    }
+    if (flushNow) {
+      flushWrites(chan);
+    } else if (scheduleFlush) {
+      final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+          final Channel chan = TabletClient.this.chan;  // Volatile read.
+          if (chan != null) {
+            flushWrites(chan);
+          } else {
+            // We got disconnected, the RPCs were or will be failed along with the others in flight.
+            releaseQueuedWrites();
+          }
+        }
+      };
+      if (writeCoalesceDelayMs > 0) {
+        final Timeout timeout = ybClient.newTimeout(new TimerTask() {
+          @Override
+          public void run(Timeout timeout) {
+            flush.run();
+          }
+        }, writeCoalesceDelayMs);
+        if (timeout == null) {  // The timer is stopped, don't wait for it.
+          flush.run();
+        }
+      } else {
+        chan.eventLoop().execute(flush);
+      }
+    }
+  }
+
+  private void flushWrites(final Channel chan) {
+    final ByteBuf[] bufs;
+    synchronized (queuedWrites) {
+      flushScheduled = false;
+      if (queuedWrites.isEmpty()) {
+        return;
+      }
+      bufs = queuedWrites.toArray(new ByteBuf[queuedWrites.size()]);
+      queuedWrites.clear();
+      queuedWriteBytes = 0;
+    }
+    numChannelWrites.incrementAndGet();
+    // The composite buffer takes over the requests, they're released along with it once written.
+    final ByteBuf out = bufs.length == 1 ? bufs[0] : Unpooled.wrappedBuffer(bufs);
+    chan.writeAndFlush(out, chan.voidPromise());
+  }
+
+  /**
+   * Releases the queued writes for good, when the connection closes. Their flush may never run,
+   * since the timer drops the tasks of a closed client.
+   */
+  private void closeQueuedWrites() {
+    synchronized (queuedWrites) {
+      queuedWritesClosed = true;
+    }
+    releaseQueuedWrites();
+  }
+
+  private void releaseQueuedWrites() {
+    final ByteBuf[] bufs;
+    synchronized (queuedWrites) {
+      flushScheduled = false;
+      bufs = queuedWrites.toArray(new ByteBuf[queuedWrites.size()]);
+      queuedWrites.clear();
+      queuedWriteBytes = 0;
+    }
+    for (ByteBuf buf : bufs) {
+      buf.release();
+    }
+  }
+
+  private <R> ByteBuf encode(final YRpc<R> rpc) {
     final int rpcid = this.rpcid.incrementAndGet();
-    ChannelBuffer payload;
+    ByteBuf payload;
     final String service = rpc.serviceName();
     final String method = rpc.method();
     try {
@@ -231,6 +403,15 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
         rpc.errback(e);  // Make the RPC fail with the exception.
         return null;
     }
+    Timeout timeoutTask = null;
+    if (rpc.deadlineTracker.hasDeadline()) {
+      // Fail the RPC at its deadline even if the server never answers, instead of waiting for the
+      // socket read timeout. The timer is cancelled when the response comes in, so it's set before
+      // the RPC is put in flight where the response can find it.
+      timeoutTask = ybClient.newTimeout(new RpcTimeoutTask(rpcid, rpc),
+          Math.max(0, rpc.deadlineTracker.getMillisBeforeDeadline()));
+    }
+    rpc.timeoutTask = timeoutTask;
     final YRpc<?> oldrpc = rpcs_inflight.put(rpcid, rpc);
     if (oldrpc != null) {
       final String wtf = getPeerUuidLoggingString() +
@@ -241,6 +422,11 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
       // Make it fail. This isn't an expected failure mode.
       oldrpc.errback(new NonRecoverableException(wtf));
     }
+    if (timeoutTask != null && timeoutTask.isExpired() && rpcs_inflight.remove(rpcid, rpc)) {
+      // The timer ran before the RPC was in flight and found nothing to fail.
+      rpc.errback(new NonRecoverableException("Time out: " + rpc));
+      return null;
+    }
 
     if (LOG.isDebugEnabled()) {
       LOG.debug(getPeerUuidLoggingString() + chan + " Sending RPC #" + rpcid
@@ -250,13 +436,49 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     return payload;
   }
 
+  /**
+   * Fails an RPC that's still in flight once its deadline passed.
+   */
+  private final class RpcTimeoutTask implements TimerTask {
+    private final int rpcid;
+    private final YRpc<?> rpc;
+
+    RpcTimeoutTask(int rpcid, YRpc<?> rpc) {
+      this.rpcid = rpcid;
+      this.rpc = rpc;
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+      // If the RPC isn't in flight anymore under this ID, it got a response or was retried.
+      if (rpcs_inflight.remove(rpcid, rpc)) {
+        LOG.debug("{}RPC #{} timed out: {}", getPeerUuidLoggingString(), rpcid, rpc);
+        rpc.errback(new NonRecoverableException("Time out: " + rpc));
+      }
+    }
+  }
+
+  /**
+   * Removes an RPC from the ones in flight, unless it was removed meanwhile.
+   * @return whether the RPC was removed by this call
+   */
+  private boolean removeInflight(int rpcid, YRpc<?> rpc) {
+    if (!rpcs_inflight.remove(rpcid, rpc)) {
+      return false;
+    }
+    final Timeout timeoutTask = rpc.timeoutTask;
+    if (timeoutTask != null) {
+      timeoutTask.cancel();
+    }
+    return true;
+  }
+
   public Deferred<Void> shutdown() {
     // First, check whether we have RPCs in flight and cancel them.
-    for (Iterator<YRpc<?>> ite = rpcs_inflight.values().iterator(); ite
-        .hasNext();) {
-      YRpc<?> rpc = ite.next();
-      rpc.errback(new ConnectionResetException(null));
-      ite.remove();
+    for (Map.Entry<Integer, YRpc<?>> entry : rpcs_inflight.entrySet()) {
+      if (removeInflight(entry.getKey(), entry.getValue())) {
+        entry.getValue().errback(new ConnectionResetException(null));
+      }
     }
 
     // Same for the pending RPCs.
@@ -269,19 +491,17 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
       }
     }
 
-    final Channel chancopy = chan;
+    closeQueuedWrites();
+
+    // The channel only goes inactive after the close future completes, so take this client out of
+    // the cache now rather than let the caller find it there.
+    removeFromCache();
+    final Channel chancopy = registeredChan;
     if (chancopy == null) {
       return Deferred.fromResult(null);
     }
-    if (chancopy.isConnected()) {
-      Channels.disconnect(chancopy);   // ... this is going to set it to null.
-      // At this point, all in-flight RPCs are going to be failed.
-    }
-    if (chancopy.isBound()) {
-      Channels.unbind(chancopy);
-    }
     // It's OK to call close() on a Channel if it's already closed.
-    final ChannelFuture future = Channels.close(chancopy);
+    final ChannelFuture future = chancopy.close();
     // Now wrap the ChannelFuture in a Deferred.
     final Deferred<Void> d = new Deferred<Void>();
     // Opportunistically check if it's already completed successfully.
@@ -296,7 +516,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
             d.callback(null);
             return;
           }
-          final Throwable t = future.getCause();
+          final Throwable t = future.cause();
           if (t instanceof Exception) {
             d.callback(t);
           } else {
@@ -319,20 +539,22 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
    */
   @Override
   @SuppressWarnings("unchecked")
-  protected Object decode(ChannelHandlerContext ctx, Channel chan, ChannelBuffer buf,
-                              VoidEnum voidEnum) {
+  protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) {
     final long start = System.nanoTime();
     final int rdx = buf.readerIndex();
-    LOG.debug("------------------>> ENTERING DECODE >>------------------");
 
-    if (buf == null) {
-      return null;
+    // Nothing is parsed until the whole response arrived, so large responses that come in many
+    // chunks don't get decoded over and over again.
+    final ByteBuf frame = nextFrame(buf);
+    if (frame == null) {
+      return;
     }
+    LOG.debug("------------------>> ENTERING DECODE >>------------------");
 
-    CallResponse response = new CallResponse(buf);
+    CallResponse response = new CallResponse(frame);
     if (response.isEmpty()) {
       // Skip empty messages which we are using as heartbeats.
-      return null;
+      return;
     }
 
     RpcHeader.ResponseHeader header = response.getHeader();
@@ -349,17 +571,11 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     final YRpc rpc = rpcs_inflight.get(rpcid);
 
     if (rpc == null) {
-      final String msg = getPeerUuidLoggingString() + "Invalid rpcid: " + rpcid + " found in "
-          + buf + '=' + Bytes.pretty(buf);
-      LOG.error(msg);
-      // The problem here is that we don't know which Deferred corresponds to
-      // this RPC, since we don't have a valid ID.  So we're hopeless, we'll
-      // never be able to recover because responses are not framed, we don't
-      // know where the next response will start...  We have to give up here
-      // and throw this outside of our Netty handler, so Netty will call our
-      // exception handler where we'll close this channel, which will cause
-      // all RPCs in flight to be failed.
-      throw new NonRecoverableException(msg);
+      // Most likely the RPC timed out and was already failed. The response was read in full, so
+      // we can just drop it and keep using the connection.
+      LOG.debug("{}Dropping the response to RPC #{} which isn't in flight anymore",
+          getPeerUuidLoggingString(), rpcid);
+      return;
     }
 
     Pair<Object, Object> decoded = null;
@@ -389,22 +605,21 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     if (LOG.isDebugEnabled()) {
       LOG.debug(getPeerUuidLoggingString() + "rpcid=" + rpcid
           + ", response size=" + (buf.readerIndex() - rdx) + " bytes"
-          + ", " + actualReadableBytes() + " readable bytes left"
+          + ", " + buf.readableBytes() + " readable bytes left"
           + ", rpc=" + rpc);
     }
 
-    {
-      final YRpc<?> removed = rpcs_inflight.remove(rpcid);
-      if (removed == null) {
-        // The RPC we were decoding was cleaned up already, give up.
-        throw new NonRecoverableException("RPC not found");
-      }
+    if (!removeInflight(rpcid, rpc)) {
+      // The RPC timed out or was cleaned up while we were decoding, it was already failed.
+      LOG.debug("{}RPC #{} was failed while its response was being decoded",
+          getPeerUuidLoggingString(), rpcid);
+      return;
     }
 
     // This check is specifically for the ERROR_SERVER_TOO_BUSY case above.
     if (retryableHeaderException != null) {
       ybClient.handleRetryableError(rpc, retryableHeaderException, this);
-      return null;
+      return;
     }
 
     // We can get this Message from within the RPC's expected type,
@@ -416,7 +631,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
         exception = dispatchTSErrorOrReturnException(rpc, error);
         if (exception == null) {
           // It was taken care of.
-          return null;
+          return;
         } else {
           // We're going to errback.
           decoded = null;
@@ -427,7 +642,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
         exception = dispatchMasterErrorOrReturnException(rpc, error);
         if (exception == null) {
           // Exception was taken care of.
-          return null;
+          return;
         } else {
           decoded = null;
         }
@@ -437,6 +652,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     try {
       if (decoded != null) {
         assert !(decoded.getFirst() instanceof Exception);
+        ybClient.recordRpcSuccess();
         rpc.callback(decoded.getFirst());
       } else {
         rpc.errback(exception);
@@ -449,7 +665,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
       LOG.debug("------------------<< LEAVING  DECODE <<------------------"
           + " time elapsed: " + ((System.nanoTime() - start) / 1000) + "us");
     }
-    return null;  // Stop processing here.  The Deferred does everything else.
+    // Stop processing here.  The Deferred does everything else.
   }
 
   /**
@@ -466,6 +682,8 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     if (error.getCode() == Tserver.TabletServerErrorPB.Code.TABLET_NOT_FOUND) {
       ybClient.handleTabletNotFound(rpc, ex, this);
       // we're not calling rpc.callback() so we rely on the client to retry that RPC
+    } else if (error.getCode() == Tserver.TabletServerErrorPB.Code.TABLET_SPLIT) {
+      ybClient.handleTabletSplit(rpc, ex, this);
     } else if (code == WireProtocol.AppStatusPB.ErrorCode.SERVICE_UNAVAILABLE ||
                code == WireProtocol.AppStatusPB.ErrorCode.LEADER_NOT_READY_TO_SERVE ||
                error.getCode() ==
@@ -519,37 +737,34 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
   /**
    * Decodes the response of an RPC and triggers its {@link Deferred}.
    * <p>
-   * This method is used by FrameDecoder when the channel gets
+   * This method is used by ByteToMessageDecoder when the channel gets
    * disconnected.  The buffer for that channel is passed to this method in
    * case there's anything left in it.
-   * @param ctx Unused.
-   * @param chan The channel on which the response came.
+   * @param ctx The context of this handler.
    * @param buf The buffer containing the raw RPC response.
-   * @return {@code null}, always.
+   * @param out Unused, responses are handed to their RPCs.
    */
   @Override
-  protected Object decodeLast(final ChannelHandlerContext ctx,
-                              final Channel chan,
-                              final ChannelBuffer buf,
-                              final VoidEnum unused) {
+  protected void decodeLast(final ChannelHandlerContext ctx,
+                            final ByteBuf buf,
+                            final List<Object> out) {
     // When we disconnect, decodeLast is called instead of decode.
     // We simply check whether there's any data left in the buffer, in which
     // case we attempt to process it.  But if there's no data left, then we
     // don't even bother calling decode() as it'll complain that the buffer
     // doesn't contain enough data, which unnecessarily pollutes the logs.
-    if (buf.readable()) {
+    if (buf.isReadable()) {
       try {
-        return decode(ctx, chan, buf, unused);
+        decode(ctx, buf, out);
       } finally {
-        if (buf.readable()) {
-          LOG.error(getPeerUuidLoggingString() + "After decoding the last message on " + chan
+        if (buf.isReadable()) {
+          LOG.error(getPeerUuidLoggingString() + "After decoding the last message on "
+              + ctx.channel()
               + ", there was still some undecoded bytes in the channel's"
               + " buffer (which are going to be lost): "
               + buf + '=' + Bytes.pretty(buf));
         }
       }
-    } else {
-      return null;
     }
   }
 
@@ -575,56 +790,98 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     return !dead;
   }
 
+  /**
+   * Takes the next response out of the given buffer, if it was fully received.
+   * Responses are framed by a 4 byte length prefix.
+   * @param buf Buffer holding what we read from the socket so far.
+   * @return a buffer with the whole response, length prefix included, or null if we need to read
+   * more from the socket first. The returned buffer shares its content with {@code buf}.
+   * @throws IllegalArgumentException if the length prefix isn't within reasonable limits as
+   * defined by {@link YRpc#checkArrayLength(ByteBuf, long)}.
+   */
+  static ByteBuf nextFrame(final ByteBuf buf) {
+    if (buf.readableBytes() < 4) {
+      return null;
+    }
+    final int size = buf.getInt(buf.readerIndex());
+    YRpc.checkArrayLength(buf, size);
+    if (buf.readableBytes() - 4 < size) {
+      return null;
+    }
+    return buf.readSlice(4 + size);
+  }
+
   /**
    * Ensures that at least a {@code nbytes} are readable from the given buffer.
-   * If there aren't enough bytes in the buffer this will raise an exception
-   * and cause the {@link ReplayingDecoder} to undo whatever we did thus far
-   * so we can wait until we read more from the socket.
    * @param buf Buffer to check.
    * @param nbytes Number of bytes desired.
+   * @throws IndexOutOfBoundsException if there aren't enough bytes in the buffer.
    */
-  static void ensureReadable(final ChannelBuffer buf, final int nbytes) {
-    buf.markReaderIndex();
-    buf.skipBytes(nbytes); // can puke with Throwable
-    buf.resetReaderIndex();
+  static void ensureReadable(final ByteBuf buf, final int nbytes) {
+    if (buf.readableBytes() < nbytes) {
+      throw new IndexOutOfBoundsException("Need " + nbytes + " readable bytes, buffer only has "
+          + buf.readableBytes() + ": " + buf);
+    }
   }
 
   @Override
-  public void channelConnected(final ChannelHandlerContext ctx,
-                               final ChannelStateEvent e) {
-    final Channel chan = e.getChannel();
-    ChannelBuffer header = connectionHeaderPreamble();
-    header.writerIndex(RPC_HEADER.length);
-    Channels.write(chan, header);
-    becomeReady(chan);
+  public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof ByteBuf && !((ByteBuf) msg).hasArray() && !internalBuffer().isReadable()) {
+      // The decoder keeps the first read as is, only the following ones go through the cumulator.
+      msg = HEAP_CUMULATOR.cumulate(ctx.alloc(), Unpooled.EMPTY_BUFFER, (ByteBuf) msg);
+    }
+    super.channelRead(ctx, msg);
   }
 
   @Override
-  public void handleUpstream(final ChannelHandlerContext ctx,
-                             final ChannelEvent e) throws Exception {
-    if (LOG.isDebugEnabled()) {
-      LOG.debug(getPeerUuidLoggingString() + e.toString());
-    }
-    super.handleUpstream(ctx, e);
+  public void channelRegistered(final ChannelHandlerContext ctx) {
+    registeredChan = ctx.channel();
+    ctx.fireChannelRegistered();
   }
 
   @Override
-  public void channelDisconnected(final ChannelHandlerContext ctx,
-                                  final ChannelStateEvent e) throws Exception {
+  public void channelActive(final ChannelHandlerContext ctx) {
+    final Channel chan = ctx.channel();
+    LOG.debug("{}Connected: {}", getPeerUuidLoggingString(), chan);
+    chan.writeAndFlush(connectionHeaderPreamble(), chan.voidPromise());
+    becomeReady(chan);
+    ctx.fireChannelActive();
+  }
+
+  @Override
+  public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
     chan = null;
-    super.channelDisconnected(ctx, e);  // Let the ReplayingDecoder cleanup.
-    cleanup(e.getChannel());
+    LOG.debug("{}Disconnected: {}", getPeerUuidLoggingString(), ctx.channel());
+    removeFromCache();
+    super.channelInactive(ctx);  // Let the ByteToMessageDecoder decode what's left.
+    cleanup(ctx.channel());
   }
 
   @Override
-  public void channelClosed(final ChannelHandlerContext ctx,
-                            final ChannelStateEvent e) {
+  public void channelUnregistered(final ChannelHandlerContext ctx) throws Exception {
     chan = null;
-    // No need to call super.channelClosed() because we already called
-    // super.channelDisconnected().  If we get here without getting a
-    // DISCONNECTED event, then we were never connected in the first place so
-    // the ReplayingDecoder has nothing to cleanup.
-    cleanup(e.getChannel());
+    // If we get here without going through channelInactive(), we were never connected in the
+    // first place, the connection attempt failed.
+    removeFromCache();
+    cleanup(ctx.channel());
+    super.channelUnregistered(ctx);
+  }
+
+  /**
+   * Takes this client out of the {@link AsyncYBClient}'s cache, once. It won't buffer requests
+   * while that happens.
+   */
+  private void removeFromCache() {
+    if (removedFromCache.getAndSet(true)) {
+      return;
+    }
+    try {
+      synchronized (this) {
+        ybClient.removeClientFromCache(this);
+      }
+    } catch (Exception e) {
+      LOG.error("Uncaught exception when handling a disconnection of " + this, e);
+    }
   }
 
   /**
@@ -636,13 +893,14 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
   private void cleanup(final Channel chan) {
     final ConnectionResetException exception =
         new ConnectionResetException(getPeerUuidLoggingString() + "Connection reset on " + chan);
-    for (Iterator<YRpc<?>> ite = rpcs_inflight.values().iterator(); ite
-        .hasNext();) {
-      YRpc<?> rpc = ite.next();
-      failOrRetryRpc(rpc, exception);
-      ite.remove();
+    for (Map.Entry<Integer, YRpc<?>> entry : rpcs_inflight.entrySet()) {
+      if (removeInflight(entry.getKey(), entry.getValue())) {
+        failOrRetryRpc(entry.getValue(), exception);
+      }
     }
 
+    closeQueuedWrites();
+
     final ArrayList<YRpc<?>> rpcs;
     synchronized (this) {
       dead = true;
@@ -684,9 +942,8 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
 
   @Override
   public void exceptionCaught(final ChannelHandlerContext ctx,
-                              final ExceptionEvent event) {
-    final Throwable e = event.getCause();
-    final Channel c = event.getChannel();
+                              final Throwable e) {
+    final Channel c = ctx.channel();
 
     if (e instanceof RejectedExecutionException) {
       LOG.warn(getPeerUuidLoggingString() + "RPC rejected by the executor," +
@@ -694,22 +951,22 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     } else if (e instanceof ReadTimeoutException) {
       LOG.debug(getPeerUuidLoggingString() + "Encountered a read timeout");
       // Doing the cleanup here since we want to invalidate all the RPCs right _now_, and not let
-      // the ReplayingDecoder continue decoding through Channels.close() below.
+      // the ByteToMessageDecoder continue decoding through close() below.
       cleanup(c);
     } else {
       LOG.debug(getPeerUuidLoggingString() + "Unexpected exception " + e.getMessage() +
                 " from downstream on " + c, e);
     }
     if (c.isOpen()) {
-      Channels.close(c);  // Will trigger channelClosed(), which will cleanup()
+      c.close();  // Will trigger channelInactive(), which will cleanup()
     } else {              // else: presumably a connection timeout.
       cleanup(c);         // => need to cleanup() from here directly.
     }
   }
 
 
-  private ChannelBuffer connectionHeaderPreamble() {
-    return ChannelBuffers.wrappedBuffer(RPC_HEADER);
+  private ByteBuf connectionHeaderPreamble() {
+    return Unpooled.wrappedBuffer(RPC_HEADER);
   }
 
   public void becomeReady(Channel chan) {
@@ -719,7 +976,7 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
 
   /**
    * Sends the queued RPCs to the server, once we're connected to it.
-   * This gets called after {@link #channelConnected}, once we were able to
+   * This gets called after {@link #channelActive}, once we were able to
    * handshake with the server
    */
   private void sendQueuedRpcs() {
@@ -740,6 +997,32 @@ public class TabletClient extends ReplayingDecoder<VoidEnum> {
     return "[Peer " + uuid + "] ";
   }
 
+  /**
+   * @return the number of RPCs sent on this connection that are still waiting for a response
+   */
+  int getNumInflightRpcs() {
+    return rpcs_inflight.size();
+  }
+
+  @VisibleForTesting
+  long getNumChannelWrites() {
+    return numChannelWrites.get();
+  }
+
+  @VisibleForTesting
+  int getNumQueuedWrites() {
+    synchronized (queuedWrites) {
+      return queuedWrites.size();
+    }
+  }
+
+  /**
+   * @return the "host:port" this client was registered under, or null
+   */
+  String getHostPort() {
+    return hostport;
+  }
+
   /**
    * Returns this tablet server's uuid.
    * @return a string that contains this tablet server's uuid
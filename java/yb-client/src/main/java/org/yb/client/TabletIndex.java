@@ -0,0 +1,231 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.yb.annotations.InterfaceAudience;
+import org.yb.client.AsyncYBClient.RemoteTablet;
+
+/**
+ * The cached tablets of a table, sorted by partition key start.
+ * <p>
+ * Instances are immutable, updates return a new index which the {@link AsyncYBClient} publishes
+ * in place of the old one. Lookups, which every RPC does, are then a binary search over a packed
+ * array of keys, without any locking or pointer chasing through skip list nodes. Updates copy the
+ * arrays, they only happen when tablets are discovered or dropped so they're batched per master
+ * response.
+ * <p>
+ * Hash partitioned tables are split on 2-byte hash codes. When all the partition keys of a table
+ * are such hash codes and the table has enough tablets, the index also keeps a table giving the
+ * tablet of each of the 64K hash codes, so that lookups don't even need the binary search.
+ */
+@InterfaceAudience.Private
+final class TabletIndex {
+  /** Fewest tablets for which the hash code table is built, it costs 128KB per table. */
+  static final int MIN_TABLETS_FOR_HASH_TABLE = 32;
+
+  private static final int NUM_HASH_CODES = 1 << 16;
+
+  static final TabletIndex EMPTY = new TabletIndex(new byte[0][], new RemoteTablet[0]);
+
+  private static final Comparator<RemoteTablet> BY_START_KEY = new Comparator<RemoteTablet>() {
+    @Override
+    public int compare(RemoteTablet a, RemoteTablet b) {
+      return Bytes.memcmp(a.getPartition().getPartitionKeyStart(),
+          b.getPartition().getPartitionKeyStart());
+    }
+  };
+
+  private final byte[][] startKeys;
+  private final RemoteTablet[] tablets;
+
+  // For each hash code, 1 + the index of the tablet holding it, 0 if none does. Null unless the
+  // table is hash partitioned and has enough tablets.
+  private final char[] hashTable;
+
+  private TabletIndex(byte[][] startKeys, RemoteTablet[] tablets) {
+    this.startKeys = startKeys;
+    this.tablets = tablets;
+    this.hashTable = buildHashTable(startKeys);
+  }
+
+  private static char[] buildHashTable(byte[][] startKeys) {
+    if (startKeys.length < MIN_TABLETS_FOR_HASH_TABLE || startKeys.length > Character.MAX_VALUE) {
+      return null;
+    }
+    for (byte[] key : startKeys) {
+      if (key.length != 0 && key.length != 2) {
+        return null;
+      }
+    }
+    char[] table = new char[NUM_HASH_CODES];
+    // Index of the last tablet starting at or before the current hash code, -1 if none.
+    int tablet = -1;
+    for (int hashCode = 0; hashCode < NUM_HASH_CODES; hashCode++) {
+      while (tablet + 1 < startKeys.length && hashCodeOf(startKeys[tablet + 1]) <= hashCode) {
+        tablet++;
+      }
+      table[hashCode] = (char) (tablet + 1);
+    }
+    return table;
+  }
+
+  // The hash code a start key begins at, -1 for the empty key which comes before all of them.
+  private static int hashCodeOf(byte[] startKey) {
+    return startKey.length == 0 ? -1 : ((startKey[0] & 0xFF) << 8) | (startKey[1] & 0xFF);
+  }
+
+  /**
+   * @return the number of tablets in the index
+   */
+  int size() {
+    return tablets.length;
+  }
+
+  /**
+   * @return the tablet with the smallest start key, or null if the index is empty
+   */
+  RemoteTablet first() {
+    return tablets.length == 0 ? null : tablets[0];
+  }
+
+  /**
+   * @return all the tablets, sorted by start key
+   */
+  List<RemoteTablet> tablets() {
+    return Collections.unmodifiableList(Arrays.asList(tablets));
+  }
+
+  /**
+   * Finds the tablet with the greatest start key less than or equal to the given key. The caller
+   * still has to check the tablet's end key, the index doesn't know about holes in the key space.
+   * @param partitionKey a partition key
+   * @return a tablet, or null if all the tablets start after the key
+   */
+  RemoteTablet floor(byte[] partitionKey) {
+    if (hashTable != null && partitionKey.length >= 2) {
+      int index = hashTable[((partitionKey[0] & 0xFF) << 8) | (partitionKey[1] & 0xFF)];
+      return index == 0 ? null : tablets[index - 1];
+    }
+    int index = floorIndex(partitionKey);
+    return index < 0 ? null : tablets[index];
+  }
+
+  // Index of the greatest start key <= key, -1 if there is none.
+  private int floorIndex(byte[] key) {
+    int low = 0;
+    int high = startKeys.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = Bytes.memcmp(startKeys[mid], key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * Returns an index with the given tablets added. A tablet replaces the one already in the index
+   * with the same start key, if any.
+   * @param added tablets to add, in any order
+   * @return a new index, or this one if there was nothing to add
+   */
+  TabletIndex withTablets(Collection<RemoteTablet> added) {
+    if (added.isEmpty()) {
+      return this;
+    }
+    List<RemoteTablet> sorted = new ArrayList<>(added);
+    Collections.sort(sorted, BY_START_KEY);
+
+    List<RemoteTablet> merged = new ArrayList<>(tablets.length + sorted.size());
+    int i = 0;
+    int j = 0;
+    while (i < tablets.length || j < sorted.size()) {
+      if (j == sorted.size()) {
+        merged.add(tablets[i++]);
+        continue;
+      }
+      RemoteTablet next = sorted.get(j);
+      // Among added tablets with the same start key, the last one wins.
+      if (j + 1 < sorted.size() && BY_START_KEY.compare(next, sorted.get(j + 1)) == 0) {
+        j++;
+        continue;
+      }
+      int cmp = i == tablets.length ? 1 :
+          Bytes.memcmp(startKeys[i], next.getPartition().getPartitionKeyStart());
+      if (cmp < 0) {
+        merged.add(tablets[i++]);
+      } else {
+        if (cmp == 0) {
+          i++;
+        }
+        merged.add(next);
+        j++;
+      }
+    }
+    return of(merged);
+  }
+
+  /**
+   * Returns an index without the given tablet.
+   * @param tablet a tablet to remove
+   * @return a new index, or this one if the tablet wasn't in it. Another tablet with the same
+   * start key isn't removed.
+   */
+  TabletIndex without(RemoteTablet tablet) {
+    int index = floorIndex(tablet.getPartition().getPartitionKeyStart());
+    if (index < 0 || tablets[index] != tablet) {
+      return this;
+    }
+    List<RemoteTablet> remaining = new ArrayList<>(Arrays.asList(tablets));
+    remaining.remove(index);
+    return of(remaining);
+  }
+
+  // Builds an index from tablets already sorted by start key and without duplicates.
+  private static TabletIndex of(List<RemoteTablet> sorted) {
+    if (sorted.isEmpty()) {
+      return EMPTY;
+    }
+    byte[][] startKeys = new byte[sorted.size()][];
+    RemoteTablet[] tablets = new RemoteTablet[sorted.size()];
+    for (int i = 0; i < tablets.length; i++) {
+      tablets[i] = sorted.get(i);
+      startKeys[i] = tablets[i].getPartition().getPartitionKeyStart();
+    }
+    return new TabletIndex(startKeys, tablets);
+  }
+
+  @VisibleForTesting
+  boolean hasHashTable() {
+    return hashTable != null;
+  }
+
+  @Override
+  public String toString() {
+    return "TabletIndex(size=" + tablets.length + ", hashTable=" + (hashTable != null) + ")";
+  }
+}
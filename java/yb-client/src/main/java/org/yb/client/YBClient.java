@@ -1405,11 +1405,23 @@ public class YBClient implements AutoCloseable {
     }
 
     /**
-     * Set the executors which will be used for the embedded Netty boss and workers.
+     * Sets how long to wait between the attempts of an RPC and how many retries can be done.
      * Optional.
-     * If not provided, uses a simple cached threadpool. If either argument is null,
-     * then such a thread pool will be used in place of that argument.
-     * Note: executor's max thread number must be greater or equal to corresponding
+     * If not provided, defaults to {@link RetryPolicy#DEFAULT}.
+     * @param retryPolicy the retry policy
+     * @return this builder
+     */
+    public YBClientBuilder retryPolicy(RetryPolicy retryPolicy) {
+      clientBuilder.retryPolicy(retryPolicy);
+      return this;
+    }
+
+    /**
+     * Set the executor which will be used for the embedded Netty event loops.
+     * Optional.
+     * If not provided, each event loop starts its own daemon thread. The boss executor is
+     * ignored, the event loops make the connections themselves.
+     * Note: executor's max thread number must be greater or equal to the
      * worker count, or netty cannot start enough threads, and client will get stuck.
      * If not sure, please just use CachedThreadPool.
      */
@@ -1421,15 +1433,17 @@ public class YBClient implements AutoCloseable {
     /**
      * Set the maximum number of boss threads.
      * Optional.
-     * If not provided, 1 is used.
+     * @deprecated ignored, there are no boss threads anymore: the event loops, see
+     * {@link #workerCount}, make the connections themselves.
      */
+    @Deprecated
     public YBClientBuilder bossCount(int bossCount) {
       clientBuilder.bossCount(bossCount);
       return this;
     }
 
     /**
-     * Set the maximum number of worker threads.
+     * Set the number of Netty event loops, each has its own thread.
      * Optional.
      * If not provided, (2 * the number of available processors) is used.
      */
@@ -47,8 +47,9 @@ import com.stumbleupon.async.Deferred;
 import org.yb.annotations.InterfaceAudience;
 import org.yb.util.Pair;
 import org.yb.util.Slice;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.Timeout;
 
 import java.io.IOException;
 
@@ -115,6 +116,12 @@ public abstract class YRpc<R> {
   // Maximum number of attempts to try the RPC. Default 100 times.
   byte maxAttempts = 100;
 
+  // How long we slept before the last retry, the next sleep is derived from it.
+  long lastSleepMs;
+
+  // Fails the RPC at its deadline while it's waiting for a response, see TabletClient.
+  volatile Timeout timeoutTask;
+
   // Whether or not retries for this RPC should always go to the same server. This is required in
   // some cases where we do not want the RPC retries to hit a different server serving the same
   // tablet.
@@ -132,7 +139,7 @@ public abstract class YRpc<R> {
    * Notice that this method is package-private, so only classes within this
    * package can use this as a base class.
    */
-  abstract ChannelBuffer serialize(Message header);
+  abstract ByteBuf serialize(Message header);
 
   /**
    * Package private way of getting the name of the RPC service.
@@ -176,6 +183,7 @@ public abstract class YRpc<R> {
     }
     deferred = null;
     attempt = 0;
+    lastSleepMs = 0;
     deadlineTracker.reset();
     d.callback(result);
   }
@@ -265,19 +273,27 @@ public abstract class YRpc<R> {
                 " incompatible RPC? Error is: " + builder.getInitializationErrorString());
       }
     } catch (InvalidProtocolBufferException e) {
+      // The slice may point into a bigger buffer, only print its own bytes.
       final String msg = "Invalid RPC response: length=" + length
-              + ", payload=" + Bytes.pretty(payload);
+              + ", payload=" + Bytes.pretty(slice.copyBytes());
       throw new InvalidResponseException(msg, e);
     }
   }
 
-  static ChannelBuffer toChannelBuffer(Message header, Message pb) {
+  /**
+   * Serializes a request into a pooled buffer. Writing the buffer to a channel releases it,
+   * otherwise the caller has to.
+   * <p>
+   * The buffer is on the heap: protobuf encodes into arrays the fastest, and its encoder for
+   * direct memory isn't safe on every JVM we run on. The socket copies the bytes to direct memory
+   * either way, in one go.
+   */
+  static ByteBuf toByteBuf(Message header, Message pb) {
     int totalSize = IPCUtil.getTotalSizeWhenWrittenDelimited(header, pb);
-    byte[] buf = new byte[totalSize+4];
-    ChannelBuffer chanBuf = ChannelBuffers.wrappedBuffer(buf);
-    chanBuf.clear();
-    chanBuf.writeInt(totalSize);
-    final CodedOutputStream out = CodedOutputStream.newInstance(buf, 4, totalSize);
+    ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(totalSize + 4);
+    buf.writeInt(totalSize);
+    final CodedOutputStream out =
+        CodedOutputStream.newInstance(buf.array(), buf.arrayOffset() + 4, totalSize);
     try {
       out.writeRawVarint32(header.getSerializedSize());
       header.writeTo(out);
@@ -286,10 +302,11 @@ public abstract class YRpc<R> {
       pb.writeTo(out);
       out.checkNoSpaceLeft();
     } catch (IOException e) {
+      buf.release();
       throw new NonRecoverableException("Cannot serialize the following message " + pb, e);
     }
-    chanBuf.writerIndex(buf.length);
-    return chanBuf;
+    buf.writerIndex(totalSize + 4);
+    return buf;
   }
 
   /**
@@ -311,7 +328,7 @@ public abstract class YRpc<R> {
    * @throws IllegalArgumentException if the length is negative or
    * suspiciously large.
    */
-  static void checkArrayLength(final ChannelBuffer buf, final long length) {
+  static void checkArrayLength(final ByteBuf buf, final long length) {
     // 2 checks in 1.  If any of the high bits are set, we know the value is
     // either too large, or is negative (if the most-significant bit is set).
     if ((length & MAX_BYTE_ARRAY_MASK) != 0) {
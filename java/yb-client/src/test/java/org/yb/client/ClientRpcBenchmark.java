@@ -0,0 +1,214 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.net.HostAndPort;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Measures the client side cost of the RPCs the client sends most, against a
+ * {@link MockYBServer}: Ping, ListTabletServers, GetTableLocations (prefetching the 8 tablets of a
+ * table) and GetChanges (10 records per call). Each one runs with 1 and 64 calls in flight, each
+ * call sending the next when it completes.
+ * <p>
+ * Prints calls per second, the 50th and 99th percentile latencies and the bytes allocated per call
+ * by all the threads but the server's. The server can be given a latency in microseconds as the
+ * first argument, the default is to answer right away. Run with
+ * {@code java -cp <test classpath> org.yb.client.ClientRpcBenchmark [latency us]}.
+ */
+public class ClientRpcBenchmark {
+  private static final int[] CONCURRENCY = { 1, 64 };
+  private static final long WARMUP_MS = 10000;
+  private static final long MEASURE_MS = 5000;
+
+  // Latencies are counted in buckets of 1us, the last one counts everything above 100ms.
+  private static final int NUM_BUCKETS = 100000;
+
+  /** Sends one call. */
+  private interface Call {
+    Deferred<?> send();
+  }
+
+  public static void main(String[] args) throws Exception {
+    long latencyMicros = args.length > 0 ? Long.parseLong(args[0]) : 0;
+    try (MockYBServer server = new MockYBServer()) {
+      server.serveMaster(8).serveChanges(10);
+      for (String method :
+           new String[] { "Ping", "ListTabletServers", "GetTableLocations", "GetChanges" }) {
+        server.setLatency(method, latencyMicros, TimeUnit.MICROSECONDS);
+      }
+      for (int concurrency : CONCURRENCY) {
+        try (AsyncYBClient client =
+                 new AsyncYBClient.AsyncYBClientBuilder(server.getHostAndPort().toString())
+                     .build()) {
+          final AsyncYBClient c = client;
+          final HostAndPort hp = server.getHostAndPort();
+          final YBTable table = new YBTable(client, "table", "table_id", null, null);
+          final Collection<YBTable> tables = Collections.singletonList(table);
+          final Callback<Void, GetChangesResponse> ignore =
+              new Callback<Void, GetChangesResponse>() {
+                @Override
+                public Void call(GetChangesResponse response) {
+                  return null;
+                }
+              };
+
+          run("Ping", concurrency, new Call() {
+            @Override
+            public Deferred<?> send() {
+              return c.ping(hp);
+            }
+          });
+          run("ListTabletServers", concurrency, new Call() {
+            @Override
+            public Deferred<?> send() {
+              return c.listTabletServers();
+            }
+          });
+          run("GetTableLocations", concurrency, new Call() {
+            @Override
+            public Deferred<?> send() {
+              return c.prefetchTableLocations(tables);
+            }
+          });
+          run("GetChanges", concurrency, new Call() {
+            @Override
+            public Deferred<?> send() {
+              return c.getChanges(hp, table, "stream", "tablet-00000", 1, 0, ignore);
+            }
+          });
+        }
+      }
+    }
+  }
+
+  private static void run(String name, int concurrency, Call call) throws Exception {
+    Run warmup = new Run(call);
+    warmup.start(concurrency);
+    Thread.sleep(WARMUP_MS);
+    warmup.stop();
+
+    Run run = new Run(call);
+    long startBytes = clientAllocatedBytes();
+    long start = System.nanoTime();
+    run.start(concurrency);
+    Thread.sleep(MEASURE_MS);
+    run.stop();
+    long nanos = System.nanoTime() - start;
+    long bytes = clientAllocatedBytes() - startBytes;
+
+    long count = run.count();
+    System.out.printf("%-17s %3d in flight: %8.0f calls/s, p50 %6d us, p99 %6d us, " +
+        "%7d bytes/call%n", name, concurrency, count * 1e9 / nanos, run.percentile(0.5, count),
+        run.percentile(0.99, count), bytes / Math.max(count, 1));
+  }
+
+  /**
+   * @return the bytes allocated so far by the live threads, but those of the server
+   */
+  private static long clientAllocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long bytes = 0;
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+      if (info != null && !info.getThreadName().startsWith(MockYBServer.THREAD_PREFIX)) {
+        bytes += Math.max(threads.getThreadAllocatedBytes(info.getThreadId()), 0);
+      }
+    }
+    return bytes;
+  }
+
+  /** Chains of calls, each one sending the next when it completes. */
+  private static class Run {
+    private final Call call;
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private CountDownLatch done;
+
+    Run(Call call) {
+      this.call = call;
+    }
+
+    void start(int concurrency) {
+      done = new CountDownLatch(concurrency);
+      for (int i = 0; i < concurrency; i++) {
+        send();
+      }
+    }
+
+    void stop() throws InterruptedException {
+      stopped.set(true);
+      done.await();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send() {
+      final long start = System.nanoTime();
+      ((Deferred<Object>) call.send()).addCallbacks(new Callback<Void, Object>() {
+        @Override
+        public Void call(Object response) {
+          int micros = (int) Math.min((System.nanoTime() - start) / 1000, NUM_BUCKETS - 1);
+          buckets.incrementAndGet(micros);
+          next();
+          return null;
+        }
+      }, new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) {
+          System.err.println("Call failed: " + e);
+          next();
+          return null;
+        }
+      });
+    }
+
+    private void next() {
+      if (stopped.get()) {
+        done.countDown();
+      } else {
+        send();
+      }
+    }
+
+    long count() {
+      long count = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    long percentile(double fraction, long count) {
+      long rank = (long) Math.ceil(fraction * count);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return i;
+        }
+      }
+      return NUM_BUCKETS;
+    }
+  }
+}
@@ -0,0 +1,439 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.net.HostAndPort;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Message;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yb.Common;
+import org.yb.Opid;
+import org.yb.WireProtocol;
+import org.yb.cdc.CdcService;
+import org.yb.consensus.Metadata;
+import org.yb.master.Master;
+import org.yb.rpc.RpcHeader;
+import org.yb.server.ServerBase;
+
+/**
+ * A server in this process which speaks the YB RPC protocol, so that the client can be tested and
+ * benchmarked without a real cluster. Every method gets a {@link Handler} which builds its
+ * responses, calls to methods without one fail with {@code ERROR_NO_SUCH_METHOD}.
+ * <p>
+ * Ping is answered out of the box. {@link #serveMaster} makes the server the leader master of a
+ * universe with itself as only tablet server, {@link #serveChanges} makes it stream CDC records.
+ * The latency and the rate of RPC errors of each method can be set, while the server runs.
+ * <p>
+ * Methods are told apart by name only, the services the client talks to don't share any.
+ */
+public class MockYBServer implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(MockYBServer.class);
+
+  /** Prefix of the names of the server's threads. */
+  static final String THREAD_PREFIX = "mock-yb-server";
+
+  // Connections start with "YB" and the protocol version.
+  private static final int CONNECTION_HEADER_SIZE = 3;
+
+  /** Builds the responses of a method. */
+  public interface Handler {
+    /**
+     * @param header the header of the request
+     * @param request the serialized request
+     * @return the response, sent back unless the method has a latency set, then it is sent later
+     * @throws Exception to fail the call with {@code ERROR_APPLICATION}
+     */
+    Message handle(RpcHeader.RequestHeader header, byte[] request) throws Exception;
+  }
+
+  private static final class Method {
+    volatile Handler handler;
+    volatile long latencyMicros;
+    volatile double errorRate;
+    volatile RpcHeader.ErrorStatusPB.RpcErrorCodePB errorCode;
+    final AtomicLong numCalls = new AtomicLong();
+  }
+
+  private final ConcurrentHashMap<String, Method> methods = new ConcurrentHashMap<>();
+  private final EventLoopGroup group;
+  private final Channel serverChannel;
+  private final HostAndPort hostAndPort;
+  private final String uuid;
+
+  /**
+   * Starts a server on an ephemeral port of the loopback interface, with one IO thread.
+   */
+  public MockYBServer() throws InterruptedException {
+    group = new NioEventLoopGroup(1, new DefaultThreadFactory(THREAD_PREFIX, true));
+    ServerBootstrap bootstrap = new ServerBootstrap()
+        .group(group)
+        .channel(NioServerSocketChannel.class)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childHandler(new ChannelInitializer<Channel>() {
+          @Override
+          protected void initChannel(Channel chan) {
+            chan.pipeline().addLast(new ConnectionHandler());
+          }
+        });
+    serverChannel = bootstrap.bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+    InetSocketAddress address = (InetSocketAddress) serverChannel.localAddress();
+    hostAndPort = HostAndPort.fromParts(address.getHostString(), address.getPort());
+    uuid = "mock-" + address.getPort();
+
+    respond("Ping", ServerBase.PingResponsePB.getDefaultInstance());
+  }
+
+  public HostAndPort getHostAndPort() {
+    return hostAndPort;
+  }
+
+  /**
+   * @return the uuid this server registers under as master and tablet server
+   */
+  public String getUuid() {
+    return uuid;
+  }
+
+  private Method method(String name) {
+    Method method = methods.get(name);
+    if (method == null) {
+      Method newMethod = new Method();
+      method = methods.putIfAbsent(name, newMethod);
+      if (method == null) {
+        method = newMethod;
+      }
+    }
+    return method;
+  }
+
+  /**
+   * Answers the calls of a method with the given handler.
+   */
+  public MockYBServer respond(String methodName, Handler handler) {
+    method(methodName).handler = handler;
+    return this;
+  }
+
+  /**
+   * Answers all the calls of a method with the same response.
+   */
+  public MockYBServer respond(String methodName, final Message response) {
+    return respond(methodName, new Handler() {
+      @Override
+      public Message handle(RpcHeader.RequestHeader header, byte[] request) {
+        return response;
+      }
+    });
+  }
+
+  /**
+   * Delays the responses of a method. The IO thread isn't blocked meanwhile.
+   */
+  public MockYBServer setLatency(String methodName, long latency, TimeUnit unit) {
+    method(methodName).latencyMicros = unit.toMicros(latency);
+    return this;
+  }
+
+  /**
+   * Fails a fraction of the calls of a method, picked at random, with an RPC error. The client
+   * retries {@code ERROR_SERVER_TOO_BUSY} errors, it gives up on the others.
+   * @param rate the fraction of the calls to fail, from 0 to 1
+   * @param code the error code of the failed calls
+   */
+  public MockYBServer setErrorRate(String methodName, double rate,
+                                   RpcHeader.ErrorStatusPB.RpcErrorCodePB code) {
+    Method method = method(methodName);
+    method.errorCode = code;
+    method.errorRate = rate;
+    return this;
+  }
+
+  /**
+   * @return the number of calls of a method so far, failed ones included
+   */
+  public long getNumCalls(String methodName) {
+    Method method = methods.get(methodName);
+    return method == null ? 0 : method.numCalls.get();
+  }
+
+  /**
+   * Makes this server the leader master of a universe where it is also the only tablet server.
+   * Every table has the given number of tablets, hash partitioned and led by this server.
+   */
+  public MockYBServer serveMaster(int numTablets) {
+    List<Master.TabletLocationsPB> tablets = new ArrayList<>(numTablets);
+    for (int i = 0; i < numTablets; i++) {
+      tablets.add(tabletLocations(String.format("tablet-%05d", i), hashKey(i, numTablets),
+                                  hashKey(i + 1, numTablets)));
+    }
+    return serveMaster(tablets);
+  }
+
+  /**
+   * Makes this server the leader master of a universe where it is also the only tablet server,
+   * and every table has the given tablets. Called again, it replaces the tablets, for instance
+   * with the children of a split.
+   * @param tablets the locations of the tablets, in the order of their partitions, see
+   *                {@link #tabletLocations}
+   */
+  public MockYBServer serveMaster(final List<Master.TabletLocationsPB> tablets) {
+    final WireProtocol.NodeInstancePB instance = WireProtocol.NodeInstancePB.newBuilder()
+        .setPermanentUuid(ByteString.copyFromUtf8(uuid))
+        .setInstanceSeqno(0)
+        .build();
+    final WireProtocol.ServerRegistrationPB registration =
+        WireProtocol.ServerRegistrationPB.newBuilder()
+            .addPrivateRpcAddresses(address())
+            .build();
+    respond("GetMasterRegistration", Master.GetMasterRegistrationResponsePB.newBuilder()
+        .setInstanceId(instance)
+        .setRegistration(registration)
+        .setRole(Metadata.RaftPeerPB.Role.LEADER)
+        .build());
+    respond("ListTabletServers", Master.ListTabletServersResponsePB.newBuilder()
+        .addServers(Master.ListTabletServersResponsePB.Entry.newBuilder()
+            .setInstanceId(instance)
+            .setRegistration(Master.TSRegistrationPB.newBuilder().setCommon(registration))
+            .setAlive(true))
+        .build());
+    respond("GetTableLocations", new Handler() {
+      @Override
+      public Message handle(RpcHeader.RequestHeader header, byte[] request) throws Exception {
+        Master.GetTableLocationsRequestPB pb = Master.GetTableLocationsRequestPB.parseFrom(request);
+        // Starts at the tablet holding the start key, like the real master.
+        int first = 0;
+        if (pb.hasPartitionKeyStart() && !pb.getPartitionKeyStart().isEmpty()) {
+          byte[] start = pb.getPartitionKeyStart().toByteArray();
+          while (first + 1 < tablets.size() &&
+                 Bytes.memcmp(tablets.get(first + 1).getPartition().getPartitionKeyStart()
+                     .toByteArray(), start) <= 0) {
+            first++;
+          }
+        }
+        int end = Math.min(tablets.size(), first + pb.getMaxReturnedLocations());
+        return Master.GetTableLocationsResponsePB.newBuilder()
+            .addAllTabletLocations(tablets.subList(first, end))
+            .setPartitionListVersion(0)
+            .build();
+      }
+    });
+    return this;
+  }
+
+  /**
+   * @param start the start of the tablet's partition, empty for the first one
+   * @param end the end of the tablet's partition, empty for the last one
+   * @return the locations of a tablet led by this server
+   */
+  public Master.TabletLocationsPB tabletLocations(String tabletId, ByteString start,
+                                                  ByteString end) {
+    return Master.TabletLocationsPB.newBuilder()
+        .setTabletId(ByteString.copyFromUtf8(tabletId))
+        .setPartition(Common.PartitionPB.newBuilder()
+            .setPartitionKeyStart(start)
+            .setPartitionKeyEnd(end))
+        .setStale(false)
+        .addReplicas(Master.TabletLocationsPB.ReplicaPB.newBuilder()
+            .setTsInfo(Master.TSInfoPB.newBuilder()
+                .setPermanentUuid(ByteString.copyFromUtf8(uuid))
+                .addPrivateRpcAddresses(address()))
+            .setRole(Metadata.RaftPeerPB.Role.LEADER))
+        .build();
+  }
+
+  /**
+   * Opens a table of the universe served by {@link #serveMaster}, without asking for its schema,
+   * so that code outside the client package can be tested against it.
+   * @return a table without schema
+   */
+  public static YBTable openTable(AsyncYBClient client, String tableId) {
+    return new YBTable(client, tableId, tableId, null, null);
+  }
+
+  private Common.HostPortPB address() {
+    return Common.HostPortPB.newBuilder()
+        .setHost(hostAndPort.getHost())
+        .setPort(hostAndPort.getPort())
+        .build();
+  }
+
+  // The start of the i-th of n hash partitions, an empty key for the first and past the last one.
+  private static ByteString hashKey(int i, int n) {
+    if (i == 0 || i == n) {
+      return ByteString.EMPTY;
+    }
+    int hashCode = (int) ((long) i * 65536 / n);
+    return ByteString.copyFrom(new byte[] { (byte) (hashCode >> 8), (byte) hashCode });
+  }
+
+  /**
+   * Makes GetChanges return the given number of records after the checkpoint it is called with,
+   * every tablet having an endless log of writes in term 1.
+   */
+  public MockYBServer serveChanges(final int recordsPerCall) {
+    respond("GetChanges", new Handler() {
+      @Override
+      public Message handle(RpcHeader.RequestHeader header, byte[] request) throws Exception {
+        CdcService.GetChangesRequestPB pb = CdcService.GetChangesRequestPB.parseFrom(request);
+        long index = pb.getFromCheckpoint().getOpId().getIndex();
+        CdcService.GetChangesResponsePB.Builder response =
+            CdcService.GetChangesResponsePB.newBuilder();
+        for (int i = 0; i < recordsPerCall; i++) {
+          index++;
+          response.addRecords(CdcService.CDCRecordPB.newBuilder()
+              .setTime(index)
+              .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+              .addKey(CdcService.KeyValuePairPB.newBuilder()
+                  .setKey(ByteString.copyFromUtf8("k"))
+                  .setValue(Common.QLValuePB.newBuilder().setInt64Value(index)))
+              .addChanges(CdcService.KeyValuePairPB.newBuilder()
+                  .setKey(ByteString.copyFromUtf8("v"))
+                  .setValue(Common.QLValuePB.newBuilder().setStringValue("value-" + index))));
+        }
+        return response
+            .setCheckpoint(CdcService.CDCCheckpointPB.newBuilder()
+                .setOpId(Opid.OpIdPB.newBuilder().setTerm(1).setIndex(index)))
+            .build();
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    serverChannel.close().sync();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+  }
+
+  /**
+   * Reads the requests of a connection and answers them. Responses written while reading are
+   * flushed together once there's nothing left to read, like a real server batching its writes.
+   */
+  private final class ConnectionHandler extends ByteToMessageDecoder {
+    private boolean connectionHeaderRead;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
+        throws Exception {
+      if (!connectionHeaderRead) {
+        if (in.readableBytes() < CONNECTION_HEADER_SIZE) {
+          return;
+        }
+        in.skipBytes(CONNECTION_HEADER_SIZE);
+        connectionHeaderRead = true;
+      }
+      ByteBuf frame = TabletClient.nextFrame(in);
+      if (frame == null) {
+        return;
+      }
+      // Skips the length prefix, parses from the heap.
+      CodedInputStream input = CodedInputStream.newInstance(
+          ByteBufUtil.getBytes(frame, frame.readerIndex() + 4, frame.readableBytes() - 4));
+      int headerSize = input.readRawVarint32();
+      int limit = input.pushLimit(headerSize);
+      RpcHeader.RequestHeader header = RpcHeader.RequestHeader.parseFrom(input);
+      input.popLimit(limit);
+      byte[] request = input.readRawBytes(input.readRawVarint32());
+      handle(ctx, header, request);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+      ctx.flush();
+      super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      LOG.warn("Closing connection " + ctx.channel() + " of the mock server", cause);
+      ctx.close();
+    }
+  }
+
+  private void handle(final ChannelHandlerContext ctx, RpcHeader.RequestHeader header,
+                      byte[] request) {
+    String methodName = header.getRemoteMethod().getMethodName();
+    Method method = methods.get(methodName);
+    if (method == null || method.handler == null) {
+      ctx.write(error(header, RpcHeader.ErrorStatusPB.RpcErrorCodePB.ERROR_NO_SUCH_METHOD,
+          "No such method: " + header.getRemoteMethod().getServiceName() + "." + methodName));
+      return;
+    }
+    method.numCalls.incrementAndGet();
+
+    final ByteBuf response;
+    if (method.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < method.errorRate) {
+      response = error(header, method.errorCode, "Injected error");
+    } else {
+      Message pb;
+      try {
+        pb = method.handler.handle(header, request);
+      } catch (Exception e) {
+        LOG.debug("Handler of " + methodName + " failed", e);
+        ctx.write(error(header, RpcHeader.ErrorStatusPB.RpcErrorCodePB.ERROR_APPLICATION,
+            String.valueOf(e)));
+        return;
+      }
+      response = YRpc.toByteBuf(
+          RpcHeader.ResponseHeader.newBuilder().setCallId(header.getCallId()).build(), pb);
+    }
+
+    long latencyMicros = method.latencyMicros;
+    if (latencyMicros > 0) {
+      ctx.executor().schedule(new Runnable() {
+        @Override
+        public void run() {
+          ctx.writeAndFlush(response, ctx.voidPromise());
+        }
+      }, latencyMicros, TimeUnit.MICROSECONDS);
+    } else {
+      ctx.write(response, ctx.voidPromise());
+    }
+  }
+
+  private static ByteBuf error(RpcHeader.RequestHeader header,
+                               RpcHeader.ErrorStatusPB.RpcErrorCodePB code, String message) {
+    RpcHeader.ResponseHeader responseHeader = RpcHeader.ResponseHeader.newBuilder()
+        .setCallId(header.getCallId())
+        .setIsError(true)
+        .build();
+    return YRpc.toByteBuf(responseHeader, RpcHeader.ErrorStatusPB.newBuilder()
+        .setCode(code)
+        .setMessage(message)
+        .build());
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.yb.util.Slice;
+
+/**
+ * Measures how many leader lookups many threads can do while another thread keeps demoting
+ * leaders and refreshing the replicas, first with the copy-on-write snapshot of
+ * {@link AsyncYBClient.RemoteTablet} and then with the monitor based list it used before, which is
+ * re-implemented here for comparison.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.yb.client.RemoteTabletBenchmark}.
+ */
+public class RemoteTabletBenchmark {
+  private static final int NUM_REPLICAS = 3;
+  private static final int NUM_READER_THREADS = 32;
+  private static final long DURATION_MS = 2000;
+
+  public static void main(String[] args) throws Exception {
+    try (AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build()) {
+      Partition partition = new Partition(new byte[0], new byte[0], new ArrayList<Integer>());
+      final AsyncYBClient.RemoteTablet tablet =
+          client.new RemoteTablet("table", new Slice(new byte[] { 't' }), partition);
+      final List<TabletClient> replicas = new ArrayList<>();
+      for (int i = 0; i < NUM_REPLICAS; i++) {
+        replicas.add(new TabletClient(client, "ts" + i));
+      }
+      tablet.setReplicas(new AsyncYBClient.ReplicaSet(replicas, 0));
+
+      long snapshotOps = runContended(new Runnable() {
+        @Override
+        public void run() {
+          client.clientFor(tablet);
+        }
+      }, new Runnable() {
+        @Override
+        public void run() {
+          tablet.demoteLeader(replicas.get(0));
+          tablet.setReplicas(new AsyncYBClient.ReplicaSet(replicas, 0));
+        }
+      });
+
+      final ArrayList<TabletClient> lockedServers = new ArrayList<>(replicas);
+      final int[] lockedLeaderIndex = { 0 };
+      long monitorOps = runContended(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (lockedServers) {
+            if (!lockedServers.isEmpty() && lockedLeaderIndex[0] != -1) {
+              lockedServers.get(lockedLeaderIndex[0]);
+            }
+          }
+        }
+      }, new Runnable() {
+        @Override
+        public void run() {
+          synchronized (lockedServers) {
+            lockedLeaderIndex[0] = 1;
+          }
+          synchronized (lockedServers) {
+            lockedServers.clear();
+            lockedServers.addAll(replicas);
+            lockedLeaderIndex[0] = 0;
+          }
+        }
+      });
+
+      System.out.printf("clientFor with %d threads: %d ops/s with snapshots, " +
+          "%d ops/s with a monitor%n", NUM_READER_THREADS, snapshotOps * 1000 / DURATION_MS,
+          monitorOps * 1000 / DURATION_MS);
+    }
+  }
+
+  private static long runContended(final Runnable reader, final Runnable writer)
+      throws Exception {
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong ops = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(NUM_READER_THREADS + 1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < NUM_READER_THREADS; i++) {
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long n = 0;
+          while (!stop.get()) {
+            reader.run();
+            n++;
+          }
+          ops.addAndGet(n);
+          done.countDown();
+        }
+      }));
+    }
+    threads.add(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!stop.get()) {
+          writer.run();
+          Thread.yield();
+        }
+        done.countDown();
+      }
+    }));
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    Thread.sleep(DURATION_MS);
+    stop.set(true);
+    if (!done.await(10, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("The threads didn't stop");
+    }
+    return ops.get();
+  }
+}
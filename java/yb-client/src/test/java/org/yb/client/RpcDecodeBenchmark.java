@@ -0,0 +1,139 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.List;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.ReplayingDecoder;
+import org.yb.rpc.RpcHeader;
+
+/**
+ * Compares the CPU time it takes to decode responses of 1KB, 1MB and 32MB with the length
+ * prefixed frame decoding of {@link TabletClient} and with the ReplayingDecoder it used before.
+ * Responses are fed to the decoders in 64KB chunks, like they'd be read from a socket.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.yb.client.RpcDecodeBenchmark}.
+ */
+public class RpcDecodeBenchmark {
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int[] RESPONSE_SIZES = { 1024, 1024 * 1024, 32 * 1024 * 1024 };
+  private static final long BYTES_PER_RUN = 256L * 1024 * 1024;
+  private static final int RUNS = 5;
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) {
+    for (int size : RESPONSE_SIZES) {
+      ByteBuf response = response(size);
+      int responses = (int) Math.max(1, BYTES_PER_RUN / size);
+      for (int run = 0; run < RUNS; run++) {
+        long frameNanos = decode(new LengthFrameDecoder(), response, responses);
+        long replayNanos = decode(new ReplayDecoder(), response, responses);
+        // The first runs warm up the JIT.
+        if (run == RUNS - 1) {
+          System.out.printf("%10d bytes: frame decoder %8.1f us/response, " +
+              "replaying decoder %8.1f us/response%n", size,
+              frameNanos / 1000.0 / responses, replayNanos / 1000.0 / responses);
+        }
+      }
+    }
+  }
+
+  private static ByteBuf response(int size) {
+    RpcHeader.ResponseHeader header = RpcHeader.ResponseHeader.newBuilder().setCallId(1).build();
+    RpcHeader.ErrorStatusPB pb = RpcHeader.ErrorStatusPB.newBuilder()
+        .setCode(RpcHeader.ErrorStatusPB.RpcErrorCodePB.ERROR_APPLICATION)
+        .setMessage(Strings.repeat("x", size))
+        .build();
+    return YRpc.toByteBuf(header, pb);
+  }
+
+  /**
+   * Feeds the given response to the decoder {@code count} times, one chunk at a time.
+   * @return the CPU time it took, in nanoseconds
+   */
+  private static long decode(CountingDecoder decoder, ByteBuf response, int count) {
+    EmbeddedChannel embedder = new EmbeddedChannel(decoder);
+    long start = THREADS.getCurrentThreadCpuTime();
+    for (int i = 0; i < count; i++) {
+      for (int offset = 0; offset < response.readableBytes(); offset += CHUNK_SIZE) {
+        int length = Math.min(CHUNK_SIZE, response.readableBytes() - offset);
+        // The decoder releases what it's given.
+        embedder.writeInbound(response.retainedSlice(response.readerIndex() + offset, length));
+      }
+    }
+    long elapsed = THREADS.getCurrentThreadCpuTime() - start;
+    embedder.finish();
+    if (decoder.numDecoded() != count) {
+      throw new IllegalStateException("Decoded " + decoder.numDecoded() + " responses instead of " +
+          count);
+    }
+    return elapsed;
+  }
+
+  // Parses a response the same way TabletClient does.
+  private static void parse(ByteBuf buf) {
+    CallResponse response = new CallResponse(buf);
+    RpcHeader.ErrorStatusPB.Builder builder = RpcHeader.ErrorStatusPB.newBuilder();
+    YRpc.readProtobuf(response.getPBMessage(), builder);
+  }
+
+  private interface CountingDecoder extends ChannelHandler {
+    int numDecoded();
+  }
+
+  private static final class LengthFrameDecoder extends ByteToMessageDecoder
+      implements CountingDecoder {
+    private int decoded;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) {
+      ByteBuf frame = TabletClient.nextFrame(buf);
+      if (frame != null) {
+        parse(frame);
+        decoded++;
+      }
+    }
+
+    @Override
+    public int numDecoded() {
+      return decoded;
+    }
+  }
+
+  private static final class ReplayDecoder extends ReplayingDecoder<Void>
+      implements CountingDecoder {
+    private int decoded;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) {
+      parse(buf);
+      decoded++;
+    }
+
+    @Override
+    public int numDecoded() {
+      return decoded;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.yb.util.Slice;
+
+/**
+ * Compares tablet lookups in a {@link TabletIndex} with the ConcurrentSkipListMap the tablets
+ * cache used before, ordered either by a byte by byte memcmp like it used to be or by
+ * {@link Bytes#MEMCMP}. Tables of 1k, 10k and 100k tablets are split on random 8-byte range keys,
+ * hash partitioned tables on 2-byte hash codes (at most 64K of them).
+ * <p>
+ * Run with {@code java -cp <test classpath> org.yb.client.TabletIndexBenchmark}.
+ */
+public class TabletIndexBenchmark {
+  private static final int[] NUM_TABLETS = { 1000, 10000, 100000 };
+  private static final int NUM_KEYS = 1 << 16;
+  private static final int LOOKUPS = 10000000;
+  private static final int RUNS = 5;
+
+  private static final Comparator<byte[]> BYTE_BY_BYTE = new Comparator<byte[]>() {
+    @Override
+    public int compare(byte[] a, byte[] b) {
+      for (int i = 0; i < Math.min(a.length, b.length); i++) {
+        if (a[i] != b[i]) {
+          return (a[i] & 0xFF) - (b[i] & 0xFF);
+        }
+      }
+      return a.length - b.length;
+    }
+  };
+
+  // Keeps the JIT from optimizing the lookups away.
+  private static int sink;
+
+  public static void main(String[] args) throws Exception {
+    try (AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build()) {
+      Random random = new Random(42);
+      for (int numTablets : NUM_TABLETS) {
+        run(client, "range", rangeSplits(numTablets, random), 8, random);
+        run(client, "hash", hashSplits(Math.min(numTablets, 65535), random), 12, random);
+      }
+    }
+  }
+
+  private static List<byte[]> rangeSplits(int numTablets, Random random) {
+    TreeSet<byte[]> splits = new TreeSet<>(Bytes.MEMCMP);
+    while (splits.size() < numTablets - 1) {
+      byte[] split = new byte[8];
+      random.nextBytes(split);
+      splits.add(split);
+    }
+    return new ArrayList<>(splits);
+  }
+
+  private static List<byte[]> hashSplits(int numTablets, Random random) {
+    List<byte[]> splits = new ArrayList<>();
+    for (int i = 1; i < numTablets; i++) {
+      int hashCode = (int) ((long) i * 65536 / numTablets);
+      splits.add(new byte[] { (byte) (hashCode >> 8), (byte) hashCode });
+    }
+    return splits;
+  }
+
+  private static void run(AsyncYBClient client, String kind, List<byte[]> splits, int keyLength,
+                          Random random) {
+    ConcurrentSkipListMap<byte[], AsyncYBClient.RemoteTablet> bytewise =
+        new ConcurrentSkipListMap<>(BYTE_BY_BYTE);
+    ConcurrentSkipListMap<byte[], AsyncYBClient.RemoteTablet> memcmp =
+        new ConcurrentSkipListMap<>(Bytes.MEMCMP);
+    List<AsyncYBClient.RemoteTablet> tablets = new ArrayList<>();
+    byte[] start = new byte[0];
+    for (int i = 0; i <= splits.size(); i++) {
+      byte[] end = i == splits.size() ? new byte[0] : splits.get(i);
+      Partition partition = new Partition(start, end, new ArrayList<Integer>());
+      AsyncYBClient.RemoteTablet tablet =
+          client.new RemoteTablet("table", new Slice(Bytes.fromInt(i)), partition);
+      tablets.add(tablet);
+      bytewise.put(start, tablet);
+      memcmp.put(start, tablet);
+      start = end;
+    }
+    TabletIndex index = TabletIndex.EMPTY.withTablets(tablets);
+
+    // Lookup keys of a typical length: a hash code followed by the hashed columns, or a range key.
+    byte[][] keys = new byte[NUM_KEYS][keyLength];
+    for (byte[] key : keys) {
+      random.nextBytes(key);
+    }
+
+    long bytewiseNanos = 0;
+    long memcmpNanos = 0;
+    long indexNanos = 0;
+    for (int run = 0; run < RUNS; run++) {
+      long start1 = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        sink += bytewise.floorEntry(keys[i & (NUM_KEYS - 1)]).getValue().hashCode();
+      }
+      long start2 = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        sink += memcmp.floorEntry(keys[i & (NUM_KEYS - 1)]).getValue().hashCode();
+      }
+      long start3 = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        sink += index.floor(keys[i & (NUM_KEYS - 1)]).hashCode();
+      }
+      long end = System.nanoTime();
+      // The first run warms up the JIT.
+      if (run > 0) {
+        bytewiseNanos += start2 - start1;
+        memcmpNanos += start3 - start2;
+        indexNanos += end - start3;
+      }
+    }
+    double lookups = (double) LOOKUPS * (RUNS - 1);
+    System.out.printf("%6d %s tablets: skip list (byte by byte) %6.1f ns, " +
+        "skip list (memcmp) %6.1f ns, index %6.1f ns%s%n", tablets.size(), kind,
+        bytewiseNanos / lookups, memcmpNanos / lookups, indexNanos / lookups,
+        index.hasHashTable() ? " (hash table)" : "");
+  }
+}
@@ -41,6 +41,9 @@ import org.yb.Common;
 import org.yb.consensus.Metadata;
 import org.yb.master.Master;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.yb.AssertionWrappers.*;
 
 import org.yb.YBTestRunner;
@@ -59,6 +62,23 @@ public class TestAsyncYBClient extends BaseYBClientTest {
     table = createTable(TABLE_NAME, hashKeySchema, options);
   }
 
+  @Test
+  public void testPrefetchTableLocations() throws Exception {
+    List<LocatedTablet> tablets = table.getTabletsLocations(DEFAULT_SLEEP);
+    // Fetch the locations a couple at a time so that it takes multiple master lookups.
+    try (AsyncYBClient freshClient = new AsyncYBClient.AsyncYBClientBuilder(masterAddresses)
+             .defaultAdminOperationTimeoutMs(DEFAULT_SLEEP)
+             .tableLocationsPrefetch(2)
+             .build()) {
+      int located = freshClient.prefetchTableLocations(Arrays.asList(table)).join(DEFAULT_SLEEP);
+      assertEquals(tablets.size(), located);
+      for (LocatedTablet tablet : tablets) {
+        assertNotNull(freshClient.getTablet(table.getTableId(), tablet.getPartition()
+            .getPartitionKeyStart()));
+      }
+    }
+  }
+
   @Test
   public void testBadHostnames() throws Exception {
     String badHostname = "some-unknown-host-hopefully";
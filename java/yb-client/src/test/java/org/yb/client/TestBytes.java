@@ -33,6 +33,9 @@ package org.yb.client;
 
 import static org.yb.AssertionWrappers.assertEquals;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 
 import java.math.BigInteger;
@@ -114,4 +117,31 @@ public class TestBytes {
     Bytes.setDouble(bytes, aDouble);
     assertEquals(aDouble, Bytes.getDouble(bytes), 0.001);
   }
+
+  // Byte by byte memcmp, to check the word at a time one against.
+  private static int naiveMemcmp(byte[] a, byte[] b) {
+    for (int i = 0; i < Math.min(a.length, b.length); i++) {
+      if (a[i] != b[i]) {
+        return (a[i] & 0xFF) - (b[i] & 0xFF);
+      }
+    }
+    return a.length - b.length;
+  }
+
+  @Test
+  public void testMemcmp() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      byte[] a = new byte[random.nextInt(20)];
+      random.nextBytes(a);
+      // Make b share a prefix of a, so that the difference can be anywhere.
+      byte[] b = Arrays.copyOf(a, random.nextInt(20));
+      if (b.length > 0 && random.nextBoolean()) {
+        b[random.nextInt(b.length)] = (byte) random.nextInt();
+      }
+      assertEquals(Integer.signum(naiveMemcmp(a, b)), Integer.signum(Bytes.memcmp(a, b)));
+      assertEquals(Integer.signum(naiveMemcmp(b, a)), Integer.signum(Bytes.memcmp(b, a)));
+    }
+    assertEquals(0, Bytes.memcmp(new byte[0], new byte[0]));
+  }
 }
@@ -0,0 +1,65 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestClientCache {
+
+  private static final int NUM_THREADS = 16;
+
+  @Test
+  public void testConcurrentCallersShareOneConnection() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+         AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build()) {
+      final int port = server.getLocalPort();
+      ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+      try {
+        List<Future<TabletClient>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+          futures.add(executor.submit(new Callable<TabletClient>() {
+            @Override
+            public TabletClient call() {
+              return client.newClient("ts", "127.0.0.1", port);
+            }
+          }));
+        }
+        TabletClient first = futures.get(0).get();
+        for (Future<TabletClient> future : futures) {
+          assertSame(first, future.get());
+        }
+        assertEquals("127.0.0.1:" + port, first.getHostPort());
+        assertEquals(1, client.getTableClients().size());
+        // Let the connection complete so that shutting down the client closes it.
+        server.accept().close();
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+}
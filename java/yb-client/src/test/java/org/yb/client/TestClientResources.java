@@ -0,0 +1,127 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import com.stumbleupon.async.Deferred;
+
+@RunWith(value=YBTestRunner.class)
+public class TestClientResources {
+
+  private static AsyncYBClient newClient(ClientResources resources) {
+    return new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+        .sharedResources(resources)
+        .build();
+  }
+
+  private static final AsyncYBClient.AsyncCondition HOLDS = new AsyncYBClient.AsyncCondition() {
+    @Override
+    public Deferred<Boolean> check() {
+      return Deferred.fromResult(true);
+    }
+  };
+
+  @Test
+  public void testThreadsAreShared() throws Exception {
+    ClientResources resources = new ClientResources(4);
+    // Starts the timer thread.
+    newClient(resources).close();
+    int numThreads = Thread.activeCount();
+
+    List<AsyncYBClient> clients = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      AsyncYBClient client = newClient(resources);
+      clients.add(client);
+      assertTrue(client.waitForCondition(HOLDS, 1000).join(10000));
+    }
+    // Clients with their own resources would have added a timer thread each, at least.
+    assertLessThan(Thread.activeCount(), numThreads + 5);
+    assertEquals(51, resources.refCount());
+
+    for (AsyncYBClient client : clients) {
+      client.close();
+    }
+    assertEquals(1, resources.refCount());
+    resources.close();
+    assertEquals(0, resources.refCount());
+    // Closing again doesn't release someone else's reference.
+    resources.close();
+    try {
+      newClient(resources);
+      fail("Built a client with released resources");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testClientsOutliveTheCreatorsReference() throws Exception {
+    ClientResources resources = new ClientResources(2);
+    AsyncYBClient first = newClient(resources);
+    AsyncYBClient second = newClient(resources);
+    resources.close();
+
+    first.close();
+    // The timer keeps running for the other client.
+    assertTrue(second.waitForCondition(HOLDS, 1000).join(10000));
+    second.close();
+    assertEquals(0, resources.refCount());
+  }
+
+  @Test
+  public void testTimeoutsOfClosedClientsAreDropped() throws Exception {
+    try (ClientResources resources = new ClientResources(2);
+         AsyncYBClient other = newClient(resources)) {
+      AsyncYBClient client = newClient(resources);
+      final AtomicBoolean ran = new AtomicBoolean();
+      client.newTimeout(new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+          ran.set(true);
+        }
+      }, 200);
+      client.close();
+      Thread.sleep(500);
+      assertFalse(ran.get());
+    }
+  }
+
+  @Test
+  public void testWaitsOfClosedClientsEnd() throws Exception {
+    try (ClientResources resources = new ClientResources(2);
+         AsyncYBClient other = newClient(resources)) {
+      AsyncYBClient client = newClient(resources);
+      Deferred<Boolean> result = client.waitForCondition(new AsyncYBClient.AsyncCondition() {
+        @Override
+        public Deferred<Boolean> check() {
+          return Deferred.fromResult(false);
+        }
+      }, 60000);
+      client.close();
+      // The timer keeps running, but drops the timeouts of the closed client.
+      assertFalse(result.join(1000));
+    }
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.stumbleupon.async.Deferred;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.master.Master;
+
+@RunWith(value=YBTestRunner.class)
+public class TestLocationLookups {
+
+  private static final int NUM_LOOKUPS = 20;
+
+  /**
+   * Misses on the same table share the lookup in flight when their key comes after its start key,
+   * and all fail together when it does. There's no master listening so the lookups keep retrying
+   * until they time out.
+   */
+  @Test
+  public void testCoalescing() throws Exception {
+    int masterPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      masterPort = socket.getLocalPort();
+    }
+    AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1:" + masterPort)
+        .defaultAdminOperationTimeoutMs(2000)
+        .build();
+    try {
+      YBTable table = new YBTable(client, "table", "table_id", null, null);
+      List<Deferred<Master.GetTableLocationsResponsePB>> deferreds = new ArrayList<>();
+      deferreds.add(client.locateTablet(table, new byte[] { 0x10 }));
+      for (int i = 0; i < NUM_LOOKUPS; i++) {
+        deferreds.add(client.locateTablet(table, new byte[] { 0x10, (byte) i }));
+      }
+      assertEquals(1, client.getNumLocationLookupsInFlight("table_id"));
+
+      // A key before the start of the lookup in flight can't be covered by it.
+      deferreds.add(client.locateTablet(table, new byte[] { 0x01 }));
+      assertEquals(2, client.getNumLocationLookupsInFlight("table_id"));
+
+      for (Deferred<Master.GetTableLocationsResponsePB> d : deferreds) {
+        try {
+          d.join(10000);
+          fail("The lookup should have timed out");
+        } catch (NonRecoverableException e) {
+          // Expected.
+        }
+      }
+      assertEquals(0, client.getNumLocationLookupsInFlight("table_id"));
+    } finally {
+      client.close();
+    }
+  }
+
+  /**
+   * With the table's tablets cached, a lookup is only joined by the keys of the tablets it is
+   * expected to fetch.
+   */
+  @Test
+  public void testJoinsWithinExpectedRange() throws Exception {
+    try (MockYBServer server = new MockYBServer()) {
+      server.serveMaster(10);
+      AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder(
+          server.getHostAndPort().toString())
+          .tableLocationsPrefetch(3)
+          .build();
+      try {
+        YBTable table = MockYBServer.openTable(client, "table");
+        assertEquals(10, client.prefetchTableLocations(
+            Collections.singletonList(table)).join(10000).intValue());
+        server.setLatency("GetTableLocations", 500, TimeUnit.MILLISECONDS);
+        long numCalls = server.getNumCalls("GetTableLocations");
+
+        List<Deferred<Master.GetTableLocationsResponsePB>> deferreds = new ArrayList<>();
+        // In the first tablet, the lookup fetches the first three.
+        deferreds.add(client.locateTablet(table, new byte[] { 0x00, 0x01 }));
+        // In the second and third tablets.
+        deferreds.add(client.locateTablet(table, new byte[] { 0x1a, 0x00 }));
+        deferreds.add(client.locateTablet(table, new byte[] { 0x40, 0x00 }));
+        assertEquals(1, client.getNumLocationLookupsInFlight("table"));
+        // In the fourth tablet, past the range of the lookup.
+        deferreds.add(client.locateTablet(table, new byte[] { 0x50, 0x00 }));
+        assertEquals(2, client.getNumLocationLookupsInFlight("table"));
+
+        for (Deferred<Master.GetTableLocationsResponsePB> d : deferreds) {
+          d.join(10000);
+        }
+        assertEquals(numCalls + 2, server.getNumCalls("GetTableLocations"));
+        // The table's map went away with its last lookup.
+        assertFalse(client.hasLocationLookupsMap("table"));
+      } finally {
+        client.close();
+      }
+    }
+  }
+
+  /**
+   * Without the table's tablets cached, a lookup is joined by at most as many other keys as the
+   * tablets it fetches.
+   */
+  @Test
+  public void testJoinsCappedWithoutCachedTablets() throws Exception {
+    try (MockYBServer server = new MockYBServer()) {
+      server.serveMaster(10);
+      server.setLatency("GetTableLocations", 500, TimeUnit.MILLISECONDS);
+      AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder(
+          server.getHostAndPort().toString())
+          .tableLocationsPrefetch(3)
+          .build();
+      try {
+        YBTable table = MockYBServer.openTable(client, "table");
+        List<Deferred<Master.GetTableLocationsResponsePB>> deferreds = new ArrayList<>();
+        deferreds.add(client.locateTablet(table, new byte[] { 0x00 }));
+        // The start key itself always joins.
+        deferreds.add(client.locateTablet(table, new byte[] { 0x00 }));
+        for (int i = 1; i <= 3; i++) {
+          deferreds.add(client.locateTablet(table, new byte[] { (byte) (i * 0x10) }));
+        }
+        assertEquals(1, client.getNumLocationLookupsInFlight("table"));
+        deferreds.add(client.locateTablet(table, new byte[] { 0x40 }));
+        assertEquals(2, client.getNumLocationLookupsInFlight("table"));
+
+        // Emptying the table's cache drops its lookups, they still complete.
+        client.emptyTabletsCacheForTable("table");
+        assertFalse(client.hasLocationLookupsMap("table"));
+        for (Deferred<Master.GetTableLocationsResponsePB> d : deferreds) {
+          d.join(10000);
+        }
+        assertFalse(client.hasLocationLookupsMap("table"));
+      } finally {
+        client.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.cdc.CdcService;
+import org.yb.rpc.RpcHeader;
+
+import com.stumbleupon.async.Callback;
+
+@RunWith(value=YBTestRunner.class)
+public class TestMockYBServer {
+  private static final long TIMEOUT_MS = 10000;
+
+  private MockYBServer server;
+  private AsyncYBClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockYBServer();
+    client = new AsyncYBClient.AsyncYBClientBuilder(server.getHostAndPort().toString())
+        .defaultAdminOperationTimeoutMs(TIMEOUT_MS)
+        .defaultOperationTimeoutMs(TIMEOUT_MS)
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testPing() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      client.ping(server.getHostAndPort()).join(TIMEOUT_MS);
+    }
+    assertEquals(10L, server.getNumCalls("Ping"));
+  }
+
+  @Test
+  public void testListTabletServers() throws Exception {
+    server.serveMaster(1);
+    ListTabletServersResponse response = client.listTabletServers().join(TIMEOUT_MS);
+    assertEquals(1, response.getTabletServersCount());
+    assertEquals(server.getUuid(), response.getTabletServersList().get(0).getUuid());
+    assertEquals(server.getHostAndPort().getPort(),
+                 response.getTabletServersList().get(0).getPort());
+  }
+
+  @Test
+  public void testTableLocations() throws Exception {
+    // More tablets than a lookup returns, so that they take a few lookups.
+    server.serveMaster(250);
+    YBTable table = new YBTable(client, "table", "table_id", null, null);
+    assertEquals(250, client.prefetchTableLocations(Collections.singletonList(table))
+        .join(TIMEOUT_MS).intValue());
+    assertEquals(3L, server.getNumCalls("GetTableLocations"));
+
+    List<LocatedTablet> tablets = table.getTabletsLocations(TIMEOUT_MS);
+    assertEquals(250, tablets.size());
+    LocatedTablet.Replica leader = tablets.get(0).getLeaderReplica();
+    assertNotNull(leader);
+    assertEquals(server.getHostAndPort().getPort(), leader.getRpcPort().intValue());
+  }
+
+  @Test
+  public void testGetChanges() throws Exception {
+    server.serveMaster(1).serveChanges(5);
+    YBTable table = new YBTable(client, "table", "table_id", null, null);
+    final GetChangesResponse[] responses = new GetChangesResponse[1];
+    client.getChanges(server.getHostAndPort(), table, "stream", "tablet-00000", 1, 10,
+        new Callback<Void, GetChangesResponse>() {
+          @Override
+          public Void call(GetChangesResponse response) {
+            responses[0] = response;
+            return null;
+          }
+        }).join(TIMEOUT_MS);
+
+    CdcService.GetChangesResponsePB pb = responses[0].getResp();
+    assertEquals(5, pb.getRecordsCount());
+    assertEquals(11L, pb.getRecords(0).getTime());
+    assertEquals(15L, pb.getCheckpoint().getOpId().getIndex());
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+    server.setLatency("Ping", 200, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    client.ping(server.getHostAndPort()).join(TIMEOUT_MS);
+    assertGreaterThanOrEqualTo((System.nanoTime() - start) / 1000000, 200L);
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    server.setErrorRate("Ping", 1, RpcHeader.ErrorStatusPB.RpcErrorCodePB.ERROR_APPLICATION);
+    try {
+      client.ping(server.getHostAndPort()).join(TIMEOUT_MS);
+      fail("The ping should have failed");
+    } catch (NonRecoverableException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Injected error"));
+    }
+
+    server.setErrorRate("Ping", 0, null);
+    client.ping(server.getHostAndPort()).join(TIMEOUT_MS);
+    assertEquals(2L, server.getNumCalls("Ping"));
+  }
+
+  @Test
+  public void testNoSuchMethod() throws Exception {
+    try {
+      client.setFlag(server.getHostAndPort(), "flag", "value").join(TIMEOUT_MS);
+      fail("Setting a flag should have failed");
+    } catch (NonRecoverableException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("No such method"));
+    }
+    assertEquals(0L, server.getNumCalls("SetFlag"));
+  }
+}
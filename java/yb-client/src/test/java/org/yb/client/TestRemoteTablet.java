@@ -0,0 +1,89 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.util.Slice;
+
+@RunWith(value=YBTestRunner.class)
+public class TestRemoteTablet {
+  private static final int NUM_REPLICAS = 3;
+
+  private static AsyncYBClient client;
+
+  @BeforeClass
+  public static void setUpClient() {
+    client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build();
+  }
+
+  @AfterClass
+  public static void tearDownClient() throws Exception {
+    client.close();
+  }
+
+  private static AsyncYBClient.RemoteTablet newRemoteTablet() {
+    Partition partition = new Partition(new byte[0], new byte[0], new ArrayList<Integer>());
+    return client.new RemoteTablet("table", new Slice(new byte[] { 't' }), partition);
+  }
+
+  private static List<TabletClient> newReplicas() {
+    List<TabletClient> replicas = new ArrayList<>();
+    for (int i = 0; i < NUM_REPLICAS; i++) {
+      replicas.add(new TabletClient(client, "ts" + i));
+    }
+    return replicas;
+  }
+
+  @Test
+  public void testLeaderFailover() {
+    AsyncYBClient.RemoteTablet tablet = newRemoteTablet();
+    assertNull(client.clientFor(tablet));
+
+    List<TabletClient> replicas = newReplicas();
+    TabletClient ts0 = replicas.get(0);
+    TabletClient ts1 = replicas.get(1);
+    TabletClient ts2 = replicas.get(2);
+    tablet.setReplicas(new AsyncYBClient.ReplicaSet(replicas, 0));
+    assertSame(ts0, client.clientFor(tablet));
+
+    // Demoting a follower is a no-op.
+    tablet.demoteLeader(ts2);
+    assertSame(ts0, client.clientFor(tablet));
+
+    tablet.demoteLeader(ts0);
+    assertSame(ts1, client.clientFor(tablet));
+
+    // Removing a server before the leader shifts the leader down the list.
+    assertTrue(tablet.removeTabletServer(ts0));
+    assertFalse(tablet.removeTabletServer(ts0));
+    assertSame(ts1, client.clientFor(tablet));
+    assertEquals(Arrays.asList(ts1, ts2), tablet.getReplicas().servers);
+
+    // Removing the leader promotes the next one, unless it was the last one.
+    assertTrue(tablet.removeTabletServer(ts1));
+    assertSame(ts2, client.clientFor(tablet));
+    tablet.demoteLeader(ts2);
+    assertNull(client.clientFor(tablet));
+  }
+}
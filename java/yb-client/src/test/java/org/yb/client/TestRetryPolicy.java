@@ -0,0 +1,99 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestRetryPolicy {
+
+  @Test
+  public void testBackoff() {
+    RetryPolicy policy = new RetryPolicy.Builder().baseDelayMs(10).maxDelayMs(1000).build();
+    assertEquals(10, policy.nextSleepMs(0));
+    long sleep = 0;
+    long maxSeen = 0;
+    for (int i = 0; i < 100; i++) {
+      long next = policy.nextSleepMs(sleep);
+      assertTrue(next >= 10);
+      assertTrue(next <= 1000);
+      assertTrue(next <= Math.max(10, sleep * 3));
+      maxSeen = Math.max(maxSeen, next);
+      sleep = next;
+    }
+    // With 100 retries we're bound to have grown past a few multiples of the base delay.
+    assertTrue(maxSeen > 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxLowerThanBase() {
+    new RetryPolicy.Builder().baseDelayMs(500).maxDelayMs(100).build();
+  }
+
+  @Test
+  public void testRetryBudget() throws Exception {
+    RetryPolicy policy = new RetryPolicy.Builder().retryBudget(2).tokensPerSuccess(0.5).build();
+    try (AsyncYBClient client =
+             new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").retryPolicy(policy).build()) {
+      assertTrue(client.acquireRetryToken());
+      assertTrue(client.acquireRetryToken());
+      assertFalse(client.acquireRetryToken());
+
+      client.recordRpcSuccess();
+      assertFalse(client.acquireRetryToken());
+      client.recordRpcSuccess();
+      assertTrue(client.acquireRetryToken());
+
+      // The bucket never holds more than its capacity.
+      for (int i = 0; i < 100; i++) {
+        client.recordRpcSuccess();
+      }
+      assertTrue(client.acquireRetryToken());
+      assertTrue(client.acquireRetryToken());
+      assertFalse(client.acquireRetryToken());
+    }
+
+    try (AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build()) {
+      // No budget by default.
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(client.acquireRetryToken());
+      }
+    }
+  }
+
+  @Test
+  public void testMetrics() {
+    RetryMetrics metrics = new RetryMetrics();
+    metrics.recordLeaderChangeRetry(0);
+    metrics.recordBackoffRetry(100);
+    metrics.recordBackoffRetry(101);
+    metrics.recordBackoffRetry(10000);
+    metrics.recordBudgetExhausted();
+
+    assertEquals(3, metrics.getBackoffRetries());
+    assertEquals(1, metrics.getLeaderChangeRetries());
+    assertEquals(1, metrics.getBudgetExhausted());
+    assertEquals(10201, metrics.getTotalSleepMs());
+    long[] histogram = metrics.getSleepHistogram();
+    assertEquals(RetryMetrics.SLEEP_BUCKET_BOUNDS_MS.length + 1, histogram.length);
+    assertEquals(1, histogram[0]);
+    assertEquals(1, histogram[3]);
+    assertEquals(1, histogram[4]);
+    assertEquals(1, histogram[histogram.length - 1]);
+  }
+}
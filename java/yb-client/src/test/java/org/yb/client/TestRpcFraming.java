@@ -0,0 +1,183 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.rpc.RpcHeader;
+import org.yb.util.Slice;
+
+@RunWith(value=YBTestRunner.class)
+public class TestRpcFraming {
+
+  private static RpcHeader.ErrorStatusPB errorOfSize(int size) {
+    return RpcHeader.ErrorStatusPB.newBuilder()
+        .setCode(RpcHeader.ErrorStatusPB.RpcErrorCodePB.ERROR_APPLICATION)
+        .setMessage(Strings.repeat("x", size))
+        .build();
+  }
+
+  private static RpcHeader.ResponseHeader responseHeader(int callId) {
+    return RpcHeader.ResponseHeader.newBuilder()
+        .setCallId(callId)
+        .build();
+  }
+
+  // Requests and responses are framed the same way, so a serialized request can stand in for a
+  // response as long as its header is a ResponseHeader. The frame is copied to the heap so that
+  // the response can refer to its array.
+  private static ByteBuf responseFrame(int callId, RpcHeader.ErrorStatusPB pb) {
+    ByteBuf serialized = YRpc.toByteBuf(responseHeader(callId), pb);
+    try {
+      return Unpooled.copiedBuffer(serialized);
+    } finally {
+      serialized.release();
+    }
+  }
+
+  @Test
+  public void testParseWithoutCopy() {
+    RpcHeader.ErrorStatusPB pb = errorOfSize(100);
+    ByteBuf frame = responseFrame(42, pb);
+    int frameSize = frame.readableBytes();
+
+    CallResponse response = new CallResponse(frame);
+    assertEquals(42, response.getHeader().getCallId());
+    assertEquals(frameSize - 4, response.getTotalResponseSize());
+    // The whole frame was consumed, even though we haven't looked at the message yet.
+    assertEquals(0, frame.readableBytes());
+
+    Slice message = response.getPBMessage();
+    assertSame(frame.array(), message.getRawArray());
+    RpcHeader.ErrorStatusPB.Builder builder = RpcHeader.ErrorStatusPB.newBuilder();
+    YRpc.readProtobuf(message, builder);
+    assertEquals(pb, builder.build());
+  }
+
+  @Test
+  public void testConsecutiveFrames() {
+    ByteBuf first = responseFrame(1, errorOfSize(10));
+    ByteBuf second = responseFrame(2, errorOfSize(3000));
+    // Both responses in one buffer, like they'd arrive from the socket.
+    ByteBuf buf = Unpooled.buffer();
+    buf.writeBytes(first);
+    buf.writeBytes(second);
+
+    CallResponse response = new CallResponse(buf);
+    assertEquals(1, response.getHeader().getCallId());
+    response = new CallResponse(buf);
+    assertEquals(2, response.getHeader().getCallId());
+    RpcHeader.ErrorStatusPB.Builder builder = RpcHeader.ErrorStatusPB.newBuilder();
+    YRpc.readProtobuf(response.getPBMessage(), builder);
+    assertEquals(3000, builder.getMessage().length());
+    assertEquals(0, buf.readableBytes());
+  }
+
+  @Test
+  public void testNextFrame() {
+    ByteBuf response = responseFrame(7, errorOfSize(1000));
+    int frameSize = response.readableBytes();
+    ByteBuf buf = Unpooled.buffer();
+    // Nothing comes out until the whole frame arrived, and nothing is consumed meanwhile.
+    buf.writeBytes(response, 0, 2);
+    assertNull(TabletClient.nextFrame(buf));
+    buf.writeBytes(response, 2, frameSize - 3);
+    assertNull(TabletClient.nextFrame(buf));
+    assertEquals(frameSize - 1, buf.readableBytes());
+    buf.writeBytes(response, frameSize - 1, 1);
+    ByteBuf frame = TabletClient.nextFrame(buf);
+    assertEquals(frameSize, frame.readableBytes());
+    assertEquals(0, buf.readableBytes());
+    assertEquals(7, new CallResponse(frame).getHeader().getCallId());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeFrameLength() {
+    ByteBuf buf = Unpooled.buffer();
+    buf.writeInt(-1);
+    TabletClient.nextFrame(buf);
+  }
+
+  @Test
+  public void testPooledBuffer() {
+    RpcHeader.ErrorStatusPB pb = errorOfSize(5000);
+    ByteBuf buf = YRpc.toByteBuf(responseHeader(3), pb);
+    assertSame(PooledByteBufAllocator.DEFAULT, buf.alloc());
+    assertEquals(buf.readableBytes() - 4, buf.getInt(0));
+    buf.release();
+  }
+
+  @Test
+  public void testParseDirectBuffer() {
+    RpcHeader.ErrorStatusPB pb = errorOfSize(5000);
+    ByteBuf frame = responseFrame(3, pb);
+    // Responses are read from the socket into pooled direct memory.
+    ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(frame.readableBytes());
+    buf.writeBytes(frame);
+
+    // They're parsed the same, by copying the message out.
+    CallResponse response = new CallResponse(buf);
+    assertEquals(3, response.getHeader().getCallId());
+    RpcHeader.ErrorStatusPB.Builder builder = RpcHeader.ErrorStatusPB.newBuilder();
+    YRpc.readProtobuf(response.getPBMessage(), builder);
+    assertEquals(pb, builder.build());
+
+    // The buffer goes back to the pool with its last reference.
+    assertTrue(buf.release());
+    assertEquals(0, buf.refCnt());
+  }
+
+  @Test
+  public void testHeapCumulation() {
+    RpcHeader.ErrorStatusPB pb = errorOfSize(5000);
+    ByteBuf frame = responseFrame(4, pb);
+    int frameSize = frame.readableBytes();
+    // The response arrives in direct buffers, over three reads.
+    ByteBuf cumulation = Unpooled.EMPTY_BUFFER;
+    List<ByteBuf> reads = new ArrayList<>();
+    for (int length : new int[] { 10, 3000, frameSize - 3010 }) {
+      ByteBuf read = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+      read.writeBytes(frame, length);
+      reads.add(read);
+      cumulation = TabletClient.HEAP_CUMULATOR.cumulate(
+          PooledByteBufAllocator.DEFAULT, cumulation, read);
+      assertTrue(cumulation.hasArray());
+    }
+    // The reads went back to the pool as they were copied.
+    for (ByteBuf read : reads) {
+      assertEquals(0, read.refCnt());
+    }
+
+    // The response is parsed out of the cumulation's array.
+    ByteBuf buf = TabletClient.nextFrame(cumulation);
+    CallResponse response = new CallResponse(buf);
+    assertEquals(4, response.getHeader().getCallId());
+    Slice message = response.getPBMessage();
+    assertSame(cumulation.array(), message.getRawArray());
+    RpcHeader.ErrorStatusPB.Builder builder = RpcHeader.ErrorStatusPB.newBuilder();
+    YRpc.readProtobuf(message, builder);
+    assertEquals(pb, builder.build());
+    assertTrue(cumulation.release());
+  }
+}
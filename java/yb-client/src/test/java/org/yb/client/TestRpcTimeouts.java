@@ -0,0 +1,126 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.rpc.RpcHeader;
+import org.yb.server.ServerBase;
+
+import com.stumbleupon.async.Deferred;
+
+@RunWith(value=YBTestRunner.class)
+public class TestRpcTimeouts {
+
+  private static Deferred<PingResponse> ping(TabletClient tabletClient, long timeoutMs) {
+    PingRequest ping = new PingRequest();
+    ping.setTimeoutMillis(timeoutMs);
+    Deferred<PingResponse> d = ping.getDeferred();
+    tabletClient.sendRpc(ping);
+    return d;
+  }
+
+  private static void readRequest(DataInputStream in) throws Exception {
+    in.readFully(new byte[in.readInt()]);
+  }
+
+  private static void writeResponse(OutputStream out, int callId) throws Exception {
+    RpcHeader.ResponseHeader header = RpcHeader.ResponseHeader.newBuilder()
+        .setCallId(callId)
+        .build();
+    ByteBuf buf = YRpc.toByteBuf(header, ServerBase.PingResponsePB.getDefaultInstance());
+    try {
+      out.write(ByteBufUtil.getBytes(buf));
+    } finally {
+      buf.release();
+    }
+    out.flush();
+  }
+
+  @Test
+  public void testTimeoutOnSilentServer() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+         AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+             .defaultSocketReadTimeoutMs(60000)
+             .build()) {
+      TabletClient tabletClient = client.newClient("ts", "127.0.0.1", server.getLocalPort());
+      try (Socket socket = server.accept()) {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readFully(new byte[3]);
+
+        long start = System.nanoTime();
+        Deferred<PingResponse> d = ping(tabletClient, 500);
+        readRequest(in);
+        try {
+          d.join(10000);
+          fail("The ping should have timed out");
+        } catch (NonRecoverableException e) {
+          assertTrue(e.getMessage(), e.getMessage().startsWith("Time out"));
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        // Well before the socket read timeout, allowing for the timer's tick and a slow machine.
+        assertTrue("Timed out after " + elapsedMs + "ms", elapsedMs >= 500 && elapsedMs < 5000);
+        assertEquals(0, tabletClient.getNumInflightRpcs());
+
+        // The late response is dropped and the connection keeps working.
+        writeResponse(socket.getOutputStream(), 0);
+        d = ping(tabletClient, 10000);
+        readRequest(in);
+        writeResponse(socket.getOutputStream(), 1);
+        assertNotNull(d.join(10000));
+        assertTrue(tabletClient.isAlive());
+      }
+    }
+  }
+
+  @Test
+  public void testAnsweredRpcsCancelTheirTimeouts() throws Exception {
+    try (MockYBServer server = new MockYBServer();
+         ClientResources resources = new ClientResources(1);
+         AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder(
+             server.getHostAndPort().toString())
+             .sharedResources(resources)
+             .build()) {
+      TabletClient tabletClient = client.newClient(
+          "ts", server.getHostAndPort().getHost(), server.getHostAndPort().getPort());
+      List<Deferred<PingResponse>> pings = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        pings.add(ping(tabletClient, 60000));
+      }
+      for (Deferred<PingResponse> d : pings) {
+        assertNotNull(d.join(10000));
+      }
+      assertEquals(0, tabletClient.getNumInflightRpcs());
+      // No timeout outlives its RPC, the cancelled ones are dropped at the timer's next tick.
+      long deadline = System.currentTimeMillis() + 10000;
+      while (resources.getTimer().pendingTimeouts() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(0L, resources.getTimer().pendingTimeouts());
+    }
+  }
+}
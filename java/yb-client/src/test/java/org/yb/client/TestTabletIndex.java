@@ -0,0 +1,160 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.util.Slice;
+
+@RunWith(value=YBTestRunner.class)
+public class TestTabletIndex {
+  private static AsyncYBClient client;
+
+  @BeforeClass
+  public static void setUpClient() {
+    client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build();
+  }
+
+  @AfterClass
+  public static void tearDownClient() throws Exception {
+    client.close();
+  }
+
+  private static AsyncYBClient.RemoteTablet tablet(byte[] start, byte[] end) {
+    Partition partition = new Partition(start, end, new ArrayList<Integer>());
+    return client.new RemoteTablet("table", new Slice(start), partition);
+  }
+
+  private static byte[] hashKey(int hashCode) {
+    return new byte[] { (byte) (hashCode >> 8), (byte) hashCode };
+  }
+
+  /** Tablets covering the whole key space, split at the given sorted keys. */
+  private static List<AsyncYBClient.RemoteTablet> tablets(List<byte[]> splits) {
+    List<AsyncYBClient.RemoteTablet> tablets = new ArrayList<>();
+    byte[] start = new byte[0];
+    for (byte[] split : splits) {
+      tablets.add(tablet(start, split));
+      start = split;
+    }
+    tablets.add(tablet(start, new byte[0]));
+    return tablets;
+  }
+
+  private static void checkAgainstTreeMap(TabletIndex index, List<AsyncYBClient.RemoteTablet>
+      tablets, Random random) {
+    TreeMap<byte[], AsyncYBClient.RemoteTablet> expected = new TreeMap<>(Bytes.MEMCMP);
+    for (AsyncYBClient.RemoteTablet tablet : tablets) {
+      expected.put(tablet.getPartition().getPartitionKeyStart(), tablet);
+    }
+    assertEquals(expected.size(), index.size());
+    for (int i = 0; i < 10000; i++) {
+      byte[] key = new byte[random.nextInt(6)];
+      random.nextBytes(key);
+      Map.Entry<byte[], AsyncYBClient.RemoteTablet> entry = expected.floorEntry(key);
+      assertSame(entry == null ? null : entry.getValue(), index.floor(key));
+    }
+    for (AsyncYBClient.RemoteTablet tablet : tablets) {
+      assertSame(tablet, index.floor(tablet.getPartition().getPartitionKeyStart()));
+    }
+  }
+
+  @Test
+  public void testRangePartitions() {
+    Random random = new Random(7);
+    List<byte[]> splits = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      byte[] split = new byte[1 + random.nextInt(4)];
+      random.nextBytes(split);
+      splits.add(split);
+    }
+    splits.sort(Bytes.MEMCMP);
+    for (int i = splits.size() - 1; i > 0; i--) {
+      if (Bytes.memcmp(splits.get(i), splits.get(i - 1)) == 0) {
+        splits.remove(i);
+      }
+    }
+    List<AsyncYBClient.RemoteTablet> tablets = tablets(splits);
+    TabletIndex index = TabletIndex.EMPTY.withTablets(tablets);
+    assertFalse(index.hasHashTable());
+    checkAgainstTreeMap(index, tablets, random);
+  }
+
+  @Test
+  public void testHashPartitions() {
+    Random random = new Random(11);
+    List<byte[]> splits = new ArrayList<>();
+    for (int hashCode = 1000; hashCode < 65536; hashCode += 1000 + random.nextInt(1000)) {
+      splits.add(hashKey(hashCode));
+    }
+    List<AsyncYBClient.RemoteTablet> tablets = tablets(splits);
+    TabletIndex index = TabletIndex.EMPTY.withTablets(tablets);
+    assertTrue(index.hasHashTable());
+    checkAgainstTreeMap(index, tablets, random);
+
+    // A table without a tablet for the first hash codes.
+    TabletIndex partial = index.without(tablets.get(0));
+    assertNull(partial.floor(hashKey(10)));
+    assertSame(tablets.get(1), partial.floor(hashKey(splits.get(0)[0] << 8 | 0xFF)));
+  }
+
+  @Test
+  public void testSmallHashPartitionedTable() {
+    // Too few tablets to be worth a hash table, the binary search gives the same answers.
+    List<AsyncYBClient.RemoteTablet> tablets =
+        tablets(Arrays.asList(hashKey(0x4000), hashKey(0x8000), hashKey(0xC000)));
+    TabletIndex index = TabletIndex.EMPTY.withTablets(tablets);
+    assertFalse(index.hasHashTable());
+    checkAgainstTreeMap(index, tablets, new Random(13));
+  }
+
+  @Test
+  public void testUpdates() {
+    List<AsyncYBClient.RemoteTablet> tablets =
+        tablets(Arrays.asList(hashKey(0x4000), hashKey(0x8000), hashKey(0xC000)));
+    // Tablets can come in any order and in several batches.
+    TabletIndex index = TabletIndex.EMPTY.withTablets(Arrays.asList(tablets.get(3),
+        tablets.get(1)));
+    index = index.withTablets(Arrays.asList(tablets.get(2), tablets.get(0)));
+    assertEquals(tablets, index.tablets());
+    assertSame(tablets.get(0), index.first());
+
+    // A tablet replaces the one with the same start key.
+    AsyncYBClient.RemoteTablet replacement = tablet(hashKey(0x8000), hashKey(0x9000));
+    TabletIndex updated = index.withTablets(Arrays.asList(replacement));
+    assertEquals(4, updated.size());
+    assertSame(replacement, updated.floor(hashKey(0x8500)));
+    // The old index is left as it was.
+    assertSame(tablets.get(2), index.floor(hashKey(0x8500)));
+
+    // Only the exact tablet is removed.
+    assertSame(updated, updated.without(tablets.get(2)));
+    TabletIndex removed = updated.without(replacement);
+    assertEquals(3, removed.size());
+    assertSame(tablets.get(1), removed.floor(hashKey(0x8500)));
+    assertSame(index, index.withTablets(new ArrayList<AsyncYBClient.RemoteTablet>()));
+  }
+}
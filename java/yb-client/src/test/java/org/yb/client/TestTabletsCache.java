@@ -0,0 +1,102 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import com.google.common.base.Charsets;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.Common;
+import org.yb.YBTestRunner;
+import org.yb.consensus.Metadata;
+import org.yb.master.Master;
+
+@RunWith(value=YBTestRunner.class)
+public class TestTabletsCache {
+
+  private static Master.TabletLocationsPB tabletPb(String id, String start, String end) {
+    Common.PartitionPB.Builder partition = Common.PartitionPB.newBuilder()
+        .setPartitionKeyStart(ByteString.copyFrom(start, Charsets.UTF_8))
+        .setPartitionKeyEnd(ByteString.copyFrom(end, Charsets.UTF_8));
+    Master.TSInfoPB.Builder tsInfo = Master.TSInfoPB.newBuilder()
+        .setPermanentUuid(ByteString.copyFromUtf8("ts"))
+        .addPrivateRpcAddresses(Common.HostPortPB.newBuilder().setHost("127.0.0.1").setPort(1));
+    return Master.TabletLocationsPB.newBuilder()
+        .setTabletId(ByteString.copyFromUtf8(id))
+        .setPartition(partition)
+        .setStale(false)
+        .addReplicas(Master.TabletLocationsPB.ReplicaPB.newBuilder()
+            .setTsInfo(tsInfo)
+            .setRole(Metadata.RaftPeerPB.Role.LEADER))
+        .build();
+  }
+
+  private static byte[] key(String key) {
+    return key.getBytes(Charsets.UTF_8);
+  }
+
+  @Test
+  public void testPartitionListVersion() throws Exception {
+    try (AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1:1")
+             .defaultAdminOperationTimeoutMs(500)
+             .build()) {
+      YBTable table = new YBTable(client, "table", "table_id", null, null);
+      client.discoverTablets(table, Master.GetTableLocationsResponsePB.newBuilder()
+          .addTabletLocations(tabletPb("a", "", "m"))
+          .addTabletLocations(tabletPb("b", "m", ""))
+          .setPartitionListVersion(1)
+          .build());
+      assertEquals("a", client.getTablet("table_id", key("h")).getTabletIdAsString());
+      assertEquals("b", client.getTablet("table_id", key("x")).getTabletIdAsString());
+      assertEquals(0, client.getTabletCacheMetrics().getPartitionListChanges());
+
+      // The same version again isn't a change.
+      client.discoverTablets(table, Master.GetTableLocationsResponsePB.newBuilder()
+          .addTabletLocations(tabletPb("b", "m", ""))
+          .setPartitionListVersion(1)
+          .build());
+      assertEquals(0, client.getTabletCacheMetrics().getPartitionListChanges());
+
+      // Tablet "a" was split, its first child takes its place in the cache.
+      client.discoverTablets(table, Master.GetTableLocationsResponsePB.newBuilder()
+          .addTabletLocations(tabletPb("a1", "", "g"))
+          .addTabletLocations(tabletPb("a2", "g", "m"))
+          .setPartitionListVersion(2)
+          .build());
+      assertEquals(1, client.getTabletCacheMetrics().getPartitionListChanges());
+      assertEquals("a1", client.getTablet("table_id", key("c")).getTabletIdAsString());
+      assertEquals("a2", client.getTablet("table_id", key("h")).getTabletIdAsString());
+      assertEquals("b", client.getTablet("table_id", key("x")).getTabletIdAsString());
+    }
+  }
+
+  @Test
+  public void testMetrics() {
+    TabletCacheMetrics metrics = new TabletCacheMetrics();
+    assertEquals(0, metrics.getHitRate(), 0);
+    for (int i = 0; i < 3; i++) {
+      metrics.recordHit();
+    }
+    metrics.recordMiss();
+    assertEquals(0.75, metrics.getHitRate(), 0.0001);
+
+    metrics.recordRefresh(10);
+    metrics.recordRefresh(30);
+    assertEquals(2, metrics.getRefreshes());
+    assertEquals(20, metrics.getAverageRefreshMs(), 0.0001);
+    assertEquals(30, metrics.getMaxRefreshMs());
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import com.stumbleupon.async.Deferred;
+
+@RunWith(value=YBTestRunner.class)
+public class TestWaitForCondition {
+  private static AsyncYBClient client;
+
+  @BeforeClass
+  public static void setUpClient() {
+    client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build();
+  }
+
+  @AfterClass
+  public static void tearDownClient() throws Exception {
+    client.close();
+  }
+
+  /** Holds from the given check on, the checks before it fail or don't hold. */
+  private static class CountingCondition implements AsyncYBClient.AsyncCondition {
+    final AtomicInteger numChecks = new AtomicInteger();
+    private final int holdsAt;
+    private final boolean fail;
+
+    CountingCondition(int holdsAt, boolean fail) {
+      this.holdsAt = holdsAt;
+      this.fail = fail;
+    }
+
+    @Override
+    public Deferred<Boolean> check() throws Exception {
+      int check = numChecks.incrementAndGet();
+      if (check >= holdsAt) {
+        return Deferred.fromResult(true);
+      }
+      if (!fail) {
+        return Deferred.fromResult(false);
+      }
+      // Fails both ways a condition can fail.
+      if (check % 2 == 0) {
+        throw new Exception("check " + check + " failed");
+      }
+      return Deferred.fromError(new Exception("check " + check + " failed"));
+    }
+  }
+
+  @Test
+  public void testConditionHolds() throws Exception {
+    CountingCondition condition = new CountingCondition(5, false);
+    long start = System.nanoTime();
+    assertTrue(client.waitForCondition(condition, 10000).join(10000));
+    long elapsedMs = (System.nanoTime() - start) / 1000000;
+    assertEquals(5, condition.numChecks.get());
+    // Waited 20 + 40 + 80 + 160ms between the checks, give or take the tick of the timer.
+    assertGreaterThanOrEqualTo(elapsedMs, 200L);
+    assertLessThan(elapsedMs, 2000L);
+  }
+
+  @Test
+  public void testErrorsAreRetried() throws Exception {
+    CountingCondition condition = new CountingCondition(4, true);
+    assertTrue(client.waitForCondition(condition, 10000).join(10000));
+    assertEquals(4, condition.numChecks.get());
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    CountingCondition condition = new CountingCondition(Integer.MAX_VALUE, false);
+    long start = System.nanoTime();
+    assertFalse(client.waitForCondition(condition, 3000).join(10000));
+    long elapsedMs = (System.nanoTime() - start) / 1000000;
+    assertGreaterThanOrEqualTo(elapsedMs, 2900L);
+    assertLessThan(elapsedMs, 5000L);
+    // The delays grow exponentially: 20, 40, ..., 1280ms, then the rest of the timeout.
+    assertLessThanOrEqualTo(condition.numChecks.get(), 10);
+  }
+
+  @Test
+  public void testTimeoutWithCheckInFlight() throws Exception {
+    AsyncYBClient.AsyncCondition neverAnswers = new AsyncYBClient.AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return new Deferred<>();
+      }
+    };
+    assertFalse(client.waitForCondition(neverAnswers, 500).join(10000));
+  }
+
+  @Test
+  public void testNullCountsAsNotHolding() throws Exception {
+    final AtomicInteger numChecks = new AtomicInteger();
+    AsyncYBClient.AsyncCondition holdsSecond = new AsyncYBClient.AsyncCondition() {
+      @Override
+      public Deferred<Boolean> check() {
+        return Deferred.fromResult(numChecks.incrementAndGet() == 1 ? null : true);
+      }
+    };
+    assertTrue(client.waitForCondition(holdsSecond, 10000).join(10000));
+    assertEquals(2, numChecks.get());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    AsyncYBClient closed = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build();
+    CountingCondition condition = new CountingCondition(Integer.MAX_VALUE, false);
+    Deferred<Boolean> result = closed.waitForCondition(condition, 60000);
+    closed.close();
+    // The pending wait gives up right away rather than at its timeout.
+    assertFalse(result.join(1000));
+  }
+
+  @Test
+  public void testManyConditions() throws Exception {
+    int numThreads = Thread.activeCount();
+    List<CountingCondition> conditions = new ArrayList<>();
+    List<Deferred<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      CountingCondition condition = new CountingCondition(2 + i % 5, i % 3 == 0);
+      conditions.add(condition);
+      results.add(client.waitForCondition(condition, 30000));
+    }
+    // The waits share the timer thread of the client.
+    assertLessThanOrEqualTo(Thread.activeCount(), numThreads + 1);
+    for (Deferred<Boolean> result : results) {
+      assertTrue(result.join(30000));
+    }
+    for (int i = 0; i < conditions.size(); i++) {
+      assertEquals(2 + i % 5, conditions.get(i).numChecks.get());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestWriteCoalescing {
+
+  private static final int NUM_RPCS = 100;
+
+  /**
+   * Sends NUM_RPCS pings to a server that never answers, checks that they all made it to the
+   * server in full frames and returns how many channel writes that took.
+   */
+  private static long sendPings(AsyncYBClient.AsyncYBClientBuilder builder) throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+         AsyncYBClient client = builder.build()) {
+      TabletClient tabletClient = client.newClient("ts", "127.0.0.1", server.getLocalPort());
+      try (Socket socket = server.accept()) {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] preamble = new byte[3];
+        in.readFully(preamble);
+        assertEquals('Y', preamble[0]);
+        for (int i = 0; i < NUM_RPCS; i++) {
+          PingRequest ping = new PingRequest();
+          ping.setTimeoutMillis(10000);
+          tabletClient.sendRpc(ping);
+        }
+        for (int i = 0; i < NUM_RPCS; i++) {
+          int frameSize = in.readInt();
+          in.readFully(new byte[frameSize]);
+        }
+        return tabletClient.getNumChannelWrites();
+      }
+    }
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    assertEquals(NUM_RPCS, sendPings(new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")));
+  }
+
+  @Test
+  public void testCoalesceByDelay() throws Exception {
+    long writes = sendPings(new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+        .writeCoalescing(1 << 20, 100));
+    // The pings are sent well within the delay, allow for a slow test machine anyway.
+    assertTrue("Too many writes: " + writes, writes <= 5);
+  }
+
+  @Test
+  public void testCoalesceByBytes() throws Exception {
+    // Each ping is a few dozen bytes, so a flush should happen every few pings without waiting
+    // for the delay, which only flushes the last ones.
+    long writes = sendPings(new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+        .writeCoalescing(200, 100));
+    assertTrue("Too few writes: " + writes, writes >= NUM_RPCS / 10);
+    assertTrue("Too many writes: " + writes, writes < NUM_RPCS);
+  }
+
+  @Test
+  public void testCoalesceOnIoThread() throws Exception {
+    long writes = sendPings(new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+        .writeCoalescing(1 << 20, 0));
+    assertTrue("Too many writes: " + writes, writes <= NUM_RPCS);
+  }
+
+  /**
+   * Closes a client while its pings wait for a delayed flush which, on a timer shared with other
+   * clients, never runs. The queued writes are released anyway.
+   */
+  @Test
+  public void testCloseWithQueuedWrites() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+         ClientResources resources = new ClientResources(1)) {
+      AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1")
+          .sharedResources(resources)
+          .writeCoalescing(1 << 20, 60000)
+          .build();
+      TabletClient tabletClient = client.newClient("ts", "127.0.0.1", server.getLocalPort());
+      try (Socket socket = server.accept()) {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readFully(new byte[3]);
+        for (int i = 0; i < NUM_RPCS; i++) {
+          PingRequest ping = new PingRequest();
+          ping.setTimeoutMillis(60000);
+          tabletClient.sendRpc(ping);
+        }
+        // The RPCs sent before the client got ready are queued once it is.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tabletClient.getNumQueuedWrites() < NUM_RPCS &&
+               System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        assertEquals(NUM_RPCS, tabletClient.getNumQueuedWrites());
+        client.close();
+        assertEquals(0, tabletClient.getNumQueuedWrites());
+        assertEquals(0, tabletClient.getNumChannelWrites());
+      }
+    }
+  }
+}
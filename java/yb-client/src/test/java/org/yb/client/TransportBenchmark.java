@@ -0,0 +1,254 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.net.HostAndPort;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import org.yb.rpc.RpcHeader;
+
+/**
+ * Measures the throughput and latency of the client transport: pings are sent to a mock server in
+ * this process with 1, 16, 128 and 1024 of them in flight, each one sending the next when it
+ * completes. The server only depends on sockets and protobuf, so the numbers of different
+ * transports are comparable.
+ * <p>
+ * Prints pings per second, the 50th, 99th and 99.9th percentile latencies and the CPU time of the
+ * whole process per ping. Run with
+ * {@code java -cp <test classpath> org.yb.client.TransportBenchmark}.
+ */
+public class TransportBenchmark {
+  private static final int[] CONCURRENCY = { 1, 16, 128, 1024 };
+  private static final long WARMUP_MS = 10000;
+  private static final long MEASURE_MS = 5000;
+
+  // Latencies are counted in buckets of 1us, the last one counts everything above 100ms.
+  private static final int NUM_BUCKETS = 100000;
+
+  public static void main(String[] args) throws Exception {
+    try (PingServer server = new PingServer()) {
+      for (int concurrency : CONCURRENCY) {
+        try (AsyncYBClient client = new AsyncYBClient.AsyncYBClientBuilder("127.0.0.1").build()) {
+          run(client, server.getHostAndPort(), concurrency);
+        }
+      }
+    }
+  }
+
+  private static void run(AsyncYBClient client, HostAndPort hp, int concurrency)
+      throws Exception {
+    final Run warmup = new Run(client, hp);
+    warmup.start(concurrency);
+    Thread.sleep(WARMUP_MS);
+    warmup.stop();
+
+    Run run = new Run(client, hp);
+    com.sun.management.OperatingSystemMXBean os =
+        (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    long startCpu = os.getProcessCpuTime();
+    long start = System.nanoTime();
+    run.start(concurrency);
+    Thread.sleep(MEASURE_MS);
+    run.stop();
+    long nanos = System.nanoTime() - start;
+    long cpuNanos = os.getProcessCpuTime() - startCpu;
+
+    long count = run.count();
+    System.out.printf("%5d in flight: %9.0f pings/s, p50 %7d us, p99 %7d us, p99.9 %7d us, " +
+        "%6.2f us CPU/ping%n", concurrency, count * 1e9 / nanos, run.percentile(0.5, count),
+        run.percentile(0.99, count), run.percentile(0.999, count), cpuNanos / 1000.0 / count);
+  }
+
+  /** Chains of pings, each one sending the next when it completes. */
+  private static class Run {
+    private final AsyncYBClient client;
+    private final HostAndPort hp;
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private CountDownLatch done;
+
+    Run(AsyncYBClient client, HostAndPort hp) {
+      this.client = client;
+      this.hp = hp;
+    }
+
+    void start(int concurrency) {
+      done = new CountDownLatch(concurrency);
+      for (int i = 0; i < concurrency; i++) {
+        ping();
+      }
+    }
+
+    void stop() throws InterruptedException {
+      stopped.set(true);
+      done.await();
+    }
+
+    private void ping() {
+      final long start = System.nanoTime();
+      Deferred<PingResponse> d = client.ping(hp);
+      d.addCallbacks(new Callback<Void, PingResponse>() {
+        @Override
+        public Void call(PingResponse response) {
+          int micros = (int) Math.min((System.nanoTime() - start) / 1000, NUM_BUCKETS - 1);
+          buckets.incrementAndGet(micros);
+          next();
+          return null;
+        }
+      }, new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) {
+          System.err.println("Ping failed: " + e);
+          next();
+          return null;
+        }
+      });
+    }
+
+    private void next() {
+      if (stopped.get()) {
+        done.countDown();
+      } else {
+        ping();
+      }
+    }
+
+    long count() {
+      long count = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    long percentile(double fraction, long count) {
+      long rank = (long) Math.ceil(fraction * count);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return i;
+        }
+      }
+      return NUM_BUCKETS;
+    }
+  }
+
+  /**
+   * Answers every request with an empty response, one thread per connection. Responses are
+   * buffered until no more requests are available to read, like a server batching its writes.
+   */
+  private static class PingServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+
+    PingServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread acceptor = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              final Socket socket = serverSocket.accept();
+              Thread connection = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                  serve(socket);
+                }
+              }, "ping-server-connection");
+              connection.setDaemon(true);
+              connection.start();
+            }
+          } catch (IOException e) {
+            // Closed.
+          }
+        }
+      }, "ping-server");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    HostAndPort getHostAndPort() {
+      return HostAndPort.fromParts("127.0.0.1", serverSocket.getLocalPort());
+    }
+
+    private static void serve(Socket socket) {
+      try {
+        socket.setTcpNoDelay(true);
+        BufferedInputStream buffered = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+        DataInputStream in = new DataInputStream(buffered);
+        BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        CodedOutputStream coded = CodedOutputStream.newInstance(out);
+        in.readFully(new byte[3]);
+        byte[] frame = new byte[1024];
+        while (true) {
+          int size = in.readInt();
+          if (size > frame.length) {
+            frame = new byte[size];
+          }
+          in.readFully(frame, 0, size);
+          CodedInputStream request = CodedInputStream.newInstance(frame, 0, size);
+          int headerSize = request.readRawVarint32();
+          request.pushLimit(headerSize);
+          RpcHeader.RequestHeader header = RpcHeader.RequestHeader.parseFrom(request);
+
+          RpcHeader.ResponseHeader response = RpcHeader.ResponseHeader.newBuilder()
+              .setCallId(header.getCallId())
+              .build();
+          int responseHeaderSize = response.getSerializedSize();
+          // The header is followed by an empty message.
+          coded.writeFixed32NoTag(Integer.reverseBytes(
+              CodedOutputStream.computeUInt32SizeNoTag(responseHeaderSize) + responseHeaderSize +
+              1));
+          coded.writeUInt32NoTag(responseHeaderSize);
+          response.writeTo(coded);
+          coded.writeUInt32NoTag(0);
+          if (buffered.available() == 0) {
+            coded.flush();
+            out.flush();
+          }
+        }
+      } catch (EOFException e) {
+        // The client went away.
+      } catch (IOException e) {
+        System.err.println("Ping server connection failed: " + e);
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Ignored.
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
@@ -13,7 +13,9 @@
 
 package com.yugabyte.sample.apps;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -30,6 +32,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -45,6 +49,8 @@ import com.datastax.oss.driver.api.core.AllNodesFailedException;
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
 import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.core.loadbalancing.LoadBalancingPolicy;
 import com.datastax.oss.driver.api.core.metadata.EndPoint;
@@ -55,8 +61,10 @@ import com.datastax.oss.driver.internal.core.retry.DefaultRetryPolicy;
 
 import com.yugabyte.sample.common.CmdLineOpts;
 import com.yugabyte.sample.common.CmdLineOpts.ContactPoint;
+import com.yugabyte.sample.common.OpenLoopScheduler;
 import com.yugabyte.sample.common.SimpleLoadGenerator;
 import com.yugabyte.sample.common.SimpleLoadGenerator.Key;
+import com.yugabyte.sample.common.metrics.MetricsOutput;
 import com.yugabyte.sample.common.metrics.MetricsTracker;
 import com.yugabyte.sample.common.metrics.MetricsTracker.MetricName;
 
@@ -102,6 +110,9 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   private volatile JedisCluster jedisCluster = null;
   // Instances of the load generator.
   private static volatile SimpleLoadGenerator simpleLoadGenerator = null;
+  // Schedulers of the writes and reads, when running at a target rate.
+  private static volatile OpenLoopScheduler writeScheduler = null;
+  private static volatile OpenLoopScheduler readScheduler = null;
 
   // Is this app instance the main instance?
   private boolean mainInstance = false;
@@ -247,6 +258,11 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       cqlSessionBldr = cqlSessionBldr
           .withSslContext(createSSLContext(appConfig.sslCert));
     }
+    if (appConfig.cqlIoThreads > 0) {
+      cqlSessionBldr = cqlSessionBldr.withConfigLoader(DriverConfigLoader.programmaticBuilder()
+          .withInt(DefaultDriverOption.NETTY_IO_SIZE, appConfig.cqlIoThreads)
+          .build());
+    }
     Integer port = null;
     // builder.withSocketOptions(socketOptions);
     boolean contactPointAdded = false;
@@ -535,6 +551,25 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
    */
   public long doWrite(int threadIdx) { return 0; }
 
+  /**
+   * The async version of doRead(), used when running with --async. Apps which can send reads
+   * without waiting for their results override it, by default it does the read synchronously.
+   * @return the number of reads done, once done.
+   */
+  public CompletionStage<Long> doReadAsync() {
+    return CompletableFuture.completedFuture(doRead());
+  }
+
+  /**
+   * The async version of doWrite(), used when running with --async. Apps which can send writes
+   * without waiting for their results override it, by default it does the write synchronously.
+   * @return the number of writes done, once done.
+   * @param threadIdx index of thread that invoked this write.
+   */
+  public CompletionStage<Long> doWriteAsync(int threadIdx) {
+    return CompletableFuture.completedFuture(doWrite(threadIdx));
+  }
+
   /**
    * This call should implement the main logic in non-OLTP apps. Not called for OLTP apps.
    */
@@ -547,6 +582,16 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   @Override
   public void appendMessage(StringBuilder sb) {
     sb.append("Uptime: " + (System.currentTimeMillis() - workloadStartTime) + " ms | ");
+    appendSchedulerMessage(sb, "Write", writeScheduler);
+    appendSchedulerMessage(sb, "Read", readScheduler);
+  }
+
+  private static void appendSchedulerMessage(StringBuilder sb, String name,
+                                             OpenLoopScheduler scheduler) {
+    if (scheduler != null) {
+      sb.append(String.format("%s target: %.0f ops/sec, %d ms behind | ", name,
+                              scheduler.getTargetRate(), scheduler.getLagNanos() / 1000000));
+    }
   }
 
   /**
@@ -611,6 +656,15 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
         metricsTracker.createMetric(MetricName.Read);
         metricsTracker.createMetric(MetricName.Write);
         metricsTracker.registerStatusMessageAppender(this);
+        if (appConfig.metricsOutputFile != null) {
+          try {
+            metricsTracker.setOutput(new MetricsOutput(
+                new File(appConfig.metricsOutputFile),
+                MetricsOutput.formatOf(appConfig.metricsOutputFile)));
+          } catch (IOException e) {
+            LOG.error("Could not open the metrics output " + appConfig.metricsOutputFile, e);
+          }
+        }
         metricsTracker.start();
       }
     }
@@ -670,6 +724,16 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
    * @param threadIdx index of thread that invoked this write.
    */
   public void performWrite(int threadIdx) {
+    performWrite(threadIdx, System.nanoTime());
+  }
+
+  /**
+   * Performs a write which was scheduled to start at the given time, the time it waited for
+   * counts in its latency.
+   * @param threadIdx index of thread that invoked this write.
+   * @param intendedStartNanos when the write was scheduled to start, from System.nanoTime().
+   */
+  public void performWrite(int threadIdx, long intendedStartNanos) {
     // If we have written enough keys we are done.
     if (appConfig.numKeysToWrite >= 0 && numKeysWritten.get() >= appConfig.numKeysToWrite
         || isOutOfTime()) {
@@ -677,7 +741,7 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       return;
     }
     // Perform the write and track the number of successfully written keys.
-    long startTs = System.nanoTime();
+    long startTs = intendedStartNanos;
     long count = doWrite(threadIdx);
     long endTs = System.nanoTime();
     if (count > 0) {
@@ -694,7 +758,15 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
    * report the metrics to the user.
    */
   public void performRead() {
+    performRead(System.nanoTime());
+  }
 
+  /**
+   * Performs a read which was scheduled to start at the given time, the time it waited for counts
+   * in its latency.
+   * @param intendedStartNanos when the read was scheduled to start, from System.nanoTime().
+   */
+  public void performRead(long intendedStartNanos) {
     // If we have read enough keys we are done.
     if (appConfig.numKeysToRead >= 0 && numKeysRead.get() >= appConfig.numKeysToRead
         || isOutOfTime()) {
@@ -702,7 +774,7 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       return;
     }
     // Perform the read and track the number of successfully read keys.
-    long startTs = System.nanoTime();
+    long startTs = intendedStartNanos;
     long count = doRead();
     long endTs = System.nanoTime();
     if (count > 0) {
@@ -713,6 +785,57 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     }
   }
 
+  /**
+   * Starts a write which was scheduled to start at the given time and tracks it like
+   * performWrite() does once it completes. The limits on the number of keys are checked when the
+   * write starts, so the writes in flight may go past them.
+   * @param threadIdx index of thread that invoked this write.
+   * @param intendedStartNanos when the write was scheduled to start, from System.nanoTime().
+   * @return the number of keys written, once done.
+   */
+  public CompletionStage<Long> performWriteAsync(int threadIdx, final long intendedStartNanos) {
+    if (appConfig.numKeysToWrite >= 0 && numKeysWritten.get() >= appConfig.numKeysToWrite
+        || isOutOfTime()) {
+      hasFinished.set(true);
+      return CompletableFuture.completedFuture(0L);
+    }
+    return doWriteAsync(threadIdx).thenApply(count -> {
+      long endTs = System.nanoTime();
+      if (count > 0) {
+        numKeysWritten.addAndGet(count);
+        if (metricsTracker != null) {
+          metricsTracker.getMetric(MetricName.Write).accumulate(count,
+                                                                endTs - intendedStartNanos);
+        }
+      }
+      return count;
+    });
+  }
+
+  /**
+   * Starts a read which was scheduled to start at the given time and tracks it like performRead()
+   * does once it completes.
+   * @param intendedStartNanos when the read was scheduled to start, from System.nanoTime().
+   * @return the number of keys read, once done.
+   */
+  public CompletionStage<Long> performReadAsync(final long intendedStartNanos) {
+    if (appConfig.numKeysToRead >= 0 && numKeysRead.get() >= appConfig.numKeysToRead
+        || isOutOfTime()) {
+      hasFinished.set(true);
+      return CompletableFuture.completedFuture(0L);
+    }
+    return doReadAsync().thenApply(count -> {
+      long endTs = System.nanoTime();
+      if (count > 0) {
+        numKeysRead.addAndGet(count);
+        if (metricsTracker != null) {
+          metricsTracker.getMetric(MetricName.Read).accumulate(count, endTs - intendedStartNanos);
+        }
+      }
+      return count;
+    });
+  }
+
   @Override
   public String appenderName() {
     return this.getClass().getSimpleName();
@@ -744,12 +867,43 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
           simpleLoadGenerator = new SimpleLoadGenerator(0,
               appConfig.numUniqueKeysToWrite,
               appConfig.maxWrittenKey);
+          if (appConfig.keyDistribution != null) {
+            simpleLoadGenerator.setKeyDistribution(appConfig.keyDistribution);
+          }
         }
       }
     }
     return simpleLoadGenerator;
   }
 
+  /**
+   * @return the scheduler of the writes of all the threads, null if they run as fast as they can
+   */
+  public OpenLoopScheduler getWriteScheduler() {
+    if (writeScheduler == null && appConfig.writeRateProfile != null) {
+      synchronized (AppBase.class) {
+        if (writeScheduler == null) {
+          writeScheduler = new OpenLoopScheduler(appConfig.writeRateProfile);
+        }
+      }
+    }
+    return writeScheduler;
+  }
+
+  /**
+   * @return the scheduler of the reads of all the threads, null if they run as fast as they can
+   */
+  public OpenLoopScheduler getReadScheduler() {
+    if (readScheduler == null && appConfig.readRateProfile != null) {
+      synchronized (AppBase.class) {
+        if (readScheduler == null) {
+          readScheduler = new OpenLoopScheduler(appConfig.readRateProfile);
+        }
+      }
+    }
+    return readScheduler;
+  }
+
   public static long numOps() {
     return numKeysRead.get() + numKeysWritten.get();
   }
@@ -14,6 +14,8 @@
 package com.yugabyte.sample.apps;
 
 import com.yugabyte.sample.apps.AppBase.TableOp;
+import com.yugabyte.sample.common.KeyDistribution;
+import com.yugabyte.sample.common.RateProfile;
 
 /**
  * This class encapsulates the various configuration parameters for the various apps.
@@ -116,6 +118,9 @@ public class AppConfig {
   // Print all exceptions on the client instead of sampling.
   public boolean printAllExceptions = false;
 
+  // File to write the metrics of every interval to, as CSV or JSON. Not written if null.
+  public String metricsOutputFile = null;
+
   // Name of the table to create or drop. When set, used along with shouldDropTable to detect
   // the operation against the table name. If not provided on command line, defaults to the apps
   // default chosen table name.
@@ -140,6 +145,21 @@ public class AppConfig {
   // Run time for workload. Negative values means no limit.
   public long runTimeSeconds = -1;
 
+  // Keep up to maxInFlight operations in flight per IO thread, instead of one.
+  public boolean asyncMode = false;
+  public int maxInFlight = 128;
+
+  // Number of IO threads of the Cassandra driver, its default if 0.
+  public int cqlIoThreads = 0;
+
+  // Target rates of writes and reads, scheduled in an open loop. Null to run them as fast as the
+  // threads go.
+  public RateProfile writeRateProfile = null;
+  public RateProfile readRateProfile = null;
+
+  // How the keys to read and update are picked among the written ones. Uniform if null.
+  public KeyDistribution keyDistribution = null;
+
   public String localDc;
 
   // Used by CassandraPersonalization workload.
@@ -17,12 +17,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.log4j.Logger;
 
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
@@ -176,6 +179,20 @@ public class CassandraStockTicker extends AppBase {
     return 1;
   }
 
+  @Override
+  public CompletionStage<Long> doReadAsync() {
+    TickerInfo dataSource = tickers.get(random.nextInt(tickers.size()));
+    if (!dataSource.getHasEmittedData()) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    BoundStatement select = getPreparedSelectLatest().bind(dataSource.getTickerId());
+    // The select has a limit of 1, so its rows fit in the first page.
+    return getCassandraClient().executeAsync(select).thenApply(rs -> {
+      num_rows_read.addAndGet(rs.remaining());
+      return 1L;
+    });
+  }
+
   private PreparedStatement getPreparedInsertRaw()  {
     if (preparedInsertRaw == null) {
       synchronized (prepareInitLock) {
@@ -260,6 +277,37 @@ public class CassandraStockTicker extends AppBase {
     return numKeysWritten;
   }
 
+  @Override
+  public CompletionStage<Long> doWriteAsync(int threadIdx) {
+    TickerInfo dataSource = tickers.get(random.nextInt(tickers.size()));
+    long ts = dataSource.getDataEmitTs();
+    if (ts == -1) {
+      try {
+        Thread.sleep(100 /* millisecs */);
+      } catch (Exception e) {}
+      return CompletableFuture.completedFuture(0L);
+    }
+    String value = String.format("value-%s", ts);
+
+    // Another write of the same data point may be in flight, it writes the same row.
+    BoundStatement insertRaw =
+        getPreparedInsertRaw().bind(dataSource.getTickerId(), new Date(ts), value);
+    CompletionStage<AsyncResultSet> raw = getCassandraClient().executeAsync(insertRaw);
+    // With some probability, also insert into the minutely table, concurrently.
+    CompletionStage<Long> written;
+    if (random.nextInt(60000) < data_emit_rate_millis) {
+      BoundStatement insertMin =
+          getPreparedInsertMin().bind(dataSource.getTickerId(), new Date(ts), value);
+      written = raw.thenCombine(getCassandraClient().executeAsync(insertMin), (r, m) -> 2L);
+    } else {
+      written = raw.thenApply(r -> 1L);
+    }
+    return written.thenApply(numKeysWritten -> {
+      dataSource.setLastEmittedTs(ts);
+      return numKeysWritten;
+    });
+  }
+
   @Override
   public void appendMessage(StringBuilder sb) {
     super.appendMessage(sb);
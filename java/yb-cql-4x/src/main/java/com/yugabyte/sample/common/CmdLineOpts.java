@@ -141,6 +141,19 @@ public class CmdLineOpts {
       }
     }
 
+    if (commandLine.hasOption("async")) {
+      AppBase.appConfig.asyncMode = true;
+      if (commandLine.hasOption("max_in_flight")) {
+        AppBase.appConfig.maxInFlight =
+            Integer.parseInt(commandLine.getOptionValue("max_in_flight"));
+      }
+      LOG.info("Async mode, max in flight ops per thread: " + AppBase.appConfig.maxInFlight);
+    }
+    if (commandLine.hasOption("cql_io_threads")) {
+      AppBase.appConfig.cqlIoThreads =
+          Integer.parseInt(commandLine.getOptionValue("cql_io_threads"));
+    }
+
     // Set the number of threads.
     initializeThreadCount(commandLine);
     // Initialize num keys.
@@ -193,6 +206,32 @@ public class CmdLineOpts {
       AppBase.appConfig.sslCert = commandLine.getOptionValue("ssl_cert");
     }
 
+    try {
+      if (commandLine.hasOption("write_rate")) {
+        AppBase.appConfig.writeRateProfile =
+            RateProfile.parse(commandLine.getOptionValue("write_rate"));
+        LOG.info("Write rate: " + AppBase.appConfig.writeRateProfile);
+      }
+      if (commandLine.hasOption("read_rate")) {
+        AppBase.appConfig.readRateProfile =
+            RateProfile.parse(commandLine.getOptionValue("read_rate"));
+        LOG.info("Read rate: " + AppBase.appConfig.readRateProfile);
+      }
+      if (commandLine.hasOption("key_distribution")) {
+        AppBase.appConfig.keyDistribution =
+            KeyDistribution.parse(commandLine.getOptionValue("key_distribution"));
+        LOG.info("Key distribution: " + AppBase.appConfig.keyDistribution);
+      }
+    } catch (IllegalArgumentException e) {
+      LOG.error(e.getMessage());
+      System.exit(1);
+    }
+
+    if (commandLine.hasOption("metrics_output")) {
+      AppBase.appConfig.metricsOutputFile = commandLine.getOptionValue("metrics_output");
+      LOG.info("Metrics output: " + AppBase.appConfig.metricsOutputFile);
+    }
+
     if (commandLine.hasOption("num_indexes")) {
       AppBase.appConfig.numIndexes =
           Integer.parseInt(commandLine.getOptionValue("num_indexes"));
@@ -287,6 +326,9 @@ public class CmdLineOpts {
       int numThreads = 0;
       if (numThreadsStr != null) {
           numThreads = Integer.parseInt(numThreadsStr);
+      } else if (AppBase.appConfig.asyncMode) {
+        // Each thread keeps many ops in flight, one per core is enough.
+        numThreads = Runtime.getRuntime().availableProcessors();
       } else {
         // Default to 8 * num-cores
         numThreads = 8 * Runtime.getRuntime().availableProcessors();
@@ -468,6 +510,25 @@ public class CmdLineOpts {
         "Disable Yugabyte load-balancing policy.");
     options.addOption("print_all_exceptions", false,
         "Print all exceptions encountered on the client, instead of sampling.");
+    options.addOption("metrics_output", true,
+        "File to write the throughput and latency percentiles of every interval to, as JSON " +
+        "lines if its name ends with .json, as CSV otherwise.");
+    String rateProfileHelp = " ops/sec, in an open loop: the latency of an op is measured from " +
+        "when it was scheduled. Either <rate>, ramp:<from>:<to>:<seconds> or " +
+        "step:<from>:<to>:<step>:<seconds per step>. Runs as fast as possible if not set.";
+    options.addOption("write_rate", true, "Target write" + rateProfileHelp);
+    options.addOption("read_rate", true, "Target read" + rateProfileHelp);
+    options.addOption("key_distribution", true,
+        "How the keys to read, and to update once all are written, are picked among the " +
+        "written ones. One of uniform (default), zipfian[:<theta>], latest[:<theta>], " +
+        "hotspot:<hot key fraction>:<hot op fraction> or sequential. Theta defaults to 0.99.");
+    options.addOption("async", false,
+        "Have each thread keep many ops in flight instead of waiting for each one to complete, " +
+        "for the apps that support it. Defaults to one thread per core.");
+    options.addOption("max_in_flight", true,
+        "With --async, the max number of ops each thread keeps in flight (default 128).");
+    options.addOption("cql_io_threads", true,
+        "Number of IO threads of the Cassandra driver (default: one per core).");
     options.addOption("skip_workload", false, "Skip running workload.");
     options.addOption("run_time", true,
         "Run time for workload. Negative value means forever (default).");
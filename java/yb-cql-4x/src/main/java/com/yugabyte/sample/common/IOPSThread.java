@@ -13,6 +13,12 @@
 
 package com.yugabyte.sample.common;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Logger;
 
 import com.yugabyte.sample.apps.AppBase;
@@ -21,6 +27,11 @@ import com.yugabyte.sample.apps.AppBase;
  * A class that encapsulates a single IO thread. The thread has an index (which is an integer),
  * models an OLTP app and an IO type (read or write). It performs the required IO as long as
  * the app has not completed all its IO.
+ * <p>
+ * When the app has a target rate for the IO type, the threads start their operations when its
+ * {@link OpenLoopScheduler} tells them to, otherwise each one starts as soon as the last is done.
+ * In async mode, the thread keeps up to a window of operations in flight and waits for one to
+ * complete before starting another when the window is full.
  */
 public class IOPSThread extends Thread {
   private static final Logger LOG = Logger.getLogger(IOPSThread.class);
@@ -41,7 +52,8 @@ public class IOPSThread extends Thread {
   // The app that is being run.
   protected AppBase app;
 
-  private int numExceptions = 0;
+  // Updated from the callbacks of the async ops too.
+  private final AtomicInteger numExceptions = new AtomicInteger();
 
   private volatile boolean ioThreadFailed = false;
 
@@ -55,7 +67,7 @@ public class IOPSThread extends Thread {
   }
 
   public int getNumExceptions() {
-    return numExceptions;
+    return numExceptions.get();
   }
 
   public boolean hasFailed() {
@@ -80,16 +92,27 @@ public class IOPSThread extends Thread {
   public void run() {
     try {
       LOG.debug("Starting " + ioType.toString() + " IOPS thread #" + threadIdx);
+      OpenLoopScheduler scheduler =
+          ioType == IOType.Write ? app.getWriteScheduler() : app.getReadScheduler();
+      if (AppBase.appConfig.asyncMode) {
+        runAsync(scheduler);
+        return;
+      }
       int numConsecutiveExceptions = 0;
       while (!app.hasFinished()) {
         try {
+          long startNanos = scheduler == null ? System.nanoTime() : scheduler.acquire();
           switch (ioType) {
-            case Write: app.performWrite(threadIdx); break;
-            case Read: app.performRead(); break;
+            case Write: app.performWrite(threadIdx, startNanos); break;
+            case Read: app.performRead(startNanos); break;
           }
           numConsecutiveExceptions = 0;
+        } catch (InterruptedException e) {
+          LOG.error("Interrupted while waiting for the next operation.", e);
+          ioThreadFailed = true;
+          return;
         } catch (RuntimeException e) {
-          numExceptions++;
+          numExceptions.incrementAndGet();
           if (numConsecutiveExceptions++ % 10 == 0 || printAllExceptions) {
             app.reportException(e);
           }
@@ -116,4 +139,67 @@ public class IOPSThread extends Thread {
       app.terminate();
     }
   }
+
+  /**
+   * Keeps up to the configured number of ops in flight until the app has finished, then waits for
+   * them to complete. Failures are handled like in the synchronous loop: reported with sampling,
+   * followed by a pause, and fatal after too many in a row.
+   */
+  private void runAsync(OpenLoopScheduler scheduler) {
+    final int maxInFlight = AppBase.appConfig.maxInFlight;
+    final Semaphore window = new Semaphore(maxInFlight);
+    final AtomicInteger numConsecutiveExceptions = new AtomicInteger();
+    // Set by failed ops, for the next one to start after a pause.
+    final AtomicBoolean failedSinceLastOp = new AtomicBoolean();
+    try {
+      while (!app.hasFinished()) {
+        window.acquire();
+        if (failedSinceLastOp.getAndSet(false)) {
+          Thread.sleep(1000);
+        }
+        if (numConsecutiveExceptions.get() > 500) {
+          LOG.error("Had more than " + numConsecutiveExceptions.get()
+                    + " consecutive exceptions. Exiting.");
+          ioThreadFailed = true;
+          window.release();
+          break;
+        }
+        CompletionStage<Long> op;
+        try {
+          long startNanos = scheduler == null ? System.nanoTime() : scheduler.acquire();
+          op = ioType == IOType.Write ? app.performWriteAsync(threadIdx, startNanos)
+                                      : app.performReadAsync(startNanos);
+        } catch (RuntimeException e) {
+          window.release();
+          onException(e, numConsecutiveExceptions);
+          failedSinceLastOp.set(true);
+          continue;
+        }
+        op.whenComplete((count, error) -> {
+          if (error == null) {
+            numConsecutiveExceptions.set(0);
+          } else {
+            onException(error, numConsecutiveExceptions);
+            failedSinceLastOp.set(true);
+          }
+          window.release();
+        });
+      }
+      // Lets the ops in flight complete before the app is terminated.
+      window.acquire(maxInFlight);
+    } catch (InterruptedException e) {
+      LOG.error("Interrupted while running async ops.", e);
+      ioThreadFailed = true;
+    }
+  }
+
+  private void onException(Throwable error, AtomicInteger numConsecutiveExceptions) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    numExceptions.incrementAndGet();
+    if (numConsecutiveExceptions.getAndIncrement() % 10 == 0 || printAllExceptions) {
+      app.reportException(error instanceof Exception ? (Exception) error : new Exception(error));
+    }
+  }
 }
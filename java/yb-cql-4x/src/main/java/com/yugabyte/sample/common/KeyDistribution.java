@@ -0,0 +1,247 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks which of the written keys an operation goes to. The number of keys grows while the load
+ * runs, so every pick is given the current one. Distributions are given on the command line as one
+ * of:
+ *   - {@code uniform}: every key equally likely.
+ *   - {@code zipfian[:<theta>]}: the key of rank r is picked with a probability proportional to
+ *     1 / r^theta (0.99 if not given), with the ranks scattered over the key space so the hot keys
+ *     land on different tablets.
+ *   - {@code latest[:<theta>]}: zipfian over recency, the most recently written keys are hottest.
+ *   - {@code hotspot:<hot key fraction>:<hot op fraction>}: that fraction of the ops goes uniformly
+ *     to that fraction of the keys at the start of the key space, the rest to the other keys.
+ *   - {@code sequential}: the keys in order, starting over at the first one after the last.
+ * <p>
+ * Picks are safe to make from many threads and do not allocate.
+ */
+public abstract class KeyDistribution {
+  private static final double DEFAULT_THETA = 0.99;
+
+  /**
+   * @param numKeys the number of keys to pick from, at least 1
+   * @return a key in [0, numKeys)
+   */
+  public abstract long nextKey(long numKeys);
+
+  public static KeyDistribution parse(String spec) {
+    String[] parts = spec.split(":");
+    try {
+      switch (parts[0]) {
+        case "uniform":
+          if (parts.length == 1) {
+            return uniform();
+          }
+          break;
+        case "zipfian":
+          if (parts.length <= 2) {
+            return zipfian(parts.length == 2 ? Double.parseDouble(parts[1]) : DEFAULT_THETA);
+          }
+          break;
+        case "latest":
+          if (parts.length <= 2) {
+            return latest(parts.length == 2 ? Double.parseDouble(parts[1]) : DEFAULT_THETA);
+          }
+          break;
+        case "hotspot":
+          if (parts.length == 3) {
+            return hotspot(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+          }
+          break;
+        case "sequential":
+          if (parts.length == 1) {
+            return sequential();
+          }
+          break;
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid key distribution " + spec, e);
+    }
+    throw new IllegalArgumentException("Invalid key distribution " + spec);
+  }
+
+  public static KeyDistribution uniform() {
+    return new KeyDistribution() {
+      @Override
+      public long nextKey(long numKeys) {
+        return ThreadLocalRandom.current().nextLong(numKeys);
+      }
+
+      @Override
+      public String toString() {
+        return "uniform";
+      }
+    };
+  }
+
+  public static KeyDistribution zipfian(final double theta) {
+    final ZipfianRanks ranks = new ZipfianRanks(theta);
+    return new KeyDistribution() {
+      @Override
+      public long nextKey(long numKeys) {
+        return (scramble(ranks.next(numKeys)) >>> 1) % numKeys;
+      }
+
+      @Override
+      public String toString() {
+        return "zipfian, theta " + theta;
+      }
+    };
+  }
+
+  public static KeyDistribution latest(final double theta) {
+    final ZipfianRanks ranks = new ZipfianRanks(theta);
+    return new KeyDistribution() {
+      @Override
+      public long nextKey(long numKeys) {
+        return numKeys - 1 - ranks.next(numKeys);
+      }
+
+      @Override
+      public String toString() {
+        return "latest, theta " + theta;
+      }
+    };
+  }
+
+  public static KeyDistribution hotspot(final double hotKeyFraction,
+                                        final double hotOpFraction) {
+    if (!(hotKeyFraction > 0 && hotKeyFraction < 1) ||
+        !(hotOpFraction >= 0 && hotOpFraction <= 1)) {
+      throw new IllegalArgumentException(String.format(
+          "Hotspot fractions must be in (0, 1) for the keys and [0, 1] for the ops, got %s and %s",
+          hotKeyFraction, hotOpFraction));
+    }
+    return new KeyDistribution() {
+      @Override
+      public long nextKey(long numKeys) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long numHotKeys = Math.max(1, (long) (numKeys * hotKeyFraction));
+        if (numHotKeys == numKeys || random.nextDouble() < hotOpFraction) {
+          return random.nextLong(numHotKeys);
+        }
+        return random.nextLong(numHotKeys, numKeys);
+      }
+
+      @Override
+      public String toString() {
+        return String.format("hotspot, %.0f%% of the ops to %.0f%% of the keys",
+                             hotOpFraction * 100, hotKeyFraction * 100);
+      }
+    };
+  }
+
+  public static KeyDistribution sequential() {
+    final AtomicLong counter = new AtomicLong();
+    return new KeyDistribution() {
+      @Override
+      public long nextKey(long numKeys) {
+        return (counter.getAndIncrement() & Long.MAX_VALUE) % numKeys;
+      }
+
+      @Override
+      public String toString() {
+        return "sequential";
+      }
+    };
+  }
+
+  // A 64-bit mix (the finalizer of SplitMix64), so that neighbouring ranks land far apart.
+  static long scramble(long x) {
+    x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+    x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+    return x ^ (x >>> 31);
+  }
+
+  /**
+   * Zipfian ranks by rejection-inversion (Hormann and Derflinger, "Rejection-inversion to generate
+   * variates from monotone discrete distributions", 1996). Unlike the usual method it needs no sum
+   * over all the ranks, so the number of ranks can change from one pick to the next at the cost of
+   * a few logs and exps.
+   */
+  static final class ZipfianRanks {
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double s;
+
+    ZipfianRanks(double exponent) {
+      if (!(exponent > 0)) {
+        throw new IllegalArgumentException("Zipfian theta must be positive, got " + exponent);
+      }
+      this.exponent = exponent;
+      this.hIntegralX1 = hIntegral(1.5) - 1;
+      this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @return a rank in [0, numRanks), 0 being the most likely
+     */
+    long next(long numRanks) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      double hIntegralNumRanks = hIntegral(numRanks + 0.5);
+      while (true) {
+        double u = hIntegralNumRanks + random.nextDouble() * (hIntegralX1 - hIntegralNumRanks);
+        double x = hIntegralInverse(u);
+        long k = (long) (x + 0.5);
+        if (k < 1) {
+          k = 1;
+        } else if (k > numRanks) {
+          k = numRanks;
+        }
+        if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+          return k - 1;
+        }
+      }
+    }
+
+    private double h(double x) {
+      return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+      double logX = Math.log(x);
+      return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+      double t = x * (1 - exponent);
+      if (t < -1) {
+        // Rounding may take it just below the domain of log1p.
+        t = -1;
+      }
+      return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, accurate near 0.
+    private static double helper1(double x) {
+      if (Math.abs(x) > 1e-8) {
+        return Math.log1p(x) / x;
+      }
+      return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, accurate near 0.
+    private static double helper2(double x) {
+      if (Math.abs(x) > 1e-8) {
+        return Math.expm1(x) / x;
+      }
+      return 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+  }
+}
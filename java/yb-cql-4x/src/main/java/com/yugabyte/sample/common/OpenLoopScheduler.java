@@ -0,0 +1,81 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Schedules operations at a target rate, whatever the latency of the ones before: the IO threads
+ * take turns claiming the next start time and wait for it. This is an open loop, as opposed to
+ * threads sending their next operation as soon as the last one completes.
+ * <p>
+ * Latencies are to be measured from the time an operation was scheduled to start, not from the
+ * time a thread got to it, so that the operations delayed by a latency spike count its cost. When
+ * all the threads are busy, the start times fall behind and the latencies grow, use enough threads
+ * for the target rate at the expected latency.
+ */
+public class OpenLoopScheduler {
+  private final RateProfile profile;
+  private final long startNanos;
+  // The start time the next operation will be given, from System.nanoTime().
+  private final AtomicLong nextStartNanos;
+
+  public OpenLoopScheduler(RateProfile profile) {
+    this.profile = profile;
+    this.startNanos = System.nanoTime();
+    this.nextStartNanos = new AtomicLong(startNanos);
+  }
+
+  public RateProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Claims the next start time and waits for it. Returns right away if it has already passed.
+   * @return the time the operation was scheduled to start, from System.nanoTime()
+   */
+  public long acquire() throws InterruptedException {
+    long start;
+    while (true) {
+      start = nextStartNanos.get();
+      long interval = (long) (1e9 / profile.rateAt(start - startNanos));
+      if (nextStartNanos.compareAndSet(start, start + interval)) {
+        break;
+      }
+    }
+    long delay;
+    while ((delay = start - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(delay);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    return start;
+  }
+
+  /**
+   * @return the current target rate, in operations per second
+   */
+  public double getTargetRate() {
+    return profile.rateAt(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return how far behind the schedule the threads are, 0 if they keep up
+   */
+  public long getLagNanos() {
+    return Math.max(0, System.nanoTime() - nextStartNanos.get());
+  }
+}
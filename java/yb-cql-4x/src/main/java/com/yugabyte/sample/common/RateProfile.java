@@ -0,0 +1,122 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+/**
+ * A target rate of operations that may change over the run. Profiles are given on the command line
+ * as one of:
+ *   - {@code <ops/sec>}: a constant rate.
+ *   - {@code ramp:<from>:<to>:<seconds>}: goes linearly from one rate to the other over the given
+ *     time, then stays at the last one.
+ *   - {@code step:<from>:<to>:<step>:<seconds>}: starts at a rate and adds the step every given
+ *     number of seconds, up to the last rate.
+ */
+public abstract class RateProfile {
+  /**
+   * @param elapsedNanos the time since the start of the run
+   * @return the target rate at that time, in operations per second
+   */
+  public abstract double rateAt(long elapsedNanos);
+
+  public static RateProfile parse(String spec) {
+    String[] parts = spec.split(":");
+    try {
+      switch (parts[0]) {
+        case "ramp":
+          if (parts.length == 4) {
+            return ramp(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                        Long.parseLong(parts[3]));
+          }
+          break;
+        case "step":
+          if (parts.length == 5) {
+            return step(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                        Double.parseDouble(parts[3]), Long.parseLong(parts[4]));
+          }
+          break;
+        default:
+          if (parts.length == 1) {
+            return constant(Double.parseDouble(parts[0]));
+          }
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid rate profile " + spec, e);
+    }
+    throw new IllegalArgumentException("Invalid rate profile " + spec);
+  }
+
+  private static void checkRate(double rate) {
+    if (!(rate > 0)) {
+      throw new IllegalArgumentException("Rates must be positive, got " + rate);
+    }
+  }
+
+  public static RateProfile constant(final double rate) {
+    checkRate(rate);
+    return new RateProfile() {
+      @Override
+      public double rateAt(long elapsedNanos) {
+        return rate;
+      }
+
+      @Override
+      public String toString() {
+        return String.format("%.0f ops/sec", rate);
+      }
+    };
+  }
+
+  public static RateProfile ramp(final double from, final double to, final long seconds) {
+    checkRate(from);
+    checkRate(to);
+    final long durationNanos = seconds * 1000000000L;
+    return new RateProfile() {
+      @Override
+      public double rateAt(long elapsedNanos) {
+        if (elapsedNanos >= durationNanos) {
+          return to;
+        }
+        return from + (to - from) * elapsedNanos / durationNanos;
+      }
+
+      @Override
+      public String toString() {
+        return String.format("%.0f to %.0f ops/sec over %d sec", from, to, seconds);
+      }
+    };
+  }
+
+  public static RateProfile step(final double from, final double to, final double step,
+                                 final long seconds) {
+    checkRate(from);
+    checkRate(to);
+    if (seconds <= 0) {
+      throw new IllegalArgumentException("Steps must last at least a second, got " + seconds);
+    }
+    final long stepNanos = seconds * 1000000000L;
+    return new RateProfile() {
+      @Override
+      public double rateAt(long elapsedNanos) {
+        double rate = from + step * (elapsedNanos / stepNanos);
+        return step >= 0 ? Math.min(rate, to) : Math.max(rate, to);
+      }
+
+      @Override
+      public String toString() {
+        return String.format("%.0f to %.0f ops/sec, %.0f more every %d sec", from, to, step,
+                             seconds);
+      }
+    };
+  }
+}
@@ -14,11 +14,13 @@
 package com.yugabyte.sample.common;
 
 import java.security.MessageDigest;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.log4j.Logger;
@@ -28,14 +30,14 @@ public class SimpleLoadGenerator {
 
   public static class Key {
     // The underlying key is an integer.
-    Long key;
+    long key;
     // The randomized loadtester prefix.
     String keyPrefix = (CmdLineOpts.loadTesterUUID != null)
                            ? CmdLineOpts.loadTesterUUID.toString()
                            : "key";
 
     public Key(long key, String keyPrefix) {
-      this.key = new Long(key);
+      this.key = key;
       if (keyPrefix != null) {
         this.keyPrefix = keyPrefix;
       }
@@ -45,7 +47,7 @@ public class SimpleLoadGenerator {
       return key;
     }
 
-    public String asString() { return keyPrefix + ":" + key.toString(); }
+    public String asString() { return keyPrefix + ":" + key; }
 
     public String getKeyWithHashPrefix() throws Exception {
       String k = asString();
@@ -55,7 +57,7 @@ public class SimpleLoadGenerator {
     }
 
     public String getValueStr() {
-      return ("val:" + key.toString());
+      return ("val:" + key);
     }
 
     public String getValueStr(int idx, int size) {
@@ -63,7 +65,7 @@ public class SimpleLoadGenerator {
       sb.append("val");
       sb.append(idx);
       sb.append(":");
-      sb.append(key.toString());
+      sb.append(key);
       for (int i = sb.length(); i < size; ++i) {
         sb.append("_");
       }
@@ -72,7 +74,7 @@ public class SimpleLoadGenerator {
 
     public void verify(String value) {
       if (value == null || !value.equals(getValueStr())) {
-        LOG.fatal("Value mismatch for key: " + key.toString() +
+        LOG.fatal("Value mismatch for key: " + key +
                   ", expected: " + getValueStr() +
                   ", got: " + value);
       }
@@ -84,6 +86,11 @@ public class SimpleLoadGenerator {
     }
   }
 
+  // The number of keys above maxWrittenKey whose writes are tracked in the ring. Keys further
+  // ahead are rare, they go to writtenKeysOverflow until they fit.
+  static final int WRITTEN_KEYS_RING_SIZE = 1 << 18;
+  private static final int WRITTEN_KEYS_RING_MASK = WRITTEN_KEYS_RING_SIZE - 1;
+
   // The key to start from.
   final long startKey;
   // The key to write till.
@@ -94,14 +101,17 @@ public class SimpleLoadGenerator {
   AtomicLong maxGeneratedKey;
   // Set of keys that failed to write.
   final Set<Long> failedKeys;
-  // Keys that have been written above maxWrittenKey.
-  final Set<Long> writtenKeys;
-  // A background thread to track keys written and increment maxWrittenKey.
-  Thread writtenKeysTracker;
+  // The keys written (or failed) above maxWrittenKey: key k is done when slot k % size holds k.
+  // Once maxWrittenKey is past a key, its slot is free for the key one ring size ahead.
+  final AtomicLongArray writtenKeysRing;
+  // Keys written too far above maxWrittenKey to fit in the ring.
+  final ConcurrentSkipListSet<Long> writtenKeysOverflow;
   // The prefix for the key.
   String keyPrefix;
   // Random number generator.
   Random random = new Random();
+  // Picks the keys to read, and to update once all the keys are written.
+  KeyDistribution keyDistribution = KeyDistribution.uniform();
 
   public SimpleLoadGenerator(long startKey, final long endKey,
                              long maxWrittenKey) {
@@ -109,56 +119,77 @@ public class SimpleLoadGenerator {
     this.endKey = endKey;
     this.maxWrittenKey = new AtomicLong(maxWrittenKey);
     this.maxGeneratedKey = new AtomicLong(maxWrittenKey);
-    failedKeys = new HashSet<Long>();
-    writtenKeys = new HashSet<Long>();
-    writtenKeysTracker = new Thread("Written Keys Tracker") {
-        @Override
-        public void run() {
-          do {
-            long key = SimpleLoadGenerator.this.maxWrittenKey.get() + 1;
-            synchronized (this) {
-              if (failedKeys.contains(key) || writtenKeys.remove(key)) {
-                SimpleLoadGenerator.this.maxWrittenKey.set(key);
-                if (key == endKey - 1) {
-                  // We've inserted all requested keys, no need to track
-                  // maxWrittenKey/writtenKeys anymore.
-                  break;
-                }
-              } else {
-                try {
-                  wait();
-                } catch (InterruptedException e) {
-                  // Ignore
-                }
-              };
-            }
-          } while (true);
-        }
-      };
-    // Make tracker a daemon thread so that it will not block the load tester from exiting
-    // when done.
-    writtenKeysTracker.setDaemon(true);
-    writtenKeysTracker.start();
+    failedKeys = ConcurrentHashMap.newKeySet();
+    long[] ring = new long[WRITTEN_KEYS_RING_SIZE];
+    // No key is -1, so no slot is done.
+    Arrays.fill(ring, -1);
+    writtenKeysRing = new AtomicLongArray(ring);
+    writtenKeysOverflow = new ConcurrentSkipListSet<>();
   }
 
   public void setKeyPrefix(String prefix) {
     keyPrefix = prefix;
   }
 
+  public void setKeyDistribution(KeyDistribution keyDistribution) {
+    this.keyDistribution = keyDistribution;
+  }
+
   public void recordWriteSuccess(Key key) {
-    if (key.asNumber() > maxWrittenKey.get()) {
-      synchronized (writtenKeysTracker) {
-        writtenKeys.add(key.asNumber());
-        writtenKeysTracker.notify();
-      }
-    }
+    recordWriteDone(key.asNumber());
   }
 
   public void recordWriteFailure(Key key) {
-    synchronized (writtenKeysTracker) {
-      if (key != null) {
-        failedKeys.add(key.asNumber());
-        writtenKeysTracker.notify();
+    if (key != null) {
+      failedKeys.add(key.asNumber());
+      recordWriteDone(key.asNumber());
+    }
+  }
+
+  // Marks a key as done and moves maxWrittenKey past the keys done right above it.
+  private void recordWriteDone(long key) {
+    if (key <= maxWrittenKey.get()) {
+      // An update of a key written before.
+      return;
+    }
+    if (key - maxWrittenKey.get() <= WRITTEN_KEYS_RING_SIZE) {
+      // The key that had the slot before is at most maxWrittenKey, it was consumed already.
+      writtenKeysRing.set((int) key & WRITTEN_KEYS_RING_MASK, key);
+    } else {
+      writtenKeysOverflow.add(key);
+    }
+    advanceMaxWrittenKey();
+  }
+
+  private void advanceMaxWrittenKey() {
+    while (true) {
+      long maxKey = maxWrittenKey.get();
+      long next = maxKey + 1;
+      if (next >= endKey) {
+        return;
+      }
+      if (writtenKeysRing.get((int) next & WRITTEN_KEYS_RING_MASK) == next) {
+        // Whoever loses the race retries from the new max.
+        maxWrittenKey.compareAndSet(maxKey, next);
+        continue;
+      }
+      if (writtenKeysOverflow.isEmpty()) {
+        return;
+      }
+      Long firstOverflow = writtenKeysOverflow.ceiling(next);
+      if (firstOverflow == null || firstOverflow - maxKey > WRITTEN_KEYS_RING_SIZE) {
+        return;
+      }
+      // Moves the overflowing keys which now fit to the ring, then checks again.
+      boolean moved = false;
+      for (Long key : writtenKeysOverflow.headSet(maxKey + WRITTEN_KEYS_RING_SIZE, true)) {
+        if (writtenKeysOverflow.remove(key)) {
+          writtenKeysRing.set((int) (long) key & WRITTEN_KEYS_RING_MASK, key);
+          moved = true;
+        }
+      }
+      if (!moved) {
+        return;
       }
     }
   }
@@ -170,7 +201,7 @@ public class SimpleLoadGenerator {
       long maxKey = maxWrittenKey.get();
       // Return a random key to update if we have already written all keys.
       if (maxKey != -1 && maxKey == endKey - 1) {
-        retKey = generateKey(ThreadLocalRandom.current().nextLong(maxKey));
+        retKey = generateKey(keyDistribution.nextKey(maxKey));
       } else {
         retKey = generateKey(maxGeneratedKey.incrementAndGet());
       }
@@ -193,8 +224,8 @@ public class SimpleLoadGenerator {
       return generateKey(0);
     }
     do {
-      long key = ThreadLocalRandom.current().nextLong(maxKey);
-      if (!failedKeys.contains(key))
+      long key = keyDistribution.nextKey(maxKey);
+      if (failedKeys.isEmpty() || !failedKeys.contains(key))
         return generateKey(key);
     } while (true);
   }
@@ -0,0 +1,133 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.metrics;
+
+/**
+ * Counts latencies in buckets of exponentially growing width, like HdrHistogram does: values are
+ * kept with 7 significant bits, so the percentiles are within 1.6% of the exact ones whatever their
+ * magnitude. Latencies are in microseconds, those above {@link #MAX_MICROS} (over an hour) are
+ * counted as {@link #MAX_MICROS}.
+ * <p>
+ * Not thread safe, {@link Metric} gives each thread its own counts and merges them into
+ * histograms when it takes a snapshot.
+ */
+public class LatencyHistogram {
+  // Values below 2^SUB_BUCKET_BITS are counted exactly, larger ones with that many bits.
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+  public static final long MAX_MICROS = (1L << 32) - 1;
+
+  /** The number of buckets needed to count values up to {@link #MAX_MICROS}. */
+  static final int NUM_BUCKETS = bucketIndex(MAX_MICROS) + 1;
+
+  final long[] counts = new long[NUM_BUCKETS];
+  long totalCount;
+  long totalMicros;
+
+  /**
+   * @return the index of the bucket counting the given value
+   */
+  static int bucketIndex(long micros) {
+    // The power of 2 the value is counted in, values of the first one are counted exactly.
+    int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS);
+    return (shift << (SUB_BUCKET_BITS - 1)) + (int) (micros >>> shift);
+  }
+
+  /**
+   * @return the highest value counted in the given bucket
+   */
+  static long highestValueOf(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKET_COUNT) {
+      return bucketIndex;
+    }
+    int shift = (bucketIndex >> (SUB_BUCKET_BITS - 1)) - 1;
+    long lowest = (long) (bucketIndex - (shift << (SUB_BUCKET_BITS - 1))) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  static long clamp(long micros) {
+    return Math.min(Math.max(micros, 0), MAX_MICROS);
+  }
+
+  /**
+   * Counts the given number of operations, which all took the given time.
+   */
+  public void record(long micros, long count) {
+    micros = clamp(micros);
+    counts[bucketIndex(micros)] += count;
+    totalCount += count;
+    totalMicros += micros * count;
+  }
+
+  /**
+   * Adds the counts of another histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    totalMicros += other.totalMicros;
+  }
+
+  /**
+   * @return what was counted in this histogram and not in the given earlier copy of it
+   */
+  public LatencyHistogram since(LatencyHistogram earlier) {
+    LatencyHistogram delta = new LatencyHistogram();
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      delta.counts[i] = counts[i] - earlier.counts[i];
+    }
+    delta.totalCount = totalCount - earlier.totalCount;
+    delta.totalMicros = totalMicros - earlier.totalMicros;
+    return delta;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public double getMeanMicros() {
+    return totalCount == 0 ? 0 : (double) totalMicros / totalCount;
+  }
+
+  /**
+   * @param percentile the percentile, from 0 to 100
+   * @return the latency at or below which the given percentage of the operations completed, 0 if
+   *     nothing was counted
+   */
+  public long getValueAtPercentile(double percentile) {
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return highestValueOf(i);
+      }
+    }
+    // The total was updated ahead of the buckets.
+    return getMaxMicros();
+  }
+
+  public long getMaxMicros() {
+    for (int i = NUM_BUCKETS - 1; i >= 0; i--) {
+      if (counts[i] != 0) {
+        return highestValueOf(i);
+      }
+    }
+    return 0;
+  }
+}
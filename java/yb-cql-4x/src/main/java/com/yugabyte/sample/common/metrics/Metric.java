@@ -13,15 +13,67 @@
 
 package com.yugabyte.sample.common.metrics;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import org.apache.log4j.Logger;
 
+/**
+ * Tracks the throughput and latency distribution of one kind of operation.
+ * <p>
+ * Each thread counts its operations in its own recorder, so that the IO threads don't contend on
+ * anything. Recorders only ever grow, a snapshot merges them and subtracts the previous merge to
+ * get the latencies of the interval.
+ */
 public class Metric {
   private static final Logger LOG = Logger.getLogger(Metric.class);
+
+  // The percentiles reported.
+  static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
   String name;
-  private final Object lock = new Object();
-  private long curOpCount = 0;
-  private long curOpLatencyNanos = 0;
-  private long totalOpCount = 0;
+
+  /**
+   * The latency counts of one thread. Only the owning thread writes them, so it updates them
+   * without atomic read-modify-writes and readers see them eventually.
+   */
+  private static class Recorder {
+    // The bucket counts, followed by the total count and the total latency.
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.NUM_BUCKETS + 2);
+
+    void record(long micros, long count) {
+      micros = LatencyHistogram.clamp(micros);
+      add(LatencyHistogram.bucketIndex(micros), count);
+      add(LatencyHistogram.NUM_BUCKETS, count);
+      add(LatencyHistogram.NUM_BUCKETS + 1, micros * count);
+    }
+
+    private void add(int i, long delta) {
+      counts.lazySet(i, counts.get(i) + delta);
+    }
+
+    void addTo(LatencyHistogram histogram) {
+      for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+        histogram.counts[i] += counts.get(i);
+      }
+      histogram.totalCount += counts.get(LatencyHistogram.NUM_BUCKETS);
+      histogram.totalMicros += counts.get(LatencyHistogram.NUM_BUCKETS + 1);
+    }
+  }
+
+  private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<Recorder> recorder = new ThreadLocal<Recorder>() {
+    @Override
+    protected Recorder initialValue() {
+      Recorder recorder = new Recorder();
+      recorders.add(recorder);
+      return recorder;
+    }
+  };
+
+  // The merged recorders as of the last snapshot.
+  private LatencyHistogram lastTotal = new LatencyHistogram();
   private long lastSnapshotNanos;
 
   public Metric(String name) {
@@ -29,34 +81,98 @@ public class Metric {
     lastSnapshotNanos = System.nanoTime();
   }
 
+  public String getName() {
+    return name;
+  }
+
   /**
    * Accumulate metrics with operations processed as one batch.
    * @param numOps number of ops processed as one batch
    * @param batchLatencyNanos whole batch latency
    */
   public void accumulate(long numOps, long batchLatencyNanos) {
-    synchronized(lock) {
-      curOpCount += numOps;
-      curOpLatencyNanos += batchLatencyNanos * numOps;
-      totalOpCount += numOps;
+    recorder.get().record(batchLatencyNanos / 1000, numOps);
+  }
+
+  /**
+   * The operations of an interval, and of the whole run up to its end.
+   */
+  public static class Snapshot {
+    private final String name;
+    private final long elapsedNanos;
+    private final LatencyHistogram interval;
+    private final LatencyHistogram total;
+
+    Snapshot(String name, long elapsedNanos, LatencyHistogram interval, LatencyHistogram total) {
+      this.name = name;
+      this.elapsedNanos = elapsedNanos;
+      this.interval = interval;
+      this.total = total;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public double getOpsPerSec() {
+      return elapsedNanos == 0 ? 0 : interval.getTotalCount() * 1e9 / elapsedNanos;
+    }
+
+    public LatencyHistogram getInterval() {
+      return interval;
+    }
+
+    public LatencyHistogram getTotal() {
+      return total;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%s: %.2f ops/sec (%.2f ms/op", name, getOpsPerSec(),
+                              interval.getMeanMicros() / 1000));
+      appendPercentiles(sb, interval);
+      sb.append(String.format("), %d total ops (", total.getTotalCount()));
+      sb.append(String.format("%.2f ms/op", total.getMeanMicros() / 1000));
+      appendPercentiles(sb, total);
+      sb.append(")");
+      return sb.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder sb, LatencyHistogram histogram) {
+      for (double percentile : PERCENTILES) {
+        sb.append(String.format(", p%s %.2f", formatPercentile(percentile),
+                                histogram.getValueAtPercentile(percentile) / 1000.0));
+      }
+      sb.append(String.format(", max %.2f ms", histogram.getMaxMicros() / 1000.0));
+    }
+  }
+
+  /** Formats 50 as "50" and 99.9 as "99.9". */
+  static String formatPercentile(double percentile) {
+    return percentile == Math.rint(percentile) ?
+        String.valueOf((long) percentile) : String.valueOf(percentile);
+  }
+
+  /**
+   * Merges the recorders of all the threads, and starts a new interval.
+   * @return the operations since the previous snapshot, and since the start
+   */
+  public synchronized Snapshot takeSnapshot() {
+    long currNanos = System.nanoTime();
+    LatencyHistogram total = new LatencyHistogram();
+    for (Recorder r : recorders) {
+      r.addTo(total);
     }
+    LatencyHistogram interval = total.since(lastTotal);
+    LOG.debug("currentOpCount: " + interval.getTotalCount());
+    Snapshot snapshot = new Snapshot(name, currNanos - lastSnapshotNanos, interval, total);
+    lastTotal = total;
+    lastSnapshotNanos = currNanos;
+    return snapshot;
   }
 
   public String getMetricsAndReset() {
-    String msg = null;
-    synchronized(lock) {
-      long currNanos = System.nanoTime();
-      long elapsedNanos = currNanos - lastSnapshotNanos;
-      LOG.debug("currentOpLatency: " + curOpLatencyNanos + ", currentOpCount: " + curOpCount);
-      double ops_per_sec =
-          (elapsedNanos == 0) ? 0 : (curOpCount * 1000000000 * 1.0 / elapsedNanos);
-      double latency = (curOpCount == 0) ? 0 : (curOpLatencyNanos / 1000000 * 1.0 / curOpCount);
-      msg = String.format("%s: %.2f ops/sec (%.2f ms/op), %d total ops",
-                          name, ops_per_sec, latency, totalOpCount);
-      curOpCount = 0;
-      curOpLatencyNanos = 0;
-      lastSnapshotNanos = currNanos;
-    }
-    return msg;
+    return takeSnapshot().toString();
   }
 }
@@ -0,0 +1,127 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the metric snapshots to a file, for load test results to be compared across runs. There
+ * are two rows per metric and interval: one for the interval, one for the run so far, told apart
+ * by their scope. Latencies are in milliseconds.
+ * <p>
+ * Rows are either lines of a CSV file with a header, or JSON objects, one per line.
+ */
+public class MetricsOutput implements Closeable {
+  public static enum Format {
+    CSV,
+    JSON
+  }
+
+  private final Writer writer;
+  private final Format format;
+  private final List<String> columns = new ArrayList<>();
+
+  public MetricsOutput(File file, Format format) throws IOException {
+    this.writer = new BufferedWriter(new FileWriter(file));
+    this.format = format;
+    columns.add("time_ms");
+    columns.add("metric");
+    columns.add("scope");
+    columns.add("ops");
+    columns.add("ops_per_sec");
+    columns.add("mean_ms");
+    for (double percentile : Metric.PERCENTILES) {
+      columns.add("p" + Metric.formatPercentile(percentile).replace('.', '_') + "_ms");
+    }
+    columns.add("max_ms");
+    if (format == Format.CSV) {
+      writer.write(String.join(",", columns));
+      writer.write("\n");
+    }
+  }
+
+  /**
+   * Picks the format from the extension of the file, CSV unless it is ".json".
+   */
+  public static Format formatOf(String path) {
+    return path.toLowerCase().endsWith(".json") ? Format.JSON : Format.CSV;
+  }
+
+  /**
+   * Writes the rows of a snapshot, the file is flushed once all the snapshots of an interval are.
+   * @param timeMs the time of the snapshot, in milliseconds since the epoch
+   */
+  public void write(long timeMs, Metric.Snapshot snapshot) throws IOException {
+    writeRow(timeMs, snapshot.getName(), "interval", snapshot.getInterval(),
+             snapshot.getOpsPerSec());
+    writeRow(timeMs, snapshot.getName(), "total", snapshot.getTotal(), -1);
+  }
+
+  private void writeRow(long timeMs, String name, String scope, LatencyHistogram histogram,
+                        double opsPerSec) throws IOException {
+    List<String> values = new ArrayList<>();
+    values.add(String.valueOf(timeMs));
+    values.add(quote(name));
+    values.add(quote(scope));
+    values.add(String.valueOf(histogram.getTotalCount()));
+    // Throughput is only reported per interval.
+    values.add(opsPerSec < 0 ? (format == Format.CSV ? "" : "null") : formatDouble(opsPerSec));
+    values.add(formatDouble(histogram.getMeanMicros() / 1000));
+    for (double percentile : Metric.PERCENTILES) {
+      values.add(formatDouble(histogram.getValueAtPercentile(percentile) / 1000.0));
+    }
+    values.add(formatDouble(histogram.getMaxMicros() / 1000.0));
+
+    if (format == Format.CSV) {
+      writer.write(String.join(",", values));
+    } else {
+      writer.write("{");
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0) {
+          writer.write(", ");
+        }
+        writer.write("\"" + columns.get(i) + "\": " + values.get(i));
+      }
+      writer.write("}");
+    }
+    writer.write("\n");
+  }
+
+  // Metric names are enum names, they need neither escaping in CSV nor in JSON.
+  private String quote(String value) {
+    return format == Format.CSV ? value : "\"" + value + "\"";
+  }
+
+  private static String formatDouble(double value) {
+    // Always with a decimal point, whatever the locale.
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
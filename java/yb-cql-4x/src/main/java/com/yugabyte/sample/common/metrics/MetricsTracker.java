@@ -13,6 +13,7 @@
 
 package com.yugabyte.sample.common.metrics;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -44,6 +45,8 @@ public class MetricsTracker extends Thread {
   // Map of custom appenders.
   Map<String, StatusMessageAppender> appenders =
       new ConcurrentHashMap<String, StatusMessageAppender>();
+  // Where the snapshots are written for later comparison, if anywhere.
+  volatile MetricsOutput output;
 
   public MetricsTracker() {
     this.setDaemon(true);
@@ -53,6 +56,13 @@ public class MetricsTracker extends Thread {
     appenders.put(appender.appenderName(), appender);
   }
 
+  /**
+   * Also writes the metrics of every interval to the given output.
+   */
+  public void setOutput(MetricsOutput output) {
+    this.output = output;
+  }
+
   public void createMetric(MetricName metricName) {
     synchronized (initLock) {
       if (!metrics.containsKey(metricName)) {
@@ -66,8 +76,25 @@ public class MetricsTracker extends Thread {
   }
 
   public void getMetricsAndReset(StringBuilder sb) {
+    long timeMs = System.currentTimeMillis();
+    MetricsOutput output = this.output;
     for (MetricName metricName : MetricName.values()) {
-      sb.append(String.format("%s  |  ", metrics.get(metricName).getMetricsAndReset()));
+      Metric.Snapshot snapshot = metrics.get(metricName).takeSnapshot();
+      sb.append(String.format("%s  |  ", snapshot));
+      if (output != null) {
+        try {
+          output.write(timeMs, snapshot);
+        } catch (IOException e) {
+          LOG.warn("Failed to write the metrics", e);
+        }
+      }
+    }
+    if (output != null) {
+      try {
+        output.flush();
+      } catch (IOException e) {
+        LOG.warn("Failed to flush the metrics", e);
+      }
     }
   }
 
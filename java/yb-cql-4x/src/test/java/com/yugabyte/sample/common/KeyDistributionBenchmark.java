@@ -0,0 +1,82 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Measures the cost of picking keys with each {@link KeyDistribution}, and how skewed the picks
+ * are. Picks are made from one thread over a key space that grows by one key per pick, as it does
+ * while loading.
+ * <p>
+ * Prints nanoseconds and bytes allocated per pick, and the share of the picks that went to the
+ * hottest 1% of a million keys. Run with
+ * {@code java -cp <test classpath> com.yugabyte.sample.common.KeyDistributionBenchmark}.
+ */
+public class KeyDistributionBenchmark {
+  private static final String[] SPECS = {
+      "uniform", "zipfian", "latest", "hotspot:0.2:0.8", "sequential"
+  };
+  private static final long WARMUP_PICKS = 20000000;
+  private static final long MEASURE_PICKS = 20000000;
+  private static final int NUM_COUNTED_KEYS = 1000000;
+  private static final int NUM_COUNTED_PICKS = 10000000;
+
+  // Keeps the JIT from dropping the picks.
+  private static long sink;
+
+  public static void main(String[] args) {
+    for (String spec : SPECS) {
+      KeyDistribution distribution = KeyDistribution.parse(spec);
+      pick(distribution, WARMUP_PICKS);
+      com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long threadId = Thread.currentThread().getId();
+      long startBytes = threads.getThreadAllocatedBytes(threadId);
+      long startNanos = System.nanoTime();
+      pick(distribution, MEASURE_PICKS);
+      long nanos = System.nanoTime() - startNanos;
+      long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+      System.out.printf("%-16s %6.1f ns/pick, %4d bytes/pick, %5.1f%% of picks to the hottest " +
+                        "1%% of keys%n", spec, (double) nanos / MEASURE_PICKS,
+                        bytes / MEASURE_PICKS, 100 * hottestShare(distribution));
+    }
+    if (sink == 42) {
+      System.out.println();
+    }
+  }
+
+  private static void pick(KeyDistribution distribution, long numPicks) {
+    long sum = 0;
+    for (long i = 1; i <= numPicks; ++i) {
+      sum += distribution.nextKey(i);
+    }
+    sink += sum;
+  }
+
+  // The fraction of the picks that went to the hottest 1% of the keys, out of a fixed key space.
+  private static double hottestShare(KeyDistribution distribution) {
+    int[] counts = new int[NUM_COUNTED_KEYS];
+    for (int i = 0; i < NUM_COUNTED_PICKS; ++i) {
+      ++counts[(int) distribution.nextKey(NUM_COUNTED_KEYS)];
+    }
+    Arrays.sort(counts);
+    long hottest = 0;
+    for (int i = NUM_COUNTED_KEYS - NUM_COUNTED_KEYS / 100; i < NUM_COUNTED_KEYS; ++i) {
+      hottest += counts[i];
+    }
+    return (double) hottest / NUM_COUNTED_PICKS;
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+/**
+ * Checks that maxWrittenKey only moves past the keys whose writes are done, successfully or not,
+ * however late they complete.
+ */
+@RunWith(value=YBTestRunner.class)
+public class TestSimpleLoadGenerator {
+  private static final int RING_SIZE = SimpleLoadGenerator.WRITTEN_KEYS_RING_SIZE;
+
+  /** Completes the writes of a generator one at a time, checking maxWrittenKey after each. */
+  private static class Completer {
+    final SimpleLoadGenerator generator;
+    // The keys not done yet.
+    final TreeSet<Long> pending = new TreeSet<>();
+
+    Completer(long endKey) {
+      generator = new SimpleLoadGenerator(0, endKey, -1);
+      for (long key = 0; key < endKey; key++) {
+        pending.add(key);
+      }
+    }
+
+    void complete(long key, boolean success) {
+      SimpleLoadGenerator.Key k = generator.generateKey(key);
+      if (success) {
+        generator.recordWriteSuccess(k);
+      } else {
+        generator.recordWriteFailure(k);
+      }
+      pending.remove(key);
+      long expected = pending.isEmpty() ? generator.endKey - 1 : pending.first() - 1;
+      assertEquals(expected, generator.getMaxWrittenKey());
+    }
+
+    void completeAll(List<Long> keys) {
+      for (long key : keys) {
+        complete(key, true);
+      }
+    }
+  }
+
+  private static List<Long> range(long from, long to) {
+    List<Long> keys = new ArrayList<>();
+    for (long key = from; key < to; key++) {
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  @Test
+  public void testOutOfOrder() {
+    long endKey = 10000;
+    Completer completer = new Completer(endKey);
+    List<Long> keys = range(0, endKey);
+    keys.remove(Long.valueOf(5000));
+    Collections.shuffle(keys, new Random(42));
+    completer.completeAll(keys);
+    // Everything but the gap is done.
+    assertEquals(4999L, completer.generator.getMaxWrittenKey());
+    completer.complete(5000, true);
+    assertEquals(endKey - 1, completer.generator.getMaxWrittenKey());
+  }
+
+  @Test
+  public void testFarAhead() {
+    long endKey = 3L * RING_SIZE + 10;
+    Completer completer = new Completer(endKey);
+    // The keys past two ring sizes don't fit in the ring until the ones before them are done.
+    completer.completeAll(range(2L * RING_SIZE, endKey));
+    assertFalse(completer.generator.writtenKeysOverflow.isEmpty());
+    completer.completeAll(range(RING_SIZE + 1, 2L * RING_SIZE));
+    completer.completeAll(range(1, RING_SIZE + 1));
+    assertEquals(-1L, completer.generator.getMaxWrittenKey());
+    completer.complete(0, true);
+    assertEquals(endKey - 1, completer.generator.getMaxWrittenKey());
+    assertTrue(completer.generator.writtenKeysOverflow.isEmpty());
+  }
+
+  @Test
+  public void testFailedKeys() {
+    long endKey = 1000;
+    Completer completer = new Completer(endKey);
+    List<Long> keys = range(0, endKey);
+    Collections.shuffle(keys, new Random(42));
+    for (long key : keys) {
+      completer.complete(key, key % 10 != 3);
+    }
+    assertEquals(endKey - 1, completer.generator.getMaxWrittenKey());
+    assertEquals(100, completer.generator.failedKeys.size());
+    // The failed keys are never read.
+    for (int i = 0; i < 10000; i++) {
+      assertNotEquals(3L, completer.generator.getKeyToRead().asNumber() % 10);
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    final long endKey = 2L * RING_SIZE;
+    final SimpleLoadGenerator generator = new SimpleLoadGenerator(0, endKey, -1);
+    // Whether each key is done, set right before its write is recorded.
+    final AtomicIntegerArray done = new AtomicIntegerArray((int) endKey);
+    final AtomicBoolean gapSkipped = new AtomicBoolean();
+    List<Thread> writers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final Random random = new Random(i);
+      writers.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          // Writes held back until the thread has no more keys, some of them far behind.
+          List<SimpleLoadGenerator.Key> late = new ArrayList<>();
+          while (generator.stillLoading()) {
+            SimpleLoadGenerator.Key key = generator.getKeyToWrite();
+            if (key.asNumber() >= endKey) {
+              break;
+            }
+            if (random.nextInt(1000) == 0) {
+              late.add(key);
+            } else {
+              record(key);
+            }
+          }
+          for (SimpleLoadGenerator.Key key : late) {
+            record(key);
+          }
+        }
+
+        private void record(SimpleLoadGenerator.Key key) {
+          done.set((int) key.asNumber(), 1);
+          if (random.nextInt(100) == 0) {
+            generator.recordWriteFailure(key);
+          } else {
+            generator.recordWriteSuccess(key);
+          }
+        }
+      }));
+    }
+    final AtomicBoolean writersDone = new AtomicBoolean();
+    Thread checker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        long checked = -1;
+        boolean last;
+        do {
+          last = writersDone.get();
+          long maxKey = generator.getMaxWrittenKey();
+          for (; checked < maxKey; checked++) {
+            if (done.get((int) checked + 1) == 0) {
+              gapSkipped.set(true);
+              return;
+            }
+          }
+        } while (!last);
+      }
+    });
+    checker.start();
+    for (Thread writer : writers) {
+      writer.start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    writersDone.set(true);
+    checker.join();
+    assertFalse(gapSkipped.get());
+    assertEquals(endKey - 1, generator.getMaxWrittenKey());
+  }
+}
@@ -0,0 +1,178 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the tracking of written keys in {@link SimpleLoadGenerator} with the HashSets and
+ * tracker thread it used before. Writer threads take keys to write and record them written right
+ * away, as fast as they can, with 1, 4 and 16 of them.
+ * <p>
+ * Prints keys per second, the bytes allocated per key by the writers and how far maxWrittenKey
+ * lags behind the generated keys at the end. Run with
+ * {@code java -cp <test classpath> com.yugabyte.sample.common.WrittenKeysBenchmark}.
+ */
+public class WrittenKeysBenchmark {
+  private static final int[] NUM_THREADS = { 1, 4, 16 };
+  private static final long WARMUP_MS = 5000;
+  private static final long MEASURE_MS = 5000;
+
+  /** The keys to write, and where they were recorded. */
+  private interface Tracker {
+    SimpleLoadGenerator.Key getKeyToWrite();
+    void recordWriteSuccess(SimpleLoadGenerator.Key key);
+    long getMaxWrittenKey();
+    long getMaxGeneratedKey();
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int numThreads : NUM_THREADS) {
+      run("hash sets", numThreads, new HashSetTracker());
+      run("ring", numThreads, new RingTracker());
+    }
+  }
+
+  private static void run(String name, int numThreads, Tracker tracker) throws Exception {
+    runFor(tracker, numThreads, WARMUP_MS);
+    long[] result = runFor(tracker, numThreads, MEASURE_MS);
+    long keys = result[0];
+    long bytes = result[1];
+    System.out.printf("%-9s %2d threads: %10.0f keys/s, %5d bytes/key, %8d keys behind%n", name,
+        numThreads, keys * 1000.0 / MEASURE_MS, bytes / Math.max(keys, 1),
+        tracker.getMaxGeneratedKey() - tracker.getMaxWrittenKey());
+  }
+
+  /**
+   * @return the number of keys written and the bytes allocated by the writers
+   */
+  private static long[] runFor(final Tracker tracker, int numThreads, long ms) throws Exception {
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final AtomicLong numKeys = new AtomicLong();
+    final AtomicLong numBytes = new AtomicLong();
+    Thread[] writers = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      writers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long id = Thread.currentThread().getId();
+          long startBytes = threads.getThreadAllocatedBytes(id);
+          long count = 0;
+          while (!stopped.get()) {
+            tracker.recordWriteSuccess(tracker.getKeyToWrite());
+            count++;
+          }
+          numBytes.addAndGet(threads.getThreadAllocatedBytes(id) - startBytes);
+          numKeys.addAndGet(count);
+        }
+      });
+      writers[i].start();
+    }
+    Thread.sleep(ms);
+    stopped.set(true);
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    return new long[] { numKeys.get(), numBytes.get() };
+  }
+
+  private static class RingTracker implements Tracker {
+    private final SimpleLoadGenerator generator =
+        new SimpleLoadGenerator(0, Long.MAX_VALUE, -1);
+
+    @Override
+    public SimpleLoadGenerator.Key getKeyToWrite() {
+      return generator.getKeyToWrite();
+    }
+
+    @Override
+    public void recordWriteSuccess(SimpleLoadGenerator.Key key) {
+      generator.recordWriteSuccess(key);
+    }
+
+    @Override
+    public long getMaxWrittenKey() {
+      return generator.getMaxWrittenKey();
+    }
+
+    @Override
+    public long getMaxGeneratedKey() {
+      return generator.getMaxGeneratedKey();
+    }
+  }
+
+  /** The tracking SimpleLoadGenerator did before, with boxed keys and a thread advancing. */
+  private static class HashSetTracker implements Tracker {
+    private final AtomicLong maxWrittenKey = new AtomicLong(-1);
+    private final AtomicLong maxGeneratedKey = new AtomicLong(-1);
+    private final Set<Long> failedKeys = new HashSet<Long>();
+    private final Set<Long> writtenKeys = new HashSet<Long>();
+    private final Thread writtenKeysTracker;
+
+    HashSetTracker() {
+      writtenKeysTracker = new Thread("Written Keys Tracker") {
+        @Override
+        public void run() {
+          do {
+            long key = maxWrittenKey.get() + 1;
+            synchronized (this) {
+              if (failedKeys.contains(key) || writtenKeys.remove(key)) {
+                maxWrittenKey.set(key);
+              } else {
+                try {
+                  wait();
+                } catch (InterruptedException e) {
+                  // Ignore
+                }
+              }
+            }
+          } while (true);
+        }
+      };
+      writtenKeysTracker.setDaemon(true);
+      writtenKeysTracker.start();
+    }
+
+    @Override
+    public SimpleLoadGenerator.Key getKeyToWrite() {
+      return new SimpleLoadGenerator.Key(maxGeneratedKey.incrementAndGet(), null);
+    }
+
+    @Override
+    public void recordWriteSuccess(SimpleLoadGenerator.Key key) {
+      if (key.asNumber() > maxWrittenKey.get()) {
+        synchronized (writtenKeysTracker) {
+          writtenKeys.add(key.asNumber());
+          writtenKeysTracker.notify();
+        }
+      }
+    }
+
+    @Override
+    public long getMaxWrittenKey() {
+      return maxWrittenKey.get();
+    }
+
+    @Override
+    public long getMaxGeneratedKey() {
+      return maxGeneratedKey.get();
+    }
+  }
+}